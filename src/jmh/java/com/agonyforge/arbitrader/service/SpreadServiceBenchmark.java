@@ -0,0 +1,92 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.config.ExchangeConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.agonyforge.arbitrader.service.model.Spread;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.bitstamp.BitstampExchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+import static com.agonyforge.arbitrader.service.ExchangeService.METADATA_KEY;
+
+/**
+ * Compares computing an exact Spread with the double precision estimates used to screen TradeCombinations.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SpreadServiceBenchmark {
+    private SpreadService spreadService;
+    private TradeCombination tradeCombination;
+
+    @Setup
+    public void setUp() {
+        final TradingConfiguration tradingConfiguration = new TradingConfiguration();
+        final ExchangeService exchangeService = new ExchangeService(null, null);
+        final TickerService tickerService = new TickerService(tradingConfiguration, exchangeService, new ErrorCollectorService(), new TickerLatencyMonitor());
+        final Exchange longExchange = buildExchange("Long");
+        final Exchange shortExchange = buildExchange("Short");
+
+        tickerService.putTicker(longExchange, buildTicker("9876.54", "9877.12"));
+        tickerService.putTicker(shortExchange, buildTicker("9912.34", "9913.01"));
+
+        spreadService = new SpreadService(tradingConfiguration, tickerService);
+        tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+    }
+
+    @Benchmark
+    public Spread computeSpread() {
+        return spreadService.computeSpread(tradeCombination);
+    }
+
+    @Benchmark
+    public double estimateSpreadIn() {
+        return spreadService.estimateSpreadIn(tradeCombination);
+    }
+
+    @Benchmark
+    public double estimateSpreadOut() {
+        return spreadService.estimateSpreadOut(tradeCombination);
+    }
+
+    private static Exchange buildExchange(String name) {
+        final ExchangeSpecification specification = new ExchangeSpecification(BitstampExchange.class);
+
+        specification.setExchangeName(name);
+        specification.setShouldLoadRemoteMetaData(false);
+        specification.setExchangeSpecificParametersItem(METADATA_KEY, new ExchangeConfiguration());
+
+        return ExchangeFactory.INSTANCE.createExchange(specification);
+    }
+
+    private static Ticker buildTicker(String bid, String ask) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .build();
+    }
+}
@@ -0,0 +1,187 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeFactory;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.bitstamp.BitstampExchange;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares TickerCache with the String keyed maps TickerService used to keep its tickers in.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TickerCacheBenchmark {
+    @Param({"8"})
+    private int exchangeCount;
+
+    @Param({"40"})
+    private int pairCount;
+
+    private Exchange[] exchanges;
+    private CurrencyPair[] currencyPairs;
+    private Ticker[] tickers;
+
+    private Map<String, Ticker> hashMap;
+    private Map<String, Ticker> concurrentHashMap;
+    private TickerCache tickerCache;
+
+    private int cursor = 0;
+
+    @Setup
+    public void setUp() {
+        exchanges = new Exchange[exchangeCount];
+        currencyPairs = new CurrencyPair[pairCount];
+        tickers = new Ticker[pairCount];
+
+        hashMap = new HashMap<>();
+        concurrentHashMap = new ConcurrentHashMap<>();
+        tickerCache = new TickerCache();
+
+        for (int i = 0; i < exchangeCount; i++) {
+            ExchangeSpecification specification = new ExchangeSpecification(BitstampExchange.class);
+
+            specification.setExchangeName("Exchange" + i);
+            specification.setShouldLoadRemoteMetaData(false);
+
+            exchanges[i] = ExchangeFactory.INSTANCE.createExchange(specification);
+        }
+
+        for (int i = 0; i < pairCount; i++) {
+            currencyPairs[i] = new CurrencyPair(Currency.getInstance("C" + i), Currency.USD);
+            tickers[i] = new Ticker.Builder()
+                .instrument(currencyPairs[i])
+                .bid(new BigDecimal("100.00"))
+                .ask(new BigDecimal("101.00"))
+                .build();
+        }
+
+        for (Exchange exchange : exchanges) {
+            for (int i = 0; i < pairCount; i++) {
+                hashMap.put(legacyKey(exchange, currencyPairs[i]), tickers[i]);
+                concurrentHashMap.put(legacyKey(exchange, currencyPairs[i]), tickers[i]);
+                tickerCache.allocate(exchange, currencyPairs[i]);
+                tickerCache.put(exchange, currencyPairs[i], tickers[i]);
+            }
+        }
+    }
+
+    @Benchmark
+    public Ticker putHashMap() {
+        final int i = next();
+        final Ticker ticker = tickers[i % pairCount];
+
+        return hashMap.compute(legacyKey(exchanges[i % exchangeCount], currencyPairs[i % pairCount]),
+            (key, oldTicker) -> ticker);
+    }
+
+    @Benchmark
+    public boolean putTickerCache() {
+        final int i = next();
+
+        return tickerCache.put(exchanges[i % exchangeCount], currencyPairs[i % pairCount], tickers[i % pairCount]);
+    }
+
+    @Benchmark
+    public Ticker getHashMap() {
+        final int i = next();
+
+        return hashMap.get(legacyKey(exchanges[i % exchangeCount], currencyPairs[i % pairCount]));
+    }
+
+    @Benchmark
+    public Ticker getTickerCache() {
+        final int i = next();
+
+        return tickerCache.get(exchanges[i % exchangeCount], currencyPairs[i % pairCount]);
+    }
+
+    @Benchmark
+    @Group("concurrentHashMap")
+    @GroupThreads(1)
+    public Ticker writeConcurrentHashMap(ThreadCursor threadCursor) {
+        final int i = threadCursor.next();
+        final Ticker ticker = tickers[i % pairCount];
+
+        return concurrentHashMap.compute(legacyKey(exchanges[i % exchangeCount], currencyPairs[i % pairCount]),
+            (key, oldTicker) -> ticker);
+    }
+
+    @Benchmark
+    @Group("concurrentHashMap")
+    @GroupThreads(3)
+    public Ticker readConcurrentHashMap(ThreadCursor threadCursor) {
+        final int i = threadCursor.next();
+
+        return concurrentHashMap.get(legacyKey(exchanges[i % exchangeCount], currencyPairs[i % pairCount]));
+    }
+
+    @Benchmark
+    @Group("tickerCache")
+    @GroupThreads(1)
+    public boolean writeTickerCache(ThreadCursor threadCursor) {
+        final int i = threadCursor.next();
+
+        return tickerCache.put(exchanges[i % exchangeCount], currencyPairs[i % pairCount], tickers[i % pairCount]);
+    }
+
+    @Benchmark
+    @Group("tickerCache")
+    @GroupThreads(3)
+    public Ticker readTickerCache(ThreadCursor threadCursor) {
+        final int i = threadCursor.next();
+
+        return tickerCache.get(exchanges[i % exchangeCount], currencyPairs[i % pairCount]);
+    }
+
+    private int next() {
+        cursor = (cursor + 1) & Integer.MAX_VALUE;
+
+        return cursor;
+    }
+
+    // this is how TickerService used to build its keys
+    private static String legacyKey(Exchange exchange, CurrencyPair currencyPair) {
+        return String.format("%s:%s",
+            exchange.getExchangeSpecification().getExchangeName(),
+            currencyPair);
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadCursor {
+        private int cursor = 0;
+
+        int next() {
+            cursor = (cursor + 1) & Integer.MAX_VALUE;
+
+            return cursor;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package com.agonyforge.arbitrader.service.model;
+
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares walking a list of LimitOrders and adding up BigDecimal volumes with looking up the same price in a
+ * DepthBook. The volume we ask for reaches about halfway down the book.
+ *
+ * Run with: ./gradlew jmh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DepthBookBenchmark {
+    @Param({"50", "500", "5000"})
+    private int levels;
+
+    private List<LimitOrder> orders;
+    private DepthBook depthBook;
+    private BigDecimal volume;
+    private double updatePrice;
+    private long updateVolume;
+
+    @Setup
+    public void setUp() {
+        orders = new ArrayList<>(levels);
+
+        for (int i = 0; i < levels; i++) {
+            orders.add(new LimitOrder(
+                Order.OrderType.ASK,
+                new BigDecimal("0.5").add(new BigDecimal(i % 7).movePointLeft(1)),
+                CurrencyPair.BTC_USD,
+                null,
+                null,
+                new BigDecimal("9876.54").add(new BigDecimal(i).movePointLeft(2))));
+        }
+
+        depthBook = DepthBook.of(Order.OrderType.ASK, orders);
+        volume = BigDecimal.valueOf(depthBook.getTotalVolume() / 2, DepthBook.VOLUME_SCALE);
+        updatePrice = orders.get(levels / 10).getLimitPrice().doubleValue();
+        updateVolume = DepthBook.toVolumeUnits(orders.get(levels / 10).getOriginalAmount(), RoundingMode.DOWN);
+    }
+
+    @Benchmark
+    public BigDecimal walkOrders() {
+        BigDecimal total = BigDecimal.ZERO;
+
+        for (LimitOrder order : orders) {
+            total = total.add(order.getRemainingAmount());
+
+            if (total.compareTo(volume) > 0) {
+                return order.getLimitPrice();
+            }
+        }
+
+        return null;
+    }
+
+    @Benchmark
+    public double priceForVolume() {
+        return depthBook.getPriceForVolume(volume);
+    }
+
+    @Benchmark
+    public double vwapForVolume() {
+        return depthBook.getVwapForVolume(volume);
+    }
+
+    // change a level near the top of the book, then look up a price so the running totals get recomputed
+    @Benchmark
+    public double updateAndPriceForVolume() {
+        updateVolume ^= 1L;
+        depthBook.update(updatePrice, updateVolume);
+
+        return depthBook.getPriceForVolume(volume);
+    }
+
+    @Benchmark
+    public DepthBook build() {
+        return DepthBook.of(Order.OrderType.ASK, orders);
+    }
+}
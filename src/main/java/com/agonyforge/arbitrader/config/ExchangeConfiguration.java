@@ -33,6 +33,9 @@ public class ExchangeConfiguration {
     private List<Object> tickerArguments = new ArrayList<>();
     private FeeComputation feeComputation = FeeComputation.SERVER;
     private Boolean active;
+    private RateLimitConfiguration rateLimit;
+    private HttpTickerConfiguration httpTicker;
+    private Long gapFill;
 
     public String getExchangeClass() {
         return exchangeClass;
@@ -201,4 +204,28 @@ public class ExchangeConfiguration {
     public void setMarginFeeOverride(BigDecimal marginFeeOverride) {
         this.marginFeeOverride = marginFeeOverride;
     }
+
+    public RateLimitConfiguration getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimitConfiguration rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public HttpTickerConfiguration getHttpTicker() {
+        return httpTicker;
+    }
+
+    public void setHttpTicker(HttpTickerConfiguration httpTicker) {
+        this.httpTicker = httpTicker;
+    }
+
+    public Long getGapFill() {
+        return gapFill;
+    }
+
+    public void setGapFill(Long gapFill) {
+        this.gapFill = gapFill;
+    }
 }
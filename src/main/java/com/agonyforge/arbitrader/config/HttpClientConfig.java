@@ -0,0 +1,32 @@
+package com.agonyforge.arbitrader.config;
+
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.OkHttpClient;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for the HTTP client shared by everything that fetches market data with OkHttp.
+ */
+@Configuration
+public class HttpClientConfig {
+    private static final long KEEP_ALIVE_MINUTES = 5L;
+
+    @Bean
+    public OkHttpClient marketDataHttpClient(TradingConfiguration tradingConfiguration) {
+        final IoExecutorConfiguration ioExecutor = tradingConfiguration.getIoExecutor();
+        final Dispatcher dispatcher = new Dispatcher();
+
+        // the same limit on calls in progress at once to each exchange as the I/O threads
+        dispatcher.setMaxRequestsPerHost(ioExecutor.getThreadsPerExchange());
+
+        return new OkHttpClient.Builder()
+            .dispatcher(dispatcher)
+            .connectionPool(new ConnectionPool(dispatcher.getMaxRequests(), KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+            .callTimeout(ioExecutor.getTimeout(), TimeUnit.MILLISECONDS)
+            .build();
+    }
+}
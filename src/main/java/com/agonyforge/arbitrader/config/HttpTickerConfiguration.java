@@ -0,0 +1,56 @@
+package com.agonyforge.arbitrader.config;
+
+/**
+ * Configuration for fetching tickers from an exchange's public REST API directly, instead of through XChange.
+ *
+ * The url is a template: {base} and {counter} are replaced with the currency codes of the pair, in lower case if
+ * lowercase is set. The bid, ask and last prices are found in the JSON response using JSON pointers such as "/bid" or
+ * "/data/bestAsk". The last price is optional.
+ */
+public class HttpTickerConfiguration {
+    private String url;
+    private Boolean lowercase = false;
+    private String bid = "/bid";
+    private String ask = "/ask";
+    private String last;
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public Boolean isLowercase() {
+        return lowercase;
+    }
+
+    public void setLowercase(Boolean lowercase) {
+        this.lowercase = lowercase;
+    }
+
+    public String getBid() {
+        return bid;
+    }
+
+    public void setBid(String bid) {
+        this.bid = bid;
+    }
+
+    public String getAsk() {
+        return ask;
+    }
+
+    public void setAsk(String ask) {
+        this.ask = ask;
+    }
+
+    public String getLast() {
+        return last;
+    }
+
+    public void setLast(String last) {
+        this.last = last;
+    }
+}
@@ -0,0 +1,48 @@
+package com.agonyforge.arbitrader.config;
+
+/**
+ * Configuration for the threads that make blocking API calls to the exchanges. Each exchange gets its own small pool
+ * of threadsPerExchange threads with room for queueSize waiting calls, so a slow exchange can't tie up the threads
+ * the others need. A call that takes longer than timeout milliseconds is abandoned.
+ *
+ * With virtualThreads turned on and Java 21 or newer, every call gets its own virtual thread instead, and up to
+ * threadsPerExchange + queueSize calls can be in progress on one exchange at once.
+ */
+public class IoExecutorConfiguration {
+    private Integer threadsPerExchange = 4;
+    private Integer queueSize = 100;
+    private Long timeout = 10000L;
+    private Boolean virtualThreads = false;
+
+    public Integer getThreadsPerExchange() {
+        return threadsPerExchange;
+    }
+
+    public void setThreadsPerExchange(Integer threadsPerExchange) {
+        this.threadsPerExchange = threadsPerExchange;
+    }
+
+    public Integer getQueueSize() {
+        return queueSize;
+    }
+
+    public void setQueueSize(Integer queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    public Long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(Long timeout) {
+        this.timeout = timeout;
+    }
+
+    public Boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public void setVirtualThreads(Boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+}
@@ -0,0 +1,26 @@
+package com.agonyforge.arbitrader.config;
+
+/**
+ * Configuration for how fast we're allowed to make public API requests to one exchange. Requests are paced by a
+ * token bucket that refills at requestsPerSecond and holds up to burst requests.
+ */
+public class RateLimitConfiguration {
+    private Double requestsPerSecond;
+    private Integer burst = 1;
+
+    public Double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public void setRequestsPerSecond(Double requestsPerSecond) {
+        this.requestsPerSecond = requestsPerSecond;
+    }
+
+    public Integer getBurst() {
+        return burst;
+    }
+
+    public void setBurst(Integer burst) {
+        this.burst = burst;
+    }
+}
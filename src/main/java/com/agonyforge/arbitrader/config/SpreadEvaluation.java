@@ -0,0 +1,9 @@
+package com.agonyforge.arbitrader.config;
+
+/**
+ * Which trade combinations are analyzed when a ticker arrives?
+ */
+public enum SpreadEvaluation {
+    ALL,        // every combination involving the exchange and currency pair of the ticker
+    BEST_VENUE  // only the combination with the lowest ask and the highest bid for the currency pair
+}
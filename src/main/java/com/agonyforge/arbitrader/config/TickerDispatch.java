@@ -0,0 +1,10 @@
+package com.agonyforge.arbitrader.config;
+
+/**
+ * How are TickerEvents delivered from the ticker strategies to trade analysis?
+ */
+public enum TickerDispatch {
+    EVENT,       // every event is published as a Spring application event and analyzed on the async task executor
+    CONFLATING,  // only the latest event for each exchange and currency pair waits to be analyzed
+    RING_BUFFER  // every event goes through a preallocated ring buffer with a dedicated consumer for each exchange
+}
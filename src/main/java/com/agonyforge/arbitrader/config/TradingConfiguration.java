@@ -22,10 +22,26 @@ public class TradingConfiguration {
     private BigDecimal minimumProfit;
     private Boolean spreadNotifications = false;
     private BigDecimal fixedExposure;
+    private Integer maxPositions = 1;
+    private BigDecimal positionExposure;
     private List<ExchangeConfiguration> exchanges = new ArrayList<>();
     private List<String> tradeBlacklist = new ArrayList<>();
     private Long tradeTimeout;
+    private Long orderPollMinInterval = 250L;
+    private Long orderPollMaxInterval = 10000L;
+    private Long repriceTimeout;
+    private BigDecimal repriceThreshold;
+    private Integer maxReprices = 3;
+    private Long feeRefreshInterval = 3600000L;
     private PaperConfiguration paper;
+    private TickerDispatch tickerDispatch = TickerDispatch.EVENT;
+    private BigDecimal spreadScreeningMargin;
+    private SpreadEvaluation spreadEvaluation = SpreadEvaluation.ALL;
+    private Long orderBookMaxAge;
+    private BigDecimal prefetchBand;
+    private Long prefetchMaxAge = 2000L;
+    private Long tickerMaxSilence;
+    private IoExecutorConfiguration ioExecutor = new IoExecutorConfiguration();
 
     public BigDecimal getEntrySpreadTarget() {
         return entrySpreadTarget;
@@ -67,6 +83,22 @@ public class TradingConfiguration {
         this.fixedExposure = fixedExposure.setScale(USD_SCALE, RoundingMode.HALF_EVEN);
     }
 
+    public Integer getMaxPositions() {
+        return maxPositions;
+    }
+
+    public void setMaxPositions(Integer maxPositions) {
+        this.maxPositions = maxPositions;
+    }
+
+    public BigDecimal getPositionExposure() {
+        return positionExposure;
+    }
+
+    public void setPositionExposure(BigDecimal positionExposure) {
+        this.positionExposure = positionExposure.setScale(USD_SCALE, RoundingMode.HALF_EVEN);
+    }
+
     public List<ExchangeConfiguration> getExchanges() {
         return exchanges;
     }
@@ -91,6 +123,54 @@ public class TradingConfiguration {
         this.tradeTimeout = tradeTimeout;
     }
 
+    public Long getOrderPollMinInterval() {
+        return orderPollMinInterval;
+    }
+
+    public void setOrderPollMinInterval(Long orderPollMinInterval) {
+        this.orderPollMinInterval = orderPollMinInterval;
+    }
+
+    public Long getOrderPollMaxInterval() {
+        return orderPollMaxInterval;
+    }
+
+    public void setOrderPollMaxInterval(Long orderPollMaxInterval) {
+        this.orderPollMaxInterval = orderPollMaxInterval;
+    }
+
+    public Long getRepriceTimeout() {
+        return repriceTimeout;
+    }
+
+    public void setRepriceTimeout(Long repriceTimeout) {
+        this.repriceTimeout = repriceTimeout;
+    }
+
+    public BigDecimal getRepriceThreshold() {
+        return repriceThreshold;
+    }
+
+    public void setRepriceThreshold(BigDecimal repriceThreshold) {
+        this.repriceThreshold = repriceThreshold;
+    }
+
+    public Integer getMaxReprices() {
+        return maxReprices;
+    }
+
+    public void setMaxReprices(Integer maxReprices) {
+        this.maxReprices = maxReprices;
+    }
+
+    public Long getFeeRefreshInterval() {
+        return feeRefreshInterval;
+    }
+
+    public void setFeeRefreshInterval(Long feeRefreshInterval) {
+        this.feeRefreshInterval = feeRefreshInterval;
+    }
+
     public PaperConfiguration getPaper() {
         return paper;
     }
@@ -98,4 +178,68 @@ public class TradingConfiguration {
     public void setPaper(PaperConfiguration paper) {
         this.paper = paper;
     }
+
+    public TickerDispatch getTickerDispatch() {
+        return tickerDispatch;
+    }
+
+    public void setTickerDispatch(TickerDispatch tickerDispatch) {
+        this.tickerDispatch = tickerDispatch;
+    }
+
+    public BigDecimal getSpreadScreeningMargin() {
+        return spreadScreeningMargin;
+    }
+
+    public void setSpreadScreeningMargin(BigDecimal spreadScreeningMargin) {
+        this.spreadScreeningMargin = spreadScreeningMargin;
+    }
+
+    public SpreadEvaluation getSpreadEvaluation() {
+        return spreadEvaluation;
+    }
+
+    public void setSpreadEvaluation(SpreadEvaluation spreadEvaluation) {
+        this.spreadEvaluation = spreadEvaluation;
+    }
+
+    public Long getOrderBookMaxAge() {
+        return orderBookMaxAge;
+    }
+
+    public void setOrderBookMaxAge(Long orderBookMaxAge) {
+        this.orderBookMaxAge = orderBookMaxAge;
+    }
+
+    public BigDecimal getPrefetchBand() {
+        return prefetchBand;
+    }
+
+    public void setPrefetchBand(BigDecimal prefetchBand) {
+        this.prefetchBand = prefetchBand;
+    }
+
+    public Long getPrefetchMaxAge() {
+        return prefetchMaxAge;
+    }
+
+    public void setPrefetchMaxAge(Long prefetchMaxAge) {
+        this.prefetchMaxAge = prefetchMaxAge;
+    }
+
+    public Long getTickerMaxSilence() {
+        return tickerMaxSilence;
+    }
+
+    public void setTickerMaxSilence(Long tickerMaxSilence) {
+        this.tickerMaxSilence = tickerMaxSilence;
+    }
+
+    public IoExecutorConfiguration getIoExecutor() {
+        return ioExecutor;
+    }
+
+    public void setIoExecutor(IoExecutorConfiguration ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
 }
@@ -0,0 +1,30 @@
+package com.agonyforge.arbitrader.exception;
+
+import org.knowm.xchange.Exchange;
+
+import java.io.IOException;
+
+/**
+ * An IOException thrown when a call to an Exchange takes longer than we're willing to wait for it.
+ */
+public class ExchangeTimeoutException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final transient Exchange exchange;
+    private final long timeout;
+
+    public ExchangeTimeoutException(Exchange exchange, long timeout) {
+        super("Call to " + exchange.getExchangeSpecification().getExchangeName() + " timed out after " + timeout + " ms.");
+
+        this.exchange = exchange;
+        this.timeout = timeout;
+    }
+
+    public Exchange getExchange() {
+        return exchange;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+}
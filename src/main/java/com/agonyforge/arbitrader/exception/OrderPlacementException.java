@@ -0,0 +1,37 @@
+package com.agonyforge.arbitrader.exception;
+
+/**
+ * A RuntimeException thrown when one or both legs of an order pair could not be placed.
+ *
+ * The order IDs tell us which legs were placed. If only one of them was, we try to cancel it before throwing so that
+ * we aren't left holding half a trade. isResolved() says whether that left us without any orders we don't know about:
+ * when it's false a leg is still open, or a leg timed out and we can't tell whether the exchange placed it, and a
+ * human needs to look at the exchanges before we trade again.
+ */
+public class OrderPlacementException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String longOrderId;
+    private final String shortOrderId;
+    private final boolean resolved;
+
+    public OrderPlacementException(String message, Throwable cause, String longOrderId, String shortOrderId, boolean resolved) {
+        super(message, cause);
+
+        this.longOrderId = longOrderId;
+        this.shortOrderId = shortOrderId;
+        this.resolved = resolved;
+    }
+
+    public String getLongOrderId() {
+        return longOrderId;
+    }
+
+    public String getShortOrderId() {
+        return shortOrderId;
+    }
+
+    public boolean isResolved() {
+        return resolved;
+    }
+}
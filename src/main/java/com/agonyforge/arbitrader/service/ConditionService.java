@@ -13,6 +13,7 @@ import java.nio.charset.Charset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * A service to detect several different conditions that can control Arbitrader's behavior without exposing
@@ -35,6 +36,10 @@ public class ConditionService {
     private final File statusFile = new File(STATUS);
     private final File blackoutFile = new File(BLACKOUT);
 
+    // what the force open and force close files said the last time refreshScreeningConditions() looked at them
+    private volatile String screenedForceOpen = null;
+    private volatile boolean screenedForceClose = false;
+
     /**
      * Is the "force a trade to open" condition enabled?
      *
@@ -47,16 +52,32 @@ public class ConditionService {
         return forceOpenFile.exists() && evaluateForceOpenCondition(currencyPair, longExchangeName, shortExchangeName);
     }
 
+    /**
+     * Is the "force a trade to open" condition enabled for any pair of exchanges?
+     *
+     * @return true if a trade might be forced to open.
+     */
+    public boolean isForceOpenCondition() {
+        return forceOpenFile.exists();
+    }
+
     private boolean evaluateForceOpenCondition(CurrencyPair currencyPair, String longExchangeName, String shortExchangeName) {
-        String exchanges;
+        final String exchanges = readForceOpenFile();
+
+        return exchanges != null && isForceOpenMatch(exchanges, currencyPair, longExchangeName, shortExchangeName);
+    }
 
+    // the contents of the force open file, or null if it can't be read
+    private String readForceOpenFile() {
         try {
-            exchanges = FileUtils.readFileToString(forceOpenFile, Charset.defaultCharset()).trim();
+            return FileUtils.readFileToString(forceOpenFile, Charset.defaultCharset()).trim();
         } catch (IOException e) {
             LOGGER.warn("IOException reading file '{}': {}", FORCE_OPEN, e.getMessage());
-            return false;
+            return null;
         }
+    }
 
+    private static boolean isForceOpenMatch(String exchanges, CurrencyPair currencyPair, String longExchangeName, String shortExchangeName) {
         // The force-open file should contain the names of the exchanges you want to force a trade on.
         // It's meant to be a tool to aid testing entry and exit on specific pairs of exchanges.
         //
@@ -70,6 +91,50 @@ public class ConditionService {
         return current.equals(exchanges);
     }
 
+    /**
+     * Look at the force open and force close files again for the screening methods below. Screening happens for every
+     * TradeCombination on every ticker, which is far too often to look at the files each time, so the screens use what
+     * the files said the last time this was called. Whatever passes the screen is checked against the files again
+     * before trading.
+     */
+    public void refreshScreeningConditions() {
+        // a file we can't read never matches, the same as in isForceOpenCondition()
+        screenedForceOpen = forceOpenFile.exists() ? Optional.ofNullable(readForceOpenFile()).orElse("") : null;
+        screenedForceClose = forceCloseFile.exists();
+    }
+
+    /**
+     * Was a trade being forced open on a TradeCombination the last time we looked?
+     *
+     * @param currencyPair A CurrencyPair
+     * @param longExchangeName The name of the long Exchange.
+     * @param shortExchangeName The name of the short Exchange.
+     * @return true if a trade might be forced to open, according to {@link #refreshScreeningConditions()}.
+     */
+    public boolean isScreenedForceOpenCondition(CurrencyPair currencyPair, String longExchangeName, String shortExchangeName) {
+        final String exchanges = screenedForceOpen;
+
+        return exchanges != null && isForceOpenMatch(exchanges, currencyPair, longExchangeName, shortExchangeName);
+    }
+
+    /**
+     * Was a trade being forced open on any pair of exchanges the last time we looked?
+     *
+     * @return true if a trade might be forced to open, according to {@link #refreshScreeningConditions()}.
+     */
+    public boolean isScreenedForceOpenCondition() {
+        return screenedForceOpen != null;
+    }
+
+    /**
+     * Were trades being forced to close the last time we looked?
+     *
+     * @return true if our open trades might be forced to close, according to {@link #refreshScreeningConditions()}.
+     */
+    public boolean isScreenedForceCloseCondition() {
+        return screenedForceClose;
+    }
+
     /**
      * Removes the "force a trade to open" condition.
      */
@@ -0,0 +1,184 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
+import com.agonyforge.arbitrader.service.model.ExchangeFee;
+import com.agonyforge.arbitrader.service.model.InstrumentParameters;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Hands out exchange fees without making anyone wait for the exchange.
+ *
+ * The last fee we know about is always returned right away. Once it is older than feeRefreshInterval milliseconds it
+ * is fetched again in the background, and the new fee is used as soon as it arrives. Fees are fetched for every
+ * TradeCombination when the bot starts up so that normally the only time anyone waits for a fee is if they ask for
+ * one we've never seen. Even then only one of them fetches it, and everyone else asking for it waits for that fetch. No
+ * one waits longer than the exchange's I/O timeout: if the fee doesn't come by then, the configured or default fee is
+ * handed out instead and the real one is fetched again the next time it's asked for.
+ */
+@Component
+public class ExchangeFeeRefresher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExchangeFeeRefresher.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final ExchangeService exchangeService;
+    private final ExchangeFeeCache feeCache;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+
+    public ExchangeFeeRefresher(
+        TradingConfiguration tradingConfiguration,
+        ExchangeService exchangeService,
+        ExchangeFeeCache feeCache,
+        ExchangeIoExecutor exchangeIoExecutor) {
+
+        this.tradingConfiguration = tradingConfiguration;
+        this.exchangeService = exchangeService;
+        this.feeCache = feeCache;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+    }
+
+    /**
+     * Get the fee for using an exchange.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPair The CurrencyPair, in case fees vary by pair.
+     * @return The fee expressed as a percentage, ie. 0.0016 for 0.16%
+     */
+    public ExchangeFee getExchangeFee(Exchange exchange, CurrencyPair currencyPair) {
+        final ExchangeFeeCache.CachedFee cachedFee = feeCache.findCachedFee(exchange, currencyPair);
+
+        if (cachedFee != null) {
+            if (feeCache.isExpired(cachedFee, tradingConfiguration.getFeeRefreshInterval())) {
+                refreshLater(exchange, currencyPair, false);
+            }
+
+            return cachedFee.getFee();
+        }
+
+        // we have nothing to hand out yet, so this one time we have to wait for it
+        return refreshNow(exchange, currencyPair);
+    }
+
+    /**
+     * Start fetching the fees for both exchanges in each TradeCombination in the background, for the currency pair
+     * both as we know it and as the exchange knows it.
+     *
+     * @param tradeCombinations The TradeCombinations we are going to trade.
+     */
+    public void prewarm(List<TradeCombination> tradeCombinations) {
+        tradeCombinations.forEach(tradeCombination -> {
+            prewarm(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair(), tradeCombination.getLongParameters());
+            prewarm(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair(), tradeCombination.getShortParameters());
+        });
+    }
+
+    private void prewarm(Exchange exchange, CurrencyPair currencyPair, InstrumentParameters parameters) {
+        final CurrencyPair exchangeCurrencyPair = parameters == null
+            ? exchangeService.convertExchangePair(exchange, currencyPair)
+            : parameters.getCurrencyPair();
+
+        refreshLater(exchange, currencyPair, true);
+
+        if (!currencyPair.equals(exchangeCurrencyPair)) {
+            refreshLater(exchange, exchangeCurrencyPair, true);
+        }
+    }
+
+    // fetch a fee and wait for it, or wait for whoever is already fetching it and use theirs, but never for longer
+    // than the exchange's I/O timeout
+    private ExchangeFee refreshNow(Exchange exchange, CurrencyPair currencyPair) {
+        if (feeCache.startRefresh(exchange, currencyPair)) {
+            try {
+                return exchangeIoExecutor.call(exchange, () -> refresh(exchange, currencyPair, true));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Unable to fetch {} {} trading fee: {}",
+                    exchange.getExchangeSpecification().getExchangeName(),
+                    currencyPair,
+                    e.getMessage());
+
+                return useFallbackFee(exchange, currencyPair);
+            } finally {
+                feeCache.finishRefresh(exchange, currencyPair);
+            }
+        }
+
+        feeCache.awaitRefresh(exchange, currencyPair, tradingConfiguration.getIoExecutor().getTimeout());
+
+        final Optional<ExchangeFee> cachedFee = feeCache.getCachedFee(exchange, currencyPair);
+
+        return cachedFee.orElseGet(() -> useFallbackFee(exchange, currencyPair));
+    }
+
+    // hand out the configured or default fee until we can get the real one, which we'll try again next time
+    private ExchangeFee useFallbackFee(Exchange exchange, CurrencyPair currencyPair) {
+        final ExchangeFee exchangeFee = exchangeService.getStaticExchangeFee(exchange, currencyPair, false);
+
+        feeCache.setFallbackFee(exchange, currencyPair, exchangeFee);
+
+        return exchangeFee;
+    }
+
+    // fetch a fee in the background, unless someone is already doing it
+    private void refreshLater(Exchange exchange, CurrencyPair currencyPair, boolean isLogged) {
+        if (!feeCache.startRefresh(exchange, currencyPair)) {
+            return;
+        }
+
+        try {
+            exchangeIoExecutor.execute(exchange, () -> {
+                try {
+                    refresh(exchange, currencyPair, isLogged);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unable to refresh {} {} trading fee: {}",
+                        exchange.getExchangeSpecification().getExchangeName(),
+                        currencyPair,
+                        e.getMessage());
+                } finally {
+                    feeCache.finishRefresh(exchange, currencyPair);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the exchange is busy, we'll try again the next time someone asks for this fee
+            feeCache.finishRefresh(exchange, currencyPair);
+        }
+    }
+
+    // fetch a fee from the exchange and remember it, even if it's only a default or the configured fee
+    private ExchangeFee refresh(Exchange exchange, CurrencyPair currencyPair, boolean isLogged) {
+        final ExchangeFee exchangeFee = exchangeService.fetchExchangeFee(exchange, currencyPair, !isLogged);
+
+        feeCache.setCachedFee(exchange, currencyPair, exchangeFee);
+
+        if (isLogged) {
+            if (exchangeFee.getMarginFee().isPresent()) {
+                LOGGER.info("{} {} trading fee: {} and margin fee: {}",
+                    exchange.getExchangeSpecification().getExchangeName(),
+                    currencyPair,
+                    exchangeFee.getTradeFee(),
+                    exchangeFee.getTotalFee());
+            } else {
+                LOGGER.info("{} {} trading fee: {}",
+                    exchange.getExchangeSpecification().getExchangeName(),
+                    currencyPair,
+                    exchangeFee.getTradeFee());
+            }
+        } else {
+            LOGGER.debug("Refreshed {} {} trading fee: {}",
+                exchange.getExchangeSpecification().getExchangeName(),
+                currencyPair,
+                exchangeFee.getTradeFee());
+        }
+
+        return exchangeFee;
+    }
+}
@@ -0,0 +1,318 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.config.IoExecutorConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.exception.ExchangeTimeoutException;
+import com.agonyforge.arbitrader.service.metrics.LatencyHistogram;
+import org.knowm.xchange.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Runs blocking API calls to the exchanges. Each exchange gets its own bounded pool of threads, so a slow or hanging
+ * exchange can only use up its own threads and queue, and callers never wait longer than the configured timeout for
+ * an answer.
+ *
+ * The time each call spends talking to the exchange is recorded in a LatencyHistogram per exchange.
+ *
+ * If virtualThreads is configured and we're running on Java 21 or newer, each call runs on its own virtual thread
+ * instead of a pooled one. The bulkhead is then a limit on how many calls can be in progress on each exchange, and
+ * blocking on a slow exchange costs next to nothing, so polling hundreds of pairs doesn't need any pool tuning.
+ */
+@Component
+public class ExchangeIoExecutor {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExchangeIoExecutor.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final Function<String, Executor> poolFactory;
+    private final Map<String, Bulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final boolean virtualThreads;
+
+    @Autowired
+    public ExchangeIoExecutor(TradingConfiguration tradingConfiguration) {
+        this(tradingConfiguration, null);
+    }
+
+    ExchangeIoExecutor(TradingConfiguration tradingConfiguration, Function<String, Executor> poolFactory) {
+        this.tradingConfiguration = tradingConfiguration;
+        this.poolFactory = poolFactory != null ? poolFactory : this::createPool;
+        this.virtualThreads = tradingConfiguration.getIoExecutor().isVirtualThreads() && VirtualThreads.isAvailable();
+
+        if (tradingConfiguration.getIoExecutor().isVirtualThreads() && !virtualThreads) {
+            LOGGER.warn("Virtual threads need Java 21 or newer, using platform threads for exchange calls instead");
+        }
+    }
+
+    /**
+     * @return true if calls to the exchanges run on virtual threads.
+     */
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Make a call to an exchange and wait for the answer.
+     *
+     * @param exchange The Exchange the call talks to.
+     * @param call The blocking call.
+     * @param <T> The type the call returns.
+     * @return Whatever the call returned.
+     * @throws IOException if the call failed, timed out or couldn't be queued.
+     */
+    public <T> T call(Exchange exchange, Callable<T> call) throws IOException {
+        return get(exchange, submit(exchange, call));
+    }
+
+    /**
+     * Start a call to an exchange without waiting for it. Use get() to wait for the answer. If the exchange already has
+     * a full queue of calls waiting, the Future fails with an IOException.
+     *
+     * @param exchange The Exchange the call talks to.
+     * @param call The blocking call.
+     * @param <T> The type the call returns.
+     * @return A Future for the answer.
+     */
+    public <T> Future<T> submit(Exchange exchange, Callable<T> call) {
+        final Bulkhead bulkhead = getBulkhead(exchange);
+        final FutureTask<T> task = new FutureTask<>(() -> {
+            final long start = System.nanoTime();
+
+            try {
+                return call.call();
+            } finally {
+                bulkhead.latency.record(System.nanoTime() - start);
+            }
+        });
+
+        try {
+            bulkhead.executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            final CompletableFuture<T> rejected = new CompletableFuture<>();
+
+            rejected.completeExceptionally(new IOException("Too many calls waiting for " + exchange.getExchangeSpecification().getExchangeName(), e));
+
+            return rejected;
+        }
+
+        return task;
+    }
+
+    /**
+     * Run something that talks to an exchange in the background.
+     *
+     * @param exchange The Exchange it talks to.
+     * @param task The blocking task.
+     * @throws RejectedExecutionException if the exchange already has a full queue of calls waiting.
+     */
+    public void execute(Exchange exchange, Runnable task) {
+        final Bulkhead bulkhead = getBulkhead(exchange);
+
+        bulkhead.executor.execute(() -> {
+            final long start = System.nanoTime();
+
+            try {
+                task.run();
+            } finally {
+                bulkhead.latency.record(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * Wait for the answer to a call started with submit(). If it doesn't come within the timeout the call is cancelled.
+     *
+     * @param exchange The Exchange the call talks to.
+     * @param future The Future returned by submit().
+     * @param <T> The type the call returns.
+     * @return Whatever the call returned.
+     * @throws IOException if the call failed or timed out.
+     */
+    public <T> T get(Exchange exchange, Future<T> future) throws IOException {
+        final long timeout = tradingConfiguration.getIoExecutor().getTimeout();
+
+        try {
+            return future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            getBulkhead(exchange).timeouts.incrementAndGet();
+
+            throw new ExchangeTimeoutException(exchange, timeout);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for " + exchange.getExchangeSpecification().getExchangeName());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            // Method proxying in rescu can enclose a real exception in this UTE, so we need to unwrap it.
+            if (cause instanceof UndeclaredThrowableException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Record the latency of a call to an exchange that was made some other way, so it shows up with the rest.
+     *
+     * @param exchange The Exchange the call talked to.
+     * @param nanos How long the call took, in nanoseconds.
+     */
+    public void recordLatency(Exchange exchange, long nanos) {
+        getBulkhead(exchange).latency.record(nanos);
+    }
+
+    /**
+     * @return The latency of calls to each exchange, by exchange name.
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        final Map<String, LatencyHistogram> latencies = new TreeMap<>();
+
+        bulkheads.forEach((name, bulkhead) -> latencies.put(name, bulkhead.latency));
+
+        return latencies;
+    }
+
+    /**
+     * @param exchangeName The name of the exchange.
+     * @return How many calls to the exchange have timed out.
+     */
+    public long getTimeouts(String exchangeName) {
+        final Bulkhead bulkhead = bulkheads.get(exchangeName);
+
+        return bulkhead == null ? 0L : bulkhead.timeouts.get();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bulkheads.values().forEach(bulkhead -> {
+            if (bulkhead.executor instanceof ExecutorService) {
+                ((ExecutorService) bulkhead.executor).shutdownNow();
+            } else if (bulkhead.executor instanceof PermitExecutor) {
+                ((PermitExecutor) bulkhead.executor).delegate.shutdownNow();
+            }
+        });
+    }
+
+    private Bulkhead getBulkhead(Exchange exchange) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final Bulkhead bulkhead = bulkheads.get(exchangeName);
+
+        if (bulkhead != null) {
+            return bulkhead;
+        }
+
+        return bulkheads.computeIfAbsent(exchangeName, name -> new Bulkhead(poolFactory.apply(name)));
+    }
+
+    private Executor createPool(String exchangeName) {
+        final IoExecutorConfiguration configuration = tradingConfiguration.getIoExecutor();
+
+        if (virtualThreads) {
+            final int permits = configuration.getThreadsPerExchange() + configuration.getQueueSize();
+
+            LOGGER.debug("Using virtual threads for up to {} calls at once to {}", permits, exchangeName);
+
+            return new PermitExecutor(VirtualThreads.newThreadPerTaskExecutor("exchange-io-" + exchangeName + "-"), permits);
+        }
+
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(
+            configuration.getThreadsPerExchange(),
+            configuration.getThreadsPerExchange(),
+            60L,
+            TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(configuration.getQueueSize()),
+            runnable -> {
+                final Thread thread = new Thread(runnable, "exchange-io-" + exchangeName + "-" + threadCount.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
+
+        pool.allowCoreThreadTimeOut(true);
+
+        LOGGER.debug("Created I/O pool for {} with {} threads", exchangeName, configuration.getThreadsPerExchange());
+
+        return pool;
+    }
+
+    // the threads and measurements for one exchange
+    private static final class Bulkhead {
+        private final Executor executor;
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final AtomicLong timeouts = new AtomicLong();
+
+        private Bulkhead(Executor executor) {
+            this.executor = executor;
+        }
+    }
+
+    // starts every task right away on its delegate, as long as fewer than the allowed number are already running
+    private static final class PermitExecutor implements Executor {
+        private final ExecutorService delegate;
+        private final Semaphore permits;
+
+        private PermitExecutor(ExecutorService delegate, int permits) {
+            this.delegate = delegate;
+            this.permits = new Semaphore(permits);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (!permits.tryAcquire()) {
+                throw new RejectedExecutionException("Too many calls in progress");
+            }
+
+            try {
+                delegate.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+        }
+    }
+}
@@ -2,9 +2,11 @@ package com.agonyforge.arbitrader.service;
 
 import com.agonyforge.arbitrader.Utils;
 import com.agonyforge.arbitrader.config.ExchangeConfiguration;
+import com.agonyforge.arbitrader.config.RateLimitConfiguration;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
 import com.agonyforge.arbitrader.service.model.ExchangeFee;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
 import com.agonyforge.arbitrader.service.ticker.TickerStrategy;
 import com.agonyforge.arbitrader.service.ticker.TickerStrategyProvider;
 import org.jetbrains.annotations.Nullable;
@@ -30,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 import static com.agonyforge.arbitrader.DecimalConstants.BTC_SCALE;
@@ -47,6 +50,7 @@ public class ExchangeService {
 
     private final ExchangeFeeCache feeCache;
     private final TickerStrategyProvider tickerStrategyProvider;
+    private final Map<String, Optional<TokenBucket>> rateLimiters = new ConcurrentHashMap<>();
 
     @Inject
     public ExchangeService(ExchangeFeeCache feeCache, TickerStrategyProvider tickerStrategyProvider) {
@@ -64,6 +68,32 @@ public class ExchangeService {
         return (ExchangeConfiguration) exchange.getExchangeSpecification().getExchangeSpecificParametersItem(METADATA_KEY);
     }
 
+    /**
+     * Get the TokenBucket that paces public API requests to an Exchange, so that everything that polls the exchange
+     * shares the same budget.
+     *
+     * @param exchange The Exchange.
+     * @return The TokenBucket, or null if no rateLimit is configured for the exchange.
+     */
+    public TokenBucket getRateLimiter(Exchange exchange) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        Optional<TokenBucket> rateLimiter = rateLimiters.get(exchangeName);
+
+        if (rateLimiter == null) {
+            rateLimiter = rateLimiters.computeIfAbsent(exchangeName, key -> {
+                final RateLimitConfiguration rateLimit = getExchangeMetadata(exchange).getRateLimit();
+
+                if (rateLimit == null || rateLimit.getRequestsPerSecond() == null) {
+                    return Optional.empty();
+                }
+
+                return Optional.of(new TokenBucket(rateLimit.getRequestsPerSecond(), rateLimit.getBurst()));
+            });
+        }
+
+        return rateLimiter.orElse(null);
+    }
+
     /**
      * Convenience method for getting the configured home currency for an Exchange.
      *
@@ -156,57 +186,58 @@ public class ExchangeService {
         }
 
         // choose a TickerStrategy for the exchange
-        if (Utils.isStreamingExchange(exchange)) {
-            // streaming exchanges all use the StreamingTickerStrategy
-            final TickerStrategy streamingTickerStrategy = tickerStrategyProvider.getStreamingTickerStrategy(this);
-
-            exchange.getExchangeSpecification().setExchangeSpecificParametersItem(TICKER_STRATEGY_KEY, streamingTickerStrategy);
-        } else {
-            try {
-                // attempt to fetch multiple tickers in one call from the exchange
-                // if this works, we can use the single call strategy to fetch all tickers in one API call
-                CurrencyPairsParam param = () -> getExchangeMetadata(exchange).getTradingPairs().subList(0, 1);
-                exchange.getMarketDataService().getTickers(param);
-
-                final TickerStrategy singleCallTickerStrategy = tickerStrategyProvider.getSingleCallTickerStrategy(this);
-
-                exchange.getExchangeSpecification().setExchangeSpecificParametersItem(TICKER_STRATEGY_KEY, singleCallTickerStrategy);
-            } catch (NotYetImplementedForExchangeException e) {
-                // If we can't fetch all the tickers in one call, we need to fetch each ticker in its own API call.
-                // So we fall back to the parallel ticker strategy which can unfortunately result in rate limiting
-                // on some exchanges.
-                LOGGER.warn("{} does not support fetching multiple tickers at a time and will fetch tickers " +
-                        "individually instead. This may result in API rate limiting.",
-                    exchange.getExchangeSpecification().getExchangeName());
-
-                final TickerStrategy parallelTickerStrategy = tickerStrategyProvider.getParallelTickerStrategy(this);
+        final TickerStrategy tickerStrategy;
 
-                exchange.getExchangeSpecification().setExchangeSpecificParametersItem(TICKER_STRATEGY_KEY, parallelTickerStrategy);
-            } catch (IOException e) {
-                LOGGER.debug("IOException fetching tickers for {}: ", exchange.getExchangeSpecification().getExchangeName(), e);
+        if (Utils.isStreamingExchange(exchange)) {
+            final Long gapFill = getExchangeMetadata(exchange).getGapFill();
+            final TickerStrategy restTickerStrategy = gapFill == null ? null : chooseRestTickerStrategy(exchange);
+
+            if (restTickerStrategy != null) {
+                // stream tickers, and fetch the ones that go quiet over REST
+                tickerStrategy = tickerStrategyProvider.getHybridTickerStrategy(this, restTickerStrategy, gapFill);
+            } else {
+                // streaming exchanges all use the StreamingTickerStrategy
+                tickerStrategy = tickerStrategyProvider.getStreamingTickerStrategy(this);
             }
+        } else if (getExchangeMetadata(exchange).getHttpTicker() != null) {
+            // the exchange is configured to fetch tickers straight from its REST API
+            tickerStrategy = tickerStrategyProvider.getHttpTickerStrategy(this);
+        } else {
+            tickerStrategy = chooseRestTickerStrategy(exchange);
         }
 
-       // ExchangeFee tradingFee = getExchangeFee(exchange, convertExchangePair(exchange, CurrencyPair.BTC_USD), false);
+        if (tickerStrategy != null) {
+            exchange.getExchangeSpecification().setExchangeSpecificParametersItem(TICKER_STRATEGY_KEY, tickerStrategy);
+        }
 
         LOGGER.info("{} ticker strategy: {}",
             exchange.getExchangeSpecification().getExchangeName(),
             exchange.getExchangeSpecification().getExchangeSpecificParametersItem(TICKER_STRATEGY_KEY));
-/*
-        if (tradingFee.getMarginFee().isPresent()) {
-            LOGGER.info("{} {} trading fee: {} and margin fee: {}",
-                exchange.getExchangeSpecification().getExchangeName(),
-                convertExchangePair(exchange, CurrencyPair.BTC_USD),
-                tradingFee.getTradeFee(),
-                tradingFee.getMarginFee().get().add(tradingFee.getTradeFee()));
-        }
-        else {
-            LOGGER.info("{} {} trading fee: {}",
-                exchange.getExchangeSpecification().getExchangeName(),
-                convertExchangePair(exchange, CurrencyPair.BTC_USD),
-                tradingFee.getTradeFee());
+    }
+
+    // pick a TickerStrategy that uses the exchange's REST API, or null if we can't fetch tickers from it
+    private TickerStrategy chooseRestTickerStrategy(Exchange exchange) {
+        try {
+            // attempt to fetch multiple tickers in one call from the exchange
+            // if this works, we can use the single call strategy to fetch all tickers in one API call
+            CurrencyPairsParam param = () -> getExchangeMetadata(exchange).getTradingPairs().subList(0, 1);
+            exchange.getMarketDataService().getTickers(param);
+
+            return tickerStrategyProvider.getSingleCallTickerStrategy(this);
+        } catch (NotYetImplementedForExchangeException e) {
+            // If we can't fetch all the tickers in one call, we need to fetch each ticker in its own API call.
+            // So we fall back to the parallel ticker strategy which can unfortunately result in rate limiting
+            // on some exchanges.
+            LOGGER.warn("{} does not support fetching multiple tickers at a time and will fetch tickers " +
+                    "individually instead. This may result in API rate limiting.",
+                exchange.getExchangeSpecification().getExchangeName());
+
+            return tickerStrategyProvider.getParallelTickerStrategy(this);
+        } catch (IOException e) {
+            LOGGER.debug("IOException fetching tickers for {}: ", exchange.getExchangeSpecification().getExchangeName(), e);
         }
-*/
+
+        return null;
     }
 
     /**
@@ -322,6 +353,19 @@ public class ExchangeService {
             return cachedFee.get();
         }
 
+        return fetchExchangeFee(exchange, currencyPair, isQuiet);
+    }
+
+    /**
+     * Look up the fee for using an exchange without checking the cache first. This can call the exchange's API, so
+     * it may be slow.
+     *
+     * @param exchange The Exchange to query.
+     * @param currencyPair The CurrencyPair, in case fees vary by pair.
+     * @param isQuiet true if we should suppress error messages that could get annoying if they are too frequent.
+     * @return The fee expressed as a percentage, ie. 0.0016 for 0.16%
+     */
+    public ExchangeFee fetchExchangeFee(Exchange exchange, CurrencyPair currencyPair, boolean isQuiet) {
         final ExchangeConfiguration exchangeMetadata = getExchangeMetadata(exchange);
 
         // Get the margin fee configured for this exchange
@@ -372,6 +416,27 @@ public class ExchangeService {
                 exchange.getExchangeSpecification().getExchangeName());
         }
 
+        return getStaticExchangeFee(exchange, currencyPair, isQuiet);
+    }
+
+    /**
+     * Get the fee for using an exchange without calling its API: the configured override, the fee from the exchange
+     * metadata, the configured fee or a default, whichever we find first. This is what fetchExchangeFee() falls back
+     * to when the exchange can't tell us its fees.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPair The CurrencyPair, in case fees vary by pair.
+     * @param isQuiet true if we should suppress error messages that could get annoying if they are too frequent.
+     * @return The fee expressed as a percentage, ie. 0.0016 for 0.16%
+     */
+    public ExchangeFee getStaticExchangeFee(Exchange exchange, CurrencyPair currencyPair, boolean isQuiet) {
+        final ExchangeConfiguration exchangeMetadata = getExchangeMetadata(exchange);
+        final BigDecimal marginFee = getMarginFee(exchangeMetadata);
+
+        if (exchangeMetadata.getTradeFeeOverride() != null) {
+            return new ExchangeFee(exchangeMetadata.getTradeFeeOverride(), marginFee);
+        }
+
         // try to get fees from the exchange metadata
         final CurrencyPairMetaData currencyPairMetaData = exchange.getExchangeMetaData().getCurrencyPairs().get(convertExchangePair(exchange, currencyPair));
 
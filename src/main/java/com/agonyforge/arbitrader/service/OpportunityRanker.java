@@ -0,0 +1,207 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Ranks TradeCombinations by how far their spread "in" is above the fee adjusted entry spread target, so that the most
+ * profitable combination gets analyzed first.
+ *
+ * Each time a ticker arrives, the combinations involving that exchange and currency pair get a new score from the
+ * latest prices. Nothing else has changed, so those are the only scores that need to be updated. The combinations that
+ * share an exchange and currency pair are kept in a small array that stays sorted by score. Since prices usually move
+ * a little at a time, re-sorting it with an insertion sort barely moves anything.
+ *
+ * Scores are estimated with doubles from the TickerCache snapshots. They're for ordering, not for deciding whether to
+ * trade, so trade() still makes that decision with the exact Spread.
+ */
+@Component
+public class OpportunityRanker {
+    private final TickerService tickerService;
+    private final SpreadService spreadService;
+    private final TradingService tradingService;
+    private final Map<TradeCombination, Opportunity> opportunities = new ConcurrentHashMap<>();
+    private final Map<Exchange, Map<CurrencyPair, Ranking>> rankings = new ConcurrentHashMap<>();
+
+    public OpportunityRanker(
+        TickerService tickerService,
+        SpreadService spreadService,
+        TradingService tradingService) {
+
+        this.tickerService = tickerService;
+        this.spreadService = spreadService;
+        this.tradingService = tradingService;
+    }
+
+    /**
+     * Update the scores of the TradeCombinations that could be affected by a new ticker, and return them with the
+     * most profitable first.
+     *
+     * @param exchange The Exchange the ticker was received from.
+     * @param currencyPair The CurrencyPair of the ticker, as reported by the exchange.
+     * @return The TradeCombinations involving the exchange and currency pair, best first.
+     */
+    public List<TradeCombination> rank(Exchange exchange, CurrencyPair currencyPair) {
+        final Ranking ranking = getRanking(exchange, currencyPair);
+
+        if (ranking == null) {
+            return new ArrayList<>();
+        }
+
+        return ranking.rank();
+    }
+
+    /**
+     * Get every TradeCombination that has been ranked so far, most profitable first.
+     *
+     * @return A list of Opportunities.
+     */
+    public List<Opportunity> getOpportunities() {
+        return opportunities.values()
+            .stream()
+            .sorted(Comparator.comparingDouble(Opportunity::getScore).reversed())
+            .collect(Collectors.toList());
+    }
+
+    /**
+     * Recompute the entry spread targets, in case fees have changed.
+     */
+    public void refreshTargets() {
+        opportunities.values().forEach(this::refreshTarget);
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private Ranking getRanking(Exchange exchange, CurrencyPair currencyPair) {
+        Map<CurrencyPair, Ranking> exchangeRankings = rankings.get(exchange);
+
+        if (exchangeRankings == null) {
+            exchangeRankings = rankings.computeIfAbsent(exchange, key -> new ConcurrentHashMap<>());
+        }
+
+        final Ranking ranking = exchangeRankings.get(currencyPair);
+
+        if (ranking != null) {
+            return ranking;
+        }
+
+        final List<TradeCombination> tradeCombinations = tickerService.getExchangeTradeCombinations(exchange, currencyPair);
+
+        // tickers can arrive before the trade combinations are set up, so don't remember that there weren't any
+        if (tradeCombinations.isEmpty()) {
+            return null;
+        }
+
+        // the entry targets come from the fees, which might mean asking an exchange, so build the ranking before
+        // putting it in the map instead of inside computeIfAbsent() where it would hold a lock on part of the map
+        final Ranking created = new Ranking(tradeCombinations
+            .stream()
+            .map(this::getOpportunity)
+            .toArray(Opportunity[]::new));
+        final Ranking existing = exchangeRankings.putIfAbsent(currencyPair, created);
+
+        return existing == null ? created : existing;
+    }
+
+    // find or create the one Opportunity for a combination, which is shared by all the rankings it appears in
+    private Opportunity getOpportunity(TradeCombination tradeCombination) {
+        final Opportunity opportunity = opportunities.get(tradeCombination);
+
+        if (opportunity != null) {
+            return opportunity;
+        }
+
+        final Opportunity created = new Opportunity(tradeCombination);
+
+        refreshTarget(created);
+
+        final Opportunity existing = opportunities.putIfAbsent(tradeCombination, created);
+
+        return existing == null ? created : existing;
+    }
+
+    private void refreshTarget(Opportunity opportunity) {
+        opportunity.entryTarget = tradingService.getEntrySpreadTarget(opportunity.tradeCombination).doubleValue();
+    }
+
+    // a score for every combination in a ranking, from the latest prices
+    private void score(Opportunity opportunity) {
+        final double spreadIn = spreadService.estimateSpreadIn(opportunity.tradeCombination);
+
+        opportunity.score = Double.isNaN(spreadIn) ? Double.NEGATIVE_INFINITY : spreadIn - opportunity.entryTarget;
+    }
+
+    /**
+     * A TradeCombination and how far its spread "in" was above its entry spread target the last time it was scored.
+     */
+    public static final class Opportunity {
+        private final TradeCombination tradeCombination;
+        private volatile double entryTarget = Double.NaN;
+        private volatile double score = Double.NEGATIVE_INFINITY;
+
+        private Opportunity(TradeCombination tradeCombination) {
+            this.tradeCombination = tradeCombination;
+        }
+
+        public TradeCombination getTradeCombination() {
+            return tradeCombination;
+        }
+
+        /**
+         * @return The spread "in" minus the entry spread target, or negative infinity if we don't have prices yet.
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s %.6f", tradeCombination, score);
+        }
+    }
+
+    // the combinations that share an exchange and currency pair, kept sorted best first
+    private final class Ranking {
+        private final Opportunity[] ranked;
+
+        private Ranking(Opportunity[] ranked) {
+            this.ranked = ranked;
+        }
+
+        private synchronized List<TradeCombination> rank() {
+            for (Opportunity opportunity : ranked) {
+                score(opportunity);
+            }
+
+            // insertion sort, which is nearly free when the order hasn't changed much
+            for (int i = 1; i < ranked.length; i++) {
+                final Opportunity opportunity = ranked[i];
+                final double score = opportunity.score;
+                int j = i - 1;
+
+                while (j >= 0 && ranked[j].score < score) {
+                    ranked[j + 1] = ranked[j];
+                    j--;
+                }
+
+                ranked[j + 1] = opportunity;
+            }
+
+            final List<TradeCombination> result = new ArrayList<>(ranked.length);
+
+            for (Opportunity opportunity : ranked) {
+                result.add(opportunity.tradeCombination);
+            }
+
+            return result;
+        }
+    }
+}
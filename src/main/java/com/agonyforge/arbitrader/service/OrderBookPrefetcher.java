@@ -0,0 +1,220 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
+import com.agonyforge.arbitrader.service.model.DepthBook;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Fetches order books in the background for TradeCombinations whose spread "in" is getting close to the entry spread
+ * target, so that when trade() decides to enter a position it can usually check the slip without waiting for two
+ * REST calls.
+ *
+ * The band is measured from the fee adjusted entry spread target of each TradeCombination, which can be lower than the
+ * configured entrySpreadTarget when an exchange pays a rebate, so anything trade() could enter is inside the band.
+ * Prefetched order books are kept for prefetchMaxAge milliseconds, and are
+ * fetched again once they're halfway to expiring if the spread is still in the band.
+ *
+ * Order books are never requested from an exchange faster than its configured rateLimit allows, or the public rate
+ * limits in its metadata if it doesn't have one, and only one request at a time is made for each exchange and currency
+ * pair. A prefetch that would go over the limit is skipped, and enterPosition() fetches the order book itself as it
+ * did before.
+ */
+@Component
+public class OrderBookPrefetcher {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderBookPrefetcher.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final ExchangeService exchangeService;
+    private final SpreadService spreadService;
+    private final OrderBookCache streamedOrderBooks;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final LongSupplier clock;
+    private final OrderBookCache prefetchedOrderBooks;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Map<String, AtomicLong> nextFetchTimes = new ConcurrentHashMap<>();
+    private volatile Band band = null;
+
+    @Autowired
+    public OrderBookPrefetcher(
+        TradingConfiguration tradingConfiguration,
+        ExchangeService exchangeService,
+        SpreadService spreadService,
+        OrderBookCache streamedOrderBooks,
+        ExchangeIoExecutor exchangeIoExecutor) {
+
+        this(tradingConfiguration, exchangeService, spreadService, streamedOrderBooks, exchangeIoExecutor, System::currentTimeMillis);
+    }
+
+    OrderBookPrefetcher(
+        TradingConfiguration tradingConfiguration,
+        ExchangeService exchangeService,
+        SpreadService spreadService,
+        OrderBookCache streamedOrderBooks,
+        ExchangeIoExecutor exchangeIoExecutor,
+        LongSupplier clock) {
+
+        this.tradingConfiguration = tradingConfiguration;
+        this.exchangeService = exchangeService;
+        this.spreadService = spreadService;
+        this.streamedOrderBooks = streamedOrderBooks;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.clock = clock;
+        this.prefetchedOrderBooks = new OrderBookCache(clock);
+    }
+
+    /**
+     * Start fetching the order books for both exchanges in a TradeCombination if its spread "in" is inside the
+     * prefetch band. Returns right away; the order books are fetched on each exchange's I/O threads.
+     *
+     * @param tradeCombination The TradeCombination whose prices just changed.
+     * @param entryTarget The fee adjusted entry spread target for the TradeCombination.
+     */
+    public void prefetchIfNear(TradeCombination tradeCombination, double entryTarget) {
+        final BigDecimal band = tradingConfiguration.getPrefetchBand();
+
+        if (band == null) {
+            return;
+        }
+
+        final double spreadIn = spreadService.estimateSpreadIn(tradeCombination);
+
+        if (Double.isNaN(spreadIn) || spreadIn <= entryTarget - getBandValue(band)) {
+            return;
+        }
+
+        prefetch(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair());
+        prefetch(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair());
+    }
+
+    /**
+     * Get one side of a prefetched order book, if it hasn't expired.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPair The CurrencyPair, as the exchange knows it.
+     * @param orderType ASK for the asks or BID for the bids.
+     * @return The DepthBook, or null if we don't have a recent one.
+     */
+    public DepthBook get(Exchange exchange, CurrencyPair currencyPair, Order.OrderType orderType) {
+        if (tradingConfiguration.getPrefetchBand() == null) {
+            return null;
+        }
+
+        return prefetchedOrderBooks.get(exchange, currencyPair, orderType, tradingConfiguration.getPrefetchMaxAge());
+    }
+
+    private void prefetch(Exchange exchange, CurrencyPair rawCurrencyPair) {
+        final CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, rawCurrencyPair);
+        final long maxAge = tradingConfiguration.getPrefetchMaxAge();
+
+        // streaming exchanges already keep their order books up to date for us
+        if (tradingConfiguration.getOrderBookMaxAge() != null
+            && streamedOrderBooks.get(exchange, currencyPair, Order.OrderType.ASK, tradingConfiguration.getOrderBookMaxAge()) != null) {
+            return;
+        }
+
+        if (prefetchedOrderBooks.get(exchange, currencyPair, Order.OrderType.ASK, maxAge / 2) != null) {
+            return;
+        }
+
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final String key = exchangeName + ":" + currencyPair;
+
+        if (!inFlight.add(key)) {
+            return;
+        }
+
+        if (!acquireRateLimit(exchange)) {
+            LOGGER.trace("Skipping order book prefetch for {} {} to stay within its rate limit", exchangeName, currencyPair);
+            inFlight.remove(key);
+            return;
+        }
+
+        try {
+            exchangeIoExecutor.execute(exchange, () -> {
+                try {
+                    prefetchedOrderBooks.put(exchange, currencyPair, exchange.getMarketDataService().getOrderBook(currencyPair));
+                    LOGGER.debug("Prefetched order book for {} {}", exchangeName, currencyPair);
+                } catch (Exception e) {
+                    LOGGER.debug("Unable to prefetch order book for {} {}: {}", exchangeName, currencyPair, e.getMessage());
+                } finally {
+                    inFlight.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(key);
+        }
+    }
+
+    // claim the next request slot for an exchange, if its rate limits allow one now
+    private boolean acquireRateLimit(Exchange exchange) {
+        final TokenBucket rateLimiter = exchangeService.getRateLimiter(exchange);
+
+        // share the configured budget with ticker polling
+        if (rateLimiter != null) {
+            return rateLimiter.tryAcquire(1);
+        }
+
+        final ExchangeMetaData metaData = exchange.getExchangeMetaData();
+        final Long pollDelay = metaData == null ? null : ExchangeMetaData.getPollDelayMillis(metaData.getPublicRateLimits());
+
+        if (pollDelay == null || pollDelay <= 0) {
+            return true;
+        }
+
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        AtomicLong nextFetchTime = nextFetchTimes.get(exchangeName);
+
+        if (nextFetchTime == null) {
+            nextFetchTime = nextFetchTimes.computeIfAbsent(exchangeName, key -> new AtomicLong());
+        }
+
+        final long now = clock.getAsLong();
+        final long next = nextFetchTime.get();
+
+        return now >= next && nextFetchTime.compareAndSet(next, now + pollDelay);
+    }
+
+    // the band only changes if the configuration does, so we convert it to a double once and keep it
+    private double getBandValue(BigDecimal band) {
+        final Band current = this.band;
+
+        if (current != null && current.band == band) {
+            return current.value;
+        }
+
+        final Band updated = new Band(band, band.doubleValue());
+
+        this.band = updated;
+
+        return updated.value;
+    }
+
+    // the width of the prefetch band, converted to a double
+    private static final class Band {
+        private final BigDecimal band;
+        private final double value;
+
+        private Band(BigDecimal band, double value) {
+            this.band = band;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.exception.OrderPlacementException;
+import com.agonyforge.arbitrader.service.model.OrderPairPrices;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.schedulers.Schedulers;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.meta.CurrencyPairMetaData;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Looks after one leg of an order pair until it fills, and moves it if the market leaves it behind.
+ *
+ * While the order is open its limit price is compared against the top of the book from the latest Ticker. If the
+ * market moves more than repriceThreshold away from it, or it has been open longer than repriceTimeout milliseconds,
+ * the order is cancelled and whatever part of it didn't fill is placed again at a new limit price from the order book.
+ * Each leg is repriced at most maxReprices times, and after that we go back to waiting for it to fill.
+ *
+ * A leg is never moved past the worst price that still keeps the pair's spread on its entry or exit target, given
+ * where the other leg is. If the order book has already gone past that price we leave the order where it is and stop
+ * repricing it, since a new price could only fill at a spread we didn't want.
+ *
+ * The replacement orders are only ever for the part of the original order that hasn't filled, so both legs still add
+ * up to the volumes in the TradeVolume that the pair was placed with. If we can't tell how much of an order filled
+ * after cancelling it, or the rest of it can't be placed again, the legs may no longer match and an
+ * OrderPlacementException is thrown for a human to sort out.
+ */
+@Component
+public class OrderRepricer {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderRepricer.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final TickerService tickerService;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final OrderStatusTracker orderStatusTracker;
+    private final Scheduler scheduler;
+    private final LongSupplier clock;
+
+    @Autowired
+    public OrderRepricer(
+        TradingConfiguration tradingConfiguration,
+        TickerService tickerService,
+        ExchangeIoExecutor exchangeIoExecutor,
+        OrderStatusTracker orderStatusTracker) {
+
+        this(tradingConfiguration, tickerService, exchangeIoExecutor, orderStatusTracker, Schedulers.io(), System::currentTimeMillis);
+    }
+
+    OrderRepricer(
+        TradingConfiguration tradingConfiguration,
+        TickerService tickerService,
+        ExchangeIoExecutor exchangeIoExecutor,
+        OrderStatusTracker orderStatusTracker,
+        Scheduler scheduler,
+        LongSupplier clock) {
+
+        this.tradingConfiguration = tradingConfiguration;
+        this.tickerService = tickerService;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.orderStatusTracker = orderStatusTracker;
+        this.scheduler = scheduler;
+        this.clock = clock;
+    }
+
+    /**
+     * Wait for an order to fill, repricing it if it falls behind the market.
+     *
+     * @param exchange The Exchange the order was placed on.
+     * @param currencyPair The CurrencyPair of the trade, not converted for home currency.
+     * @param order The LimitOrder that was placed.
+     * @param orderId The ID the exchange gave the order.
+     * @param leg Prices the order and keeps it within the pair's spread target.
+     * @return A Completable that completes once all of the order's volume has filled.
+     */
+    public Completable manage(Exchange exchange, CurrencyPair currencyPair, LimitOrder order, String orderId, Leg leg) {
+        if (!isEnabled() || orderId == null) {
+            return orderStatusTracker.awaitClosed(exchange, (CurrencyPair) order.getInstrument(), orderId);
+        }
+
+        return manage(new ManagedOrder(exchange, currencyPair, order, orderId, order.getOriginalAmount(), leg, clock.getAsLong(), 0));
+    }
+
+    private boolean isEnabled() {
+        return tradingConfiguration.getRepriceTimeout() != null || tradingConfiguration.getRepriceThreshold() != null;
+    }
+
+    private Completable manage(ManagedOrder managed) {
+        final Completable closed = orderStatusTracker.awaitClosed(managed.exchange, (CurrencyPair) managed.order.getInstrument(), managed.orderId);
+
+        if (managed.reprices >= tradingConfiguration.getMaxReprices()) {
+            return closed;
+        }
+
+        // whichever happens first: the order closes, or it's time to move it
+        final Observable<Boolean> repriceSignal = Observable
+            .interval(tradingConfiguration.getOrderPollMinInterval(), TimeUnit.MILLISECONDS, scheduler)
+            .filter(tick -> isRepriceNeeded(managed))
+            .map(tick -> true);
+
+        return closed.andThen(Observable.just(false))
+            .mergeWith(repriceSignal)
+            .firstElement()
+            .flatMapCompletable(reprice -> reprice
+                ? Completable.defer(() -> reprice(managed)).subscribeOn(scheduler)
+                : Completable.complete());
+    }
+
+    // has the market moved too far from the order, or has it been open too long?
+    private boolean isRepriceNeeded(ManagedOrder managed) {
+        final Long repriceTimeout = tradingConfiguration.getRepriceTimeout();
+
+        if (repriceTimeout != null && clock.getAsLong() - managed.placedAt >= repriceTimeout) {
+            LOGGER.info("{} order {} has been open for {} ms",
+                managed.getExchangeName(),
+                managed.orderId,
+                clock.getAsLong() - managed.placedAt);
+            return true;
+        }
+
+        final BigDecimal repriceThreshold = tradingConfiguration.getRepriceThreshold();
+
+        if (repriceThreshold == null) {
+            return false;
+        }
+
+        final Ticker ticker = tickerService.getTicker(managed.exchange, managed.currencyPair);
+
+        if (tickerService.isInvalidTicker(ticker)) {
+            return false;
+        }
+
+        final BigDecimal limitPrice = managed.order.getLimitPrice();
+
+        // how far the best price on the other side of the book has moved away from our limit
+        final BigDecimal distance = Order.OrderType.BID.equals(managed.order.getType())
+            ? ticker.getAsk().subtract(limitPrice)
+            : limitPrice.subtract(ticker.getBid());
+
+        if (distance.divide(limitPrice, repriceThreshold.scale() + 2, RoundingMode.HALF_EVEN).compareTo(repriceThreshold) > 0) {
+            LOGGER.info("{} order {} at {} is {} away from the top of the book",
+                managed.getExchangeName(),
+                managed.orderId,
+                limitPrice,
+                distance);
+            return true;
+        }
+
+        return false;
+    }
+
+    // cancel the order and place whatever didn't fill again at a new price
+    private Completable reprice(ManagedOrder managed) {
+        final String exchangeName = managed.getExchangeName();
+        final Order before = fetchOrder(managed);
+
+        // without a way to tell how much has filled we can't safely replace the order, so just wait for it
+        if (before == null || (before.getStatus() != null && before.getStatus().isFinal())) {
+            LOGGER.debug("Not repricing {} order {}", exchangeName, managed.orderId);
+            return orderStatusTracker.awaitClosed(managed.exchange, (CurrencyPair) managed.order.getInstrument(), managed.orderId);
+        }
+
+        final BigDecimal unfilled = managed.remaining.subtract(before.getCumulativeAmount() == null ? BigDecimal.ZERO : before.getCumulativeAmount());
+        final BigDecimal bookPrice;
+
+        try {
+            bookPrice = managed.leg.getPrice(unfilled.max(BigDecimal.ZERO));
+        } catch (RuntimeException e) {
+            LOGGER.warn("Unable to price {} order {} again: {}", exchangeName, managed.orderId, e.getMessage());
+            return orderStatusTracker.awaitClosed(managed.exchange, (CurrencyPair) managed.order.getInstrument(), managed.orderId);
+        }
+
+        final BigDecimal worstPrice = managed.leg.getWorstPrice();
+
+        if (OrderPairPrices.isPast(managed.order.getType(), bookPrice, worstPrice)) {
+            LOGGER.info("Not repricing {} order {} because the book is at {}, past {} where the spread would miss its target",
+                exchangeName, managed.orderId, bookPrice, worstPrice);
+            return orderStatusTracker.awaitClosed(managed.exchange, (CurrencyPair) managed.order.getInstrument(), managed.orderId);
+        }
+
+        try {
+            if (!exchangeIoExecutor.call(managed.exchange, () -> managed.exchange.getTradeService().cancelOrder(managed.orderId))) {
+                LOGGER.info("{} did not cancel order {}, it may have just filled", exchangeName, managed.orderId);
+                return orderStatusTracker.awaitClosed(managed.exchange, (CurrencyPair) managed.order.getInstrument(), managed.orderId);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Unable to cancel {} order {}: {}", exchangeName, managed.orderId, e.getMessage());
+            return orderStatusTracker.awaitClosed(managed.exchange, (CurrencyPair) managed.order.getInstrument(), managed.orderId);
+        }
+
+        final Order after = fetchOrder(managed);
+
+        if (after == null) {
+            throw unresolved(managed, String.format("Cancelled %s order %s but could not find out how much of it filled.",
+                exchangeName, managed.orderId), null);
+        }
+
+        final BigDecimal filled = after.getCumulativeAmount() == null ? BigDecimal.ZERO : after.getCumulativeAmount();
+        final BigDecimal remaining = managed.remaining.subtract(filled);
+
+        if (remaining.compareTo(getMinimumAmount(managed)) < 0 || remaining.signum() <= 0) {
+            LOGGER.info("Cancelled {} order {} with {} left unfilled, which is too small to place again",
+                exchangeName, managed.orderId, remaining.max(BigDecimal.ZERO));
+            return Completable.complete();
+        }
+
+        final LimitOrder replacement;
+        final String replacementId;
+
+        try {
+            // the book or the other leg may have moved since we checked, so this can still be capped
+            final BigDecimal limitPrice = managed.leg.reprice(managed.leg.getPrice(remaining));
+
+            replacement = new LimitOrder.Builder(managed.order.getType(), managed.order.getInstrument())
+                .limitPrice(limitPrice)
+                .originalAmount(remaining)
+                .build();
+            replacement.setLeverage(managed.order.getLeverage());
+
+            replacementId = exchangeIoExecutor.call(managed.exchange, () -> managed.exchange.getTradeService().placeLimitOrder(replacement));
+        } catch (IOException | RuntimeException e) {
+            throw unresolved(managed, String.format("Cancelled %s order %s but could not place the %s that didn't fill again.",
+                exchangeName, managed.orderId, remaining), e);
+        }
+
+        LOGGER.info("Repriced {} order {} from {} to {} for the remaining {}, new order ID: {}",
+            exchangeName,
+            managed.orderId,
+            managed.order.getLimitPrice(),
+            replacement.getLimitPrice(),
+            remaining,
+            replacementId);
+
+        managed.leg.replaced(replacementId, remaining);
+
+        return manage(new ManagedOrder(
+            managed.exchange,
+            managed.currencyPair,
+            replacement,
+            replacementId,
+            remaining,
+            managed.leg,
+            clock.getAsLong(),
+            managed.reprices + 1));
+    }
+
+    private Order fetchOrder(ManagedOrder managed) {
+        try {
+            final Collection<Order> orders = exchangeIoExecutor.call(managed.exchange, () -> managed.exchange.getTradeService().getOrder(managed.orderId));
+
+            if (orders != null && !orders.isEmpty()) {
+                return orders.iterator().next();
+            }
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Unable to fetch {} order {}: {}", managed.getExchangeName(), managed.orderId, e.getMessage());
+        }
+
+        return null;
+    }
+
+    private BigDecimal getMinimumAmount(ManagedOrder managed) {
+        final ExchangeMetaData exchangeMetaData = managed.exchange.getExchangeMetaData();
+        final CurrencyPairMetaData currencyPairMetaData = exchangeMetaData == null || exchangeMetaData.getCurrencyPairs() == null
+            ? null
+            : exchangeMetaData.getCurrencyPairs().get((CurrencyPair) managed.order.getInstrument());
+
+        if (currencyPairMetaData == null || currencyPairMetaData.getMinimumAmount() == null) {
+            return BigDecimal.ZERO;
+        }
+
+        return currencyPairMetaData.getMinimumAmount();
+    }
+
+    // name the order we were looking after, which may be a replacement and not the one the caller placed
+    private OrderPlacementException unresolved(ManagedOrder managed, String message, Throwable cause) {
+        return new OrderPlacementException(
+            message,
+            cause,
+            managed.leg.isLong() ? managed.orderId : null,
+            managed.leg.isLong() ? null : managed.orderId,
+            false);
+    }
+
+    /**
+     * One leg of an order pair, as far as repricing it is concerned.
+     */
+    public interface Leg {
+        /**
+         * @return true if this is the long leg of the pair, false if it's the short leg.
+         */
+        boolean isLong();
+
+        /**
+         * Find a new limit price for the leg in the order book.
+         *
+         * @param volume The volume left to fill.
+         * @return The limit price.
+         */
+        BigDecimal getPrice(BigDecimal volume);
+
+        /**
+         * @return The worst price the leg can be repriced to without the pair missing its spread target, or null if
+         * there isn't one.
+         */
+        BigDecimal getWorstPrice();
+
+        /**
+         * Move the leg to a new price, capped at the worst price.
+         *
+         * @param price The price from getPrice().
+         * @return The price to place the replacement order at.
+         */
+        BigDecimal reprice(BigDecimal price);
+
+        /**
+         * The leg's order was replaced by a new one.
+         *
+         * @param orderId The ID of the new order.
+         * @param remaining The volume of the new order, which is what's left of the leg to fill.
+         */
+        void replaced(String orderId, BigDecimal remaining);
+    }
+
+    // an order we're looking after, and how much of the original order it still has to fill
+    private static final class ManagedOrder {
+        private final Exchange exchange;
+        private final CurrencyPair currencyPair;
+        private final LimitOrder order;
+        private final String orderId;
+        private final BigDecimal remaining;
+        private final Leg leg;
+        private final long placedAt;
+        private final int reprices;
+
+        ManagedOrder(
+            Exchange exchange,
+            CurrencyPair currencyPair,
+            LimitOrder order,
+            String orderId,
+            BigDecimal remaining,
+            Leg leg,
+            long placedAt,
+            int reprices) {
+
+            this.exchange = exchange;
+            this.currencyPair = currencyPair;
+            this.order = order;
+            this.orderId = orderId;
+            this.remaining = remaining;
+            this.leg = leg;
+            this.placedAt = placedAt;
+            this.reprices = reprices;
+        }
+
+        String getExchangeName() {
+            return exchange.getExchangeSpecification().getExchangeName();
+        }
+    }
+}
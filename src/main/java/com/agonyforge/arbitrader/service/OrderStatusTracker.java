@@ -0,0 +1,181 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import info.bitrich.xchangestream.core.StreamingExchange;
+import info.bitrich.xchangestream.core.StreamingTradeService;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.Scheduler;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subjects.PublishSubject;
+import io.reactivex.subjects.Subject;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Waits for our orders to leave the order book, so we can find out as soon as possible that a trade has filled.
+ *
+ * The open orders on the exchange are polled quickly at first, since most of our limit orders fill right away, and
+ * then less and less often the longer an order stays open, from orderPollMinInterval up to orderPollMaxInterval
+ * milliseconds. Polls are skipped when they would go over the exchange's rateLimit.
+ *
+ * Streaming exchanges that offer order or trade updates for our account are watched as well. Any update about one of
+ * our orders triggers a poll right away, so a fill is usually noticed within one round trip. The polls carry on in the
+ * background in case the stream doesn't tell us everything.
+ */
+@Component
+public class OrderStatusTracker {
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrderStatusTracker.class);
+
+    private final TradingConfiguration tradingConfiguration;
+    private final ExchangeService exchangeService;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final Scheduler scheduler;
+
+    @Autowired
+    public OrderStatusTracker(
+        TradingConfiguration tradingConfiguration,
+        ExchangeService exchangeService,
+        ExchangeIoExecutor exchangeIoExecutor) {
+
+        // the order watchers spend nearly all their time waiting, so they can use virtual threads if we have them
+        this(tradingConfiguration, exchangeService, exchangeIoExecutor, exchangeIoExecutor.isVirtualThreads()
+            ? Schedulers.from(VirtualThreads.newThreadPerTaskExecutor("order-watcher-"))
+            : Schedulers.io());
+    }
+
+    OrderStatusTracker(
+        TradingConfiguration tradingConfiguration,
+        ExchangeService exchangeService,
+        ExchangeIoExecutor exchangeIoExecutor,
+        Scheduler scheduler) {
+
+        this.tradingConfiguration = tradingConfiguration;
+        this.exchangeService = exchangeService;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Wait for an order to be filled or cancelled.
+     *
+     * @param exchange The Exchange the order was placed on.
+     * @param currencyPair The CurrencyPair of the order, as the exchange knows it.
+     * @param orderId The ID the exchange gave the order. If it's null we wait for all the open orders to close.
+     * @return A Completable that completes once the order is no longer open.
+     */
+    public Completable awaitClosed(Exchange exchange, CurrencyPair currencyPair, String orderId) {
+        return Completable.defer(() -> {
+            final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+            final long minInterval = tradingConfiguration.getOrderPollMinInterval();
+            final AtomicLong interval = new AtomicLong(minInterval);
+            final AtomicBoolean updated = new AtomicBoolean(false);
+            final Subject<Long> updates = PublishSubject.<Long>create().toSerialized();
+            final CompositeDisposable streams = new CompositeDisposable();
+
+            // an update means the order just changed, so look at it now and go back to polling quickly
+            final Runnable onUpdate = () -> {
+                LOGGER.debug("{} sent an update for order {}", exchangeName, orderId);
+                interval.set(minInterval);
+                updated.set(true);
+                updates.onNext(0L);
+            };
+
+            watchStreams(exchange, currencyPair, orderId, onUpdate, streams);
+
+            return Observable.fromCallable(() -> isOrderOpen(exchange, orderId, interval.get()))
+                .retryWhen(errors -> errors.concatMap(e -> {
+                    LOGGER.debug("Unable to fetch open orders from {}: {}", exchangeName, e.getMessage());
+                    return waitForNextPoll(interval, updated, updates);
+                }))
+                .repeatWhen(polls -> polls.concatMap(poll -> waitForNextPoll(interval, updated, updates)))
+                .takeUntil(open -> !open)
+                .subscribeOn(scheduler)
+                .ignoreElements()
+                .doFinally(streams::dispose);
+        });
+    }
+
+    // subscribe to the order and trade streams for our account, if the exchange has them
+    private void watchStreams(Exchange exchange, CurrencyPair currencyPair, String orderId, Runnable onUpdate, CompositeDisposable streams) {
+        if (orderId == null || !(exchange instanceof StreamingExchange)) {
+            return;
+        }
+
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+
+        try {
+            final StreamingTradeService streamingTradeService = ((StreamingExchange) exchange).getStreamingTradeService();
+
+            try {
+                streams.add(streamingTradeService.getOrderChanges(currencyPair)
+                    .filter(order -> orderId.equals(order.getId()))
+                    .subscribe(
+                        order -> onUpdate.run(),
+                        e -> LOGGER.debug("Order stream for {} failed: {}", exchangeName, e.getMessage())));
+            } catch (RuntimeException e) {
+                LOGGER.debug("{} does not stream order changes: {}", exchangeName, e.getMessage());
+            }
+
+            try {
+                streams.add(streamingTradeService.getUserTrades(currencyPair)
+                    .filter(trade -> orderId.equals(trade.getOrderId()))
+                    .subscribe(
+                        trade -> onUpdate.run(),
+                        e -> LOGGER.debug("Trade stream for {} failed: {}", exchangeName, e.getMessage())));
+            } catch (RuntimeException e) {
+                LOGGER.debug("{} does not stream trades: {}", exchangeName, e.getMessage());
+            }
+        } catch (RuntimeException e) {
+            LOGGER.debug("{} does not have a streaming trade service: {}", exchangeName, e.getMessage());
+        }
+    }
+
+    // wait for the next poll, backing off a little more each time unless an update tells us to look now
+    private Observable<Long> waitForNextPoll(AtomicLong interval, AtomicBoolean updated, Observable<Long> updates) {
+        if (updated.getAndSet(false)) {
+            return Observable.just(0L);
+        }
+
+        final long delay = interval.getAndUpdate(current -> Math.min(current * 2, tradingConfiguration.getOrderPollMaxInterval()));
+
+        return Observable.timer(delay, TimeUnit.MILLISECONDS, scheduler)
+            .mergeWith(updates)
+            .take(1)
+            .doOnNext(next -> updated.set(false));
+    }
+
+    private boolean isOrderOpen(Exchange exchange, String orderId, long interval) throws Exception {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final TokenBucket rateLimiter = exchangeService.getRateLimiter(exchange);
+
+        // leave the budget for the tickers, we'll look again next time
+        if (rateLimiter != null && !rateLimiter.tryAcquire(1)) {
+            LOGGER.debug("Skipping open order check on {} to stay within its rate limit", exchangeName);
+            return true;
+        }
+
+        final List<LimitOrder> openOrders = exchangeIoExecutor.call(exchange, () -> exchange.getTradeService().getOpenOrders()).getOpenOrders();
+        final boolean isOpen = orderId == null
+            ? !openOrders.isEmpty()
+            : openOrders.stream().anyMatch(order -> orderId.equals(order.getId()));
+
+        if (isOpen && interval >= tradingConfiguration.getOrderPollMaxInterval()) {
+            LOGGER.warn("{} order {} is still open", exchangeName, orderId);
+        }
+
+        return isOpen;
+    }
+}
@@ -2,6 +2,7 @@ package com.agonyforge.arbitrader.service;
 
 import com.agonyforge.arbitrader.DecimalConstants;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.TickerCache;
 import com.agonyforge.arbitrader.service.model.Spread;
 import com.agonyforge.arbitrader.service.model.ExchangeFee;
 import com.agonyforge.arbitrader.service.model.TradeCombination;
@@ -146,7 +147,9 @@ public class SpreadService {
             longTicker,
             shortTicker,
             spreadIn,
-            spreadOut);
+            spreadOut,
+            tradeCombination.getLongParameters(),
+            tradeCombination.getShortParameters());
 
         // track high and low water marks
         publish(spread);
@@ -172,6 +175,53 @@ public class SpreadService {
         return (scaledShortPrice.subtract(scaledLongPrice)).divide(scaledLongPrice, RoundingMode.HALF_EVEN);
     }
 
+    /**
+     * Estimate the spread "in" for a TradeCombination using doubles. This is much cheaper than computing a Spread and
+     * doesn't allocate anything, but it's only precise enough to tell whether the spread is anywhere near a target.
+     *
+     * @param tradeCombination The TradeCombination representing the exchanges and currency pair we're interested in.
+     * @return The estimated spread in, or NaN if any tickers are missing or invalid.
+     */
+    public double estimateSpreadIn(TradeCombination tradeCombination) {
+        final TickerCache.Snapshot longTicker = tickerService.getTickerSnapshot(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair());
+        final TickerCache.Snapshot shortTicker = tickerService.getTickerSnapshot(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair());
+
+        if (longTicker == null || shortTicker == null) {
+            return Double.NaN;
+        }
+
+        return estimateSpread(longTicker.getAsk(), shortTicker.getBid());
+    }
+
+    /**
+     * Estimate the spread "out" for a TradeCombination using doubles. This is much cheaper than computing a Spread and
+     * doesn't allocate anything, but it's only precise enough to tell whether the spread is anywhere near a target.
+     *
+     * @param tradeCombination The TradeCombination representing the exchanges and currency pair we're interested in.
+     * @return The estimated spread out, or NaN if any tickers are missing or invalid.
+     */
+    public double estimateSpreadOut(TradeCombination tradeCombination) {
+        final TickerCache.Snapshot longTicker = tickerService.getTickerSnapshot(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair());
+        final TickerCache.Snapshot shortTicker = tickerService.getTickerSnapshot(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair());
+
+        if (longTicker == null || shortTicker == null) {
+            return Double.NaN;
+        }
+
+        return estimateSpread(longTicker.getBid(), shortTicker.getAsk());
+    }
+
+    /**
+     * The same formula as computeSpread(BigDecimal, BigDecimal) but using doubles.
+     *
+     * @param longPrice The price on the long exchange.
+     * @param shortPrice The price on the short exchange.
+     * @return The estimated spread. NaN if either price is NaN.
+     */
+    static double estimateSpread(double longPrice, double shortPrice) {
+        return (shortPrice - longPrice) / longPrice;
+    }
+
     /**
      * Get the real entry spread target from the effective entry spread target (the real entry spread target is larger
      * as it needs to compensate for the entry fees)
@@ -0,0 +1,124 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Polls each exchange for tickers in its own loop, so a slow exchange only delays its own prices.
+ *
+ * When an exchange has a rateLimit configured, its loop polls as fast as the exchange's TokenBucket allows, taking one
+ * token for each request the exchange's TickerStrategy makes. Exchanges without a rateLimit, and streaming exchanges
+ * that only need to be checked for a dropped connection, are polled every few seconds like before.
+ */
+@Component
+public class TickerPoller {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerPoller.class);
+
+    static final long INITIAL_DELAY = 5000L;
+    static final long DEFAULT_POLL_INTERVAL = 3000L;
+
+    private final TickerService tickerService;
+    private final ExchangeService exchangeService;
+    private final long initialDelay;
+    private final long defaultPollInterval;
+    private final List<Thread> threads = new ArrayList<>();
+    private volatile boolean running = false;
+
+    @Autowired
+    public TickerPoller(TickerService tickerService, ExchangeService exchangeService) {
+        this(tickerService, exchangeService, INITIAL_DELAY, DEFAULT_POLL_INTERVAL);
+    }
+
+    TickerPoller(TickerService tickerService, ExchangeService exchangeService, long initialDelay, long defaultPollInterval) {
+        this.tickerService = tickerService;
+        this.exchangeService = exchangeService;
+        this.initialDelay = initialDelay;
+        this.defaultPollInterval = defaultPollInterval;
+    }
+
+    /**
+     * Start a polling loop for every exchange that has active currency pairs. Call this after the tickers have been
+     * initialized.
+     */
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+
+        running = true;
+
+        tickerService.getActiveCurrencyPairs().forEach((exchange, currencyPairs) -> {
+            final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+            final TokenBucket rateLimiter = exchangeService.getRateLimiter(exchange);
+            final Thread thread = new Thread(() -> poll(exchange, currencyPairs), "ticker-poller-" + exchangeName);
+
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+
+            LOGGER.info("Polling {} for {} tickers with {}",
+                exchangeName,
+                currencyPairs.size(),
+                rateLimiter == null ? "the default interval" : rateLimiter);
+        });
+    }
+
+    /**
+     * Stop all the polling loops.
+     */
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+
+        threads.forEach(Thread::interrupt);
+        threads.clear();
+    }
+
+    // fetch tickers for one exchange until we're stopped
+    private void poll(Exchange exchange, List<CurrencyPair> currencyPairs) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final TokenBucket rateLimiter = exchangeService.getRateLimiter(exchange);
+        final int requestCount = tickerService.getRequestCount(exchange, currencyPairs);
+
+        try {
+            TimeUnit.MILLISECONDS.sleep(initialDelay);
+
+            while (running) {
+                if (rateLimiter != null && requestCount > 0) {
+                    rateLimiter.acquire(requestCount);
+                }
+
+                final long start = System.currentTimeMillis();
+
+                try {
+                    tickerService.refreshTickers(exchange, currencyPairs);
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Unexpected exception while polling {}", exchangeName, e);
+                }
+
+                final long duration = System.currentTimeMillis() - start;
+
+                if (duration > defaultPollInterval) {
+                    LOGGER.warn("Refreshing tickers for {} took {} ms", exchangeName, duration);
+                }
+
+                if (rateLimiter == null || requestCount == 0) {
+                    TimeUnit.MILLISECONDS.sleep(Math.max(0L, defaultPollInterval - duration));
+                }
+            }
+        } catch (InterruptedException e) {
+            LOGGER.debug("Stopped polling {}", exchangeName);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
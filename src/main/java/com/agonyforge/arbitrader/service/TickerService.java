@@ -1,6 +1,11 @@
 package com.agonyforge.arbitrader.service;
 
+import com.agonyforge.arbitrader.config.SpreadEvaluation;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.BestVenueBook;
+import com.agonyforge.arbitrader.service.cache.TickerCache;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.agonyforge.arbitrader.service.model.InstrumentParameters;
 import com.agonyforge.arbitrader.service.model.TradeCombination;
 import com.agonyforge.arbitrader.service.ticker.TickerStrategy;
 import org.apache.commons.collections4.CollectionUtils;
@@ -22,6 +27,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.agonyforge.arbitrader.service.TradingScheduler.TICKER_STRATEGY_KEY;
 
@@ -35,19 +42,26 @@ public class TickerService {
     private final TradingConfiguration tradingConfiguration;
     private final ExchangeService exchangeService;
     private final ErrorCollectorService errorCollectorService;
+    private final TickerLatencyMonitor tickerLatencyMonitor;
+    private final AtomicLong changedTickers = new AtomicLong();
+    private final AtomicLong suppressedTickers = new AtomicLong();
 
-    Map<String, Ticker> allTickers = new HashMap<>();
+    TickerCache allTickers = new TickerCache();
     List<TradeCombination> tradeCombinations = new ArrayList<>();
+    Map<Exchange, Map<CurrencyPair, TradeCombinationSlice>> tradeCombinationIndex = new HashMap<>();
+    Map<CurrencyPair, BestVenueBook> bestVenueBooks = new HashMap<>();
 
     @Inject
     public TickerService(
         TradingConfiguration tradingConfiguration,
         ExchangeService exchangeService,
-        ErrorCollectorService errorCollectorService) {
+        ErrorCollectorService errorCollectorService,
+        TickerLatencyMonitor tickerLatencyMonitor) {
 
         this.tradingConfiguration = tradingConfiguration;
         this.exchangeService = exchangeService;
         this.errorCollectorService = errorCollectorService;
+        this.tickerLatencyMonitor = tickerLatencyMonitor;
     }
 
     /**
@@ -73,10 +87,20 @@ public class TickerService {
                     return;
                 }
 
-                // valid combinations become a TradeCombination
-                final TradeCombination combination = new TradeCombination(longExchange, shortExchange, currencyPair);
+                // valid combinations become a TradeCombination, with their metadata looked up once ahead of time
+                final TradeCombination combination = new TradeCombination(
+                    longExchange,
+                    shortExchange,
+                    currencyPair,
+                    getInstrumentParameters(longExchange, currencyPair),
+                    getInstrumentParameters(shortExchange, currencyPair));
 
                 tradeCombinations.add(combination);
+                bestVenueBooks.computeIfAbsent(currencyPair, (key) -> new BestVenueBook()).add(combination);
+                allocateTicker(longExchange, currencyPair);
+                allocateTicker(shortExchange, currencyPair);
+                indexTradeCombination(longExchange, combination);
+                indexTradeCombination(shortExchange, combination);
 
                 LOGGER.info("{}", combination);
             });
@@ -84,12 +108,35 @@ public class TickerService {
     }
 
     /**
-     * Fetch tickers for active currency pairs on all exchanges.
+     * Fetch tickers for active currency pairs on all exchanges, one exchange after another. The TickerStrategies make
+     * their calls on each exchange's I/O threads, and TickerPoller is what polls the exchanges in parallel.
      */
     public void refreshTickers() {
+        getActiveCurrencyPairs().forEach(this::refreshTickers);
+    }
+
+    /**
+     * Fetch tickers for some currency pairs on one exchange.
+     *
+     * @param exchange The Exchange to fetch tickers from.
+     * @param currencyPairs The CurrencyPairs to fetch.
+     */
+    public void refreshTickers(Exchange exchange, List<CurrencyPair> currencyPairs) {
+        try {
+            fetchTickers(exchange, currencyPairs);
+        } catch (ExchangeException e) {
+            LOGGER.warn("Failed to fetch ticker for {}", exchange.getExchangeSpecification().getExchangeName());
+        }
+    }
+
+    /**
+     * Find the currency pairs that are actively in use on each exchange.
+     *
+     * @return A map of each Exchange to the CurrencyPairs we need tickers for.
+     */
+    public Map<Exchange, List<CurrencyPair>> getActiveCurrencyPairs() {
         Map<Exchange, Set<CurrencyPair>> queue = new HashMap<>();
 
-        // find the currencies that are actively in use for each exchange
         tradeCombinations.forEach(tradeCombination -> {
             Set<CurrencyPair> longCurrencies = queue.computeIfAbsent(tradeCombination.getLongExchange(), (key) -> new HashSet<>());
             Set<CurrencyPair> shortCurrencies = queue.computeIfAbsent(tradeCombination.getShortExchange(), (key) -> new HashSet<>());
@@ -98,16 +145,24 @@ public class TickerService {
             shortCurrencies.add(tradeCombination.getCurrencyPair());
         });
 
-        // for each exchange, fetch its active currencies
-        queue.keySet().parallelStream().forEach(exchange -> {
-            List<CurrencyPair> activePairs = new ArrayList<>(queue.get(exchange));
+        Map<Exchange, List<CurrencyPair>> activePairs = new HashMap<>();
 
-            try {
-                fetchTickers(exchange, activePairs);
-            } catch (ExchangeException e) {
-                LOGGER.warn("Failed to fetch ticker for {}", exchange.getExchangeSpecification().getExchangeName());
-            }
-        });
+        queue.forEach((exchange, currencyPairs) -> activePairs.put(exchange, new ArrayList<>(currencyPairs)));
+
+        return activePairs;
+    }
+
+    /**
+     * How many API requests it takes to fetch some tickers from an exchange with its TickerStrategy.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPairs The CurrencyPairs that would be fetched.
+     * @return The number of requests.
+     */
+    public int getRequestCount(Exchange exchange, List<CurrencyPair> currencyPairs) {
+        TickerStrategy tickerStrategy = (TickerStrategy)exchange.getExchangeSpecification().getExchangeSpecificParametersItem(TICKER_STRATEGY_KEY);
+
+        return tickerStrategy == null ? 1 : tickerStrategy.getRequestCount(currencyPairs);
     }
 
     /**
@@ -130,20 +185,72 @@ public class TickerService {
      * two events would be a little cleaner but more complicated. This way is simpler
      * to understand and to write, and it provides the same guarantees.
      *
+     * Most polled Tickers on quiet markets have the same bid and ask as the last one. Those are still stored, so we
+     * know the price is fresh, but this returns false for them so the caller can skip publishing an event and save
+     * trade analysis from looking at prices it has already seen.
+     *
      * @param exchange The Exchange the Ticker was received from.
      * @param ticker The Ticker to update.
+     * @return true if the bid or ask changed and a TickerEvent should be published.
      */
-    public void putTicker(Exchange exchange, Ticker ticker) {
-        allTickers.compute(tickerKey(exchange, (CurrencyPair) ticker.getInstrument()),
-            (key, oldTicker) -> {
-                if (oldTicker == null
-                    || oldTicker.getTimestamp() == null
-                    || ticker.getTimestamp() == null
-                    || oldTicker.getTimestamp().before(ticker.getTimestamp()) ) {
-                    return ticker;
-                }
-                return oldTicker;
-            });
+    public boolean putTicker(Exchange exchange, Ticker ticker) {
+        final CurrencyPair currencyPair = (CurrencyPair) ticker.getInstrument();
+
+        tickerLatencyMonitor.recordTicker(exchange, currencyPair, ticker, System.currentTimeMillis());
+
+        // pairs we trade had their slot looked up by initializeTickers(), so we only need to look up the others
+        final TradeCombinationSlice slice = getTradeCombinationSlice(exchange, currencyPair);
+        final TickerCache.Slot slot = slice == null ? getOrAllocateTicker(exchange, currencyPair) : slice.tickerSlot;
+
+        if (allTickers.store(slot, ticker) != TickerCache.StoreResult.CHANGED) {
+            suppressedTickers.incrementAndGet();
+            return false;
+        }
+
+        changedTickers.incrementAndGet();
+
+        if (slice != null && tradingConfiguration.getSpreadEvaluation() == SpreadEvaluation.BEST_VENUE) {
+            updateBestVenue(exchange, slice);
+        }
+
+        return true;
+    }
+
+    /**
+     * @return How many Tickers have been put with new prices.
+     */
+    public long getChangedTickers() {
+        return changedTickers.get();
+    }
+
+    /**
+     * @return How many Tickers have been put without changing the prices, or were too old to store.
+     */
+    public long getSuppressedTickers() {
+        return suppressedTickers.get();
+    }
+
+    /**
+     * Stop using the last Ticker for a currency pair on an exchange because its feed has gone quiet. The pair is left
+     * out of spread calculations until a fresh Ticker arrives through putTicker().
+     *
+     * @param exchange The Exchange whose feed has gone quiet.
+     * @param currencyPair The CurrencyPair.
+     */
+    public void markStale(Exchange exchange, CurrencyPair currencyPair) {
+        final CurrencyPair allocatedPair = allTickers.isAllocated(exchange, currencyPair)
+            ? currencyPair
+            : exchangeService.convertExchangePair(exchange, currencyPair);
+
+        if (allTickers.markStale(exchange, allocatedPair)
+            && tradingConfiguration.getSpreadEvaluation() == SpreadEvaluation.BEST_VENUE) {
+
+            final TradeCombinationSlice slice = getTradeCombinationSlice(exchange, allocatedPair);
+
+            if (slice != null) {
+                slice.book.update(exchange, Double.NaN, Double.NaN);
+            }
+        }
     }
 
     /**
@@ -155,7 +262,27 @@ public class TickerService {
      * @return The ticker for the given currency pair on the given exchange.
      */
     public Ticker getTicker(Exchange exchange, CurrencyPair currencyPair) {
-        return allTickers.get(tickerKey(exchange, currencyPair));
+        if (!allTickers.isAllocated(exchange, currencyPair)) {
+            return allTickers.get(exchange, exchangeService.convertExchangePair(exchange, currencyPair));
+        }
+
+        return allTickers.get(exchange, currencyPair);
+    }
+
+    /**
+     * Get the latest ticker for a currency pair on an exchange along with its bid and ask as doubles. This is for
+     * code that needs to look at a lot of prices quickly and can tolerate the imprecision of a double.
+     *
+     * @param exchange The exchange to fetch currencies for.
+     * @param currencyPair The currency pair to fetch a ticker for.
+     * @return The ticker snapshot, or null if we haven't received a ticker yet.
+     */
+    public TickerCache.Snapshot getTickerSnapshot(Exchange exchange, CurrencyPair currencyPair) {
+        if (!allTickers.isAllocated(exchange, currencyPair)) {
+            return allTickers.getSnapshot(exchange, exchangeService.convertExchangePair(exchange, currencyPair));
+        }
+
+        return allTickers.getSnapshot(exchange, currencyPair);
     }
 
     /**
@@ -186,6 +313,45 @@ public class TickerService {
         return allResult;
     }
 
+    /**
+     * Return the trade combinations that could be affected by a new ticker for a currency pair on an exchange. The
+     * combinations are looked up from an index that is built by initializeTickers(), so this is cheap enough to call
+     * for every ticker we receive. Each call rotates the starting point of the list so that every combination gets
+     * its turn to be evaluated first. This method returns a new list each time, so it is safe to modify.
+     *
+     * @param exchange The Exchange the ticker was received from.
+     * @param currencyPair The CurrencyPair of the ticker, as reported by the exchange.
+     * @return A rotated list of the TradeCombinations involving the exchange and currency pair.
+     */
+    public List<TradeCombination> getExchangeTradeCombinations(Exchange exchange, CurrencyPair currencyPair) {
+        final TradeCombinationSlice slice = getTradeCombinationSlice(exchange, currencyPair);
+
+        if (slice == null) {
+            return new ArrayList<>();
+        }
+
+        return slice.rotate();
+    }
+
+    /**
+     * Find the most promising TradeCombination for a currency pair: the one that goes long on the exchange with the
+     * lowest ask and short on the exchange with the highest bid. This is only kept up to date when the spreadEvaluation
+     * is BEST_VENUE.
+     *
+     * @param exchange The Exchange a ticker was received from.
+     * @param currencyPair The CurrencyPair of the ticker, as reported by the exchange.
+     * @return The best TradeCombination for the currency pair, or null if there isn't one yet.
+     */
+    public TradeCombination getBestTradeCombination(Exchange exchange, CurrencyPair currencyPair) {
+        final TradeCombinationSlice slice = getTradeCombinationSlice(exchange, currencyPair);
+
+        if (slice == null) {
+            return null;
+        }
+
+        return slice.book.getBest();
+    }
+
     /**
      * Fetch tickers from the given exchange using whatever TickerStrategy is configured for the exchange.
      *
@@ -210,17 +376,69 @@ public class TickerService {
         }
     }
 
-    /**
-     * Generate a string for an exchange and currency pair suitable for use as a unique key in a Map.
-     *
-     * @param exchange The Exchange to generate a key for.
-     * @param currencyPair The CurrencyPair to generate a key for.
-     * @return A String representing the combination of the exchange and currency pair.
-     */
-    String tickerKey(Exchange exchange, CurrencyPair currencyPair) {
-        return String.format("%s:%s",
-            exchange.getExchangeSpecification().getExchangeName(),
-            exchangeService.convertExchangePair(exchange, currencyPair));
+    // assign a ticker slot that can be found by either the configured pair or the exchange's version of it
+    private void allocateTicker(Exchange exchange, CurrencyPair currencyPair) {
+        allTickers.allocate(exchange, exchangeService.convertExchangePair(exchange, currencyPair), currencyPair);
+    }
+
+    // find the ticker slot for a pair that isn't in the index, allocating one if we've never seen it before
+    private TickerCache.Slot getOrAllocateTicker(Exchange exchange, CurrencyPair currencyPair) {
+        final TickerCache.Slot slot = allTickers.getSlot(exchange, currencyPair);
+
+        if (slot != null) {
+            return slot;
+        }
+
+        allocateTicker(exchange, currencyPair);
+
+        return allTickers.getSlot(exchange, currencyPair);
+    }
+
+    // find the slice of the index for an exchange and currency pair
+    private TradeCombinationSlice getTradeCombinationSlice(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, TradeCombinationSlice> exchangeIndex = tradeCombinationIndex.get(exchange);
+
+        if (exchangeIndex == null) {
+            return null;
+        }
+
+        return exchangeIndex.get(currencyPair);
+    }
+
+    // move the exchange to its new place in the best venue book for the currency pair
+    private void updateBestVenue(Exchange exchange, TradeCombinationSlice slice) {
+        final TickerCache.Snapshot snapshot = allTickers.getSnapshot(slice.tickerSlot);
+
+        if (snapshot == null) {
+            return;
+        }
+
+        slice.book.update(exchange, snapshot.getBid(), snapshot.getAsk());
+    }
+
+    // add a combination to the index under the exchange and both forms of the currency pair
+    // tickers arrive with the exchange's home currency in place of USD, so we need to be able to find them that way
+    private void indexTradeCombination(Exchange exchange, TradeCombination combination) {
+        final Map<CurrencyPair, TradeCombinationSlice> exchangeIndex = tradeCombinationIndex.computeIfAbsent(exchange, (key) -> new HashMap<>());
+        final CurrencyPair currencyPair = combination.getCurrencyPair();
+        final CurrencyPair exchangePair = exchangeService.convertExchangePair(exchange, currencyPair);
+        final BestVenueBook book = bestVenueBooks.get(currencyPair);
+        final TickerCache.Slot tickerSlot = allTickers.getSlot(exchange, currencyPair);
+
+        exchangeIndex.computeIfAbsent(currencyPair, (key) -> new TradeCombinationSlice(book, tickerSlot)).add(combination);
+
+        if (!exchangePair.equals(currencyPair)) {
+            exchangeIndex.computeIfAbsent(exchangePair, (key) -> new TradeCombinationSlice(book, tickerSlot)).add(combination);
+        }
+    }
+
+    // look up everything about trading a currency pair on an exchange that won't change while we're running
+    private InstrumentParameters getInstrumentParameters(Exchange exchange, CurrencyPair currencyPair) {
+        return InstrumentParameters.of(
+            exchange,
+            currencyPair,
+            exchangeService.convertExchangePair(exchange, currencyPair),
+            exchangeService.getExchangeMetadata(exchange).getFeeComputation());
     }
 
     // determine whether a pair of exchanges is valid for trading
@@ -257,4 +475,47 @@ public class TickerService {
             shortExchange.getExchangeSpecification().getExchangeName(),
             currencyPair);
     }
+
+    /**
+     * The small set of TradeCombinations that share an exchange and currency pair.
+     *
+     * If everything is always evaluated in the same order, earlier combinations have a higher chance of executing
+     * trades than ones at the end of the list. Shuffling the whole list on every ticker is expensive, so instead we
+     * rotate the starting point each time the slice is read.
+     *
+     * All the combinations in a slice are for the same currency pair, so the slice also points to the BestVenueBook
+     * for that pair and to the TickerCache slot for the pair on this exchange. That way a new Ticker only needs one
+     * lookup to find both where to store it and what it affects.
+     */
+    static class TradeCombinationSlice {
+        private final List<TradeCombination> combinations = new ArrayList<>();
+        private final AtomicInteger cursor = new AtomicInteger();
+        private final BestVenueBook book;
+        private final TickerCache.Slot tickerSlot;
+
+        TradeCombinationSlice(BestVenueBook book, TickerCache.Slot tickerSlot) {
+            this.book = book;
+            this.tickerSlot = tickerSlot;
+        }
+
+        void add(TradeCombination combination) {
+            combinations.add(combination);
+        }
+
+        List<TradeCombination> rotate() {
+            final int size = combinations.size();
+            final List<TradeCombination> result = new ArrayList<>(size);
+
+            if (size == 0) {
+                return result;
+            }
+
+            final int offset = Math.floorMod(cursor.getAndIncrement(), size);
+
+            result.addAll(combinations.subList(offset, size));
+            result.addAll(combinations.subList(0, offset));
+
+            return result;
+        }
+    }
 }
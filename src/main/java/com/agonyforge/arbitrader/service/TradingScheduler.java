@@ -1,8 +1,15 @@
 package com.agonyforge.arbitrader.service;
 
 import com.agonyforge.arbitrader.Utils;
+import com.agonyforge.arbitrader.config.TickerDispatch;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.event.TickerEventBus;
+import com.agonyforge.arbitrader.service.event.TickerEventListener;
+import com.agonyforge.arbitrader.service.event.TickerMailbox;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
 import com.agonyforge.arbitrader.service.model.Spread;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.agonyforge.arbitrader.service.model.ActivePosition;
 import com.agonyforge.arbitrader.service.model.ExchangeFee;
@@ -23,6 +30,7 @@ import javax.annotation.PostConstruct;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 
@@ -35,6 +43,7 @@ public class TradingScheduler {
     public static final String TICKER_STRATEGY_KEY = "tickerStrategy";
 
     private static final Logger LOGGER = LoggerFactory.getLogger(TradingScheduler.class);
+    private static final int OPPORTUNITY_STATUS_LIMIT = 10;
     private static final String STATE_FILE = ".arbitrader/arbitrader-state.json";
     protected static final String TRADE_HISTORY_FILE = ".arbitrader/arbitrader-arbitrage-history.csv";
 
@@ -45,6 +54,14 @@ public class TradingScheduler {
     private final ErrorCollectorService errorCollectorService;
     private final SpreadService spreadService;
     private final TickerService tickerService;
+    private final TickerPoller tickerPoller;
+    private final OpportunityRanker opportunityRanker;
+    private final TickerMailbox tickerMailbox;
+    private final TickerEventBus tickerEventBus;
+    private final TickerEventListener tickerEventListener;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final TickerLatencyMonitor tickerLatencyMonitor;
+    private final ExchangeFeeRefresher exchangeFeeRefresher;
     private final List<Exchange> exchanges = new ArrayList<>();
     private final TradingService tradingService;
 
@@ -56,7 +73,15 @@ public class TradingScheduler {
         TradingService tradingService,
         ErrorCollectorService errorCollectorService,
         SpreadService spreadService,
-        TickerService tickerService) {
+        TickerService tickerService,
+        TickerPoller tickerPoller,
+        OpportunityRanker opportunityRanker,
+        TickerMailbox tickerMailbox,
+        TickerEventBus tickerEventBus,
+        TickerEventListener tickerEventListener,
+        ExchangeIoExecutor exchangeIoExecutor,
+        TickerLatencyMonitor tickerLatencyMonitor,
+        ExchangeFeeRefresher exchangeFeeRefresher) {
 
         this.objectMapper = objectMapper;
         this.tradingConfiguration = tradingConfiguration;
@@ -65,7 +90,15 @@ public class TradingScheduler {
         this.errorCollectorService = errorCollectorService;
         this.spreadService = spreadService;
         this.tickerService = tickerService;
+        this.tickerPoller = tickerPoller;
+        this.opportunityRanker = opportunityRanker;
+        this.tickerMailbox = tickerMailbox;
+        this.tickerEventBus = tickerEventBus;
+        this.tickerEventListener = tickerEventListener;
         this.tradingService = tradingService;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.tickerLatencyMonitor = tickerLatencyMonitor;
+        this.exchangeFeeRefresher = exchangeFeeRefresher;
     }
 
     /**
@@ -167,6 +200,9 @@ public class TradingScheduler {
         // set up all the valid TradeCombinations between all our exchanges so we know what currency pairs we can trade
         tickerService.initializeTickers(exchanges);
 
+        // start fetching trading fees in the background so they're ready before we need them
+        exchangeFeeRefresher.prewarm(tickerService.getExchangeTradeCombinations());
+
         // tell the user whether fixed exposure is configured
         if (tradingConfiguration.getFixedExposure() != null) {
             LOGGER.info("Using fixed exposure of ${} as configured", tradingConfiguration.getFixedExposure());
@@ -184,28 +220,54 @@ public class TradingScheduler {
         // load active trades from file, if there is one
         File stateFile = new File(STATE_FILE);
 
-        // if there is a state file, we need to try to load the in-progress trade from the file
+        // if there is a state file, we need to try to load the in-progress trades from the file
         if (stateFile.exists()) {
             if (!stateFile.canRead()) {
                 LOGGER.error("Cannot read state file: {}", stateFile.getAbsolutePath());
             } else {
                 try {
-                    ActivePosition activePosition = objectMapper.readValue(stateFile, ActivePosition.class);
+                    List<ActivePosition> activePositions = readActivePositions(stateFile);
 
-                    tradingService.setActivePosition(activePosition);
+                    tradingService.setActivePositions(activePositions);
 
                     LOGGER.info("Loaded active trades from file: {}", stateFile.getAbsolutePath());
-                    LOGGER.info("Active trades: {}", activePosition);
+                    LOGGER.info("Active trades: {}", activePositions);
+
+                    if (activePositions.size() > tradingConfiguration.getMaxPositions()) {
+                        LOGGER.warn("There are {} open positions but maxPositions is only {}, no new positions will be entered until enough of them exit",
+                            activePositions.size(),
+                            tradingConfiguration.getMaxPositions());
+                    }
                 } catch (IOException e) {
                     LOGGER.error("Unable to parse state file {}: ", stateFile.getAbsolutePath(), e);
                 }
             }
         }
+
+        // start fetching tickers from each exchange at its own pace, last so that the first tickers already see the
+        // positions we loaded and can't enter a new position on top of one of them
+        tickerPoller.start();
+    }
+
+    // state files used to hold a single position, and now hold a list of them
+    List<ActivePosition> readActivePositions(File stateFile) throws IOException {
+        final JsonNode state = objectMapper.readTree(stateFile);
+
+        if (state == null || state.isNull()) {
+            return Collections.emptyList();
+        }
+
+        if (state.isArray()) {
+            return objectMapper.convertValue(state, new TypeReference<List<ActivePosition>>() {});
+        }
+
+        return Collections.singletonList(objectMapper.treeToValue(state, ActivePosition.class));
     }
 
     /**
      * As often as once per minute, display a summary of any non-critical error messages. Summarizing them greatly
-     * reduces how noisy the logs are while still providing the same information.
+     * reduces how noisy the logs are while still providing the same information. The ages of the prices we received
+     * from each exchange during the last minute are summarized at the same time.
      */
     @Scheduled(cron = "0 * * * * *")
     public void errorSummary() {
@@ -213,6 +275,26 @@ public class TradingScheduler {
             errorCollectorService.report().forEach(LOGGER::info);
             errorCollectorService.clear();
         }
+
+        tickerLatencyMonitor.report().forEach(LOGGER::info);
+    }
+
+    /**
+     * Once a minute, recompute the entry spread targets used to rank and screen opportunities in case the fees have
+     * changed.
+     */
+    @Scheduled(cron = "30 * * * * *")
+    public void refreshOpportunityTargets() {
+        opportunityRanker.refreshTargets();
+        tradingService.refreshEntrySpreadTargets();
+    }
+
+    /**
+     * Once a second, check the condition files for the screens that decide which TradeCombinations get analyzed.
+     */
+    @Scheduled(fixedRate = 1000)
+    public void refreshScreeningConditions() {
+        conditionService.refreshScreeningConditions();
     }
 
     /**
@@ -220,7 +302,7 @@ public class TradingScheduler {
      */
     @Scheduled(cron = "0 0 0/6 * * *") // every 6 hours
     public void summary() {
-        LOGGER.info("Summary: [Long/Short Exchanges] [Pair] [Current Spread] -> [{} Spread Target]", (tradingService.getActivePosition() != null ? "Exit" : "Entry"));
+        LOGGER.info("Summary: [Long/Short Exchanges] [Pair] [Current Spread] -> [Entry or Exit Spread Target]");
 
         List<TradeCombination> tradeCombinations = tickerService.getExchangeTradeCombinations();
 
@@ -231,33 +313,32 @@ public class TradingScheduler {
                 return;
             }
 
-            if (tradingService.getActivePosition() == null) {
-                final ExchangeFee longFeePercent = exchangeService.getExchangeFee(spread.getLongExchange(), spread.getCurrencyPair(), true);
-                final ExchangeFee shortFeePercent = exchangeService.getExchangeFee(spread.getShortExchange(), spread.getCurrencyPair(), true);
+            final ActivePosition activePosition = tradingService.getActivePosition(tradeCombination);
+
+            if (activePosition == null && tradingService.isLookingForEntry()) {
+                final ExchangeFee longFeePercent = exchangeFeeRefresher.getExchangeFee(spread.getLongExchange(), spread.getCurrencyPair());
+                final ExchangeFee shortFeePercent = exchangeFeeRefresher.getExchangeFee(spread.getShortExchange(), spread.getCurrencyPair());
                 LOGGER.info("{}/{} {} {} -> {}",
                     spread.getLongExchange().getExchangeSpecification().getExchangeName(),
                     spread.getShortExchange().getExchangeSpecification().getExchangeName(),
                     spread.getCurrencyPair(),
                     spread.getIn(),
                     spreadService.getEntrySpreadTarget(tradingConfiguration, longFeePercent, shortFeePercent));
-            } else if (tradingService.getActivePosition() != null
-                && tradingService.getActivePosition().getCurrencyPair().equals(spread.getCurrencyPair())
-                && tradingService.getActivePosition().getLongTrade().getExchange().equals(spread.getLongExchange().getExchangeSpecification().getExchangeName())
-                && tradingService.getActivePosition().getShortTrade().getExchange().equals(spread.getShortExchange().getExchangeSpecification().getExchangeName())) {
+            } else if (activePosition != null) {
 
                 LOGGER.info("{}/{} {} {} -> {}",
                     spread.getLongExchange().getExchangeSpecification().getExchangeName(),
                     spread.getShortExchange().getExchangeSpecification().getExchangeName(),
                     spread.getCurrencyPair(),
                     spread.getOut(),
-                    tradingService.getActivePosition().getExitTarget());
+                    activePosition.getExitTarget());
             }
         });
     }
 
     /**
-     * Periodically update tickers and check for other special tasks such as exiting early or displaying
-     * a status report due to a request from the user.
+     * Periodically check for special tasks such as exiting early or displaying a status report due to a request
+     * from the user. Tickers are fetched separately for each exchange by the TickerPoller.
      */
     @Scheduled(initialDelay = 5000, fixedRate = 3000)
     public void pollForPriceData() {
@@ -265,7 +346,7 @@ public class TradingScheduler {
         LOGGER.debug("Tick");
 
         // if the user wants the bot to exit, go ahead and exit
-        if (tradingService.getActivePosition() == null && conditionService.isExitWhenIdleCondition()) {
+        if (tradingService.getActivePositions().isEmpty() && conditionService.isExitWhenIdleCondition()) {
             LOGGER.info("Exiting at user request");
             conditionService.clearExitWhenIdleCondition();
             System.exit(0);
@@ -276,18 +357,6 @@ public class TradingScheduler {
             logStatus();
             conditionService.clearStatusCondition();
         }
-
-        long exchangePollStartTime = System.currentTimeMillis();
-
-        // fetch tickers for all exchanges and currencies
-        tickerService.refreshTickers();
-
-        long exchangePollDuration = System.currentTimeMillis() - exchangePollStartTime;
-
-        // measure the time we took to analyze prices
-        if (exchangePollDuration > 3000) {
-            LOGGER.warn("Refreshing tickers took {} ms", exchangePollDuration);
-        }
     }
 
     // print a summary of all trade combinations, prices, and spreads
@@ -318,5 +387,45 @@ public class TradingScheduler {
                         spread.getOut());
                 }
             });
+
+        List<OpportunityRanker.Opportunity> opportunities = opportunityRanker.getOpportunities();
+
+        LOGGER.info("Top opportunities (spread in minus entry spread target):");
+        opportunities
+            .stream()
+            .limit(OPPORTUNITY_STATUS_LIMIT)
+            .forEach(opportunity -> LOGGER.info("\t{}", opportunity));
+
+        if (TickerDispatch.CONFLATING == tradingConfiguration.getTickerDispatch()) {
+            LOGGER.info("Ticker events received/conflated/delivered: {}/{}/{}",
+                tickerMailbox.getReceived(),
+                tickerMailbox.getConflated(),
+                tickerMailbox.getDelivered());
+        } else if (TickerDispatch.RING_BUFFER == tradingConfiguration.getTickerDispatch()) {
+            LOGGER.info("Ticker events published/dropped: {}/{}",
+                tickerEventBus.getPublished(),
+                tickerEventBus.getDropped());
+        }
+
+        final long changedTickers = tickerService.getChangedTickers();
+        final long suppressedTickers = tickerService.getSuppressedTickers();
+        final long totalTickers = changedTickers + suppressedTickers;
+
+        LOGGER.info("Tickers changed/suppressed: {}/{} ({}% suppressed)",
+            changedTickers,
+            suppressedTickers,
+            totalTickers == 0 ? 0 : suppressedTickers * 100 / totalTickers);
+
+        LOGGER.info("Tick to decision latency ({}): {}",
+            tradingConfiguration.getTickerDispatch(),
+            tickerEventListener.getTickToDecisionLatency());
+
+        LOGGER.info("Trades screened/committed: {}/{} commit wait: {}",
+            tradingService.getScreenedTrades(),
+            tradingService.getCommittedTrades(),
+            tradingService.getCommitWaits());
+
+        exchangeIoExecutor.getLatencies().forEach((exchangeName, latency) ->
+            LOGGER.info("Call latency for {}: {} timeouts={}", exchangeName, latency, exchangeIoExecutor.getTimeouts(exchangeName)));
     }
 }
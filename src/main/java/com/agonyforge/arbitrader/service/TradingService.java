@@ -3,14 +3,18 @@ package com.agonyforge.arbitrader.service;
 import com.agonyforge.arbitrader.DecimalConstants;
 import com.agonyforge.arbitrader.Utils;
 import com.agonyforge.arbitrader.config.FeeComputation;
+import com.agonyforge.arbitrader.config.SpreadEvaluation;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.exception.ExchangeTimeoutException;
 import com.agonyforge.arbitrader.exception.OrderNotFoundException;
+import com.agonyforge.arbitrader.exception.OrderPlacementException;
 import com.agonyforge.arbitrader.service.cache.ExchangeBalanceCache;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
 import com.agonyforge.arbitrader.service.cache.OrderVolumeCache;
+import com.agonyforge.arbitrader.service.metrics.LatencyHistogram;
 import com.agonyforge.arbitrader.service.model.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import io.reactivex.Observable;
-import io.reactivex.schedulers.Schedulers;
+import io.reactivex.Completable;
 import org.apache.commons.io.FileUtils;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.Currency;
@@ -18,11 +22,8 @@ import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.Order;
 import org.knowm.xchange.dto.marketdata.OrderBook;
 import org.knowm.xchange.dto.meta.CurrencyMetaData;
-import org.knowm.xchange.dto.meta.CurrencyPairMetaData;
 import org.knowm.xchange.dto.meta.ExchangeMetaData;
-import org.knowm.xchange.dto.meta.FeeTier;
 import org.knowm.xchange.dto.trade.LimitOrder;
-import org.knowm.xchange.dto.trade.OpenOrders;
 import org.knowm.xchange.exceptions.ExchangeException;
 import org.knowm.xchange.exceptions.NotAvailableFromExchangeException;
 import org.slf4j.Logger;
@@ -31,15 +32,27 @@ import org.springframework.stereotype.Component;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 
 /**
@@ -51,8 +64,6 @@ public class TradingService {
     private static final String TRADE_HISTORY_FILE = ".arbitrader/arbitrader-arbitrage-history.csv";
     private static final BigDecimal TRADE_PORTION = new BigDecimal("0.9");
     private static final BigDecimal TRADE_REMAINDER = BigDecimal.ONE.subtract(TRADE_PORTION);
-    private static final CurrencyPairMetaData NULL_CURRENCY_PAIR_METADATA = new CurrencyPairMetaData(
-        null, null, null, null, null);
 
     private final ObjectMapper objectMapper;
     private final TradingConfiguration tradingConfiguration;
@@ -60,13 +71,26 @@ public class TradingService {
     private final ExchangeService exchangeService;
     private final SpreadService spreadService;
     private final NotificationService notificationService;
+    private final OrderBookCache orderBookCache;
+    private final OrderBookPrefetcher orderBookPrefetcher;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final OrderRepricer orderRepricer;
+    private final ExchangeFeeRefresher exchangeFeeRefresher;
+    private final ExecutorService orderPlacementExecutor;
     private final ExchangeBalanceCache exchangeBalanceCache = new ExchangeBalanceCache();
     private final OrderVolumeCache orderVolumeCache = new OrderVolumeCache();
-    private boolean timeoutExitWarning = false;
-    private ActivePosition activePosition = null;
-    private boolean bailOut = false;
-    private long orderTimer = 0;
-    private AtomicBoolean openOrdersFlag = new AtomicBoolean(false);
+    private final Map<String, PositionState> positions = new ConcurrentHashMap<>();
+    private final Map<String, Object> positionLocks = new ConcurrentHashMap<>();
+    private final Set<String> timeoutExitWarnings = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingEntries = new AtomicInteger();
+    private final AtomicInteger orderPlacementThreads = new AtomicInteger();
+    private final Object stateFileLock = new Object();
+    private volatile ScreeningTargets screeningTargets = null;
+    private volatile EntryTargets entryTargets = null;
+    private volatile OrderPlacementException unresolvedPlacement = null;
+    private final LongAdder screenedTrades = new LongAdder();
+    private final LongAdder committedTrades = new LongAdder();
+    private final LatencyHistogram commitWaits = new LatencyHistogram();
 
     public TradingService(
         ObjectMapper objectMapper,
@@ -74,7 +98,12 @@ public class TradingService {
         ConditionService conditionService,
         ExchangeService exchangeService,
         SpreadService spreadService,
-        NotificationService notificationService) {
+        NotificationService notificationService,
+        OrderBookCache orderBookCache,
+        OrderBookPrefetcher orderBookPrefetcher,
+        ExchangeIoExecutor exchangeIoExecutor,
+        OrderRepricer orderRepricer,
+        ExchangeFeeRefresher exchangeFeeRefresher) {
 
         this.objectMapper = objectMapper;
         this.tradingConfiguration = tradingConfiguration;
@@ -82,22 +111,42 @@ public class TradingService {
         this.exchangeService = exchangeService;
         this.spreadService = spreadService;
         this.notificationService = notificationService;
+        this.orderBookCache = orderBookCache;
+        this.orderBookPrefetcher = orderBookPrefetcher;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.orderRepricer = orderRepricer;
+        this.exchangeFeeRefresher = exchangeFeeRefresher;
+
+        // orders get their own threads, so they never wait in line behind ticker polling on a busy exchange
+        this.orderPlacementExecutor = exchangeIoExecutor.isVirtualThreads()
+            ? VirtualThreads.newThreadPerTaskExecutor("order-placement-")
+            : Executors.newCachedThreadPool(runnable -> {
+                final Thread thread = new Thread(runnable, "order-placement-" + orderPlacementThreads.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            });
     }
 
     /**
      * Evaluate whether or not to trade (both entry and exit). Execute a trade if appropriate.
      *
+     * Each TradeCombination can have its own position, up to maxPositions of them at once. A spread can only exit the
+     * position on its own combination, or enter one if it doesn't have one yet and there is room for another.
+     *
+     * Most spreads are nowhere near a target, so the checks that can turn a spread away happen here without taking a
+     * lock, against a snapshot of the combination's position. Only the spreads that pass go on to commitTrade(), which
+     * locks the combination and checks them again against its current position before trading.
+     *
      * @param spread The Spread contains the exchanges and prices for the trade.
      */
-    public synchronized void trade(Spread spread) {
-        if (bailOut) {
-            LOGGER.error("Exiting immediately to avoid erroneous trades.");
-            System.exit(1);
-        }
+    public void trade(Spread spread) {
+        final OrderPlacementException placementFailure = unresolvedPlacement;
 
-        if (openOrdersFlag.get()) {
-            LOGGER.debug("We have open orders waiting to be filled. Skipping this event");
-            return;
+        if (placementFailure != null) {
+            LOGGER.error("Exiting immediately to avoid erroneous trades after: {}", placementFailure.getMessage());
+            System.exit(1);
         }
 
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
@@ -114,17 +163,56 @@ public class TradingService {
             LOGGER.warn("Cannot alter position on one or more exchanges due to user configured blackout");
             return;
         }
-        final ExchangeFee longFeePercent = new ExchangeFee ( 0,0 );//exchangeService.getExchangeFee(spread.getLongExchange(), spread.getCurrencyPair(), true);
-        final ExchangeFee shortFeePercent = new ExchangeFee ( 0,0 );//exchangeService.getExchangeFee(spread.getShortExchange(), spread.getCurrencyPair(), true);
-        final BigDecimal entrySpreadTarget = spreadService.getEntrySpreadTarget(tradingConfiguration, longFeePercent, shortFeePercent);
+
+        final PositionState state = positions.get(getPositionKey(spread.getCurrencyPair(), longExchangeName, shortExchangeName));
+
+        if (!isTradeCandidate(spread, state, longExchangeName, shortExchangeName)) {
+            screenedTrades.increment();
+            return;
+        }
+
+        commitTrade(spread, System.nanoTime());
+    }
+
+    /**
+     * The serialized half of trade(). Only one spread at a time gets here for each TradeCombination, and the position
+     * may have changed since it was screened, so every condition is checked again before entering or exiting it.
+     * Spreads for different combinations don't wait for each other.
+     *
+     * @param spread The Spread that passed screening.
+     * @param screenedAt When it passed screening, from System.nanoTime().
+     */
+    void commitTrade(Spread spread, long screenedAt) {
+        final String positionKey = getPositionKey(
+            spread.getCurrencyPair(),
+            spread.getLongExchange().getExchangeSpecification().getExchangeName(),
+            spread.getShortExchange().getExchangeSpecification().getExchangeName());
+
+        synchronized (getPositionLock(positionKey)) {
+            commitWaits.record(System.nanoTime() - screenedAt);
+            committedTrades.increment();
+
+            commitTrade(spread, positionKey);
+        }
+    }
+
+    // enter or exit the position for one TradeCombination, while holding its lock
+    private void commitTrade(Spread spread, String positionKey) {
+        final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
+        final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
+        final PositionState state = positions.get(positionKey);
+        final long orderTimer = System.currentTimeMillis();
+
         // This is more verbose than it has to be. I'm trying to keep it easy to read as we continue
         // adding more different conditions that can affect whether we trade or not.
-        if (activePosition == null) {
-            orderTimer = System.currentTimeMillis();
+        if (state == null) {
+            final ExchangeFee longFeePercent = getEntryFee(spread.getLongExchange(), spread.getCurrencyPair());
+            final ExchangeFee shortFeePercent = getEntryFee(spread.getShortExchange(), spread.getCurrencyPair());
+            final BigDecimal entrySpreadTarget = spreadService.getEntrySpreadTarget(tradingConfiguration, longFeePercent, shortFeePercent);
 
             if (conditionService.isForceOpenCondition(spread.getCurrencyPair(), longExchangeName, shortExchangeName)) {
                 LOGGER.debug("enterPosition() {}/{} {} - forced", longExchangeName, shortExchangeName, spread.getCurrencyPair());
-                enterPosition(spread);
+                reserveAndEnterPosition(spread, positionKey, orderTimer);
             } else if (spread.getIn().compareTo(entrySpreadTarget) > 0) {
                 LOGGER.debug("enterPosition() {}/{} {} - spread in {} > entry spread target {}", longExchangeName, shortExchangeName, spread.getCurrencyPair(), spread.getIn(), entrySpreadTarget);
                 LOGGER.debug("entry spread target {} was calculated from the effective entry spread target {}, with {} long fees and {} short fees",
@@ -132,57 +220,255 @@ public class TradingService {
                     tradingConfiguration.getEntrySpreadTarget(),
                     longFeePercent,
                     shortFeePercent);
-                enterPosition(spread);
+                reserveAndEnterPosition(spread, positionKey, orderTimer);
             }
-        } else if (spread.getCurrencyPair().equals(activePosition.getCurrencyPair())
-                && longExchangeName.equals(activePosition.getLongTrade().getExchange())
-                && shortExchangeName.equals(activePosition.getShortTrade().getExchange())) {
-
-            orderTimer = System.currentTimeMillis();
-
+        } else if (state.pendingOrders) {
+            LOGGER.debug("Position {} has orders waiting to be filled. Skipping this event", positionKey);
+        } else {
             if (conditionService.isForceCloseCondition()) {
                 LOGGER.debug("exitPosition() {}/{} {} - forced", longExchangeName, shortExchangeName, spread.getCurrencyPair());
-                exitPosition(spread);
-            } else if (isActivePositionExpired()) {
+                exitPosition(spread, state, orderTimer);
+            } else if (isExpired(state)) {
                 LOGGER.debug("exitPosition() {}/{} {} - active position timed out", longExchangeName, shortExchangeName, spread.getCurrencyPair());
-                exitPosition(spread);
-            } else if (spread.getOut().compareTo(activePosition.getExitTarget()) < 0) {
-                LOGGER.debug("exitPosition() {}/{} {} - spread out {} < exit target {}", longExchangeName, shortExchangeName, spread.getCurrencyPair(), spread.getOut(), activePosition.getExitTarget());
-                exitPosition(spread);
+                exitPosition(spread, state, orderTimer);
+            } else if (spread.getOut().compareTo(state.exitTarget) < 0) {
+                LOGGER.debug("exitPosition() {}/{} {} - spread out {} < exit target {}", longExchangeName, shortExchangeName, spread.getCurrencyPair(), spread.getOut(), state.exitTarget);
+                exitPosition(spread, state, orderTimer);
             }
         }
     }
 
-    public ActivePosition getActivePosition() {
-        return activePosition;
+    // take one of the maxPositions slots for the length of the entry, so two combinations can't both take the last one
+    private void reserveAndEnterPosition(Spread spread, String positionKey, long orderTimer) {
+        if (!reservePosition()) {
+            LOGGER.debug("Already have {} open positions, will not enter {}/{} {}",
+                positions.size(),
+                spread.getLongExchange().getExchangeSpecification().getExchangeName(),
+                spread.getShortExchange().getExchangeSpecification().getExchangeName(),
+                spread.getCurrencyPair());
+            return;
+        }
+
+        try {
+            enterPosition(spread, positionKey, orderTimer);
+        } finally {
+            // once the position is in the map it counts towards the limit by itself
+            pendingEntries.decrementAndGet();
+        }
+    }
+
+    private boolean reservePosition() {
+        while (true) {
+            final int pending = pendingEntries.get();
+
+            if (positions.size() + pending >= getMaxPositions()) {
+                return false;
+            }
+
+            if (pendingEntries.compareAndSet(pending, pending + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return How many spreads trade() turned away without taking the lock.
+     */
+    public long getScreenedTrades() {
+        return screenedTrades.sum();
+    }
+
+    /**
+     * @return How many spreads passed screening and went on to commitTrade().
+     */
+    public long getCommittedTrades() {
+        return committedTrades.sum();
+    }
+
+    /**
+     * @return How long spreads that passed screening waited for the lock in commitTrade().
+     */
+    public LatencyHistogram getCommitWaits() {
+        return commitWaits;
+    }
+
+    /**
+     * Get the entry spread target for a TradeCombination after adjusting for fees. This is the same target that trade()
+     * compares the spread "in" against.
+     *
+     * @param tradeCombination The TradeCombination.
+     * @return The fee adjusted entry spread target.
+     */
+    public BigDecimal getEntrySpreadTarget(TradeCombination tradeCombination) {
+        return spreadService.getEntrySpreadTarget(
+            tradingConfiguration,
+            getEntryFee(tradeCombination.getLongExchange(), tradeCombination.getCurrencyPair()),
+            getEntryFee(tradeCombination.getShortExchange(), tradeCombination.getCurrencyPair()));
+    }
+
+    /**
+     * Cheaply decide whether a TradeCombination is close enough to trading that it's worth computing an exact Spread
+     * and calling trade() for it. Most price updates leave the spread nowhere near the entry or exit target, and this
+     * lets us skip the BigDecimal math for those without allocating anything. Anything that could still cause a trade,
+     * such as a forced open or close, always passes.
+     *
+     * Entries are screened against the fee adjusted entry spread target of each combination, from
+     * getCachedEntrySpreadTarget(). That can be lower than the configured entrySpreadTarget when an exchange pays a
+     * rebate, and the screen has to let through anything trade() would enter. The force open and force close
+     * conditions are the ones ConditionService found the last time it looked at its files.
+     *
+     * Screening is turned off unless a spreadScreeningMargin is configured.
+     *
+     * @param tradeCombination The TradeCombination to screen.
+     * @return true if the TradeCombination should be analyzed.
+     */
+    public boolean isNearTarget(TradeCombination tradeCombination) {
+        final BigDecimal margin = tradingConfiguration.getSpreadScreeningMargin();
+
+        if (margin == null) {
+            return true;
+        }
+
+        final String longExchangeName = tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName();
+        final String shortExchangeName = tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName();
+        final PositionState state = positions.get(getPositionKey(tradeCombination.getCurrencyPair(), longExchangeName, shortExchangeName));
+
+        if (state == null) {
+            // trade() can't enter another position until one of the open ones exits
+            if (!isLookingForEntry()) {
+                return false;
+            }
+
+            if (spreadService.estimateSpreadIn(tradeCombination) > getCachedEntrySpreadTarget(tradeCombination) - getScreeningTargets(margin).marginValue) {
+                return true;
+            }
+
+            return conditionService.isScreenedForceOpenCondition(tradeCombination.getCurrencyPair(), longExchangeName, shortExchangeName);
+        }
+
+        // it can't be exited until its orders have filled
+        if (state.pendingOrders) {
+            return false;
+        }
+
+        if (spreadService.estimateSpreadOut(tradeCombination) < state.exitTargetValue + getScreeningTargets(margin).marginValue) {
+            return true;
+        }
+
+        return conditionService.isScreenedForceCloseCondition() || isExpired(state);
+    }
+
+    /**
+     * Get the fee adjusted entry spread target for a TradeCombination as a double, for screening. The targets are
+     * computed once and kept until refreshEntrySpreadTargets() is called, so they don't cost anything on every ticker.
+     *
+     * @param tradeCombination The TradeCombination.
+     * @return The entry spread target, including fees.
+     */
+    public double getCachedEntrySpreadTarget(TradeCombination tradeCombination) {
+        final EntryTargets targets = getEntryTargets();
+        final Double cached = targets.values.get(tradeCombination);
+
+        if (cached != null) {
+            return cached;
+        }
+
+        final double target = getEntrySpreadTarget(tradeCombination).doubleValue();
+
+        targets.values.put(tradeCombination, target);
+
+        return target;
+    }
+
+    /**
+     * Forget the cached entry spread targets, in case the fees have changed.
+     */
+    public void refreshEntrySpreadTargets() {
+        entryTargets = null;
+    }
+
+    /**
+     * Can trade analysis skip straight to the best TradeCombination for each currency pair? That's only possible when
+     * the spreadEvaluation is BEST_VENUE and we don't have any open positions. When we're in a trade, the combinations
+     * we need to analyze include the ones we're in, and when a trade is being forced open it's the one named in the
+     * force open file.
+     *
+     * @return true if only the best TradeCombination needs to be analyzed.
+     */
+    public boolean isBestVenueEvaluation() {
+        return tradingConfiguration.getSpreadEvaluation() == SpreadEvaluation.BEST_VENUE
+            && positions.isEmpty()
+            && !conditionService.isScreenedForceOpenCondition();
+    }
+
+    /**
+     * @return true if there is room for another position.
+     */
+    public boolean isLookingForEntry() {
+        return positions.size() < getMaxPositions();
+    }
+
+    /**
+     * Get the open position for a TradeCombination.
+     *
+     * @param tradeCombination The TradeCombination.
+     * @return The ActivePosition, or null if there isn't one.
+     */
+    public ActivePosition getActivePosition(TradeCombination tradeCombination) {
+        final PositionState state = positions.get(getPositionKey(
+            tradeCombination.getCurrencyPair(),
+            tradeCombination.getLongExchange().getExchangeSpecification().getExchangeName(),
+            tradeCombination.getShortExchange().getExchangeSpecification().getExchangeName()));
+
+        return state == null ? null : state.position;
+    }
+
+    /**
+     * @return All the open positions.
+     */
+    public List<ActivePosition> getActivePositions() {
+        return positions.values()
+            .stream()
+            .map(state -> state.position)
+            .collect(Collectors.toList());
     }
 
-    public void setActivePosition(ActivePosition activePosition) {
-        this.activePosition = activePosition;
+    /**
+     * Replace all the open positions, such as with the ones loaded from the state file on startup.
+     *
+     * @param activePositions The open positions.
+     */
+    public void setActivePositions(List<ActivePosition> activePositions) {
+        positions.clear();
+        timeoutExitWarnings.clear();
+
+        activePositions.forEach(position -> publishPosition(position, false));
     }
 
     // enter a position
-    private void enterPosition(Spread spread) {
+    private void enterPosition(Spread spread, String positionKey, long orderTimer) {
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
-        final CurrencyPair currencyPairLongExchange = exchangeService.convertExchangePair(spread.getLongExchange(), spread.getCurrencyPair());
-        final CurrencyPair currencyPairShortExchange = exchangeService.convertExchangePair(spread.getShortExchange(), spread.getCurrencyPair());
-        final ExchangeFee longFee = new ExchangeFee ( 0,0 );//exchangeService.getExchangeFee(spread.getLongExchange(), currencyPairLongExchange, true);
-        final ExchangeFee shortFee = new ExchangeFee ( 0,0 );//exchangeService.getExchangeFee(spread.getShortExchange(), currencyPairShortExchange, true);
+        final InstrumentParameters longParameters = getLongParameters(spread);
+        final InstrumentParameters shortParameters = getShortParameters(spread);
+        final CurrencyPair currencyPairLongExchange = longParameters.getCurrencyPair();
+        final CurrencyPair currencyPairShortExchange = shortParameters.getCurrencyPair();
+        final ExchangeFee longFee = exchangeFeeRefresher.getExchangeFee(spread.getLongExchange(), currencyPairLongExchange);
+        final ExchangeFee shortFee = exchangeFeeRefresher.getExchangeFee(spread.getShortExchange(), currencyPairShortExchange);
         final BigDecimal exitSpreadTarget = spreadService.getExitSpreadTarget(tradingConfiguration, spread.getIn(), longFee, shortFee);
-        final BigDecimal maxExposure = getMaximumExposure(spread.getLongExchange(), spread.getShortExchange());
-        final FeeComputation longFeeComputation = exchangeService.getExchangeMetadata(spread.getLongExchange()).getFeeComputation();
-        final FeeComputation shortFeeComputation = exchangeService.getExchangeMetadata(spread.getShortExchange()).getFeeComputation();
+        final BigDecimal maxExposure = getPositionExposure(spread.getLongExchange(), spread.getShortExchange());
+        final FeeComputation longFeeComputation = longParameters.getFeeComputation();
+        final FeeComputation shortFeeComputation = shortParameters.getFeeComputation();
 
         // check whether we have enough money to trade (forcing it can't work if we can't afford it)
-        if (!validateMaxExposure(maxExposure, spread, currencyPairLongExchange, currencyPairShortExchange)) {
+        if (!validateMaxExposure(maxExposure, spread, longParameters, shortParameters)) {
             return;
         }
 
         // Figure out the scale (number of decimal places) for each exchange based on its CurrencyMetaData.
         // If there is no metadata, fall back to BTC's default of 8 places that should work in most cases.
-        final int longVolumeScale = computeVolumeScale(spread.getLongExchange(), currencyPairLongExchange);
-        final int shortVolumeScale = computeVolumeScale(spread.getShortExchange(), currencyPairShortExchange);
+        final int longVolumeScale = longParameters.getVolumeScale();
+        final int shortVolumeScale = shortParameters.getVolumeScale();
 
         LOGGER.debug("Max exposure: {}", maxExposure);
         LOGGER.debug("Long volume scale: {}", longVolumeScale);
@@ -224,8 +510,8 @@ public class TradingService {
         // This recalculation of the spread is a little computationally expensive, which is why we don't do it
         // until we know we're close to wanting to trade.
         try {
-            longLimitPrice = getLimitPrice(spread.getLongExchange(), spread.getCurrencyPair(), tradeVolume.getLongVolume(), Order.OrderType.ASK);
-            shortLimitPrice = getLimitPrice(spread.getShortExchange(), spread.getCurrencyPair(), tradeVolume.getShortVolume(), Order.OrderType.BID);
+            longLimitPrice = getLimitPrice(spread.getLongExchange(), longParameters, tradeVolume.getLongVolume(), Order.OrderType.ASK);
+            shortLimitPrice = getLimitPrice(spread.getShortExchange(), shortParameters, tradeVolume.getShortVolume(), Order.OrderType.BID);
         } catch (ExchangeException e) {
             LOGGER.warn("Failed to fetch order books for {}/{} and currency {}/{} to compute entry prices: {}",
                 longExchangeName,
@@ -255,10 +541,8 @@ public class TradingService {
             }
         }
 
-        final BigDecimal longAmountStepSize = spread.getLongExchange().getExchangeMetaData().getCurrencyPairs()
-            .getOrDefault(spread.getCurrencyPair(), NULL_CURRENCY_PAIR_METADATA).getAmountStepSize();
-        final BigDecimal shortAmountStepSize =  spread.getShortExchange().getExchangeMetaData().getCurrencyPairs()
-            .getOrDefault(spread.getCurrencyPair(), NULL_CURRENCY_PAIR_METADATA).getAmountStepSize();
+        final BigDecimal longAmountStepSize = longParameters.getAmountStepSize();
+        final BigDecimal shortAmountStepSize = shortParameters.getAmountStepSize();
 
         //Adjust order volumes so they match the fee computation, step size and scales of the exchanges
         try{
@@ -282,29 +566,37 @@ public class TradingService {
         BigDecimal totalBalance = logCurrentExchangeBalances(spread.getLongExchange(), spread.getShortExchange());
 
         try {
-            activePosition = new ActivePosition();
-            activePosition.setEntryTime(OffsetDateTime.now());
-            activePosition.setCurrencyPair(spread.getCurrencyPair());
-            activePosition.setExitTarget(exitSpreadTarget);
-            activePosition.setEntryBalance(totalBalance);
-            activePosition.getLongTrade().setExchange(spread.getLongExchange());
-            activePosition.getLongTrade().setVolume(tradeVolume.getLongOrderVolume());
-            activePosition.getLongTrade().setEntry(longLimitPrice);
-            activePosition.getShortTrade().setExchange(spread.getShortExchange());
-            activePosition.getShortTrade().setVolume(tradeVolume.getShortOrderVolume());
-            activePosition.getShortTrade().setEntry(shortLimitPrice);
-
-            executeOrderPair(spread, exitSpreadTarget, longLimitPrice, shortLimitPrice, tradeVolume, true);
-        } catch (IOException e) {
-            LOGGER.error("IOE executing limit orders: ", e);
-            activePosition = null;
+            final ActivePosition position = new ActivePosition();
+
+            position.setEntryTime(OffsetDateTime.now());
+            position.setCurrencyPair(spread.getCurrencyPair());
+            position.setExitTarget(exitSpreadTarget);
+            position.setEntryBalance(totalBalance);
+            position.getLongTrade().setExchange(spread.getLongExchange());
+            position.getLongTrade().setVolume(tradeVolume.getLongOrderVolume());
+            position.getLongTrade().setEntry(longLimitPrice);
+            position.getShortTrade().setExchange(spread.getShortExchange());
+            position.getShortTrade().setVolume(tradeVolume.getShortOrderVolume());
+            position.getShortTrade().setEntry(shortLimitPrice);
+
+            // only publish it once it's complete, since trade() reads it without the lock, and leave it alone until
+            // its orders have filled
+            final PositionState state = publishPosition(position, true);
+
+            // a forced entry doesn't have to meet the entry target, so it can be repriced as far as it takes
+            final BigDecimal repriceSpreadTarget = isForcedOpenCondition ? null : entrySpreadTarget;
+
+            executeOrderPair(spread, state, exitSpreadTarget, repriceSpreadTarget, longLimitPrice, shortLimitPrice, tradeVolume, true, orderTimer);
+        } catch (OrderPlacementException e) {
+            handleOrderPlacementFailure(e);
+
+            // keep the position around if we might have half of it, so whoever sorts it out can see what we tried
+            if (e.isResolved()) {
+                positions.remove(positionKey);
+            }
         }
 
-        try {
-            Utils.createStateFile(objectMapper.writeValueAsString(activePosition));
-        } catch (IOException e) {
-            LOGGER.error("Unable to write state file!", e);
-        }
+        persistPositions();
 
         conditionService.clearForceOpenCondition();
     }
@@ -318,28 +610,7 @@ public class TradingService {
      * @return The number of decimals allowed for a volume in this currency pair on this exchange.
      */
     Integer computeVolumeScale(Exchange exchange, CurrencyPair currencyPair) {
-        final CurrencyPairMetaData defaultPairMetaData = new CurrencyPairMetaData(
-            BigDecimal.ZERO,
-            BigDecimal.ZERO,
-            BigDecimal.valueOf(Long.MAX_VALUE),
-            DecimalConstants.BTC_SCALE,
-            DecimalConstants.BTC_SCALE,
-            new FeeTier[0],
-            Currency.BTC
-        );
-
-        final ExchangeMetaData exchangeMetaData = exchange.getExchangeMetaData();
-        final CurrencyPairMetaData currencyPairMetaData = exchangeMetaData.getCurrencyPairs().getOrDefault(
-            currencyPair,
-            defaultPairMetaData
-        );
-
-        if (currencyPairMetaData.getVolumeScale() == null) {
-            LOGGER.debug("Defaulting to scale of {} for volume because metadata is unavailable", DecimalConstants.BTC_SCALE);
-            return DecimalConstants.BTC_SCALE;
-        }
-
-        return currencyPairMetaData.getVolumeScale();
+        return InstrumentParameters.computeVolumeScale(exchange, currencyPair);
     }
 
     /**
@@ -351,33 +622,34 @@ public class TradingService {
      * @return The number of decimals allowed for a price in this currency pair on this exchange.
      */
     Integer computePriceScale(Exchange exchange, CurrencyPair currencyPair) {
-        final CurrencyPairMetaData defaultPairMetaData = new CurrencyPairMetaData(
-            BigDecimal.ZERO,
-            BigDecimal.ZERO,
-            BigDecimal.valueOf(Long.MAX_VALUE),
-            DecimalConstants.BTC_SCALE,
-            DecimalConstants.BTC_SCALE,
-            new FeeTier[0],
-            Currency.BTC
-        );
-        final ExchangeMetaData exchangeMetaData = exchange.getExchangeMetaData();
-        final CurrencyPairMetaData currencyPairMetaData = exchangeMetaData.getCurrencyPairs().getOrDefault(
-            currencyPair,
-            defaultPairMetaData
-        );
+        return InstrumentParameters.computePriceScale(exchange, currencyPair);
+    }
 
-        if (currencyPairMetaData.getPriceScale() == null) {
-            LOGGER.debug("Defaulting to scale of {} for price because metadata is unavailable", DecimalConstants.USD_SCALE);
-            return DecimalConstants.USD_SCALE;
-        }
+    // TradeCombinations look up their InstrumentParameters ahead of time, but we can work them out if a Spread doesn't have them
+    private InstrumentParameters getLongParameters(Spread spread) {
+        return spread.getLongParameters() != null
+            ? spread.getLongParameters()
+            : getInstrumentParameters(spread.getLongExchange(), spread.getCurrencyPair());
+    }
+
+    private InstrumentParameters getShortParameters(Spread spread) {
+        return spread.getShortParameters() != null
+            ? spread.getShortParameters()
+            : getInstrumentParameters(spread.getShortExchange(), spread.getCurrencyPair());
+    }
 
-        return currencyPairMetaData.getPriceScale();
+    private InstrumentParameters getInstrumentParameters(Exchange exchange, CurrencyPair currencyPair) {
+        return InstrumentParameters.of(
+            exchange,
+            currencyPair,
+            exchangeService.convertExchangePair(exchange, currencyPair),
+            exchangeService.getExchangeMetadata(exchange).getFeeComputation());
     }
 
     // ensure that we have enough money to trade
-    private boolean validateMaxExposure(BigDecimal maxExposure, Spread spread, CurrencyPair longCurrencyPair, CurrencyPair shortCurrencyPair) {
-        final BigDecimal longMinAmount = getMinimumAmountForEntryPosition(spread, spread.getLongExchange());
-        final BigDecimal shortMinAmount = getMinimumAmountForEntryPosition(spread, spread.getShortExchange());
+    private boolean validateMaxExposure(BigDecimal maxExposure, Spread spread, InstrumentParameters longParameters, InstrumentParameters shortParameters) {
+        final BigDecimal longMinAmount = longParameters.getMinimumAmount();
+        final BigDecimal shortMinAmount = shortParameters.getMinimumAmount();
 
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
@@ -386,7 +658,7 @@ public class TradingService {
             LOGGER.error("{} must have at least ${} to trade {} but only has ${}",
                 longExchangeName,
                 longMinAmount.add(longMinAmount.multiply(TRADE_REMAINDER)),
-                longCurrencyPair,
+                longParameters.getCurrencyPair(),
                 maxExposure);
             return false;
         }
@@ -395,7 +667,7 @@ public class TradingService {
             LOGGER.error("{} must have at least ${} to trade {} but only has ${}",
                 shortExchangeName,
                 shortMinAmount.add(shortMinAmount.multiply(TRADE_REMAINDER)),
-                shortCurrencyPair,
+                shortParameters.getCurrencyPair(),
                 maxExposure);
             return false;
         }
@@ -404,38 +676,29 @@ public class TradingService {
     }
 
     // exit a position
-    private void exitPosition(Spread spread) {
+    private void exitPosition(Spread spread, PositionState state, long orderTimer) {
+        final ActivePosition activePosition = state.position;
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
-        final CurrencyPair currencyPairLongExchange = exchangeService.convertExchangePair(spread.getLongExchange(), spread.getCurrencyPair());
-        final CurrencyPair currencyPairShortExchange = exchangeService.convertExchangePair(spread.getShortExchange(), spread.getCurrencyPair());
-        final ExchangeFee longFee = exchangeService.getExchangeFee(spread.getLongExchange(), currencyPairLongExchange, true);
-        final ExchangeFee shortFee = exchangeService.getExchangeFee(spread.getShortExchange(), currencyPairShortExchange, true);
+        final InstrumentParameters longParameters = getLongParameters(spread);
+        final InstrumentParameters shortParameters = getShortParameters(spread);
+        final ExchangeFee longFee = exchangeFeeRefresher.getExchangeFee(spread.getLongExchange(), longParameters.getCurrencyPair());
+        final ExchangeFee shortFee = exchangeFeeRefresher.getExchangeFee(spread.getShortExchange(), shortParameters.getCurrencyPair());
 
-        final FeeComputation longFeeComputation = exchangeService.getExchangeMetadata(spread.getLongExchange()).getFeeComputation();
-        final FeeComputation shortFeeComputation = exchangeService.getExchangeMetadata(spread.getShortExchange()).getFeeComputation();
+        final FeeComputation longFeeComputation = longParameters.getFeeComputation();
+        final FeeComputation shortFeeComputation = shortParameters.getFeeComputation();
 
-        final BigDecimal longAmountStepSize = spread.getLongExchange().getExchangeMetaData().getCurrencyPairs()
-            .getOrDefault(spread.getCurrencyPair(), NULL_CURRENCY_PAIR_METADATA).getAmountStepSize();
-        final BigDecimal shortAmountStepSize =  spread.getShortExchange().getExchangeMetaData().getCurrencyPairs()
-            .getOrDefault(spread.getCurrencyPair(), NULL_CURRENCY_PAIR_METADATA).getAmountStepSize();
+        final BigDecimal longAmountStepSize = longParameters.getAmountStepSize();
+        final BigDecimal shortAmountStepSize = shortParameters.getAmountStepSize();
 
-        final int longVolumeScale = computeVolumeScale(spread.getLongExchange(), currencyPairLongExchange);
-        final int shortVolumeScale = computeVolumeScale(spread.getShortExchange(), currencyPairShortExchange);
+        final int longVolumeScale = longParameters.getVolumeScale();
+        final int shortVolumeScale = shortParameters.getVolumeScale();
 
         // figure out how much to trade
         ExitTradeVolume tradeVolume;
         try {
-            BigDecimal longEntryOrderVolume = getVolumeForOrder(
-                spread.getLongExchange(),
-                spread.getCurrencyPair(),
-                activePosition.getLongTrade().getOrderId(),
-                activePosition.getLongTrade().getVolume());
-            BigDecimal shortEntryOrderVolume = getVolumeForOrder(
-                spread.getShortExchange(),
-                spread.getCurrencyPair(),
-                activePosition.getShortTrade().getOrderId(),
-                activePosition.getShortTrade().getVolume());
+            BigDecimal longEntryOrderVolume = getVolumeForTrade(spread.getLongExchange(), spread.getCurrencyPair(), activePosition.getLongTrade());
+            BigDecimal shortEntryOrderVolume = getVolumeForTrade(spread.getShortExchange(), spread.getCurrencyPair(), activePosition.getShortTrade());
 
             tradeVolume = TradeVolume.getExitTradeVolume(longFeeComputation, shortFeeComputation, longEntryOrderVolume, shortEntryOrderVolume, longFee, shortFee, longVolumeScale, shortVolumeScale);
         } catch (OrderNotFoundException e) {
@@ -454,8 +717,8 @@ public class TradingService {
         // at a slightly worse price, which we call "slip". This is a little bit computationally expensive which is why
         // we wait until we're pretty sure we want to trade before we do it.
         try {
-            longLimitPrice = getLimitPrice(spread.getLongExchange(), spread.getCurrencyPair(), tradeVolume.getLongVolume(), Order.OrderType.BID);
-            shortLimitPrice = getLimitPrice(spread.getShortExchange(), spread.getCurrencyPair(), tradeVolume.getShortVolume(), Order.OrderType.ASK);
+            longLimitPrice = getLimitPrice(spread.getLongExchange(), longParameters, tradeVolume.getLongVolume(), Order.OrderType.BID);
+            shortLimitPrice = getLimitPrice(spread.getShortExchange(), shortParameters, tradeVolume.getShortVolume(), Order.OrderType.ASK);
         } catch (ExchangeException e) {
             LOGGER.warn("Failed to fetch order books (on active position) for {}/{} and currency {}/{} to compute entry prices: {}",
                 longExchangeName,
@@ -472,7 +735,7 @@ public class TradingService {
         BigDecimal spreadVerification = spreadService.computeSpread(longLimitPrice, shortLimitPrice);
 
         LOGGER.debug("Exit spread: {}", spreadVerification);
-        LOGGER.debug("Exit spread target: {}", activePosition.getExitTarget());
+        LOGGER.debug("Exit spread target: {}", state.exitTarget);
 
         if (tradeVolume.getLongVolume().compareTo(BigDecimal.ZERO) <= 0 || tradeVolume.getShortVolume().compareTo(BigDecimal.ZERO) <= 0) {
             LOGGER.error("Computed trade volume for exiting position was zero or less than zero!");
@@ -480,7 +743,7 @@ public class TradingService {
         }
 
         final boolean isForceCloseCondition = conditionService.isForceCloseCondition();
-        if (!isActivePositionExpired() && !isForceCloseCondition && spreadVerification.compareTo(activePosition.getExitTarget()) > 0) {
+        if (!isExpired(state) && !isForceCloseCondition && spreadVerification.compareTo(state.exitTarget) > 0) {
             LOGGER.debug("Not enough liquidity to execute both trades profitably!");
             return;
         }
@@ -491,11 +754,10 @@ public class TradingService {
         // Also, don't spam the logs with this warning. It's possible that this condition could last for awhile
         // and this code could be executed frequently.
         final BigDecimal entrySpreadTarget = spreadService.getEntrySpreadTarget(tradingConfiguration, longFee, shortFee);
-        if (isActivePositionExpired() && spreadVerification.compareTo(entrySpreadTarget) < 0) {
-            if (!timeoutExitWarning) {
-                LOGGER.warn("Timeout exit triggered");
+        if (isExpired(state) && spreadVerification.compareTo(entrySpreadTarget) < 0) {
+            if (timeoutExitWarnings.add(state.key)) {
+                LOGGER.warn("Timeout exit triggered for {}", state.key);
                 LOGGER.warn("Cannot exit now because spread would cause immediate reentry");
-                timeoutExitWarning = true;
             }
             return;
         }
@@ -508,27 +770,41 @@ public class TradingService {
             return;
         }
 
-        logExitTrade(spread, longExchangeName, shortExchangeName, tradeVolume, longFeeComputation, shortFeeComputation, longLimitPrice, shortLimitPrice, isForceCloseCondition);
+        logExitTrade(spread, state, longExchangeName, shortExchangeName, tradeVolume, longFeeComputation, shortFeeComputation, longLimitPrice, shortLimitPrice, isForceCloseCondition);
 
         try {
-            executeOrderPair(spread, null, longLimitPrice, shortLimitPrice, tradeVolume, false);
-        } catch (IOException e) {
-            LOGGER.error("IOE executing limit orders: ", e);
+            // timed out and forced exits don't have to meet the exit target either
+            final BigDecimal repriceSpreadTarget = isExpired(state) || isForceCloseCondition ? null : state.exitTarget;
 
-            // We don't return here because there is no trade execution below this line. If we returned we'd lose out
-            // on a bunch of logging and cleanup that is still useful to do even if the trades didn't work. But,
-            // let's bail out so the bot doesn't do anything bad after failing to execute the orders.
+            executeOrderPair(spread, state, null, repriceSpreadTarget, longLimitPrice, shortLimitPrice, tradeVolume, false, orderTimer);
+        } catch (OrderPlacementException e) {
+            // the position is still open, so we'll try to exit again on a later spread if it's safe to
+            handleOrderPlacementFailure(e);
+        }
+    }
 
-            bailOut = true;
+    // carry on if the failed order pair didn't leave anything behind, otherwise stop trading
+    private void handleOrderPlacementFailure(OrderPlacementException e) {
+        if (e.isResolved()) {
+            LOGGER.error("{} No orders were left open, so trading will continue.", e.getMessage(), e);
+            return;
         }
+
+        LOGGER.error("{} One of the orders may be open without the other. The long order ID is {} and the short order ID is {}. Please check both exchanges.",
+            e.getMessage(),
+            e.getLongOrderId(),
+            e.getShortOrderId(),
+            e);
+
+        unresolvedPlacement = e;
     }
 
     // convenience method to encapsulate logging an exit
-    private void logExitTrade(Spread spread, String longExchangeName, String shortExchangeName, TradeVolume tradeVolume, FeeComputation longFeeComputation, FeeComputation shortFeeComputation, BigDecimal longLimitPrice, BigDecimal shortLimitPrice, boolean isForcedCloseCondition) {
+    private void logExitTrade(Spread spread, PositionState state, String longExchangeName, String shortExchangeName, TradeVolume tradeVolume, FeeComputation longFeeComputation, FeeComputation shortFeeComputation, BigDecimal longLimitPrice, BigDecimal shortLimitPrice, boolean isForcedCloseCondition) {
 
-        if (isActivePositionExpired()) {
+        if (isExpired(state)) {
             LOGGER.warn("***** TIMEOUT EXIT *****");
-            timeoutExitWarning = false;
+            timeoutExitWarnings.remove(state.key);
         } else if (isForcedCloseCondition) {
             LOGGER.warn("***** FORCED EXIT *****");
         } else {
@@ -536,7 +812,7 @@ public class TradingService {
         }
 
         LOGGER.info("Exit spread: {}", spread.getOut());
-        LOGGER.info("Exit spread target: {}", activePosition.getExitTarget());
+        LOGGER.info("Exit spread target: {}", state.exitTarget);
         if(longFeeComputation == FeeComputation.SERVER) {
             LOGGER.info("Long close: {} {} {} @ {} (slipped from {}) = {}{} with {}{} estimated extra fees",
                 longExchangeName,
@@ -647,36 +923,27 @@ public class TradingService {
         }
     }
 
-    // get the smallest possible order for an entry position on an exchange
-    private BigDecimal getMinimumAmountForEntryPosition(Spread spread, Exchange longExchange) {
-        final BigDecimal defaultValue = new BigDecimal("0.001"); // TODO too big?
-        final CurrencyPairMetaData currencyPairMetaData = longExchange
-            .getExchangeMetaData()
-            .getCurrencyPairs()
-            .getOrDefault(exchangeService.convertExchangePair(longExchange, spread.getCurrencyPair()), NULL_CURRENCY_PAIR_METADATA);
-
-        if (currencyPairMetaData == null || currencyPairMetaData.getMinimumAmount() == null) {
-            return defaultValue;
-        }
-
-        return currencyPairMetaData.getMinimumAmount();
-    }
-
     // execute a buy and a sell together
     private void executeOrderPair(Spread spread,
+                                  PositionState state,
                                   BigDecimal exitSpreadTarget,
+                                  BigDecimal repriceSpreadTarget,
                                   BigDecimal longLimitPrice,
                                   BigDecimal shortLimitPrice,
                                   TradeVolume tradeVolume,
-                                  boolean isPositionOpen) throws IOException, ExchangeException {
+                                  boolean isPositionOpen,
+                                  long orderTimer) {
+
+        final InstrumentParameters longParameters = getLongParameters(spread);
+        final InstrumentParameters shortParameters = getShortParameters(spread);
 
         // build two limit orders - orders that execute at a specific price
         // this helps us to get the "maker" price on exchanges where the fees are lower for makers
-        LimitOrder longLimitOrder = new LimitOrder.Builder(isPositionOpen ? Order.OrderType.BID : Order.OrderType.ASK, exchangeService.convertExchangePair(spread.getLongExchange(), spread.getCurrencyPair()))
+        LimitOrder longLimitOrder = new LimitOrder.Builder(isPositionOpen ? Order.OrderType.BID : Order.OrderType.ASK, longParameters.getCurrencyPair())
             .limitPrice(longLimitPrice)
             .originalAmount(tradeVolume.getLongOrderVolume())
             .build();
-        LimitOrder shortLimitOrder = new LimitOrder.Builder(isPositionOpen ? Order.OrderType.ASK : Order.OrderType.BID, exchangeService.convertExchangePair(spread.getShortExchange(), spread.getCurrencyPair()))
+        LimitOrder shortLimitOrder = new LimitOrder.Builder(isPositionOpen ? Order.OrderType.ASK : Order.OrderType.BID, shortParameters.getCurrencyPair())
             .limitPrice(shortLimitPrice)
             .originalAmount(tradeVolume.getShortOrderVolume())
             .build();
@@ -691,99 +958,199 @@ public class TradingService {
             spread.getShortExchange().getExchangeSpecification().getExchangeName(),
             shortLimitOrder);
 
-        try { // get the order IDs from each exchange
-            long orderExecutionStart = System.currentTimeMillis();
-
-            String longOrderId = spread.getLongExchange().getTradeService().placeLimitOrder(longLimitOrder);
-            String shortOrderId = spread.getShortExchange().getTradeService().placeLimitOrder(shortLimitOrder);
-
-            long orderExecutionTimer = System.currentTimeMillis() - orderExecutionStart;
-            long orderPlacementTimer = System.currentTimeMillis() - orderTimer;
-            long tradeDecisionTimer = orderPlacementTimer - orderExecutionTimer;
+        final OrderLeg longLeg = new OrderLeg(spread.getLongExchange(), longLimitOrder);
+        final OrderLeg shortLeg = new OrderLeg(spread.getShortExchange(), shortLimitOrder);
 
-            LOGGER.info("{} ms elapsed between decision and execution", orderPlacementTimer);
-            LOGGER.info("{} ms elapsed during trade decision", tradeDecisionTimer);
-            LOGGER.info("{} ms elapsed during order execution", orderExecutionTimer);
+        // the position can't be entered or exited again until both legs have filled
+        state.pendingOrders = true;
 
-            // TODO not happy with this coupling, need to refactor this
-            // activePosition tracks the orders we just opened
-            if (isPositionOpen) {
-                activePosition.getLongTrade().setOrderId(longOrderId);
-                activePosition.getShortTrade().setOrderId(shortOrderId);
-            } else {
-                activePosition.getLongTrade().setOrderId(null);
-                activePosition.getShortTrade().setOrderId(null);
-            }
+        try {
+            placeOrderPair(longLeg, shortLeg, orderTimer);
+        } catch (RuntimeException e) {
+            state.pendingOrders = false;
+            throw e;
+        }
 
-            LOGGER.info("{} limit order ID: {}",
-                spread.getLongExchange().getExchangeSpecification().getExchangeName(),
-                longOrderId);
-            LOGGER.info("{} limit order ID: {}",
-                spread.getShortExchange().getExchangeSpecification().getExchangeName(),
-                shortOrderId);
-        } catch (ExchangeException e) {
-            // At this point we may or may not have executed one of the trades so we're in an unknown state.
-            // For now, we'll just bail out and let the human figure out what to do to fix it.
-            // TODO Look at both exchanges and attempt close any open positions.
-            LOGGER.error("Exchange returned an error executing trade!", e);
-            bailOut = true;
-            return;
+        // TODO not happy with this coupling, need to refactor this
+        // the position tracks the orders we just opened
+        if (isPositionOpen) {
+            state.position.getLongTrade().setOrderId(longLeg.orderId);
+            state.position.getShortTrade().setOrderId(shortLeg.orderId);
+        } else {
+            state.position.getLongTrade().setOrderId(null);
+            state.position.getShortTrade().setOrderId(null);
         }
 
-        LOGGER.info("Waiting for limit orders to complete...");
+        LOGGER.info("{} limit order ID: {}",
+            spread.getLongExchange().getExchangeSpecification().getExchangeName(),
+            longLeg.orderId);
+        LOGGER.info("{} limit order ID: {}",
+            spread.getShortExchange().getExchangeSpecification().getExchangeName(),
+            shortLeg.orderId);
 
-        final Observable<OpenOrders> longOpenOrdersObservable = checkForOpenOrders(spread.getLongExchange());
-        final Observable<OpenOrders> shortOpenOrdersObservable = checkForOpenOrders(spread.getShortExchange());
+        LOGGER.info("Waiting for limit orders to complete...");
 
-        Observable.combineLatest(shortOpenOrdersObservable, longOpenOrdersObservable,
-                (shortResult, longResult) -> shortResult.getOpenOrders().isEmpty() && longResult.getOpenOrders().isEmpty()
-            )
+        final OrderPairPrices prices = new OrderPairPrices(longLimitOrder, shortLimitOrder, repriceSpreadTarget);
+
+        // when a leg is repriced it follows the replacement order, and so does the position for an entry so the exit can
+        // size itself from it
+        Completable.mergeArray(
+                orderRepricer.manage(longLeg.exchange, spread.getCurrencyPair(), longLimitOrder, longLeg.orderId,
+                    new RepricedLeg(longLeg, longParameters, prices, true,
+                        isPositionOpen ? state.position.getLongTrade() : null)),
+                orderRepricer.manage(shortLeg.exchange, spread.getCurrencyPair(), shortLimitOrder, shortLeg.orderId,
+                    new RepricedLeg(shortLeg, shortParameters, prices, false,
+                        isPositionOpen ? state.position.getShortTrade() : null)))
             .doOnComplete(() -> {
-                openOrdersFlag.set(false);
-
                 // invalidate the balance cache because we *know* it's incorrect now
                 exchangeBalanceCache.invalidate(spread.getLongExchange(), spread.getShortExchange());
 
                 if (tradeVolume instanceof EntryTradeVolume) {
                     completeEntry(spread, exitSpreadTarget, longLimitPrice, shortLimitPrice, ((EntryTradeVolume)tradeVolume));
                 } else if (tradeVolume instanceof ExitTradeVolume) {
-                    completeExit(spread, longLimitPrice, shortLimitPrice, ((ExitTradeVolume)tradeVolume));
+                    completeExit(spread, state, longLimitPrice, shortLimitPrice, ((ExitTradeVolume)tradeVolume));
                 }
 
                 LOGGER.info("Trades executed successfully!");
             })
-            .subscribe();
+            .doFinally(() -> state.pendingOrders = false)
+            .subscribe(
+                () -> {},
+                e -> handleOrderPlacementFailure(new OrderPlacementException(e.getMessage(),
+                    e instanceof OrderPlacementException ? e.getCause() : e, longLeg.orderId, shortLeg.orderId, false)));
     }
 
-    private Observable<OpenOrders> checkForOpenOrders(final Exchange exchange) {
-        return Observable.fromCallable(() -> fetchOpenOrders(exchange).orElseThrow(Exception::new))
-            .retryWhen(throwableFlowable -> throwableFlowable.flatMap(throwable -> Observable.timer(10, TimeUnit.SECONDS)))
-            .repeatWhen(objectObservable -> objectObservable.delay(10, TimeUnit.SECONDS))
-            .takeUntil(openOrders -> {
-                collectOpenOrders(exchange, openOrders).ifPresent(LOGGER::warn);
-                return openOrders.getOpenOrders().isEmpty();
-            })
-            .subscribeOn(Schedulers.io());
+    // buy orders are priced from the asks and sell orders from the bids
+    private static Order.OrderType getPricingSide(LimitOrder order) {
+        return Order.OrderType.BID.equals(order.getType()) ? Order.OrderType.ASK : Order.OrderType.BID;
     }
 
-    // summarize all the open orders on an exchange, used while we're waiting for orders to fill
-    private Optional<String> collectOpenOrders(Exchange exchange, OpenOrders openOrders) {
-        if (openOrders.getOpenOrders().isEmpty()) {
-            return Optional.empty();
+    /**
+     * Place both legs of an order pair at the same time on the order placement threads, so the second leg doesn't
+     * wait out the first one's round trip, and wait up to the I/O timeout for both of them. If only one leg is placed
+     * it is cancelled again.
+     *
+     * @param longLeg The long order and its exchange. Its orderId is filled in if it's placed.
+     * @param shortLeg The short order and its exchange. Its orderId is filled in if it's placed.
+     * @param orderTimer When we started deciding to trade, from System.currentTimeMillis().
+     * @throws OrderPlacementException if either leg couldn't be placed.
+     */
+    void placeOrderPair(OrderLeg longLeg, OrderLeg shortLeg, long orderTimer) {
+        final long decisionMillis = System.currentTimeMillis() - orderTimer;
+        final long placementStart = System.nanoTime();
+        final long deadline = placementStart + TimeUnit.MILLISECONDS.toNanos(tradingConfiguration.getIoExecutor().getTimeout());
+
+        submitOrderLeg(longLeg);
+        submitOrderLeg(shortLeg);
+
+        joinOrderLeg(longLeg, deadline);
+        joinOrderLeg(shortLeg, deadline);
+
+        LOGGER.info("{} ms elapsed during trade decision", decisionMillis);
+        logOrderLeg(longLeg, placementStart);
+        logOrderLeg(shortLeg, placementStart);
+
+        if (longLeg.orderId != null && shortLeg.orderId != null) {
+            LOGGER.info("{} ms skew between legs", TimeUnit.NANOSECONDS.toMillis(Math.abs(longLeg.placedNanos - shortLeg.placedNanos)));
+            LOGGER.info("{} ms elapsed between decision and execution",
+                decisionMillis + TimeUnit.NANOSECONDS.toMillis(Math.max(longLeg.placedNanos, shortLeg.placedNanos) - placementStart));
+            return;
         }
-        String header = String.format("%s has the following open orders:\n", exchange.getExchangeSpecification().getExchangeName());
 
-        final String logMessage = header + openOrders.getOpenOrders()
-            .stream()
-            .map(LimitOrder::toString)
-            .collect(Collectors.joining("\n"));
+        // if a leg timed out we can't know whether the exchange placed it, so there's nothing safe we can do about it
+        boolean resolved = !longLeg.timedOut && !shortLeg.timedOut;
+
+        if (resolved && longLeg.orderId != null) {
+            resolved = cancelOrderLeg(longLeg);
+        } else if (resolved && shortLeg.orderId != null) {
+            resolved = cancelOrderLeg(shortLeg);
+        }
+
+        final OrderLeg failedLeg = longLeg.orderId == null ? longLeg : shortLeg;
+
+        throw new OrderPlacementException(
+            String.format("Unable to place %s order on %s: %s",
+                failedLeg == longLeg ? "long" : "short",
+                failedLeg.exchange.getExchangeSpecification().getExchangeName(),
+                failedLeg.error == null ? "unknown error" : failedLeg.error.getMessage()),
+            failedLeg.error,
+            longLeg.orderId,
+            shortLeg.orderId,
+            resolved);
+    }
+
+    private void submitOrderLeg(OrderLeg leg) {
+        try {
+            leg.placement = orderPlacementExecutor.submit(() -> {
+                final long start = System.nanoTime();
+                final String orderId = leg.exchange.getTradeService().placeLimitOrder(leg.order);
+
+                leg.placedNanos = System.nanoTime();
+                exchangeIoExecutor.recordLatency(leg.exchange, leg.placedNanos - start);
+
+                return orderId;
+            });
+        } catch (RejectedExecutionException e) {
+            leg.error = e;
+        }
+    }
 
-        return Optional.of(logMessage);
+    private void joinOrderLeg(OrderLeg leg, long deadline) {
+        if (leg.placement == null) {
+            return;
+        }
+
+        try {
+            leg.orderId = leg.placement.get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            leg.placement.cancel(true);
+            leg.timedOut = true;
+            leg.error = new ExchangeTimeoutException(leg.exchange, tradingConfiguration.getIoExecutor().getTimeout());
+        } catch (InterruptedException e) {
+            leg.placement.cancel(true);
+            leg.timedOut = true;
+            leg.error = e;
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            // Method proxying in rescu can enclose a real exception in this UTE, so we need to unwrap it.
+            if (cause instanceof UndeclaredThrowableException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+
+            leg.error = cause;
+        }
+    }
+
+    private void logOrderLeg(OrderLeg leg, long placementStart) {
+        final String exchangeName = leg.exchange.getExchangeSpecification().getExchangeName();
+
+        if (leg.orderId != null) {
+            LOGGER.info("{} ms elapsed placing {} order", TimeUnit.NANOSECONDS.toMillis(leg.placedNanos - placementStart), exchangeName);
+        } else if (leg.timedOut) {
+            LOGGER.error("Timed out placing {} order", exchangeName);
+        } else {
+            LOGGER.error("Exchange returned an error placing {} order!", exchangeName, leg.error);
+        }
     }
 
-    // fetch open orders from the exchange
-    private Optional<OpenOrders> fetchOpenOrders(Exchange exchange) throws IOException {
-        return Optional.of(exchange.getTradeService().getOpenOrders());
+    // cancel the leg that was placed when the other one wasn't
+    private boolean cancelOrderLeg(OrderLeg leg) {
+        final String exchangeName = leg.exchange.getExchangeSpecification().getExchangeName();
+
+        try {
+            if (exchangeIoExecutor.call(leg.exchange, () -> leg.exchange.getTradeService().cancelOrder(leg.orderId))) {
+                LOGGER.warn("Cancelled {} order {} because the other leg could not be placed", exchangeName, leg.orderId);
+                return true;
+            }
+
+            LOGGER.error("{} did not cancel order {}", exchangeName, leg.orderId);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.error("Unable to cancel {} order {}", exchangeName, leg.orderId, e);
+        }
+
+        return false;
     }
 
     private void completeEntry(Spread spread, BigDecimal exitSpreadTarget, BigDecimal longLimitPrice, BigDecimal shortLimitPrice, EntryTradeVolume tradeVolume) {
@@ -795,16 +1162,13 @@ public class TradingService {
         notificationService.sendEntryTradeNotification(spread, exitSpreadTarget, tradeVolume,
             longLimitPrice, shortLimitPrice, isForceOpenCondition);
 
-        try {
-            Utils.createStateFile(objectMapper.writeValueAsString(activePosition));
-        } catch (IOException e) {
-            LOGGER.error("Unable to write state file!", e);
-        }
+        persistPositions();
 
         conditionService.clearForceOpenCondition();
     }
 
-    private void completeExit(Spread spread, BigDecimal longLimitPrice, BigDecimal shortLimitPrice, ExitTradeVolume tradeVolume) {
+    private void completeExit(Spread spread, PositionState state, BigDecimal longLimitPrice, BigDecimal shortLimitPrice, ExitTradeVolume tradeVolume) {
+        final ActivePosition activePosition = state.position;
         final String longExchangeName = spread.getLongExchange().getExchangeSpecification().getExchangeName();
         final String shortExchangeName = spread.getShortExchange().getExchangeSpecification().getExchangeName();
         final boolean isForceCloseCondition = conditionService.isForceCloseCondition();
@@ -836,7 +1200,7 @@ public class TradingService {
 
         persistArbitrageToCsvFile(arbitrageLog);
 
-        // Email notification must be sent before we set activePosition = null
+        // Email notification must be sent before we remove the position
         notificationService.sendExitTradeNotification(
             spread,
             tradeVolume,
@@ -844,19 +1208,31 @@ public class TradingService {
             shortLimitPrice,
             activePosition.getEntryBalance(),
             updatedBalance,
-            activePosition.getExitTarget(),
+            state.exitTarget,
             isForceCloseCondition,
-            isActivePositionExpired()
+            isExpired(state)
         );
 
-        activePosition = null;
-        Utils.deleteStateFile();
+        positions.remove(state.key, state);
+        timeoutExitWarnings.remove(state.key);
+        persistPositions();
 
-        if (isForceCloseCondition) {
+        // the force close file applies to every position, so keep it until they're all closed
+        if (isForceCloseCondition && positions.isEmpty()) {
             conditionService.clearForceCloseCondition();
         }
     }
 
+    // the volume of one side of a position, including whatever was filled by orders that were repriced and replaced
+    private BigDecimal getVolumeForTrade(Exchange exchange, CurrencyPair currencyPair, ActivePosition.Trade trade) {
+        return getVolumeForOrder(
+            exchange,
+            currencyPair,
+            trade.getOrderId(),
+            Optional.ofNullable(trade.getReplacedVolume()).orElse(BigDecimal.ZERO),
+            trade.getVolume());
+    }
+
     /**
      * Fetch an order and figure out its volume. If the exchange doesn't support that, use a default value instead.
      *
@@ -867,6 +1243,12 @@ public class TradingService {
      * @return An order volume.
      */
     BigDecimal getVolumeForOrder(Exchange exchange, CurrencyPair currencyPair, String orderId, BigDecimal defaultVolume) {
+        return getVolumeForOrder(exchange, currencyPair, orderId, BigDecimal.ZERO, defaultVolume);
+    }
+
+    // the order's own volume only covers what's left of the trade after the orders it replaced, but the balance and the
+    // default volume both cover all of it
+    private BigDecimal getVolumeForOrder(Exchange exchange, CurrencyPair currencyPair, String orderId, BigDecimal replacedVolume, BigDecimal defaultVolume) {
         // first, try to fetch the order from the cache
         // next, fetch from the exchange by its ID and just return its volume
         // not supported by all exchanges, so then we have to fall back to alternative methods
@@ -880,7 +1262,8 @@ public class TradingService {
                         .stream()
                         .findFirst()
                         .orElseThrow(() -> new OrderNotFoundException(exchange, orderId))
-                        .getOriginalAmount();
+                        .getOriginalAmount()
+                        .add(replacedVolume);
                 } catch (NotAvailableFromExchangeException e) {
                     LOGGER.debug("{}: Does not support fetching orders by ID", exchange.getExchangeSpecification().getExchangeName());
                 } catch (IllegalStateException | IOException e) {
@@ -933,37 +1316,37 @@ public class TradingService {
     }
 
     /**
-     * Figure out the price for a limit order based on the order book. Computationally expensive, but accurate.
+     * Figure out the price for a limit order based on the order book.
      *
      * @param exchange The exchange to use.
      * @param rawCurrencyPair The currency pair to use, not converted for home currency.
-     * @param allowedVolume The volume we're looking for (governs how many orders to look through before stopping).
+     * @param allowedVolume The volume we're looking for (governs how deep into the order book the price will be).
      * @param orderType Are we buying or selling? Use the bid or ask price?
      * @return The more accurate price for this order.
      */
     BigDecimal getLimitPrice(Exchange exchange, CurrencyPair rawCurrencyPair, BigDecimal allowedVolume, Order.OrderType orderType) {
-        CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, rawCurrencyPair);
+        final CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, rawCurrencyPair);
 
-        try {
-            OrderBook orderBook = exchange.getMarketDataService().getOrderBook(currencyPair);
-            List<LimitOrder> orders = orderType.equals(Order.OrderType.ASK) ? orderBook.getAsks() : orderBook.getBids();
-            BigDecimal price;
-            BigDecimal volume = BigDecimal.ZERO;
+        return getLimitPrice(exchange, currencyPair, computePriceScale(exchange, currencyPair), allowedVolume, orderType);
+    }
 
-            // Walk through orders, ordered by price, until we satisfy all the volume we need.
-            // Return the price of the last order we see.
+    private BigDecimal getLimitPrice(Exchange exchange, InstrumentParameters parameters, BigDecimal allowedVolume, Order.OrderType orderType) {
+        return getLimitPrice(exchange, parameters.getCurrencyPair(), parameters.getPriceScale(), allowedVolume, orderType);
+    }
+
+    private BigDecimal getLimitPrice(Exchange exchange, CurrencyPair currencyPair, int priceScale, BigDecimal allowedVolume, Order.OrderType orderType) {
+        try {
+            // Find the price of the first level in the order book where the volume at that price or better
+            // is more than we need.
             //
             // If we set our limit order at this price (without waiting too long) it is very likely to fill
             // because we know the exchange has enough currency available to fill it at this or a better price.
-            for (LimitOrder order : orders) {
-                price = order.getLimitPrice();
-                volume = volume.add(order.getRemainingAmount());
-
-                if (volume.compareTo(allowedVolume) > 0) {
-                    int scale = computePriceScale(exchange, currencyPair);
+            //
+            // This is the exact price from the order book, not the double the DepthBook searches with.
+            final BigDecimal price = getDepthBook(exchange, currencyPair, orderType).getLimitPriceForVolume(allowedVolume);
 
-                    return price.setScale(scale, RoundingMode.HALF_EVEN);
-                }
+            if (price != null) {
+                return price.setScale(priceScale, RoundingMode.HALF_EVEN);
             }
         } catch (IOException e) {
             LOGGER.error("IOE fetching {} {} order volume", exchange.getExchangeSpecification().getExchangeName(), currencyPair, e);
@@ -972,6 +1355,33 @@ public class TradingService {
         throw new RuntimeException("Not enough liquidity on exchange to fulfill required volume!");
     }
 
+    // use a recent streamed or prefetched order book if there is one, otherwise ask the exchange for it
+    private DepthBook getDepthBook(Exchange exchange, CurrencyPair currencyPair, Order.OrderType orderType) throws IOException {
+        if (tradingConfiguration.getOrderBookMaxAge() != null) {
+            final DepthBook depthBook = orderBookCache.get(exchange, currencyPair, orderType, tradingConfiguration.getOrderBookMaxAge());
+
+            if (depthBook != null) {
+                return depthBook;
+            }
+        }
+
+        final DepthBook prefetched = orderBookPrefetcher.get(exchange, currencyPair, orderType);
+
+        if (prefetched != null) {
+            return prefetched;
+        }
+
+        if (tradingConfiguration.getOrderBookMaxAge() != null || tradingConfiguration.getPrefetchBand() != null) {
+            LOGGER.debug("No recent order book for {} {}, fetching it",
+                exchange.getExchangeSpecification().getExchangeName(),
+                currencyPair);
+        }
+
+        final OrderBook orderBook = exchangeIoExecutor.call(exchange, () -> exchange.getMarketDataService().getOrderBook(currencyPair));
+
+        return DepthBook.of(orderType, orderType.equals(Order.OrderType.ASK) ? orderBook.getAsks() : orderBook.getBids());
+    }
+
     /**
      * Figure out the largest trade we can make in our home currency. If fixedExposure is configured, just
      * use that value. Otherwise, go through each of the exchanges passed in and find the smallest balance,
@@ -984,30 +1394,45 @@ public class TradingService {
         if (tradingConfiguration.getFixedExposure() != null) {
             return tradingConfiguration.getFixedExposure();
         } else {
-            BigDecimal smallestBalance = Arrays.stream(exchanges)
-                .parallel()
-                .map(exchange -> exchangeBalanceCache.getCachedBalance(exchange) // try the cache first
-                    .orElseGet(() -> {
-                        try {
-                            final Currency homeCurrency = exchangeService.getExchangeHomeCurrency(exchange);
-                            final int homeCurrencyScale = exchangeService.getExchangeCurrencyScale(exchange, homeCurrency);
-                            final BigDecimal balance = exchangeService.getAccountBalance(exchange, homeCurrency, homeCurrencyScale); // then make the API call
-
-                            exchangeBalanceCache.setCachedBalance(exchange, balance); // cache the returned value
-
-                            return balance;
-                        } catch (IOException e) {
-                            LOGGER.info("IOException fetching {} account balance", exchange.getExchangeSpecification().getExchangeName());
-
-                            // set the cache to zero so we don't keep spamming the API when there's an IOException
-                            // we may have gotten the IOE because of rate limiting
-                            // this cache entry will only last a short time
-                            // but it will make us back off awhile before trying again
-                            exchangeBalanceCache.setCachedBalance(exchange, BigDecimal.ZERO);
-                        }
-
-                        return BigDecimal.ZERO; // just return a zero balance if we couldn't get anything
-                    }))
+            final BigDecimal[] balances = new BigDecimal[exchanges.length];
+            final List<Future<BigDecimal>> fetches = new ArrayList<>();
+
+            // try the cache first, and start fetching any balances it doesn't have all at once on each exchange's I/O threads
+            for (int i = 0; i < exchanges.length; i++) {
+                final Exchange exchange = exchanges[i];
+
+                balances[i] = exchangeBalanceCache.getCachedBalance(exchange).orElse(null);
+                fetches.add(balances[i] != null ? null : exchangeIoExecutor.submit(exchange, () -> {
+                    final Currency homeCurrency = exchangeService.getExchangeHomeCurrency(exchange);
+                    final int homeCurrencyScale = exchangeService.getExchangeCurrencyScale(exchange, homeCurrency);
+
+                    return exchangeService.getAccountBalance(exchange, homeCurrency, homeCurrencyScale); // then make the API call
+                }));
+            }
+
+            for (int i = 0; i < exchanges.length; i++) {
+                if (fetches.get(i) == null) {
+                    continue;
+                }
+
+                try {
+                    balances[i] = exchangeIoExecutor.get(exchanges[i], fetches.get(i));
+
+                    exchangeBalanceCache.setCachedBalance(exchanges[i], balances[i]); // cache the returned value
+                } catch (IOException e) {
+                    LOGGER.info("IOException fetching {} account balance", exchanges[i].getExchangeSpecification().getExchangeName());
+
+                    // set the cache to zero so we don't keep spamming the API when there's an IOException
+                    // we may have gotten the IOE because of rate limiting
+                    // this cache entry will only last a short time
+                    // but it will make us back off awhile before trying again
+                    exchangeBalanceCache.setCachedBalance(exchanges[i], BigDecimal.ZERO);
+
+                    balances[i] = BigDecimal.ZERO; // just use a zero balance if we couldn't get anything
+                }
+            }
+
+            BigDecimal smallestBalance = Arrays.stream(balances)
                 .min(BigDecimal::compareTo)
                 .orElse(BigDecimal.ZERO);
 
@@ -1021,6 +1446,28 @@ public class TradingService {
         }
     }
 
+    // the maximum exposure for one position, limited by positionExposure if it's configured
+    BigDecimal getPositionExposure(Exchange ... exchanges) {
+        final BigDecimal maxExposure = getMaximumExposure(exchanges);
+        final BigDecimal positionExposure = tradingConfiguration.getPositionExposure();
+
+        if (positionExposure != null) {
+            if (positionExposure.compareTo(maxExposure) < 0) {
+                LOGGER.debug("Limiting exposure for {} to {}", exchanges, positionExposure);
+                return positionExposure;
+            }
+
+            return maxExposure;
+        }
+
+        // without a limit, share the balance between all the positions we might open instead of letting one take it all
+        if (tradingConfiguration.getFixedExposure() == null && getMaxPositions() > 1) {
+            return maxExposure.divide(BigDecimal.valueOf(getMaxPositions()), DecimalConstants.USD_SCALE, RoundingMode.HALF_EVEN);
+        }
+
+        return maxExposure;
+    }
+
     // log the balances of two exchanges and the sum of both
     private BigDecimal logCurrentExchangeBalances(final Exchange longExchange, final Exchange shortExchange) {
         try {
@@ -1049,13 +1496,122 @@ public class TradingService {
 
 
 
+    // the fees we use to compute the entry spread target
+    private ExchangeFee getEntryFee(Exchange exchange, CurrencyPair currencyPair) {
+        return exchangeFeeRefresher.getExchangeFee(exchange, currencyPair);
+    }
+
+    // the screening margin only changes if the configuration does, so we convert it to a double once and keep it
+    private ScreeningTargets getScreeningTargets(BigDecimal margin) {
+        final ScreeningTargets current = screeningTargets;
+
+        if (current != null && current.margin == margin) {
+            return current;
+        }
+
+        final ScreeningTargets screen = new ScreeningTargets(margin, margin.doubleValue());
+
+        screeningTargets = screen;
+
+        return screen;
+    }
+
+    // start over if the configured entry spread target changes, since all the cached targets are computed from it
+    private EntryTargets getEntryTargets() {
+        final BigDecimal entrySpreadTarget = tradingConfiguration.getEntrySpreadTarget();
+        final EntryTargets current = entryTargets;
+
+        if (current != null && current.entrySpreadTarget == entrySpreadTarget) {
+            return current;
+        }
+
+        final EntryTargets targets = new EntryTargets(entrySpreadTarget);
+
+        entryTargets = targets;
+
+        return targets;
+    }
+
+    // could this spread enter or exit a position, as far as we can tell without the lock?
+    private boolean isTradeCandidate(Spread spread, PositionState state, String longExchangeName, String shortExchangeName) {
+        if (state == null) {
+            return isLookingForEntry()
+                && (spread.getIn().compareTo(getEntrySpreadTarget(spread)) > 0
+                    || conditionService.isForceOpenCondition(spread.getCurrencyPair(), longExchangeName, shortExchangeName));
+        }
+
+        if (state.pendingOrders) {
+            return false;
+        }
+
+        return spread.getOut().compareTo(state.exitTarget) < 0
+            || conditionService.isForceCloseCondition()
+            || isExpired(state);
+    }
+
+    private BigDecimal getEntrySpreadTarget(Spread spread) {
+        return spreadService.getEntrySpreadTarget(
+            tradingConfiguration,
+            getEntryFee(spread.getLongExchange(), spread.getCurrencyPair()),
+            getEntryFee(spread.getShortExchange(), spread.getCurrencyPair()));
+    }
+
+    private int getMaxPositions() {
+        return tradingConfiguration.getMaxPositions() == null ? 1 : tradingConfiguration.getMaxPositions();
+    }
+
+    // positions are keyed by exchange names rather than Exchange objects so the ones in the state file match up too
+    private static String getPositionKey(CurrencyPair currencyPair, String longExchangeName, String shortExchangeName) {
+        return longExchangeName + "/" + shortExchangeName + " " + currencyPair;
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private Object getPositionLock(String positionKey) {
+        final Object lock = positionLocks.get(positionKey);
+
+        if (lock != null) {
+            return lock;
+        }
+
+        return positionLocks.computeIfAbsent(positionKey, key -> new Object());
+    }
+
+    // add a position, along with the snapshot trade() screens against, once it has been filled in
+    private PositionState publishPosition(ActivePosition position, boolean isPending) {
+        final PositionState state = new PositionState(position);
+
+        state.pendingOrders = isPending;
+
+        positions.put(state.key, state);
+
+        return state;
+    }
+
+    // write all the open positions to the state file, or delete it if there aren't any
+    private void persistPositions() {
+        synchronized (stateFileLock) {
+            final List<ActivePosition> activePositions = getActivePositions();
+
+            if (activePositions.isEmpty()) {
+                Utils.deleteStateFile();
+                return;
+            }
+
+            try {
+                Utils.createStateFile(objectMapper.writeValueAsString(activePositions));
+            } catch (IOException e) {
+                LOGGER.error("Unable to write state file!", e);
+            }
+        }
+    }
+
     // determine whether a trade has exceeded the configured trade timeout
-    private boolean isActivePositionExpired() {
-        if (tradingConfiguration.getTradeTimeout() == null || activePosition == null || activePosition.getEntryTime() == null) {
+    private boolean isExpired(PositionState state) {
+        if (tradingConfiguration.getTradeTimeout() == null || state.entryTime == null) {
             return false;
         }
 
-        return activePosition.getEntryTime().plusHours(tradingConfiguration.getTradeTimeout()).isBefore(OffsetDateTime.now());
+        return state.entryTime.plusHours(tradingConfiguration.getTradeTimeout()).isBefore(OffsetDateTime.now());
     }
 
     /**
@@ -1077,4 +1633,117 @@ public class TradingService {
             LOGGER.error("Unable to log the trade into the csv file. Reason: {}", e.getMessage());
         }
     }
+
+    // one order of an order pair, and how placing it went
+    static final class OrderLeg {
+        private final Exchange exchange;
+        private final LimitOrder order;
+        private Future<String> placement;
+        private volatile long placedNanos;
+        private volatile String orderId;
+        private Throwable error;
+        private boolean timedOut;
+
+        OrderLeg(Exchange exchange, LimitOrder order) {
+            this.exchange = exchange;
+            this.order = order;
+        }
+
+        String getOrderId() {
+            return orderId;
+        }
+    }
+
+    // one leg of an order pair as OrderRepricer sees it, priced from its own order book and held to the pair's spread
+    private final class RepricedLeg implements OrderRepricer.Leg {
+        private final OrderLeg leg;
+        private final InstrumentParameters parameters;
+        private final OrderPairPrices prices;
+        private final boolean isLong;
+        private final ActivePosition.Trade trade;
+
+        private RepricedLeg(OrderLeg leg, InstrumentParameters parameters, OrderPairPrices prices, boolean isLong, ActivePosition.Trade trade) {
+            this.leg = leg;
+            this.parameters = parameters;
+            this.prices = prices;
+            this.isLong = isLong;
+            this.trade = trade;
+        }
+
+        @Override
+        public boolean isLong() {
+            return isLong;
+        }
+
+        @Override
+        public BigDecimal getPrice(BigDecimal volume) {
+            return getLimitPrice(leg.exchange, parameters, volume, getPricingSide(leg.order));
+        }
+
+        @Override
+        public BigDecimal getWorstPrice() {
+            return isLong ? prices.getWorstLongPrice() : prices.getWorstShortPrice();
+        }
+
+        @Override
+        public BigDecimal reprice(BigDecimal price) {
+            return isLong ? prices.repriceLong(price) : prices.repriceShort(price);
+        }
+
+        @Override
+        public void replaced(String orderId, BigDecimal remaining) {
+            // the leg follows its latest order so that a failure names the order that is actually open
+            leg.orderId = orderId;
+
+            // exit orders aren't part of a position anymore
+            if (trade == null) {
+                return;
+            }
+
+            trade.setReplacedVolume(trade.getVolume().subtract(remaining));
+            trade.setOrderId(orderId);
+        }
+    }
+
+    // the parts of a position that trade() needs, copied so they can be read without the lock
+    private static final class PositionState {
+        private final ActivePosition position;
+        private final String key;
+        private final BigDecimal exitTarget;
+        private final double exitTargetValue;
+        private final OffsetDateTime entryTime;
+        private volatile boolean pendingOrders; // true while the orders that enter or exit the position are open
+
+        private PositionState(ActivePosition position) {
+            this.position = position;
+            this.key = getPositionKey(
+                position.getCurrencyPair(),
+                position.getLongTrade().getExchange(),
+                position.getShortTrade().getExchange());
+            this.exitTarget = position.getExitTarget();
+            this.exitTargetValue = exitTarget == null ? Double.NaN : exitTarget.doubleValue();
+            this.entryTime = position.getEntryTime();
+        }
+    }
+
+    // the screening margin for isNearTarget(), converted to a double
+    private static final class ScreeningTargets {
+        private final BigDecimal margin;
+        private final double marginValue;
+
+        private ScreeningTargets(BigDecimal margin, double marginValue) {
+            this.margin = margin;
+            this.marginValue = marginValue;
+        }
+    }
+
+    // the fee adjusted entry spread target for each TradeCombination, converted to doubles
+    private static final class EntryTargets {
+        private final BigDecimal entrySpreadTarget;
+        private final Map<TradeCombination, Double> values = new ConcurrentHashMap<>();
+
+        private EntryTargets(BigDecimal entrySpreadTarget) {
+            this.entrySpreadTarget = entrySpreadTarget;
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package com.agonyforge.arbitrader.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates executors that start a new virtual thread for every task. Virtual threads only exist on Java 21 and newer,
+ * and we still build for Java 8, so they're created by reflection. On older JVMs isAvailable() returns false and the
+ * callers use their usual thread pools.
+ */
+public final class VirtualThreads {
+    private static final Logger LOGGER = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Factory FACTORY = findFactory();
+
+    private VirtualThreads() {}
+
+    /**
+     * @return true if this JVM can run virtual threads.
+     */
+    public static boolean isAvailable() {
+        return FACTORY != null;
+    }
+
+    /**
+     * Create an executor that runs each task on its own new virtual thread.
+     *
+     * @param namePrefix The virtual threads are named with this prefix and a counter.
+     * @return An ExecutorService backed by virtual threads.
+     * @throws UnsupportedOperationException if this JVM can't run virtual threads.
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        if (FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or newer");
+        }
+
+        try {
+            return FACTORY.create(namePrefix);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual threads", e);
+        }
+    }
+
+    // look up Thread.ofVirtual() and friends once, and try them out so we know they really work on this JVM
+    private static Factory findFactory() {
+        try {
+            final Factory factory = new Factory(
+                Thread.class.getMethod("ofVirtual"),
+                Class.forName("java.lang.Thread$Builder").getMethod("name", String.class, long.class),
+                Class.forName("java.lang.Thread$Builder").getMethod("factory"),
+                Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class));
+
+            factory.create("virtual-thread-check-").shutdown();
+
+            return factory;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Java 19 and 20 have the methods but throw unless preview features are enabled
+            LOGGER.debug("Virtual threads are not available: {}", e.toString());
+        }
+
+        return null;
+    }
+
+    private static final class Factory {
+        private final Method ofVirtual;
+        private final Method name;
+        private final Method factory;
+        private final Method newThreadPerTaskExecutor;
+
+        private Factory(Method ofVirtual, Method name, Method factory, Method newThreadPerTaskExecutor) {
+            this.ofVirtual = ofVirtual;
+            this.name = name;
+            this.factory = factory;
+            this.newThreadPerTaskExecutor = newThreadPerTaskExecutor;
+        }
+
+        private ExecutorService create(String namePrefix) throws ReflectiveOperationException {
+            final Object builder = name.invoke(ofVirtual.invoke(null), namePrefix, 0L);
+            final ThreadFactory threadFactory = (ThreadFactory) factory.invoke(builder);
+
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.Exchange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the best place to go long and the best place to go short for one currency pair.
+ *
+ * Every exchange that can be the long side of a TradeCombination is kept in a heap ordered by ask, and every exchange
+ * that can be the short side is kept in a heap ordered by bid. When a ticker arrives only that exchange's position in
+ * the two heaps needs to be fixed, so finding the most promising combination doesn't mean computing a spread for every
+ * pair of exchanges.
+ *
+ * The heaps only know about the exchanges that appear in a TradeCombination, so anything excluded by the trade
+ * blacklist or marginExclude is never offered. If the cheapest ask and the highest bid are on the same exchange, the best
+ * we can do is pair it with the runner up on the other side, and the runners up are always children of the heap roots.
+ * Only when the best prices belong to exchanges that aren't allowed to trade together does getBest() fall back to
+ * comparing the valid combinations directly.
+ *
+ * The heaps are tiny, so updates and reads are simply synchronized.
+ */
+public class BestVenueBook {
+    private final Map<Exchange, Venue> venues = new HashMap<>();
+    private final Map<Exchange, Map<Exchange, TradeCombination>> combinations = new HashMap<>();
+    private final List<TradeCombination> combinationList = new ArrayList<>();
+    private Venue[] asks = new Venue[0];
+    private Venue[] bids = new Venue[0];
+    private int askCount = 0;
+    private int bidCount = 0;
+    private long fallbackScans = 0;
+
+    /**
+     * Add a TradeCombination to the book. This should only be done while trading is being initialized.
+     *
+     * @param tradeCombination The TradeCombination.
+     */
+    public synchronized void add(TradeCombination tradeCombination) {
+        final Venue longVenue = getVenue(tradeCombination.getLongExchange());
+        final Venue shortVenue = getVenue(tradeCombination.getShortExchange());
+
+        if (combinations
+            .computeIfAbsent(tradeCombination.getLongExchange(), key -> new HashMap<>())
+            .putIfAbsent(tradeCombination.getShortExchange(), tradeCombination) != null) {
+            return;
+        }
+
+        combinationList.add(tradeCombination);
+
+        if (longVenue.askIndex < 0) {
+            asks = Arrays.copyOf(asks, askCount + 1);
+            asks[askCount] = longVenue;
+            longVenue.askIndex = askCount++;
+            siftAskUp(longVenue.askIndex);
+        }
+
+        if (shortVenue.bidIndex < 0) {
+            bids = Arrays.copyOf(bids, bidCount + 1);
+            bids[bidCount] = shortVenue;
+            shortVenue.bidIndex = bidCount++;
+            siftBidUp(shortVenue.bidIndex);
+        }
+    }
+
+    /**
+     * Update the prices for an exchange. Missing prices should be passed as NaN.
+     *
+     * @param exchange The Exchange.
+     * @param bid The latest bid.
+     * @param ask The latest ask.
+     */
+    public synchronized void update(Exchange exchange, double bid, double ask) {
+        final Venue venue = venues.get(exchange);
+
+        if (venue == null) {
+            return;
+        }
+
+        venue.bid = Double.isNaN(bid) ? Double.NEGATIVE_INFINITY : bid;
+        venue.ask = Double.isNaN(ask) ? Double.POSITIVE_INFINITY : ask;
+
+        if (venue.askIndex >= 0) {
+            siftAskUp(venue.askIndex);
+            siftAskDown(venue.askIndex);
+        }
+
+        if (venue.bidIndex >= 0) {
+            siftBidUp(venue.bidIndex);
+            siftBidDown(venue.bidIndex);
+        }
+    }
+
+    /**
+     * Find the TradeCombination with the highest spread "in".
+     *
+     * @return The best TradeCombination, or null if we don't have prices for both sides of any combination.
+     */
+    public synchronized TradeCombination getBest() {
+        if (askCount == 0 || bidCount == 0) {
+            return null;
+        }
+
+        final Venue longVenue = asks[0];
+        final Venue shortVenue = bids[0];
+
+        if (Double.isInfinite(longVenue.ask) || Double.isInfinite(shortVenue.bid)) {
+            return null;
+        }
+
+        final TradeCombination best = getCombination(longVenue, shortVenue);
+
+        if (best != null) {
+            return best;
+        }
+
+        // the liquid venues often lead both sides of the book, so this happens a lot and needs to be cheap
+        if (longVenue == shortVenue) {
+            final Venue secondAsk = getSecondAsk();
+            final Venue secondBid = getSecondBid();
+            final TradeCombination longWithSecondBid = secondBid == null ? null : getCombination(longVenue, secondBid);
+            final TradeCombination secondAskWithShort = secondAsk == null ? null : getCombination(secondAsk, shortVenue);
+
+            // if the runners up are allowed to trade with the leader, one of those pairs has to be the best one
+            if ((secondBid == null || longWithSecondBid != null) && (secondAsk == null || secondAskWithShort != null)) {
+                final double longWithSecondBidSpread = secondBid == null ? Double.NaN : computeSpread(longVenue, secondBid);
+                final double secondAskWithShortSpread = secondAsk == null ? Double.NaN : computeSpread(secondAsk, shortVenue);
+
+                if (Double.isNaN(longWithSecondBidSpread)) {
+                    return Double.isNaN(secondAskWithShortSpread) ? null : secondAskWithShort;
+                }
+
+                if (Double.isNaN(secondAskWithShortSpread) || longWithSecondBidSpread >= secondAskWithShortSpread) {
+                    return longWithSecondBid;
+                }
+
+                return secondAskWithShort;
+            }
+        }
+
+        fallbackScans++;
+
+        // the best prices can't be traded against each other, so compare the combinations we're allowed to trade
+        TradeCombination fallback = null;
+        double fallbackSpread = Double.NEGATIVE_INFINITY;
+
+        for (TradeCombination tradeCombination : combinationList) {
+            final double ask = venues.get(tradeCombination.getLongExchange()).ask;
+            final double bid = venues.get(tradeCombination.getShortExchange()).bid;
+
+            if (Double.isInfinite(ask) || Double.isInfinite(bid)) {
+                continue;
+            }
+
+            final double spread = (bid - ask) / ask;
+
+            if (spread > fallbackSpread) {
+                fallback = tradeCombination;
+                fallbackSpread = spread;
+            }
+        }
+
+        return fallback;
+    }
+
+    /**
+     * @return How many times getBest() has had to compare every combination because the runners up couldn't be used.
+     */
+    synchronized long getFallbackScans() {
+        return fallbackScans;
+    }
+
+    // the venue with the next lowest ask after the root of the heap, which has to be one of its children
+    private Venue getSecondAsk() {
+        if (askCount < 2) {
+            return null;
+        }
+
+        if (askCount == 2 || asks[1].ask <= asks[2].ask) {
+            return asks[1];
+        }
+
+        return asks[2];
+    }
+
+    // the venue with the next highest bid after the root of the heap, which has to be one of its children
+    private Venue getSecondBid() {
+        if (bidCount < 2) {
+            return null;
+        }
+
+        if (bidCount == 2 || bids[1].bid >= bids[2].bid) {
+            return bids[1];
+        }
+
+        return bids[2];
+    }
+
+    private TradeCombination getCombination(Venue longVenue, Venue shortVenue) {
+        final Map<Exchange, TradeCombination> shortCombinations = combinations.get(longVenue.exchange);
+
+        return shortCombinations == null ? null : shortCombinations.get(shortVenue.exchange);
+    }
+
+    // the spread "in" for going long on one venue and short on another, or NaN if either price is missing
+    private static double computeSpread(Venue longVenue, Venue shortVenue) {
+        if (Double.isInfinite(longVenue.ask) || Double.isInfinite(shortVenue.bid)) {
+            return Double.NaN;
+        }
+
+        return (shortVenue.bid - longVenue.ask) / longVenue.ask;
+    }
+
+    private Venue getVenue(Exchange exchange) {
+        return venues.computeIfAbsent(exchange, Venue::new);
+    }
+
+    private void siftAskUp(int index) {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+
+            if (asks[parent].ask <= asks[index].ask) {
+                return;
+            }
+
+            swap(asks, index, parent, true);
+            index = parent;
+        }
+    }
+
+    private void siftAskDown(int index) {
+        while (true) {
+            final int left = index * 2 + 1;
+            final int right = left + 1;
+            int smallest = index;
+
+            if (left < askCount && asks[left].ask < asks[smallest].ask) {
+                smallest = left;
+            }
+
+            if (right < askCount && asks[right].ask < asks[smallest].ask) {
+                smallest = right;
+            }
+
+            if (smallest == index) {
+                return;
+            }
+
+            swap(asks, index, smallest, true);
+            index = smallest;
+        }
+    }
+
+    private void siftBidUp(int index) {
+        while (index > 0) {
+            final int parent = (index - 1) >>> 1;
+
+            if (bids[parent].bid >= bids[index].bid) {
+                return;
+            }
+
+            swap(bids, index, parent, false);
+            index = parent;
+        }
+    }
+
+    private void siftBidDown(int index) {
+        while (true) {
+            final int left = index * 2 + 1;
+            final int right = left + 1;
+            int largest = index;
+
+            if (left < bidCount && bids[left].bid > bids[largest].bid) {
+                largest = left;
+            }
+
+            if (right < bidCount && bids[right].bid > bids[largest].bid) {
+                largest = right;
+            }
+
+            if (largest == index) {
+                return;
+            }
+
+            swap(bids, index, largest, false);
+            index = largest;
+        }
+    }
+
+    // swap two venues in a heap and keep their indexes up to date
+    private static void swap(Venue[] heap, int a, int b, boolean askHeap) {
+        final Venue temp = heap[a];
+
+        heap[a] = heap[b];
+        heap[b] = temp;
+
+        if (askHeap) {
+            heap[a].askIndex = a;
+            heap[b].askIndex = b;
+        } else {
+            heap[a].bidIndex = a;
+            heap[b].bidIndex = b;
+        }
+    }
+
+    // one exchange's latest prices and where it is in each heap
+    private static final class Venue {
+        private final Exchange exchange;
+        private double bid = Double.NEGATIVE_INFINITY;
+        private double ask = Double.POSITIVE_INFINITY;
+        private int askIndex = -1;
+        private int bidIndex = -1;
+
+        private Venue(Exchange exchange) {
+            this.exchange = exchange;
+        }
+    }
+}
@@ -3,19 +3,40 @@ package com.agonyforge.arbitrader.service.cache;
 import com.agonyforge.arbitrader.service.model.ExchangeFee;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongSupplier;
 
 /**
  * Cache exchange fee amounts. They don't change that often and we request them frequently,
  * so this saves us from a lot of API rate limiting.
+ *
+ * Fees stay in the cache until they are replaced, so there is always a last known fee to hand out. The cache keeps
+ * track of how old each fee is so that callers can decide when it's time to fetch it again, and of which fees are
+ * already being fetched so that only one caller does it at a time.
  */
 @Component
 public class ExchangeFeeCache {
-    private final Map<String, ExchangeFee> cache = new HashMap<>();
+    private final Map<String, Map<CurrencyPair, CachedFee>> cache = new ConcurrentHashMap<>();
+    private final Map<String, Map<CurrencyPair, CompletableFuture<Void>>> refreshing = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    @Autowired
+    public ExchangeFeeCache() {
+        this(System::currentTimeMillis);
+    }
+
+    ExchangeFeeCache(LongSupplier clock) {
+        this.clock = clock;
+    }
 
     /**
      * Return a fee from the cache.
@@ -25,7 +46,20 @@ public class ExchangeFeeCache {
      * @return The fee as a decimal such as 0.0016, or 0.16%
      */
     public Optional<ExchangeFee> getCachedFee(Exchange exchange, CurrencyPair currencyPair) {
-        return Optional.ofNullable(cache.get(computeCacheKey(exchange, currencyPair)));
+        final CachedFee cachedFee = findCachedFee(exchange, currencyPair);
+
+        return cachedFee == null ? Optional.empty() : Optional.of(cachedFee.fee);
+    }
+
+    /**
+     * Return a fee from the cache along with how old it is, in one lookup.
+     *
+     * @param exchange The Exchange to fetch a fee from.
+     * @param currencyPair The CurrencyPair to fetch a fee from.
+     * @return The CachedFee, or null if there isn't one.
+     */
+    public CachedFee findCachedFee(Exchange exchange, CurrencyPair currencyPair) {
+        return getPairs(cache, exchange).get(currencyPair);
     }
 
     /**
@@ -36,13 +70,122 @@ public class ExchangeFeeCache {
      * @param fee The fee as a decimal, such as 0.0016 for 0.16%
      */
     public void setCachedFee(Exchange exchange, CurrencyPair currencyPair, ExchangeFee fee) {
-        cache.put(computeCacheKey(exchange, currencyPair), fee);
+        getPairs(cache, exchange).put(currencyPair, new CachedFee(fee, clock.getAsLong(), false));
     }
 
-    // generate a string that represents an exchange and currency pair, suitable for use as a key in a Map
-    private String computeCacheKey(Exchange exchange, CurrencyPair currencyPair) {
-        return String.format("%s:%s",
-            exchange.getExchangeSpecification().getExchangeName(),
-            currencyPair.toString());
+    /**
+     * Include a stand-in fee in the cache for when we couldn't get the real one. It's already expired, so it gets
+     * fetched again the next time someone asks for it, and it doesn't replace a fee that's already in the cache.
+     *
+     * @param exchange The Exchange this fee comes from.
+     * @param currencyPair The CurrencyPair this fee is for.
+     * @param fee The fee as a decimal, such as 0.0016 for 0.16%
+     */
+    public void setFallbackFee(Exchange exchange, CurrencyPair currencyPair, ExchangeFee fee) {
+        getPairs(cache, exchange).putIfAbsent(currencyPair, new CachedFee(fee, clock.getAsLong(), true));
+    }
+
+    /**
+     * Check whether a cached fee is older than we'd like.
+     *
+     * @param exchange The Exchange the fee comes from.
+     * @param currencyPair The CurrencyPair the fee is for.
+     * @param maxAge How old the fee may be, in milliseconds.
+     * @return true if the fee is older than maxAge, or isn't in the cache at all.
+     */
+    public boolean isExpired(Exchange exchange, CurrencyPair currencyPair, long maxAge) {
+        return isExpired(findCachedFee(exchange, currencyPair), maxAge);
+    }
+
+    /**
+     * Check whether a cached fee is older than we'd like.
+     *
+     * @param cachedFee A CachedFee from {@link #findCachedFee(Exchange, CurrencyPair)}.
+     * @param maxAge How old the fee may be, in milliseconds.
+     * @return true if the fee is older than maxAge, or is null.
+     */
+    public boolean isExpired(CachedFee cachedFee, long maxAge) {
+        return cachedFee == null || cachedFee.isFallback || clock.getAsLong() - cachedFee.fetchedAt >= maxAge;
+    }
+
+    /**
+     * Claim the job of fetching a fee again.
+     *
+     * @param exchange The Exchange the fee comes from.
+     * @param currencyPair The CurrencyPair the fee is for.
+     * @return true if the caller should fetch the fee, or false if someone else is already doing it.
+     */
+    public boolean startRefresh(Exchange exchange, CurrencyPair currencyPair) {
+        final CompletableFuture<Void> refresh = new CompletableFuture<>();
+
+        return getPairs(refreshing, exchange).putIfAbsent(currencyPair, refresh) == null;
+    }
+
+    /**
+     * Let go of a fee claimed with {@link #startRefresh(Exchange, CurrencyPair)}, whether or not fetching it worked.
+     *
+     * @param exchange The Exchange the fee comes from.
+     * @param currencyPair The CurrencyPair the fee is for.
+     */
+    public void finishRefresh(Exchange exchange, CurrencyPair currencyPair) {
+        final CompletableFuture<Void> refresh = getPairs(refreshing, exchange).remove(currencyPair);
+
+        if (refresh != null) {
+            refresh.complete(null);
+        }
+    }
+
+    /**
+     * Wait for someone else to finish fetching a fee, if anyone is. Check the cache afterwards to see whether it worked.
+     *
+     * @param exchange The Exchange the fee comes from.
+     * @param currencyPair The CurrencyPair the fee is for.
+     * @param timeout The longest we'll wait, in milliseconds.
+     */
+    public void awaitRefresh(Exchange exchange, CurrencyPair currencyPair, long timeout) {
+        final CompletableFuture<Void> refresh = getPairs(refreshing, exchange).get(currencyPair);
+
+        if (refresh == null) {
+            return;
+        }
+
+        try {
+            refresh.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            // the cache doesn't have it yet, which is all the caller needs to know
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // fees are kept by exchange name and then by currency pair, so looking one up doesn't have to build a key
+    private static <T> Map<CurrencyPair, T> getPairs(Map<String, Map<CurrencyPair, T>> map, Exchange exchange) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final Map<CurrencyPair, T> pairs = map.get(exchangeName);
+
+        if (pairs != null) {
+            return pairs;
+        }
+
+        return map.computeIfAbsent(exchangeName, key -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * A fee, when we got it, and whether it's only a stand-in for one we couldn't get.
+     */
+    public static final class CachedFee {
+        private final ExchangeFee fee;
+        private final long fetchedAt;
+        private final boolean isFallback;
+
+        CachedFee(ExchangeFee fee, long fetchedAt, boolean isFallback) {
+            this.fee = fee;
+            this.fetchedAt = fetchedAt;
+            this.isFallback = isFallback;
+        }
+
+        public ExchangeFee getFee() {
+            return fee;
+        }
     }
 }
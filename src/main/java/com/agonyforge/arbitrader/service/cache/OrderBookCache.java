@@ -0,0 +1,102 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import com.agonyforge.arbitrader.service.model.DepthBook;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Holds the latest OrderBook we received from each streaming exchange and currency pair, so that we can work out
+ * limit prices without waiting for a REST call at the moment we want to trade.
+ *
+ * The streaming libraries apply each incremental update to their own copy of the book and then hand us the result.
+ * Some of them keep modifying that same OrderBook as later updates arrive, so we copy the price levels into a
+ * DepthBook for each side rather than keeping the book we were given. That also moves the work of adding up the volume
+ * at each level onto the streaming thread, so looking up a limit price at trade time is just a binary search. An
+ * entry that is older than the caller will accept is treated as missing.
+ */
+@Component
+public class OrderBookCache {
+    private final Map<String, Map<CurrencyPair, CachedOrderBook>> cache = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+
+    public OrderBookCache() {
+        this(System::currentTimeMillis);
+    }
+
+    public OrderBookCache(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Store the latest OrderBook for an exchange and currency pair.
+     *
+     * @param exchange The Exchange the OrderBook came from.
+     * @param currencyPair The CurrencyPair, as the exchange knows it.
+     * @param orderBook The OrderBook.
+     */
+    public void put(Exchange exchange, CurrencyPair currencyPair, OrderBook orderBook) {
+        final CachedOrderBook cached = new CachedOrderBook(
+            DepthBook.of(Order.OrderType.ASK, orderBook.getAsks()),
+            DepthBook.of(Order.OrderType.BID, orderBook.getBids()),
+            clock.getAsLong());
+
+        getExchangeCache(exchange).put(currencyPair, cached);
+    }
+
+    /**
+     * Get one side of the latest OrderBook for an exchange and currency pair, if it's recent enough.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPair The CurrencyPair, as the exchange knows it.
+     * @param orderType ASK for the asks or BID for the bids.
+     * @param maxAge The oldest OrderBook we'll accept, in milliseconds.
+     * @return The DepthBook, or null if we don't have one or it's too old.
+     */
+    public DepthBook get(Exchange exchange, CurrencyPair currencyPair, Order.OrderType orderType, long maxAge) {
+        final Map<CurrencyPair, CachedOrderBook> exchangeCache = cache.get(exchange.getExchangeSpecification().getExchangeName());
+
+        if (exchangeCache == null) {
+            return null;
+        }
+
+        final CachedOrderBook cached = exchangeCache.get(currencyPair);
+
+        if (cached == null || clock.getAsLong() - cached.received > maxAge) {
+            return null;
+        }
+
+        return orderType == Order.OrderType.ASK ? cached.asks : cached.bids;
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private Map<CurrencyPair, CachedOrderBook> getExchangeCache(Exchange exchange) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final Map<CurrencyPair, CachedOrderBook> exchangeCache = cache.get(exchangeName);
+
+        if (exchangeCache != null) {
+            return exchangeCache;
+        }
+
+        return cache.computeIfAbsent(exchangeName, key -> new ConcurrentHashMap<>());
+    }
+
+    // both sides of an OrderBook and when we received it
+    private static final class CachedOrderBook {
+        private final DepthBook asks;
+        private final DepthBook bids;
+        private final long received;
+
+        private CachedOrderBook(DepthBook asks, DepthBook bids, long received) {
+            this.asks = asks;
+            this.bids = bids;
+            this.received = received;
+        }
+    }
+}
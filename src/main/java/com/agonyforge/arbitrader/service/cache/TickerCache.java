@@ -0,0 +1,335 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the latest Ticker for each exchange and currency pair.
+ *
+ * Tickers are written by streaming callbacks and ticker fetching threads while the trade analysis threads read them,
+ * so everything here needs to be safe without locking. Each exchange and currency pair gets a slot when trading is
+ * initialized. A slot can be reachable under more than one currency pair (eg. BTC/USD and BTC/USDT for an exchange
+ * whose home currency is USDT) so that the hot path never has to convert or format anything to find it.
+ *
+ * Tickers are immutable, so publishing a new Ticker reference atomically is enough to guarantee that a reader always
+ * sees a bid, ask and timestamp that belong together. Each Ticker is stored in a Snapshot along with its bid and ask
+ * converted to doubles, so that code screening lots of prices can do it without converting them again every time.
+ * The Snapshot is the only thing allocated when a Ticker is stored. It isn't free, but it's small and short lived, and
+ * the exchange libraries have already allocated a whole Ticker by the time we get here.
+ *
+ * Callers that store a lot of Tickers can look up a Slot once with getSlot() and hand it straight to store(), so the
+ * hot path doesn't look anything up by exchange name.
+ *
+ * A slot can be marked stale when its feed has gone quiet. A stale slot looks empty to readers until the next Ticker
+ * is stored in it, so nothing trades on prices that may have stopped updating.
+ */
+public class TickerCache {
+    private final Map<String, Map<CurrencyPair, Slot>> slots = new ConcurrentHashMap<>();
+
+    /**
+     * Assign a slot for a currency pair on an exchange. Any aliases will share the same slot.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @param aliases Other currency pairs that refer to the same market on this exchange.
+     */
+    public void allocate(Exchange exchange, CurrencyPair currencyPair, CurrencyPair ... aliases) {
+        final Map<CurrencyPair, Slot> exchangeSlots = getExchangeSlots(exchange);
+        final Slot slot = exchangeSlots.computeIfAbsent(currencyPair, key -> new Slot());
+
+        for (CurrencyPair alias : aliases) {
+            exchangeSlots.putIfAbsent(alias, slot);
+        }
+    }
+
+    /**
+     * Is there a slot for this exchange and currency pair?
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @return true if a slot has been allocated.
+     */
+    public boolean isAllocated(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchange.getExchangeSpecification().getExchangeName());
+
+        return exchangeSlots != null && exchangeSlots.containsKey(currencyPair);
+    }
+
+    /**
+     * Get the latest Ticker for an exchange and currency pair.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @return The latest Ticker, or null if we haven't received one yet or the slot is stale.
+     */
+    public Ticker get(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchange.getExchangeSpecification().getExchangeName());
+
+        if (exchangeSlots == null) {
+            return null;
+        }
+
+        final Slot slot = exchangeSlots.get(currencyPair);
+
+        if (slot == null || slot.stale) {
+            return null;
+        }
+
+        final Snapshot snapshot = slot.snapshot.get();
+
+        return snapshot == null ? null : snapshot.getTicker();
+    }
+
+    /**
+     * Get the latest Snapshot for an exchange and currency pair.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @return The latest Snapshot, or null if we haven't received a Ticker yet or the slot is stale.
+     */
+    public Snapshot getSnapshot(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchange.getExchangeSpecification().getExchangeName());
+
+        if (exchangeSlots == null) {
+            return null;
+        }
+
+        final Slot slot = exchangeSlots.get(currencyPair);
+
+        return slot == null || slot.stale ? null : slot.snapshot.get();
+    }
+
+    /**
+     * Look up the slot for an exchange and currency pair, so that it can be used with store(Slot, Ticker) and
+     * getSnapshot(Slot) later on.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @return The slot, or null if one hasn't been allocated.
+     */
+    public Slot getSlot(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchange.getExchangeSpecification().getExchangeName());
+
+        return exchangeSlots == null ? null : exchangeSlots.get(currencyPair);
+    }
+
+    /**
+     * Get the latest Snapshot from a slot.
+     *
+     * @param slot The slot.
+     * @return The latest Snapshot, or null if we haven't received a Ticker yet or the slot is stale.
+     */
+    public Snapshot getSnapshot(Slot slot) {
+        return slot.stale ? null : slot.snapshot.get();
+    }
+
+    /**
+     * Store a new Ticker for an exchange and currency pair, allocating a slot if necessary. The new Ticker is rejected
+     * if both Tickers have a timestamp and the stored one is not older than the new one. Storing a Ticker clears the
+     * stale mark on the slot.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @param ticker The new Ticker.
+     * @return true if the Ticker was stored.
+     */
+    public boolean put(Exchange exchange, CurrencyPair currencyPair, Ticker ticker) {
+        return store(exchange, currencyPair, ticker) != StoreResult.REJECTED;
+    }
+
+    /**
+     * Store a new Ticker like put(), and say whether its prices are different from the ones we had before. A slot that
+     * was empty or stale always counts as changed.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @param ticker The new Ticker.
+     * @return Whether the Ticker was rejected, or stored with the same or different prices.
+     */
+    public StoreResult store(Exchange exchange, CurrencyPair currencyPair, Ticker ticker) {
+        final Map<CurrencyPair, Slot> exchangeSlots = getExchangeSlots(exchange);
+        Slot slot = exchangeSlots.get(currencyPair);
+
+        if (slot == null) {
+            slot = exchangeSlots.computeIfAbsent(currencyPair, key -> new Slot());
+        }
+
+        return store(slot, ticker);
+    }
+
+    /**
+     * Store a new Ticker in a slot that the caller has already looked up with getSlot(), the same way as
+     * store(Exchange, CurrencyPair, Ticker). Code that receives a lot of Tickers can look its slots up once ahead of
+     * time, so storing a Ticker doesn't have to find the slot by exchange name and currency pair every time.
+     *
+     * @param slot The slot.
+     * @param ticker The new Ticker.
+     * @return Whether the Ticker was rejected, or stored with the same or different prices.
+     */
+    public StoreResult store(Slot slot, Ticker ticker) {
+        Snapshot snapshot = null;
+
+        while (true) {
+            final Snapshot oldSnapshot = slot.snapshot.get();
+
+            if (oldSnapshot != null
+                && oldSnapshot.getTicker().getTimestamp() != null
+                && ticker.getTimestamp() != null
+                && !oldSnapshot.getTicker().getTimestamp().before(ticker.getTimestamp())) {
+                return StoreResult.REJECTED;
+            }
+
+            if (snapshot == null) {
+                snapshot = new Snapshot(ticker);
+            }
+
+            final boolean wasStale = slot.stale;
+
+            if (slot.snapshot.compareAndSet(oldSnapshot, snapshot)) {
+                slot.stale = false;
+
+                if (wasStale
+                    || oldSnapshot == null
+                    || Double.compare(oldSnapshot.getBid(), snapshot.getBid()) != 0
+                    || Double.compare(oldSnapshot.getAsk(), snapshot.getAsk()) != 0) {
+
+                    return StoreResult.CHANGED;
+                }
+
+                return StoreResult.UNCHANGED;
+            }
+        }
+    }
+
+    /**
+     * Mark the Ticker for an exchange and currency pair as stale, so it won't be returned until a new one is stored.
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @return true if there was a slot to mark.
+     */
+    public boolean markStale(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchange.getExchangeSpecification().getExchangeName());
+        final Slot slot = exchangeSlots == null ? null : exchangeSlots.get(currencyPair);
+
+        if (slot == null) {
+            return false;
+        }
+
+        slot.stale = true;
+
+        return true;
+    }
+
+    /**
+     * Is the Ticker for an exchange and currency pair marked as stale?
+     *
+     * @param exchange The exchange.
+     * @param currencyPair The currency pair.
+     * @return true if the slot is stale.
+     */
+    public boolean isStale(Exchange exchange, CurrencyPair currencyPair) {
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchange.getExchangeSpecification().getExchangeName());
+        final Slot slot = exchangeSlots == null ? null : exchangeSlots.get(currencyPair);
+
+        return slot != null && slot.stale;
+    }
+
+    /**
+     * Count the Tickers in the cache. Aliases are only counted once.
+     *
+     * @return The number of slots that contain a Ticker.
+     */
+    public int size() {
+        return (int) slots.values()
+            .stream()
+            .flatMap(exchangeSlots -> exchangeSlots.values().stream())
+            .distinct()
+            .filter(slot -> slot.snapshot.get() != null)
+            .count();
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private Map<CurrencyPair, Slot> getExchangeSlots(Exchange exchange) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final Map<CurrencyPair, Slot> exchangeSlots = slots.get(exchangeName);
+
+        if (exchangeSlots != null) {
+            return exchangeSlots;
+        }
+
+        return slots.computeIfAbsent(exchangeName, key -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * What happened when a Ticker was stored.
+     */
+    public enum StoreResult {
+        /**
+         * The Ticker was older than the one we already had, so it wasn't stored.
+         */
+        REJECTED,
+
+        /**
+         * The Ticker was stored, but its bid and ask are the same as before.
+         */
+        UNCHANGED,
+
+        /**
+         * The Ticker was stored and its prices are new.
+         */
+        CHANGED
+    }
+
+    /**
+     * A Ticker along with its bid and ask as doubles. A price that is missing or zero is represented as NaN.
+     */
+    public static final class Snapshot {
+        private final Ticker ticker;
+        private final double bid;
+        private final double ask;
+
+        public Snapshot(Ticker ticker) {
+            this.ticker = ticker;
+            this.bid = toDouble(ticker.getBid());
+            this.ask = toDouble(ticker.getAsk());
+        }
+
+        public Ticker getTicker() {
+            return ticker;
+        }
+
+        public double getBid() {
+            return bid;
+        }
+
+        public double getAsk() {
+            return ask;
+        }
+
+        private static double toDouble(BigDecimal price) {
+            if (price == null || price.signum() == 0) {
+                return Double.NaN;
+            }
+
+            return price.doubleValue();
+        }
+    }
+
+    /**
+     * The latest Snapshot for one exchange and currency pair.
+     */
+    public static final class Slot {
+        private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+        private volatile boolean stale = false;
+
+        private Slot() {
+        }
+    }
+}
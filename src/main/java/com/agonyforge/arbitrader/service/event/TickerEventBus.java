@@ -0,0 +1,158 @@
+package com.agonyforge.arbitrader.service.event;
+
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import org.knowm.xchange.Exchange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Delivers TickerEvents from each exchange's feed to the subscribers through a preallocated ring buffer.
+ *
+ * Every exchange gets its own ring and its own consumer thread, so the events from one feed are analyzed in the order
+ * they arrived and a slow exchange can't hold up the others. Publishing an event is a couple of atomic operations with
+ * no listener lookups, proxies or executor queues in between. When a ring is empty its consumer parks until the next
+ * event is published.
+ *
+ * If a ring fills up because analysis can't keep up, new events from that feed are dropped and counted rather than
+ * blocking the feed. The latest prices are already in the TickerService by the time an event is published, so the
+ * next event for the same exchange will be analyzed with them.
+ */
+@Component
+public class TickerEventBus {
+    static final int RING_CAPACITY = 1024;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerEventBus.class);
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final Map<Exchange, Feed> feeds = new ConcurrentHashMap<>();
+    private final List<Consumer<TickerEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private final LongAdder published = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    /**
+     * Register a consumer to receive TickerEvents from the bus.
+     *
+     * @param subscriber The consumer.
+     */
+    public void subscribe(Consumer<TickerEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Publish a TickerEvent onto the ring for its exchange.
+     *
+     * @param tickerEvent The TickerEvent.
+     */
+    public void publish(TickerEvent tickerEvent) {
+        final Feed feed = getFeed(tickerEvent.getExchange());
+
+        if (!feed.ring.offer(tickerEvent)) {
+            dropped.increment();
+            return;
+        }
+
+        published.increment();
+
+        if (feed.waiting) {
+            LockSupport.unpark(feed.consumer);
+        }
+    }
+
+    /**
+     * @return The number of TickerEvents published onto the bus.
+     */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /**
+     * @return The number of TickerEvents dropped because a ring was full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Stop the consumer threads.
+     */
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+
+        feeds.values().forEach(feed -> LockSupport.unpark(feed.consumer));
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private Feed getFeed(Exchange exchange) {
+        final Feed feed = feeds.get(exchange);
+
+        if (feed != null) {
+            return feed;
+        }
+
+        return feeds.computeIfAbsent(exchange, this::startFeed);
+    }
+
+    private Feed startFeed(Exchange exchange) {
+        final Feed feed = new Feed(new TickerRingBuffer(RING_CAPACITY));
+
+        feed.consumer = new Thread(() -> consume(feed),
+            "ticker-bus-" + exchange.getExchangeSpecification().getExchangeName());
+        feed.consumer.setDaemon(true);
+        feed.consumer.start();
+
+        LOGGER.debug("Started ticker bus consumer for {}", exchange.getExchangeSpecification().getExchangeName());
+
+        return feed;
+    }
+
+    // runs on the consumer thread for a feed
+    private void consume(Feed feed) {
+        while (running) {
+            final TickerEvent tickerEvent = feed.ring.poll();
+
+            if (tickerEvent == null) {
+                // announce that we're going to sleep, then check once more so we can't miss a wakeup
+                feed.waiting = true;
+
+                if (feed.ring.isEmpty() && running) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+
+                feed.waiting = false;
+                continue;
+            }
+
+            subscribers.forEach(subscriber -> {
+                try {
+                    subscriber.accept(tickerEvent);
+                } catch (RuntimeException e) {
+                    LOGGER.error("Unexpected exception while processing ticker event: ", e);
+                }
+            });
+        }
+    }
+
+    // the ring and consumer thread for one exchange
+    private static final class Feed {
+        private final TickerRingBuffer ring;
+        private volatile boolean waiting = false;
+        private Thread consumer;
+
+        private Feed(TickerRingBuffer ring) {
+            this.ring = ring;
+        }
+    }
+}
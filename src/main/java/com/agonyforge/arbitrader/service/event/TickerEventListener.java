@@ -1,17 +1,23 @@
 package com.agonyforge.arbitrader.service.event;
 
+import com.agonyforge.arbitrader.service.OpportunityRanker;
+import com.agonyforge.arbitrader.service.OrderBookPrefetcher;
 import com.agonyforge.arbitrader.service.SpreadService;
 import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.metrics.LatencyHistogram;
 import com.agonyforge.arbitrader.service.model.Spread;
 import com.agonyforge.arbitrader.service.model.TickerEvent;
 import com.agonyforge.arbitrader.service.TradingService;
 import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.knowm.xchange.currency.CurrencyPair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -24,45 +30,89 @@ public class TickerEventListener {
     private final TradingService tradingService;
     private final TickerService tickerService;
     private final SpreadService spreadService;
+    private final OpportunityRanker opportunityRanker;
+    private final OrderBookPrefetcher orderBookPrefetcher;
+    private final TickerMailbox tickerMailbox;
+    private final TickerEventBus tickerEventBus;
+    private final LatencyHistogram tickToDecisionLatency = new LatencyHistogram();
 
     public TickerEventListener(
         TradingService tradingService,
         TickerService tickerService,
-        SpreadService spreadService) {
+        SpreadService spreadService,
+        OpportunityRanker opportunityRanker,
+        OrderBookPrefetcher orderBookPrefetcher,
+        TickerMailbox tickerMailbox,
+        TickerEventBus tickerEventBus) {
 
         this.tradingService = tradingService;
         this.tickerService = tickerService;
         this.spreadService = spreadService;
+        this.opportunityRanker = opportunityRanker;
+        this.orderBookPrefetcher = orderBookPrefetcher;
+        this.tickerMailbox = tickerMailbox;
+        this.tickerEventBus = tickerEventBus;
     }
 
     /**
-     * Initiate trade analysis when a TickerEvent is received, but only for trade combinations that involve
-     * the exchange and currency pair that was updated. This code runs every time a ticker is received so it's
-     * important to make it as fast and as lightweight as possible.
+     * Receive TickerEvents from the mailbox or the ring buffer bus when one of those dispatch modes is configured.
+     * Both of them already run on their own threads, so the events are analyzed right away.
+     */
+    @PostConstruct
+    public void subscribe() {
+        tickerMailbox.subscribe(this::analyze);
+        tickerEventBus.subscribe(this::analyze);
+    }
+
+    /**
+     * The time from creating each TickerEvent until we finished analyzing it, which is useful for comparing
+     * the different dispatch modes.
+     *
+     * @return A histogram of tick to decision latencies.
+     */
+    public LatencyHistogram getTickToDecisionLatency() {
+        return tickToDecisionLatency;
+    }
+
+    /**
+     * Initiate trade analysis when a TickerEvent is received as a Spring application event.
      *
      * @param tickerEvent The TickerEvent we received.
      */
     @EventListener
     @Async
     public void onTradeEvent(TickerEvent tickerEvent) {
+        analyze(tickerEvent);
+    }
+
+    /**
+     * Analyze trade combinations that involve the exchange and currency pair that was updated. This code runs
+     * every time a ticker is received so it's important to make it as fast and as lightweight as possible.
+     *
+     * @param tickerEvent The TickerEvent we received.
+     */
+    public void analyze(TickerEvent tickerEvent) {
         LOGGER.trace("Received ticker event: {} {} {}/{}",
             tickerEvent.getExchange().getExchangeSpecification().getExchangeName(),
             tickerEvent.getTicker().getInstrument(),
             tickerEvent.getTicker().getBid(),
             tickerEvent.getTicker().getAsk());
 
-        List<TradeCombination> tradeCombinations = tickerService.getExchangeTradeCombinations();
+        List<TradeCombination> tradeCombinations = selectTradeCombinations(tickerEvent);
+        final boolean isLookingForEntry = tradingService.isLookingForEntry();
 
         tradeCombinations
-            .stream()
-            // only consider combinations where one of the exchanges is from the event
-            .filter(tradeCombination -> (
-                tradeCombination.getLongExchange().equals(tickerEvent.getExchange())
-                    || tradeCombination.getShortExchange().equals(tickerEvent.getExchange())
-            ))
-            // only consider combinations where the currency pair matches the event
-            .filter(tradeCombination -> tradeCombination.getCurrencyPair().equals(tickerEvent.getTicker().getInstrument()))
             .forEach(tradeCombination -> {
+                // get the order books on their way if we're getting close to an entry
+                if (isLookingForEntry) {
+                    orderBookPrefetcher.prefetchIfNear(tradeCombination, tradingService.getCachedEntrySpreadTarget(tradeCombination));
+                }
+
+                // skip the exact computation if the prices are nowhere near a trade
+                if (!tradingService.isNearTarget(tradeCombination)) {
+                    return;
+                }
+
                 Spread spread = spreadService.computeSpread(tradeCombination);
 
                 if (spread != null) { // spread will be null if any tickers were missing for this combination
@@ -72,5 +122,23 @@ public class TickerEventListener {
                     LOGGER.debug("Analyzed {} ({} ms)", spread, System.currentTimeMillis() - start);
                 }
             });
+
+        tickToDecisionLatency.record(System.nanoTime() - tickerEvent.getCreatedNanos());
+    }
+
+    // pick the combinations that could be affected by the event
+    private List<TradeCombination> selectTradeCombinations(TickerEvent tickerEvent) {
+        final CurrencyPair currencyPair = (CurrencyPair) tickerEvent.getTicker().getInstrument();
+
+        // when we're looking for an entry, the only combination worth analyzing is the best one for the currency pair
+        if (tradingService.isBestVenueEvaluation()) {
+            final TradeCombination best = tickerService.getBestTradeCombination(tickerEvent.getExchange(), currencyPair);
+
+            return best == null ? Collections.emptyList() : Collections.singletonList(best);
+        }
+
+        // only consider combinations where one of the exchanges and the currency pair are from the event,
+        // and try the most profitable ones first
+        return opportunityRanker.rank(tickerEvent.getExchange(), currencyPair);
     }
 }
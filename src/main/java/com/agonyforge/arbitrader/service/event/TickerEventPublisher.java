@@ -1,5 +1,7 @@
 package com.agonyforge.arbitrader.service.event;
 
+import com.agonyforge.arbitrader.config.TickerDispatch;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.model.TickerEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -14,13 +16,24 @@ public class TickerEventPublisher {
     private static final Logger LOGGER = LoggerFactory.getLogger(TickerEventPublisher.class);
 
     private final ApplicationEventPublisher applicationEventPublisher;
+    private final TradingConfiguration tradingConfiguration;
+    private final TickerMailbox tickerMailbox;
+    private final TickerEventBus tickerEventBus;
+
+    public TickerEventPublisher(
+        ApplicationEventPublisher applicationEventPublisher,
+        TradingConfiguration tradingConfiguration,
+        TickerMailbox tickerMailbox,
+        TickerEventBus tickerEventBus) {
 
-    public TickerEventPublisher(ApplicationEventPublisher applicationEventPublisher) {
         this.applicationEventPublisher = applicationEventPublisher;
+        this.tradingConfiguration = tradingConfiguration;
+        this.tickerMailbox = tickerMailbox;
+        this.tickerEventBus = tickerEventBus;
     }
 
     /**
-     * Publish a TickerEvent.
+     * Publish a TickerEvent using the dispatch mode from the configuration.
      *
      * @param tickerEvent the TickerEvent to publish.
      */
@@ -31,6 +44,14 @@ public class TickerEventPublisher {
             tickerEvent.getTicker().getBid(),
             tickerEvent.getTicker().getAsk());
 
-        applicationEventPublisher.publishEvent(tickerEvent);
+        final TickerDispatch tickerDispatch = tradingConfiguration.getTickerDispatch();
+
+        if (TickerDispatch.RING_BUFFER == tickerDispatch) {
+            tickerEventBus.publish(tickerEvent);
+        } else if (TickerDispatch.CONFLATING == tickerDispatch) {
+            tickerMailbox.offer(tickerEvent);
+        } else {
+            applicationEventPublisher.publishEvent(tickerEvent);
+        }
     }
 }
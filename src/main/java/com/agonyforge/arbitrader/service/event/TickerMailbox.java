@@ -0,0 +1,127 @@
+package com.agonyforge.arbitrader.service.event;
+
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.instrument.Instrument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * A conflating mailbox between the ticker strategies and trade analysis.
+ *
+ * Each exchange and currency pair has one slot that holds only the latest TickerEvent. When an event lands in an
+ * empty slot, a task is submitted to drain that slot. If another event for the same exchange and pair arrives before
+ * the task runs, it simply replaces the waiting one. That way a burst of websocket messages can't build up a queue of
+ * stale prices: there is never more than one waiting task per exchange and pair, no matter how fast prices arrive.
+ */
+@Component
+public class TickerMailbox {
+    private static final Logger LOGGER = LoggerFactory.getLogger(TickerMailbox.class);
+
+    private final Executor taskExecutor;
+    private final Map<Exchange, Map<Instrument, AtomicReference<TickerEvent>>> slots = new ConcurrentHashMap<>();
+    private final List<Consumer<TickerEvent>> subscribers = new CopyOnWriteArrayList<>();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+
+    public TickerMailbox(@Qualifier("taskExecutor") Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+    }
+
+    /**
+     * Register a consumer to receive the TickerEvents that come out of the mailbox.
+     *
+     * @param subscriber The consumer.
+     */
+    public void subscribe(Consumer<TickerEvent> subscriber) {
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Put a TickerEvent into the mailbox, replacing any event for the same exchange and currency pair that
+     * hasn't been delivered yet.
+     *
+     * @param tickerEvent The TickerEvent.
+     */
+    public void offer(TickerEvent tickerEvent) {
+        final AtomicReference<TickerEvent> slot = getSlot(tickerEvent);
+
+        received.increment();
+
+        if (slot.getAndSet(tickerEvent) == null) {
+            taskExecutor.execute(() -> drain(slot));
+        } else {
+            conflated.increment();
+        }
+    }
+
+    /**
+     * @return The number of TickerEvents offered to the mailbox.
+     */
+    public long getReceived() {
+        return received.sum();
+    }
+
+    /**
+     * @return The number of TickerEvents that were replaced by a newer one before they could be delivered.
+     */
+    public long getConflated() {
+        return conflated.sum();
+    }
+
+    /**
+     * @return The number of TickerEvents delivered to subscribers.
+     */
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    // deliver whatever is in the slot right now
+    private void drain(AtomicReference<TickerEvent> slot) {
+        final TickerEvent tickerEvent = slot.getAndSet(null);
+
+        if (tickerEvent == null) {
+            return;
+        }
+
+        delivered.increment();
+
+        subscribers.forEach(subscriber -> {
+            try {
+                subscriber.accept(tickerEvent);
+            } catch (RuntimeException e) {
+                LOGGER.error("Unexpected exception while processing ticker event: ", e);
+            }
+        });
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private AtomicReference<TickerEvent> getSlot(TickerEvent tickerEvent) {
+        Map<Instrument, AtomicReference<TickerEvent>> exchangeSlots = slots.get(tickerEvent.getExchange());
+
+        if (exchangeSlots == null) {
+            exchangeSlots = slots.computeIfAbsent(tickerEvent.getExchange(), key -> new ConcurrentHashMap<>());
+        }
+
+        final Instrument instrument = tickerEvent.getTicker().getInstrument();
+        final AtomicReference<TickerEvent> slot = exchangeSlots.get(instrument);
+
+        if (slot != null) {
+            return slot;
+        }
+
+        return exchangeSlots.computeIfAbsent(instrument, key -> new AtomicReference<>());
+    }
+}
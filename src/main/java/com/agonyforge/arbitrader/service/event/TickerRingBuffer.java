@@ -0,0 +1,102 @@
+package com.agonyforge.arbitrader.service.event;
+
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, preallocated ring of TickerEvents with a single consumer.
+ *
+ * Each feed is expected to have one producer, but producers still claim their sequence with a compare-and-set so
+ * that an unexpected second producer can't corrupt the ring. The claim is uncontended in the normal case, so it costs
+ * about the same as a plain write. Each slot carries its own sequence number, which tells the consumer when the slot
+ * has been published and tells the producer when the consumer is done with it.
+ */
+class TickerRingBuffer {
+    private final int mask;
+    private final AtomicReferenceArray<TickerEvent> events;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head = 0L; // only touched by the consumer
+
+    /**
+     * Create a new ring.
+     *
+     * @param capacity The number of slots. Must be a power of two.
+     */
+    TickerRingBuffer(int capacity) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+
+        this.mask = capacity - 1;
+        this.events = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Publish an event into the ring.
+     *
+     * @param tickerEvent The event to publish.
+     * @return false if the ring was full and the event was not published.
+     */
+    boolean offer(TickerEvent tickerEvent) {
+        while (true) {
+            final long position = tail.get();
+            final int index = (int) position & mask;
+            final long difference = sequences.get(index) - position;
+
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    events.lazySet(index, tickerEvent);
+                    sequences.set(index, position + 1);
+
+                    return true;
+                }
+            } else if (difference < 0) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Take the next event out of the ring. Only the consumer thread may call this.
+     *
+     * @return The next event, or null if the ring is empty.
+     */
+    TickerEvent poll() {
+        final int index = (int) head & mask;
+
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+
+        final TickerEvent tickerEvent = events.get(index);
+
+        events.lazySet(index, null);
+        sequences.set(index, head + mask + 1);
+        head++;
+
+        return tickerEvent;
+    }
+
+    /**
+     * @return true if there is nothing for the consumer to take.
+     */
+    boolean isEmpty() {
+        return sequences.get((int) head & mask) != head + 1;
+    }
+
+    /**
+     * @return The number of slots in the ring.
+     */
+    int capacity() {
+        return mask + 1;
+    }
+}
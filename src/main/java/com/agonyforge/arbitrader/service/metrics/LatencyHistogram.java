@@ -0,0 +1,136 @@
+package com.agonyforge.arbitrader.service.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A small lock-free histogram for latencies measured in nanoseconds.
+ *
+ * Values are grouped into buckets by their power of two, and each power of two is split into four sub-buckets, so
+ * percentiles are accurate to within 25% while recording a value is just a couple of atomic increments. That's
+ * plenty to tell whether something takes microseconds or milliseconds without slowing down the code it's measuring.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a latency.
+     *
+     * @param nanos The latency in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        final long value = Math.max(0L, nanos);
+
+        counts.incrementAndGet(bucketFor(value));
+        count.incrementAndGet();
+
+        long currentMax = max.get();
+
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * @return The largest latency recorded, in nanoseconds.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Estimate a percentile from the recorded latencies.
+     *
+     * @param percentile The percentile to estimate, between 0 and 100.
+     * @return The upper bound of the bucket containing the percentile, in nanoseconds, or zero if nothing was recorded.
+     */
+    public long getPercentile(double percentile) {
+        final long total = count.get();
+
+        if (total == 0) {
+            return 0L;
+        }
+
+        final long target = Math.max(1L, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+
+            if (seen >= target) {
+                return Math.min(upperBound(i), max.get());
+            }
+        }
+
+        return max.get();
+    }
+
+    /**
+     * Forget everything that has been recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+
+        count.set(0L);
+        max.set(0L);
+    }
+
+    /**
+     * @return A short summary of the percentiles, in microseconds.
+     */
+    @Override
+    public String toString() {
+        return String.format("count=%d p50=%dus p90=%dus p99=%dus max=%dus",
+            getCount(),
+            TimeUnit.NANOSECONDS.toMicros(getPercentile(50)),
+            TimeUnit.NANOSECONDS.toMicros(getPercentile(90)),
+            TimeUnit.NANOSECONDS.toMicros(getPercentile(99)),
+            TimeUnit.NANOSECONDS.toMicros(getMax()));
+    }
+
+    // values below SUB_BUCKETS get a bucket each, larger values are bucketed by magnitude and the next two bits
+    static int bucketFor(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    // the largest value that falls into a bucket
+    static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        final int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+
+        if (magnitude >= 63) {
+            return Long.MAX_VALUE;
+        }
+
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long lowerBound = (1L << magnitude) + (subBucket << (magnitude - SUB_BUCKET_BITS));
+
+        return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,207 @@
+package com.agonyforge.arbitrader.service.metrics;
+
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how old prices are by the time they reach us.
+ *
+ * Ticker timestamps come from each exchange's own clock, so before we can tell how old a Ticker is we need to know how
+ * far that clock is from ours. The offset for an exchange is estimated from the HTTP Date headers on its responses,
+ * NTP style: the server wrote the header at some point between sending the request and receiving the response, so we
+ * compare it against the middle of that window and smooth the samples over time. Date headers only have one second
+ * resolution, which the smoothing averages out.
+ *
+ * Exchanges we never see a Date header from fall back on their Ticker timestamps. A timestamp from the future proves
+ * the exchange's clock is ahead of ours by at least that much. A clock that is behind ours can't be told apart from a
+ * slow feed that way, so those exchanges may look a little staler than they are. The bound only remembers the last
+ * couple of minutes of timestamps, so one bad timestamp or a clock that has since been corrected is soon forgotten.
+ *
+ * The age of each Ticker is recorded in a LatencyHistogram per exchange and currency pair. report() summarizes them
+ * and starts a fresh window, and getLatencies() exposes the current window for anything else that wants to look.
+ */
+@Component
+public class TickerLatencyMonitor {
+    // Date headers are truncated to the second, so on average the server's clock is half a second later than they say
+    static final long DATE_HEADER_CORRECTION = 500L;
+
+    // how much weight each new Date header sample gets
+    static final double SMOOTHING = 0.2;
+
+    // the lower bound from Ticker timestamps is the largest one seen in this window or the one before it
+    static final long LOWER_BOUND_WINDOW = 60000L;
+
+    private final Map<String, ClockOffset> offsets = new ConcurrentHashMap<>();
+    private final Map<String, Map<CurrencyPair, LatencyHistogram>> latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Record the Date header from an exchange's HTTP response.
+     *
+     * @param exchange The Exchange that responded.
+     * @param date The value of the Date header.
+     * @param sentMillis When we sent the request, by our clock.
+     * @param receivedMillis When we received the response, by our clock.
+     */
+    public void recordDateHeader(Exchange exchange, Date date, long sentMillis, long receivedMillis) {
+        final long midpoint = sentMillis + (receivedMillis - sentMillis) / 2;
+
+        getClockOffset(exchange).addSample(date.getTime() + DATE_HEADER_CORRECTION - midpoint);
+    }
+
+    /**
+     * Record how old a Ticker was when we received it. Tickers without a timestamp are ignored.
+     *
+     * @param exchange The Exchange the Ticker came from.
+     * @param currencyPair The CurrencyPair.
+     * @param ticker The Ticker.
+     * @param receivedMillis When we received it, by our clock.
+     */
+    public void recordTicker(Exchange exchange, CurrencyPair currencyPair, Ticker ticker, long receivedMillis) {
+        final Date timestamp = ticker.getTimestamp();
+
+        if (timestamp == null) {
+            return;
+        }
+
+        final ClockOffset clockOffset = getClockOffset(exchange);
+
+        clockOffset.addLowerBound(timestamp.getTime() - receivedMillis, receivedMillis);
+
+        final long age = receivedMillis - (timestamp.getTime() - clockOffset.getOffset());
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        Map<CurrencyPair, LatencyHistogram> exchangeLatencies = latencies.get(exchangeName);
+
+        if (exchangeLatencies == null) {
+            exchangeLatencies = latencies.computeIfAbsent(exchangeName, key -> new ConcurrentHashMap<>());
+        }
+
+        LatencyHistogram histogram = exchangeLatencies.get(currencyPair);
+
+        if (histogram == null) {
+            histogram = exchangeLatencies.computeIfAbsent(currencyPair, key -> new LatencyHistogram());
+        }
+
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(age));
+    }
+
+    /**
+     * Get the estimated clock offset for an exchange.
+     *
+     * @param exchange The Exchange.
+     * @return How many milliseconds the exchange's clock is ahead of ours, or 0 if we don't know.
+     */
+    public long getOffset(Exchange exchange) {
+        final ClockOffset clockOffset = offsets.get(exchange.getExchangeSpecification().getExchangeName());
+
+        return clockOffset == null ? 0L : clockOffset.getOffset();
+    }
+
+    /**
+     * @return The Ticker age histograms for the current window, by exchange name and currency pair.
+     */
+    public Map<String, LatencyHistogram> getLatencies() {
+        final Map<String, LatencyHistogram> result = new TreeMap<>();
+
+        latencies.forEach((exchangeName, exchangeLatencies) -> exchangeLatencies.forEach((currencyPair, histogram) ->
+            result.put(exchangeName + " " + currencyPair, histogram)));
+
+        return result;
+    }
+
+    /**
+     * Summarize the Ticker ages for each exchange and currency pair since the last report, and start a new window.
+     *
+     * @return One line for each exchange and currency pair that received any Tickers.
+     */
+    public List<String> report() {
+        final List<String> lines = new ArrayList<>();
+
+        new TreeMap<>(latencies).forEach((exchangeName, exchangeLatencies) -> {
+            final ClockOffset clockOffset = offsets.get(exchangeName);
+
+            exchangeLatencies.forEach((currencyPair, histogram) -> {
+                if (histogram.getCount() == 0) {
+                    return;
+                }
+
+                lines.add(String.format("Ticker age for %s %s: count=%d p50=%dms p99=%dms max=%dms clock offset=%dms",
+                    exchangeName,
+                    currencyPair,
+                    histogram.getCount(),
+                    TimeUnit.NANOSECONDS.toMillis(histogram.getPercentile(50)),
+                    TimeUnit.NANOSECONDS.toMillis(histogram.getPercentile(99)),
+                    TimeUnit.NANOSECONDS.toMillis(histogram.getMax()),
+                    clockOffset == null ? 0L : clockOffset.getOffset()));
+
+                histogram.reset();
+            });
+        });
+
+        return lines;
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private ClockOffset getClockOffset(Exchange exchange) {
+        final String exchangeName = exchange.getExchangeSpecification().getExchangeName();
+        final ClockOffset clockOffset = offsets.get(exchangeName);
+
+        if (clockOffset != null) {
+            return clockOffset;
+        }
+
+        return offsets.computeIfAbsent(exchangeName, key -> new ClockOffset());
+    }
+
+    // the estimated offset for one exchange's clock
+    private static final class ClockOffset {
+        private boolean sampled = false;
+        private double smoothed = 0.0;
+        private long windowMax = 0L;
+        private long previousWindowMax = 0L;
+        private volatile long windowStart = 0L;
+        private volatile long lowerBound = 0L;
+        private volatile long offset = 0L;
+
+        synchronized void addSample(long sample) {
+            smoothed = sampled ? smoothed + SMOOTHING * (sample - smoothed) : sample;
+            sampled = true;
+            offset = Math.round(smoothed);
+        }
+
+        void addLowerBound(long bound, long now) {
+            // the fast path: nothing new to learn from most tickers
+            if (bound <= lowerBound && now - windowStart < LOWER_BOUND_WINDOW) {
+                return;
+            }
+
+            synchronized (this) {
+                if (now - windowStart >= LOWER_BOUND_WINDOW) {
+                    previousWindowMax = now - windowStart < 2 * LOWER_BOUND_WINDOW ? windowMax : 0L;
+                    windowMax = 0L;
+                    windowStart = now;
+                }
+
+                windowMax = Math.max(windowMax, bound);
+                lowerBound = Math.max(windowMax, previousWindowMax);
+
+                if (!sampled) {
+                    offset = lowerBound;
+                }
+            }
+        }
+
+        long getOffset() {
+            return offset;
+        }
+    }
+}
@@ -97,6 +97,7 @@ public class ActivePosition {
         private String orderId;
         private BigDecimal volume;
         private BigDecimal entry;
+        private BigDecimal replacedVolume; // volume filled by the orders that were repriced and replaced by orderId
 
         public String getExchange() {
             return exchange;
@@ -134,6 +135,14 @@ public class ActivePosition {
             this.entry = entry;
         }
 
+        public BigDecimal getReplacedVolume() {
+            return replacedVolume;
+        }
+
+        public void setReplacedVolume(BigDecimal replacedVolume) {
+            this.replacedVolume = replacedVolume;
+        }
+
         @Override
         public boolean equals(Object o) {
             if (this == o) return true;
@@ -142,12 +151,13 @@ public class ActivePosition {
             return Objects.equals(getExchange(), trade.getExchange()) &&
                 Objects.equals(getOrderId(), trade.getOrderId()) &&
                 Objects.equals(getVolume(), trade.getVolume()) &&
-                Objects.equals(getEntry(), trade.getEntry());
+                Objects.equals(getEntry(), trade.getEntry()) &&
+                Objects.equals(getReplacedVolume(), trade.getReplacedVolume());
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(getExchange(), getOrderId(), getVolume(), getEntry());
+            return Objects.hash(getExchange(), getOrderId(), getVolume(), getEntry(), getReplacedVolume());
         }
 
         @Override
@@ -157,6 +167,7 @@ public class ActivePosition {
                 ", orderId='" + orderId + '\'' +
                 ", volume=" + volume +
                 ", entry=" + entry +
+                ", replacedVolume=" + replacedVolume +
                 '}';
         }
     }
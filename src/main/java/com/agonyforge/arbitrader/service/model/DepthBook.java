@@ -0,0 +1,492 @@
+package com.agonyforge.arbitrader.service.model;
+
+import com.agonyforge.arbitrader.DecimalConstants;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * One side of an order book, kept in primitive arrays sorted best price first along with running totals of the volume
+ * and notional value up to each price level.
+ *
+ * Volumes are stored as whole units of 10^-8 so the running totals are exact. Finding the price needed to fill a volume
+ * is a binary search over the running volume totals instead of a walk down the order list. Each level also keeps the
+ * exact BigDecimal volume it came from, and if the units can't represent a book exactly, because an order had more
+ * than 8 decimal places or was too big for a long, the lookups walk down those exact volumes instead. If only the
+ * running total gets too big for a long, the levels before that point are still searched normally. Either way a
+ * volume lookup gives the same answer as adding up the BigDecimals from the order book would.
+ *
+ * Prices are kept as doubles for the searches and for screening, but each level also keeps the exact BigDecimal price
+ * it came from. Anything that ends up in an order sent to an exchange should use getLimitPriceForVolume(), which
+ * returns that exact price rather than one that has been through a double.
+ *
+ * Levels can be changed one at a time with update(). The running totals are only recomputed from the first changed
+ * level, and only when something asks for them. A DepthBook isn't thread safe while it's being updated, but once its
+ * totals are up to date it can be read from any number of threads.
+ */
+public class DepthBook {
+    public static final int VOLUME_SCALE = DecimalConstants.BTC_SCALE;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final boolean ascending;
+    private double[] prices;
+    private BigDecimal[] exactPrices;
+    private long[] volumes;
+    private BigDecimal[] exactVolumes;
+    private long[] cumulativeVolumes;
+    private double[] cumulativeNotionals;
+    private int size;
+    private int dirtyFrom;
+    private int overflowFrom = Integer.MAX_VALUE;
+    private boolean truncated;
+
+    /**
+     * Create an empty DepthBook.
+     *
+     * @param orderType ASK for a book of asks, lowest price first, or BID for a book of bids, highest price first.
+     */
+    public DepthBook(Order.OrderType orderType) {
+        this(orderType, INITIAL_CAPACITY);
+    }
+
+    private DepthBook(Order.OrderType orderType, int capacity) {
+        this.ascending = orderType == Order.OrderType.ASK;
+        this.prices = new double[capacity];
+        this.exactPrices = new BigDecimal[capacity];
+        this.volumes = new long[capacity];
+        this.exactVolumes = new BigDecimal[capacity];
+        this.cumulativeVolumes = new long[capacity];
+        this.cumulativeNotionals = new double[capacity];
+    }
+
+    /**
+     * Build a DepthBook from one side of an XChange OrderBook. Orders at the same price are combined into one level.
+     *
+     * @param orderType ASK or BID, to match the orders.
+     * @param orders The orders, usually already sorted best first as XChange gives them to us.
+     * @return A DepthBook with up to date running totals.
+     */
+    public static DepthBook of(Order.OrderType orderType, List<LimitOrder> orders) {
+        final DepthBook book = new DepthBook(orderType, Math.max(orders.size(), 1));
+
+        for (LimitOrder order : orders) {
+            final BigDecimal exactPrice = order.getLimitPrice();
+            final double price = exactPrice.doubleValue();
+            final BigDecimal exactVolume = order.getRemainingAmount();
+
+            if (exactVolume.signum() <= 0) {
+                continue;
+            }
+
+            final long volume = book.toBookUnits(exactVolume);
+
+            if (book.size > 0 && price == book.prices[book.size - 1]) {
+                book.addVolume(book.size - 1, exactVolume, volume);
+            } else if (book.size == 0 || book.isAhead(book.prices[book.size - 1], price)) {
+                book.prices[book.size] = price;
+                book.exactPrices[book.size] = exactPrice;
+                book.volumes[book.size] = volume;
+                book.exactVolumes[book.size] = exactVolume;
+                book.size++;
+            } else {
+                // out of order, so find where it goes
+                book.add(exactPrice, price, exactVolume, volume);
+            }
+        }
+
+        book.computeTotals();
+
+        return book;
+    }
+
+    /**
+     * Convert a volume to the whole units a DepthBook stores.
+     *
+     * @param volume The volume.
+     * @param roundingMode How to round anything smaller than a unit.
+     * @return The volume in units of 10^-8.
+     * @throws ArithmeticException if the volume is too big to fit in a long as units of 10^-8.
+     */
+    public static long toVolumeUnits(BigDecimal volume, RoundingMode roundingMode) {
+        return volume.setScale(VOLUME_SCALE, roundingMode).unscaledValue().longValueExact();
+    }
+
+    /**
+     * Set the volume at a price level, adding the level if it's new or removing it if the volume is zero.
+     *
+     * @param price The price of the level.
+     * @param volume The total volume at that price, in units of 10^-8.
+     */
+    public void update(BigDecimal price, long volume) {
+        update(price, price.doubleValue(), volume);
+    }
+
+    /**
+     * Set the volume at a price level like update(BigDecimal, long). A new level's exact price is taken from the
+     * double, so this is only meant for books that are used for screening.
+     *
+     * @param price The price of the level.
+     * @param volume The total volume at that price, in units of 10^-8.
+     */
+    public void update(double price, long volume) {
+        update(null, price, volume);
+    }
+
+    private void update(BigDecimal exactPrice, double price, long volume) {
+        final int index = indexOf(price);
+
+        if (index >= 0) {
+            if (volume > 0) {
+                volumes[index] = volume;
+                exactVolumes[index] = BigDecimal.valueOf(volume, VOLUME_SCALE);
+            } else {
+                System.arraycopy(prices, index + 1, prices, index, size - index - 1);
+                System.arraycopy(exactPrices, index + 1, exactPrices, index, size - index - 1);
+                System.arraycopy(volumes, index + 1, volumes, index, size - index - 1);
+                System.arraycopy(exactVolumes, index + 1, exactVolumes, index, size - index - 1);
+                size--;
+                exactPrices[size] = null;
+                exactVolumes[size] = null;
+            }
+
+            dirtyFrom = Math.min(dirtyFrom, index);
+        } else if (volume > 0) {
+            insert(
+                -(index + 1),
+                exactPrice == null ? BigDecimal.valueOf(price) : exactPrice,
+                price,
+                BigDecimal.valueOf(volume, VOLUME_SCALE),
+                volume);
+        }
+    }
+
+    /**
+     * @return The number of price levels.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The total volume on this side of the book, in units of 10^-8, or Long.MAX_VALUE if it's more than that.
+     */
+    public long getTotalVolume() {
+        computeTotals();
+
+        if (overflowFrom < size) {
+            return Long.MAX_VALUE;
+        }
+
+        return size == 0 ? 0 : cumulativeVolumes[size - 1];
+    }
+
+    /**
+     * Find the price of the level where the volume on offer first exceeds the volume we want. A limit order at this
+     * price should fill completely because there's enough volume at it or better.
+     *
+     * @param volume The volume we want to trade.
+     * @return The price, or NaN if the book doesn't have enough volume.
+     */
+    public double getPriceForVolume(BigDecimal volume) {
+        computeTotals();
+
+        final int index = findLevel(volume);
+
+        return index < size ? prices[index] : Double.NaN;
+    }
+
+    /**
+     * Find the price of the level where the volume on offer first exceeds the volume we want.
+     *
+     * @param volume The volume we want to trade, in units of 10^-8.
+     * @return The price, or NaN if the book doesn't have enough volume.
+     */
+    public double getPriceForVolume(long volume) {
+        computeTotals();
+
+        final int index = truncated
+            ? walkToLevel(BigDecimal.valueOf(volume, VOLUME_SCALE), false)
+            : findLevel(volume, false);
+
+        return index < size ? prices[index] : Double.NaN;
+    }
+
+    /**
+     * Find the exact price of the level where the volume on offer first exceeds the volume we want, as it was given to
+     * us by the exchange. This is the price to put in a limit order.
+     *
+     * @param volume The volume we want to trade.
+     * @return The price, or null if the book doesn't have enough volume.
+     */
+    public BigDecimal getLimitPriceForVolume(BigDecimal volume) {
+        computeTotals();
+
+        final int index = findLevel(volume);
+
+        return index < size ? exactPrices[index] : null;
+    }
+
+    /**
+     * Find the average price we'd pay or receive per unit if we filled a volume against this book.
+     *
+     * @param volume The volume we want to trade.
+     * @return The volume weighted average price, or NaN if the book doesn't have enough volume.
+     */
+    public double getVwapForVolume(BigDecimal volume) {
+        if (!truncated) {
+            try {
+                return getVwapForVolume(toVolumeUnits(volume, RoundingMode.UP));
+            } catch (ArithmeticException e) {
+                // more than a long can hold, so add it up the slow way
+            }
+        }
+
+        computeTotals();
+
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        return volume.signum() <= 0 ? prices[0] : walkVwap(volume);
+    }
+
+    /**
+     * Find the average price we'd pay or receive per unit if we filled a volume against this book.
+     *
+     * @param volume The volume we want to trade, in units of 10^-8.
+     * @return The volume weighted average price, or NaN if the book doesn't have enough volume.
+     */
+    public double getVwapForVolume(long volume) {
+        computeTotals();
+
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        if (volume <= 0) {
+            return prices[0];
+        }
+
+        if (truncated) {
+            return walkVwap(BigDecimal.valueOf(volume, VOLUME_SCALE));
+        }
+
+        // the level that completes the fill, which we only use part of
+        final int index = findLevel(volume, true);
+
+        if (index >= size) {
+            return Double.NaN;
+        }
+
+        final long filledBefore = index == 0 ? 0 : cumulativeVolumes[index - 1];
+        final double notionalBefore = index == 0 ? 0.0 : cumulativeNotionals[index - 1];
+
+        return (notionalBefore + (volume - filledBefore) * prices[index]) / volume;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("DepthBook{%s, %d levels, best=%s}",
+            ascending ? "ASK" : "BID",
+            size,
+            size == 0 ? "none" : prices[0]);
+    }
+
+    // does price a come before price b in this book?
+    private boolean isAhead(double a, double b) {
+        return ascending ? a < b : a > b;
+    }
+
+    // convert an order's volume to units, remembering if the units aren't exactly the volume
+    private long toBookUnits(BigDecimal volume) {
+        final BigDecimal scaled = volume.setScale(VOLUME_SCALE, RoundingMode.DOWN);
+
+        if (scaled.compareTo(volume) != 0) {
+            truncated = true;
+        }
+
+        try {
+            return scaled.unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            truncated = true;
+            return Long.MAX_VALUE;
+        }
+    }
+
+    // the first level whose running volume exceeds the volume, or size if there isn't one
+    private int findLevel(BigDecimal volume) {
+        if (!truncated) {
+            try {
+                // the running totals are whole units, so they exceed the volume exactly when they exceed it rounded down
+                return findLevel(toVolumeUnits(volume, RoundingMode.DOWN), false);
+            } catch (ArithmeticException e) {
+                // more than a long can hold, so add it up the slow way
+            }
+        }
+
+        return walkToLevel(volume, false);
+    }
+
+    // the first level whose running volume exceeds (or reaches, if inclusive) the volume, or size if there isn't one
+    private int findLevel(long volume, boolean inclusive) {
+        int low = 0;
+        int high = Math.min(size, overflowFrom);
+
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            final long cumulative = cumulativeVolumes[mid];
+
+            if (inclusive ? cumulative >= volume : cumulative > volume) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        // if we got as far as a running total that's too big for a long, it's more than any volume we could be given
+        return low;
+    }
+
+    // the same search as findLevel(), adding up the exact volumes one level at a time
+    private int walkToLevel(BigDecimal volume, boolean inclusive) {
+        BigDecimal cumulative = BigDecimal.ZERO;
+
+        for (int i = 0; i < size; i++) {
+            cumulative = cumulative.add(exactVolumes[i]);
+
+            final int comparison = cumulative.compareTo(volume);
+
+            if (inclusive ? comparison >= 0 : comparison > 0) {
+                return i;
+            }
+        }
+
+        return size;
+    }
+
+    // getVwapForVolume() using the exact volumes one level at a time
+    private double walkVwap(BigDecimal volume) {
+        BigDecimal remaining = volume;
+        double notional = 0.0;
+
+        for (int i = 0; i < size; i++) {
+            final BigDecimal filled = exactVolumes[i].min(remaining);
+
+            notional += filled.doubleValue() * prices[i];
+            remaining = remaining.subtract(filled);
+
+            if (remaining.signum() <= 0) {
+                return notional / volume.doubleValue();
+            }
+        }
+
+        return Double.NaN;
+    }
+
+    // binary search for a price, returning -(insertion point + 1) if it isn't there, like Arrays.binarySearch()
+    private int indexOf(double price) {
+        int low = 0;
+        int high = size - 1;
+
+        while (low <= high) {
+            final int mid = (low + high) >>> 1;
+            final double midPrice = prices[mid];
+
+            if (midPrice == price) {
+                return mid;
+            } else if (isAhead(midPrice, price)) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        return -(low + 1);
+    }
+
+    private void add(BigDecimal exactPrice, double price, BigDecimal exactVolume, long volume) {
+        final int index = indexOf(price);
+
+        if (index >= 0) {
+            addVolume(index, exactVolume, volume);
+            dirtyFrom = Math.min(dirtyFrom, index);
+        } else {
+            insert(-(index + 1), exactPrice, price, exactVolume, volume);
+        }
+    }
+
+    private void addVolume(int index, BigDecimal exactVolume, long volume) {
+        exactVolumes[index] = exactVolumes[index].add(exactVolume);
+
+        try {
+            volumes[index] = Math.addExact(volumes[index], volume);
+        } catch (ArithmeticException e) {
+            truncated = true;
+            volumes[index] = Long.MAX_VALUE;
+        }
+    }
+
+    private void insert(int index, BigDecimal exactPrice, double price, BigDecimal exactVolume, long volume) {
+        if (size == prices.length) {
+            final int capacity = prices.length * 2;
+
+            prices = Arrays.copyOf(prices, capacity);
+            exactPrices = Arrays.copyOf(exactPrices, capacity);
+            volumes = Arrays.copyOf(volumes, capacity);
+            exactVolumes = Arrays.copyOf(exactVolumes, capacity);
+            cumulativeVolumes = Arrays.copyOf(cumulativeVolumes, capacity);
+            cumulativeNotionals = Arrays.copyOf(cumulativeNotionals, capacity);
+        }
+
+        System.arraycopy(prices, index, prices, index + 1, size - index);
+        System.arraycopy(exactPrices, index, exactPrices, index + 1, size - index);
+        System.arraycopy(volumes, index, volumes, index + 1, size - index);
+        System.arraycopy(exactVolumes, index, exactVolumes, index + 1, size - index);
+
+        prices[index] = price;
+        exactPrices[index] = exactPrice;
+        volumes[index] = volume;
+        exactVolumes[index] = exactVolume;
+        size++;
+
+        dirtyFrom = Math.min(dirtyFrom, index);
+    }
+
+    // bring the running totals up to date from the first level that changed, stopping if they get too big for a long
+    private void computeTotals() {
+        if (dirtyFrom >= size) {
+            return;
+        }
+
+        // nothing reads the totals past the one that overflowed, so only recompute if something before it changed
+        if (dirtyFrom > overflowFrom) {
+            dirtyFrom = size;
+            return;
+        }
+
+        long volume = dirtyFrom == 0 ? 0 : cumulativeVolumes[dirtyFrom - 1];
+        double notional = dirtyFrom == 0 ? 0.0 : cumulativeNotionals[dirtyFrom - 1];
+
+        overflowFrom = Integer.MAX_VALUE;
+
+        for (int i = dirtyFrom; i < size; i++) {
+            try {
+                volume = Math.addExact(volume, volumes[i]);
+            } catch (ArithmeticException e) {
+                overflowFrom = i;
+                break;
+            }
+
+            notional += volumes[i] * prices[i];
+            cumulativeVolumes[i] = volume;
+            cumulativeNotionals[i] = notional;
+        }
+
+        dirtyFrom = size;
+    }
+}
@@ -23,10 +23,6 @@ public class ExchangeFee {
         this.marginFee = marginFee;
     }
 
-    public ExchangeFee ( int i , int i1 ) {
-        this (BigDecimal.ZERO,BigDecimal.ZERO);
-    }
-
     /**
      * The fee amount charged for a margin trade, for example when you borrow a coin to sell at a later point.
      * If the exchange is not set as a margin exchange then marginFee may be null. So here we return an Optional
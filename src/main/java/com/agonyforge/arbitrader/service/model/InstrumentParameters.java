@@ -0,0 +1,148 @@
+package com.agonyforge.arbitrader.service.model;
+
+import com.agonyforge.arbitrader.DecimalConstants;
+import com.agonyforge.arbitrader.config.FeeComputation;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.meta.CurrencyPairMetaData;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * Everything we need to know about trading one currency pair on one exchange, looked up from the exchange's metadata
+ * and configuration ahead of time so that deciding on a trade doesn't have to.
+ *
+ * Each TradeCombination has one for each of its exchanges. They're immutable, so if the metadata changes they need to
+ * be built again.
+ */
+public class InstrumentParameters {
+    static final BigDecimal DEFAULT_MINIMUM_AMOUNT = new BigDecimal("0.001");
+
+    private final CurrencyPair currencyPair;
+    private final FeeComputation feeComputation;
+    private final int volumeScale;
+    private final int priceScale;
+    private final BigDecimal amountStepSize;
+    private final BigDecimal minimumAmount;
+
+    public InstrumentParameters(
+        CurrencyPair currencyPair,
+        FeeComputation feeComputation,
+        int volumeScale,
+        int priceScale,
+        BigDecimal amountStepSize,
+        BigDecimal minimumAmount) {
+
+        this.currencyPair = currencyPair;
+        this.feeComputation = feeComputation;
+        this.volumeScale = volumeScale;
+        this.priceScale = priceScale;
+        this.amountStepSize = amountStepSize;
+        this.minimumAmount = minimumAmount;
+    }
+
+    /**
+     * Look up the parameters for a currency pair on an exchange.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPair The CurrencyPair, not converted for home currency.
+     * @param exchangeCurrencyPair The CurrencyPair as the exchange knows it.
+     * @param feeComputation The FeeComputation configured for the exchange.
+     * @return The InstrumentParameters.
+     */
+    public static InstrumentParameters of(Exchange exchange, CurrencyPair currencyPair, CurrencyPair exchangeCurrencyPair, FeeComputation feeComputation) {
+        final CurrencyPairMetaData pairMetaData = getCurrencyPairMetaData(exchange, currencyPair);
+        final CurrencyPairMetaData exchangePairMetaData = getCurrencyPairMetaData(exchange, exchangeCurrencyPair);
+
+        return new InstrumentParameters(
+            exchangeCurrencyPair,
+            feeComputation,
+            computeVolumeScale(exchange, exchangeCurrencyPair),
+            computePriceScale(exchange, exchangeCurrencyPair),
+            pairMetaData == null ? null : pairMetaData.getAmountStepSize(),
+            exchangePairMetaData == null || exchangePairMetaData.getMinimumAmount() == null
+                ? DEFAULT_MINIMUM_AMOUNT
+                : exchangePairMetaData.getMinimumAmount());
+    }
+
+    /**
+     * Fetch the volume scale from an exchange's metadata. If there is no metadata, fall back to BTC's default of 8
+     * places that should work in most cases.
+     *
+     * @param exchange The exchange to fetch metadata from.
+     * @param currencyPair The currency pair to look for.
+     * @return The number of decimals allowed for a volume in this currency pair on this exchange.
+     */
+    public static int computeVolumeScale(Exchange exchange, CurrencyPair currencyPair) {
+        final CurrencyPairMetaData currencyPairMetaData = getCurrencyPairMetaData(exchange, currencyPair);
+
+        if (currencyPairMetaData == null || currencyPairMetaData.getVolumeScale() == null) {
+            return DecimalConstants.BTC_SCALE;
+        }
+
+        return currencyPairMetaData.getVolumeScale();
+    }
+
+    /**
+     * Fetch the price scale from an exchange's metadata, or return a default value if it cannot be found.
+     *
+     * @param exchange The exchange to fetch metadata from.
+     * @param currencyPair The currency pair to look for.
+     * @return The number of decimals allowed for a price in this currency pair on this exchange.
+     */
+    public static int computePriceScale(Exchange exchange, CurrencyPair currencyPair) {
+        final CurrencyPairMetaData currencyPairMetaData = getCurrencyPairMetaData(exchange, currencyPair);
+
+        if (currencyPairMetaData == null) {
+            return DecimalConstants.BTC_SCALE;
+        }
+
+        if (currencyPairMetaData.getPriceScale() == null) {
+            return DecimalConstants.USD_SCALE;
+        }
+
+        return currencyPairMetaData.getPriceScale();
+    }
+
+    private static CurrencyPairMetaData getCurrencyPairMetaData(Exchange exchange, CurrencyPair currencyPair) {
+        final ExchangeMetaData exchangeMetaData = exchange.getExchangeMetaData();
+        final Map<CurrencyPair, CurrencyPairMetaData> currencyPairs = exchangeMetaData == null ? null : exchangeMetaData.getCurrencyPairs();
+
+        return currencyPairs == null ? null : currencyPairs.get(currencyPair);
+    }
+
+    /**
+     * @return The CurrencyPair as the exchange knows it, converted for its home currency.
+     */
+    public CurrencyPair getCurrencyPair() {
+        return currencyPair;
+    }
+
+    public FeeComputation getFeeComputation() {
+        return feeComputation;
+    }
+
+    public int getVolumeScale() {
+        return volumeScale;
+    }
+
+    public int getPriceScale() {
+        return priceScale;
+    }
+
+    /**
+     * @return The step size for order volumes, or null if the exchange doesn't have one.
+     */
+    public BigDecimal getAmountStepSize() {
+        return amountStepSize;
+    }
+
+    /**
+     * @return The smallest order the exchange allows.
+     */
+    public BigDecimal getMinimumAmount() {
+        return minimumAmount;
+    }
+}
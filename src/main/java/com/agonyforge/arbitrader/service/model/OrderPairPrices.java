@@ -0,0 +1,117 @@
+package com.agonyforge.arbitrader.service.model;
+
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * The limit prices of both legs of an order pair while they're waiting to fill, and the spread target they were placed
+ * to meet.
+ *
+ * The spread between the legs is (short price - long price) / long price, the same as SpreadService computes it. When
+ * one leg is repriced the other one stays where it is, so each leg has a worst price it can be moved to before the
+ * spread misses the target: for an entry the spread has to stay at or above the entry target, and for an exit at or
+ * below the exit target. Either way that's a price no higher for a buy order and no lower for a sell order.
+ *
+ * Both legs can be repriced at the same time, so a new price is capped and remembered in one step. That way each leg
+ * is always limited by the price the other one is actually at.
+ */
+public class OrderPairPrices {
+    private final Order.OrderType longType;
+    private final Order.OrderType shortType;
+    private final int longScale;
+    private final int shortScale;
+    private final BigDecimal spreadTarget;
+    private BigDecimal longPrice;
+    private BigDecimal shortPrice;
+
+    /**
+     * @param longOrder The order placed on the long exchange.
+     * @param shortOrder The order placed on the short exchange.
+     * @param spreadTarget The spread the pair has to keep, or null if it doesn't matter, such as for a forced trade.
+     */
+    public OrderPairPrices(LimitOrder longOrder, LimitOrder shortOrder, BigDecimal spreadTarget) {
+        this.longType = longOrder.getType();
+        this.shortType = shortOrder.getType();
+        this.longScale = longOrder.getLimitPrice().scale();
+        this.shortScale = shortOrder.getLimitPrice().scale();
+        this.spreadTarget = spreadTarget;
+        this.longPrice = longOrder.getLimitPrice();
+        this.shortPrice = shortOrder.getLimitPrice();
+    }
+
+    /**
+     * @return The worst price the long leg can be repriced to, or null if there's no spread target.
+     */
+    public synchronized BigDecimal getWorstLongPrice() {
+        if (spreadTarget == null) {
+            return null;
+        }
+
+        return shortPrice.divide(BigDecimal.ONE.add(spreadTarget), longScale, getRounding(longType));
+    }
+
+    /**
+     * @return The worst price the short leg can be repriced to, or null if there's no spread target.
+     */
+    public synchronized BigDecimal getWorstShortPrice() {
+        if (spreadTarget == null) {
+            return null;
+        }
+
+        return longPrice.multiply(BigDecimal.ONE.add(spreadTarget)).setScale(shortScale, getRounding(shortType));
+    }
+
+    /**
+     * Move the long leg to a new price, or as close to it as the spread target allows.
+     *
+     * @param price The price we'd like.
+     * @return The price the long leg should be placed at.
+     */
+    public synchronized BigDecimal repriceLong(BigDecimal price) {
+        longPrice = cap(longType, price, getWorstLongPrice());
+
+        return longPrice;
+    }
+
+    /**
+     * Move the short leg to a new price, or as close to it as the spread target allows.
+     *
+     * @param price The price we'd like.
+     * @return The price the short leg should be placed at.
+     */
+    public synchronized BigDecimal repriceShort(BigDecimal price) {
+        shortPrice = cap(shortType, price, getWorstShortPrice());
+
+        return shortPrice;
+    }
+
+    /**
+     * Is a price worse than the worst price a leg can have?
+     *
+     * @param type BID for a buy order or ASK for a sell order.
+     * @param price The price.
+     * @param worstPrice The worst price, or null if there isn't one.
+     * @return true if the price is higher than the worst price for a buy order, or lower for a sell order.
+     */
+    public static boolean isPast(Order.OrderType type, BigDecimal price, BigDecimal worstPrice) {
+        if (worstPrice == null) {
+            return false;
+        }
+
+        final int comparison = price.compareTo(worstPrice);
+
+        return Order.OrderType.BID.equals(type) ? comparison > 0 : comparison < 0;
+    }
+
+    private static BigDecimal cap(Order.OrderType type, BigDecimal price, BigDecimal worstPrice) {
+        return isPast(type, price, worstPrice) ? worstPrice : price;
+    }
+
+    // round towards the better side, so rounding can't take the spread past the target
+    private static RoundingMode getRounding(Order.OrderType type) {
+        return Order.OrderType.BID.equals(type) ? RoundingMode.DOWN : RoundingMode.UP;
+    }
+}
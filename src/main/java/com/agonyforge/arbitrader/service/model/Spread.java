@@ -18,6 +18,8 @@ public class Spread {
     private final Ticker shortTicker;
     private final BigDecimal in;
     private final BigDecimal out;
+    private final InstrumentParameters longParameters;
+    private final InstrumentParameters shortParameters;
 
     public Spread(
         CurrencyPair currencyPair,
@@ -28,6 +30,20 @@ public class Spread {
         BigDecimal in,
         BigDecimal out) {
 
+        this(currencyPair, longExchange, shortExchange, longTicker, shortTicker, in, out, null, null);
+    }
+
+    public Spread(
+        CurrencyPair currencyPair,
+        Exchange longExchange,
+        Exchange shortExchange,
+        Ticker longTicker,
+        Ticker shortTicker,
+        BigDecimal in,
+        BigDecimal out,
+        InstrumentParameters longParameters,
+        InstrumentParameters shortParameters) {
+
         this.currencyPair = currencyPair;
         this.longExchange = longExchange;
         this.shortExchange = shortExchange;
@@ -35,6 +51,8 @@ public class Spread {
         this.shortTicker = shortTicker;
         this.in = in;
         this.out = out;
+        this.longParameters = longParameters;
+        this.shortParameters = shortParameters;
     }
 
     public CurrencyPair getCurrencyPair() {
@@ -65,6 +83,20 @@ public class Spread {
         return out;
     }
 
+    /**
+     * @return The InstrumentParameters for the long exchange, or null if they weren't looked up.
+     */
+    public InstrumentParameters getLongParameters() {
+        return longParameters;
+    }
+
+    /**
+     * @return The InstrumentParameters for the short exchange, or null if they weren't looked up.
+     */
+    public InstrumentParameters getShortParameters() {
+        return shortParameters;
+    }
+
     @Override
     public String toString() {
         return String.format("%s/%s %s %f/%f",
@@ -11,6 +11,7 @@ public class TickerEvent extends ApplicationEvent {
 
     private final Ticker ticker;
     private final Exchange exchange;
+    private final long createdNanos = System.nanoTime();
 
     /**
      * Create a new {@code ApplicationEvent}.
@@ -31,4 +32,14 @@ public class TickerEvent extends ApplicationEvent {
     public Exchange getExchange() {
         return exchange;
     }
+
+    /**
+     * The time this event was created, for measuring how long it takes to analyze. This value comes from
+     * System.nanoTime() so it is only meaningful compared to other nanoTime() values.
+     *
+     * @return The time this event was created, in nanoseconds.
+     */
+    public long getCreatedNanos() {
+        return createdNanos;
+    }
 }
@@ -13,11 +13,25 @@ public class TradeCombination {
     private final Exchange longExchange;
     private final Exchange shortExchange;
     private final CurrencyPair currencyPair;
+    private final InstrumentParameters longParameters;
+    private final InstrumentParameters shortParameters;
 
     public TradeCombination(Exchange longExchange, Exchange shortExchange, CurrencyPair currencyPair) {
+        this(longExchange, shortExchange, currencyPair, null, null);
+    }
+
+    public TradeCombination(
+        Exchange longExchange,
+        Exchange shortExchange,
+        CurrencyPair currencyPair,
+        InstrumentParameters longParameters,
+        InstrumentParameters shortParameters) {
+
         this.longExchange = longExchange;
         this.shortExchange = shortExchange;
         this.currencyPair = currencyPair;
+        this.longParameters = longParameters;
+        this.shortParameters = shortParameters;
     }
 
     public Exchange getLongExchange() {
@@ -32,6 +46,20 @@ public class TradeCombination {
         return currencyPair;
     }
 
+    /**
+     * @return The InstrumentParameters for the long exchange, or null if they weren't looked up.
+     */
+    public InstrumentParameters getLongParameters() {
+        return longParameters;
+    }
+
+    /**
+     * @return The InstrumentParameters for the short exchange, or null if they weren't looked up.
+     */
+    public InstrumentParameters getShortParameters() {
+        return shortParameters;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
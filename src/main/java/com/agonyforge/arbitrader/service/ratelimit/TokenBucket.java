@@ -0,0 +1,103 @@
+package com.agonyforge.arbitrader.service.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Paces requests to an exchange. The bucket refills at a steady rate of tokens per second up to a maximum, and each
+ * request takes a token out. A full bucket lets a burst of requests through at once, and after that they go through
+ * at the refill rate.
+ */
+public class TokenBucket {
+    private final double tokensPerNano;
+    private final int capacity;
+    private final LongSupplier nanoClock;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * Create a full TokenBucket.
+     *
+     * @param tokensPerSecond How fast the bucket refills.
+     * @param capacity The most tokens the bucket can hold.
+     */
+    public TokenBucket(double tokensPerSecond, int capacity) {
+        this(tokensPerSecond, capacity, System::nanoTime);
+    }
+
+    TokenBucket(double tokensPerSecond, int capacity, LongSupplier nanoClock) {
+        if (tokensPerSecond <= 0.0 || capacity < 1) {
+            throw new IllegalArgumentException("A TokenBucket needs a positive rate and a capacity of at least 1");
+        }
+
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = capacity;
+        this.nanoClock = nanoClock;
+        this.tokens = capacity;
+        this.lastRefill = nanoClock.getAsLong();
+    }
+
+    /**
+     * @return The most tokens the bucket can hold.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Take tokens if there are enough of them right now.
+     *
+     * @param count How many tokens to take.
+     * @return true if the tokens were taken, or false if there weren't enough.
+     */
+    public synchronized boolean tryAcquire(int count) {
+        refill();
+
+        if (tokens >= count) {
+            tokens -= count;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Take tokens, waiting for the bucket to refill if there aren't enough. Asking for more tokens than the bucket can
+     * hold waits for a full bucket and then leaves it owing the difference, so the average rate still holds.
+     *
+     * @param count How many tokens to take.
+     * @throws InterruptedException if the thread is interrupted while waiting.
+     */
+    public void acquire(int count) throws InterruptedException {
+        final int needed = Math.min(count, capacity);
+
+        while (true) {
+            final long waitNanos;
+
+            synchronized (this) {
+                refill();
+
+                if (tokens >= needed) {
+                    tokens -= count;
+                    return;
+                }
+
+                waitNanos = (long) Math.ceil((needed - tokens) / tokensPerNano);
+            }
+
+            TimeUnit.NANOSECONDS.sleep(Math.max(waitNanos, 1L));
+        }
+    }
+
+    private void refill() {
+        final long now = nanoClock.getAsLong();
+
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("TokenBucket{%.2f/s, %.2f/%d}", tokensPerNano * TimeUnit.SECONDS.toNanos(1), tokens, capacity);
+    }
+}
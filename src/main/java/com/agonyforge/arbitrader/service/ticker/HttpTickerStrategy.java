@@ -0,0 +1,226 @@
+package com.agonyforge.arbitrader.service.ticker;
+
+import com.agonyforge.arbitrader.config.HttpTickerConfiguration;
+import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
+import com.agonyforge.arbitrader.service.ExchangeService;
+import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.jetbrains.annotations.NotNull;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * A TickerStrategy that fetches each ticker from the exchange's public REST API with its own request, without going
+ * through XChange. All the requests are started at once on a shared OkHttpClient, which keeps connections to each
+ * exchange alive between polls and limits how many requests are in progress to each one. The responses are decoded
+ * using the exchange's httpTicker configuration, and their Date headers help estimate the exchange's clock offset.
+ */
+public class HttpTickerStrategy implements TickerStrategy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HttpTickerStrategy.class);
+
+    private final NotificationConfiguration notificationConfiguration;
+    private final TradingConfiguration tradingConfiguration;
+    private final ExchangeService exchangeService;
+    private final ErrorCollectorService errorCollectorService;
+    private final TickerEventPublisher tickerEventPublisher;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final OkHttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final TickerLatencyMonitor tickerLatencyMonitor;
+
+    public HttpTickerStrategy(
+        NotificationConfiguration notificationConfiguration,
+        TradingConfiguration tradingConfiguration,
+        ErrorCollectorService errorCollectorService,
+        ExchangeService exchangeService,
+        TickerEventPublisher tickerEventPublisher,
+        ExchangeIoExecutor exchangeIoExecutor,
+        OkHttpClient httpClient,
+        ObjectMapper objectMapper,
+        TickerLatencyMonitor tickerLatencyMonitor) {
+
+        this.notificationConfiguration = notificationConfiguration;
+        this.tradingConfiguration = tradingConfiguration;
+        this.errorCollectorService = errorCollectorService;
+        this.exchangeService = exchangeService;
+        this.tickerEventPublisher = tickerEventPublisher;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.tickerLatencyMonitor = tickerLatencyMonitor;
+    }
+
+    @Override
+    public void getTickers(Exchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
+        final HttpTickerConfiguration configuration = exchangeService.getExchangeMetadata(exchange).getHttpTicker();
+        final CountDownLatch remaining = new CountDownLatch(currencyPairs.size());
+        final Queue<Ticker> fetched = new ConcurrentLinkedQueue<>();
+        final long start = System.currentTimeMillis();
+
+        // start all the requests at once, OkHttp queues any that are over the limit for the exchange
+        currencyPairs.forEach(currencyPair -> {
+            final CurrencyPair exchangePair = exchangeService.convertExchangePair(exchange, currencyPair);
+            final long requestStart = System.nanoTime();
+            final Request request;
+
+            try {
+                request = new Request.Builder()
+                    .url(buildUrl(configuration, exchangePair))
+                    .build();
+            } catch (IllegalArgumentException e) {
+                errorCollectorService.collect(exchange, e);
+                LOGGER.debug("Invalid ticker URL for {}: {}", exchangePair, e.getMessage());
+                remaining.countDown();
+                return;
+            }
+
+            httpClient.newCall(request).enqueue(new Callback() {
+                @Override
+                public void onFailure(@NotNull Call call, @NotNull IOException e) {
+                    errorCollectorService.collect(exchange, e);
+                    LOGGER.debug("Unable to fetch ticker for {}: {}", exchangePair, e.getMessage());
+                    remaining.countDown();
+                }
+
+                @Override
+                public void onResponse(@NotNull Call call, @NotNull Response response) {
+                    try (ResponseBody body = response.body()) {
+                        exchangeIoExecutor.recordLatency(exchange, System.nanoTime() - requestStart);
+
+                        final Date serverDate = response.headers().getDate("Date");
+
+                        if (serverDate != null) {
+                            tickerLatencyMonitor.recordDateHeader(exchange, serverDate, response.sentRequestAtMillis(), response.receivedResponseAtMillis());
+                        }
+
+                        if (!response.isSuccessful() || body == null) {
+                            throw new IOException("HTTP " + response.code() + " fetching ticker for " + exchangePair);
+                        }
+
+                        final Ticker ticker = decode(configuration, exchangePair, body.string());
+
+                        LOGGER.debug("Fetched ticker: {} {} {}/{}",
+                            exchange.getExchangeSpecification().getExchangeName(),
+                            ticker.getInstrument(),
+                            ticker.getBid(),
+                            ticker.getAsk());
+
+                        fetched.add(ticker);
+                    } catch (Exception e) {
+                        errorCollectorService.collect(exchange, e);
+                        LOGGER.debug("Unable to decode ticker for {}: {}", exchangePair, e.getMessage(), e);
+                    } finally {
+                        remaining.countDown();
+                    }
+                }
+            });
+        });
+
+        try {
+            if (!remaining.await(tradingConfiguration.getIoExecutor().getTimeout(), TimeUnit.MILLISECONDS)) {
+                LOGGER.debug("Gave up waiting for {} of {} tickers from {}",
+                    remaining.getCount(),
+                    currencyPairs.size(),
+                    exchange.getExchangeSpecification().getExchangeName());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        final List<Ticker> tickers = new ArrayList<>(fetched);
+        final long completion = System.currentTimeMillis() - start;
+
+        // if all of that took too long, print a warning in the logs
+        if (completion > notificationConfiguration.getLogs().getSlowTickerWarning()) {
+            LOGGER.warn("Slow Tickers! Fetched {} tickers over HTTP for {} in {} ms",
+                tickers.size(),
+                exchange.getExchangeSpecification().getExchangeName(),
+                completion);
+        }
+
+        // push tickers into TickerService, keeping the ones whose prices changed
+        final List<Ticker> changedTickers = tickers
+            .stream()
+            .filter(ticker -> tickerService.putTicker(exchange, ticker))
+            .collect(Collectors.toList());
+
+        // publish events, but only when there's something new to analyze
+        changedTickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
+    }
+
+    @Override
+    public int getRequestCount(List<CurrencyPair> currencyPairs) {
+        return currencyPairs.size();
+    }
+
+    // fill in the currency codes in the URL template
+    static String buildUrl(HttpTickerConfiguration configuration, CurrencyPair currencyPair) {
+        final String base = currencyPair.base.getCurrencyCode();
+        final String counter = currencyPair.counter.getCurrencyCode();
+        final boolean lowercase = Boolean.TRUE.equals(configuration.isLowercase());
+
+        return configuration.getUrl()
+            .replace("{base}", lowercase ? base.toLowerCase() : base)
+            .replace("{counter}", lowercase ? counter.toLowerCase() : counter);
+    }
+
+    // pull the prices out of the JSON response
+    Ticker decode(HttpTickerConfiguration configuration, CurrencyPair currencyPair, String json) throws IOException {
+        final JsonNode root = objectMapper.readTree(json);
+
+        return new Ticker.Builder()
+            .instrument(currencyPair)
+            .bid(getPrice(root, configuration.getBid()))
+            .ask(getPrice(root, configuration.getAsk()))
+            .last(configuration.getLast() == null ? null : getPrice(root, configuration.getLast()))
+            .timestamp(new Date())
+            .build();
+    }
+
+    // exchanges send prices as either numbers or strings, so we go through the text either way to keep the precision
+    private static BigDecimal getPrice(JsonNode root, String pointer) throws IOException {
+        final JsonNode node = root.at(pointer);
+
+        if (node.isMissingNode() || node.isNull()) {
+            throw new IOException("No price at " + pointer + " in ticker response");
+        }
+
+        try {
+            return new BigDecimal(node.asText());
+        } catch (NumberFormatException e) {
+            throw new IOException("Unable to parse price at " + pointer + ": " + node.asText(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP";
+    }
+}
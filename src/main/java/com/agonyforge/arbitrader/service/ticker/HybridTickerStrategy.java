@@ -0,0 +1,133 @@
+package com.agonyforge.arbitrader.service.ticker;
+
+import com.agonyforge.arbitrader.service.ExchangeService;
+import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import info.bitrich.xchangestream.core.StreamingExchange;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A TickerStrategy for streaming exchanges that can also fetch tickers over REST.
+ *
+ * The websocket is the main source of prices. Each time the exchange is polled, any currency pair that hasn't streamed
+ * a ticker for longer than the exchange's gapFill is fetched over REST instead, and while the websocket is down all of
+ * them are. Pairs that are streaming normally never cost a REST request.
+ *
+ * The REST requests take tokens from the exchange's rateLimit, if it has one. When there aren't enough tokens for all
+ * of the pairs we fill as many as we can and leave the rest for the next poll, starting from where we left off so that
+ * every pair gets its turn.
+ */
+public class HybridTickerStrategy implements TickerStrategy {
+    private static final Logger LOGGER = LoggerFactory.getLogger(HybridTickerStrategy.class);
+
+    private final StreamingTickerStrategy streamingTickerStrategy;
+    private final TickerStrategy restTickerStrategy;
+    private final ExchangeService exchangeService;
+    private final long gapFill;
+    private int nextFill = 0;
+
+    public HybridTickerStrategy(
+        StreamingTickerStrategy streamingTickerStrategy,
+        TickerStrategy restTickerStrategy,
+        ExchangeService exchangeService,
+        long gapFill) {
+
+        this.streamingTickerStrategy = streamingTickerStrategy;
+        this.restTickerStrategy = restTickerStrategy;
+        this.exchangeService = exchangeService;
+        this.gapFill = gapFill;
+    }
+
+    @Override
+    public void getTickers(Exchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
+        if (!(exchange instanceof StreamingExchange)) {
+            fill(exchange, currencyPairs, tickerService);
+            return;
+        }
+
+        if (!((StreamingExchange) exchange).isAlive()) {
+            // the websocket is down, so get fresh prices for everything before we wait for it to reconnect
+            fill(exchange, currencyPairs, tickerService);
+            streamingTickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+            return;
+        }
+
+        // resubscribe to pairs that have gone quiet, if the watchdog is enabled
+        streamingTickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        final List<CurrencyPair> gaps = streamingTickerStrategy.getSilentPairs(exchange, currencyPairs, gapFill);
+
+        if (gaps.isEmpty()) {
+            return;
+        }
+
+        LOGGER.debug("Filling gaps in the {} stream over REST for {}",
+            exchange.getExchangeSpecification().getExchangeName(),
+            gaps);
+
+        fill(exchange, gaps, tickerService);
+    }
+
+    // fetch tickers over REST for as many of the pairs as the rate limit allows
+    private void fill(Exchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
+        final List<CurrencyPair> allowed = acquire(exchange, currencyPairs);
+
+        if (allowed.size() < currencyPairs.size()) {
+            LOGGER.debug("{} is at its rate limit, fetching {} of {} tickers over REST",
+                exchange.getExchangeSpecification().getExchangeName(),
+                allowed.size(),
+                currencyPairs.size());
+        }
+
+        if (!allowed.isEmpty()) {
+            restTickerStrategy.getTickers(exchange, allowed, tickerService);
+        }
+    }
+
+    // take tokens for the pairs we can afford to fetch right now, and return those pairs
+    private List<CurrencyPair> acquire(Exchange exchange, List<CurrencyPair> currencyPairs) {
+        final TokenBucket rateLimiter = exchangeService.getRateLimiter(exchange);
+
+        if (rateLimiter == null) {
+            return currencyPairs;
+        }
+
+        final int requestCount = restTickerStrategy.getRequestCount(currencyPairs);
+
+        // one request gets all of them, or none
+        if (requestCount <= 1) {
+            return requestCount < 1 || rateLimiter.tryAcquire(requestCount) ? currencyPairs : Collections.emptyList();
+        }
+
+        // one request per pair, starting after the last pair we filled
+        final int start = nextFill % currencyPairs.size();
+        final List<CurrencyPair> allowed = new ArrayList<>();
+
+        for (int i = 0; i < currencyPairs.size() && rateLimiter.tryAcquire(1); i++) {
+            allowed.add(currencyPairs.get((start + i) % currencyPairs.size()));
+        }
+
+        nextFill = start + allowed.size();
+
+        return allowed;
+    }
+
+    // most tickers arrive over the websocket, so this is polled like a streaming exchange and fill() takes its own
+    // tokens for the ones that don't
+    @Override
+    public int getRequestCount(List<CurrencyPair> currencyPairs) {
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Hybrid (Streaming + " + restTickerStrategy + ")";
+    }
+}
@@ -2,6 +2,7 @@ package com.agonyforge.arbitrader.service.ticker;
 
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
 import com.agonyforge.arbitrader.service.ExchangeService;
 import com.agonyforge.arbitrader.service.TickerService;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
@@ -14,15 +15,16 @@ import org.knowm.xchange.service.marketdata.MarketDataService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.UndeclaredThrowableException;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 /**
- * A TickerStrategy that fetches each ticker with its own call to the API, but all in parallel.
+ * A TickerStrategy that fetches each ticker with its own call to the API, but all in parallel on the exchange's I/O
+ * threads.
  */
 public class ParallelTickerStrategy implements TickerStrategy {
     private static final Logger LOGGER = LoggerFactory.getLogger(ParallelTickerStrategy.class);
@@ -31,17 +33,20 @@ public class ParallelTickerStrategy implements TickerStrategy {
     private final ExchangeService exchangeService;
     private final ErrorCollectorService errorCollectorService;
     private final TickerEventPublisher tickerEventPublisher;
+    private final ExchangeIoExecutor exchangeIoExecutor;
 
     public ParallelTickerStrategy(
         NotificationConfiguration notificationConfiguration,
         ErrorCollectorService errorCollectorService,
         ExchangeService exchangeService,
-        TickerEventPublisher tickerEventPublisher) {
+        TickerEventPublisher tickerEventPublisher,
+        ExchangeIoExecutor exchangeIoExecutor) {
 
         this.notificationConfiguration = notificationConfiguration;
         this.errorCollectorService = errorCollectorService;
         this.exchangeService = exchangeService;
         this.tickerEventPublisher = tickerEventPublisher;
+        this.exchangeIoExecutor = exchangeIoExecutor;
     }
 
     @Override
@@ -66,28 +71,30 @@ public class ParallelTickerStrategy implements TickerStrategy {
                     }
                 }
             })
-            .map(partition ->
-                partition
-                    // executes the following all in parallel rather than sequentially
-                    .parallelStream()
-                    .map(currencyPair -> {
+            .map(partition -> {
+                // start all the calls in this partition at once on the exchange's I/O threads
+                List<Future<Ticker>> futures = partition
+                    .stream()
+                    .map(currencyPair -> exchangeIoExecutor.submit(exchange,
+                        () -> marketDataService.getTicker(exchangeService.convertExchangePair(exchange, currencyPair))))
+                    .collect(Collectors.toList());
+
+                // then wait for each of them to finish
+                return futures
+                    .stream()
+                    .map(future -> {
                         try {
-                            try {
-                                // get the ticker
-                                Ticker ticker = marketDataService.getTicker(exchangeService.convertExchangePair(exchange, currencyPair));
-
-                                LOGGER.debug("Fetched ticker: {} {} {}/{}",
-                                    exchange.getExchangeSpecification().getExchangeName(),
-                                    ticker.getInstrument(),
-                                    ticker.getBid(),
-                                    ticker.getAsk());
-
-                                // and return it
-                                return ticker;
-                            } catch (UndeclaredThrowableException ute) {
-                                // Method proxying in rescu can enclose a real exception in this UTE, so we need to unwrap and re-throw it.
-                                throw ute.getCause();
-                            }
+                            // get the ticker
+                            Ticker ticker = exchangeIoExecutor.get(exchange, future);
+
+                            LOGGER.debug("Fetched ticker: {} {} {}/{}",
+                                exchange.getExchangeSpecification().getExchangeName(),
+                                ticker.getInstrument(),
+                                ticker.getBid(),
+                                ticker.getAsk());
+
+                            // and return it
+                            return ticker;
                         } catch (Throwable t) {
                             errorCollectorService.collect(exchange, t);
                             LOGGER.debug("Unexpected checked exception: " + t.getMessage(), t);
@@ -96,8 +103,8 @@ public class ParallelTickerStrategy implements TickerStrategy {
                         return null;
                     })
                     .filter(Objects::nonNull) // get rid of any nulls we managed to collect
-                    .collect(Collectors.toList()) // gather all the tickers we fetched into a list
-            )
+                    .collect(Collectors.toList()); // gather all the tickers we fetched into a list
+            })
             .flatMap(List::stream)// turn the lists from all the partitions into a stream
             .collect(Collectors.toList()); // collect them all into a single list
 
@@ -105,17 +112,25 @@ public class ParallelTickerStrategy implements TickerStrategy {
 
         // if all of that took too long, print a warning in the logs
         if (completion > notificationConfiguration.getLogs().getSlowTickerWarning()) {
-            LOGGER.warn("Slow Tickers! Fetched {} tickers via parallelStream for {} in {} ms",
+            LOGGER.warn("Slow Tickers! Fetched {} tickers in parallel for {} in {} ms",
                 tickers.size(),
                 exchange.getExchangeSpecification().getExchangeName(),
                 System.currentTimeMillis() - start);
         }
 
-        // push ticker into TickerService
-        tickers.forEach(ticker -> tickerService.putTicker(exchange, ticker));
+        // push tickers into TickerService, keeping the ones whose prices changed
+        final List<Ticker> changedTickers = tickers
+            .stream()
+            .filter(ticker -> tickerService.putTicker(exchange, ticker))
+            .collect(Collectors.toList());
 
-        // publish events
-        tickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
+        // publish events, but only when there's something new to analyze
+        changedTickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
+    }
+
+    @Override
+    public int getRequestCount(List<CurrencyPair> currencyPairs) {
+        return currencyPairs.size();
     }
 
     // return the batchDelay configuration parameter
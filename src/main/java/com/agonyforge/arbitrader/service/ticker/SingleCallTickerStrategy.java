@@ -2,6 +2,7 @@ package com.agonyforge.arbitrader.service.ticker;
 
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
 import com.agonyforge.arbitrader.service.ExchangeService;
 import com.agonyforge.arbitrader.service.TickerService;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
@@ -28,17 +29,20 @@ public class SingleCallTickerStrategy implements TickerStrategy {
     private final ExchangeService exchangeService;
     private final ErrorCollectorService errorCollectorService;
     private final TickerEventPublisher tickerEventPublisher;
+    private final ExchangeIoExecutor exchangeIoExecutor;
 
     public SingleCallTickerStrategy(
         NotificationConfiguration notificationConfiguration,
         ErrorCollectorService errorCollectorService,
         ExchangeService exchangeService,
-        TickerEventPublisher tickerEventPublisher) {
+        TickerEventPublisher tickerEventPublisher,
+        ExchangeIoExecutor exchangeIoExecutor) {
 
         this.notificationConfiguration = notificationConfiguration;
         this.errorCollectorService = errorCollectorService;
         this.exchangeService = exchangeService;
         this.tickerEventPublisher = tickerEventPublisher;
+        this.exchangeIoExecutor = exchangeIoExecutor;
     }
 
     @Override
@@ -54,7 +58,7 @@ public class SingleCallTickerStrategy implements TickerStrategy {
                     .collect(Collectors.toList());
 
                 // call the service with all our CurrencyPairs as the parameter
-                List<Ticker> tickers = marketDataService.getTickers(param);
+                List<Ticker> tickers = exchangeIoExecutor.call(exchange, () -> marketDataService.getTickers(param));
 
                 tickers.forEach(ticker -> LOGGER.debug("Fetched ticker: {} {} {}/{}",
                     exchange.getExchangeSpecification().getExchangeName(),
@@ -72,11 +76,14 @@ public class SingleCallTickerStrategy implements TickerStrategy {
                         System.currentTimeMillis() - start);
                 }
 
-                // push ticker into TickerService
-                tickers.forEach(ticker -> tickerService.putTicker(exchange, ticker));
+                // push tickers into TickerService, keeping the ones whose prices changed
+                final List<Ticker> changedTickers = tickers
+                    .stream()
+                    .filter(ticker -> tickerService.putTicker(exchange, ticker))
+                    .collect(Collectors.toList());
 
-                // publish events
-                tickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
+                // publish events, but only when there's something new to analyze
+                changedTickers.forEach(ticker -> tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange)));
             } catch (UndeclaredThrowableException ute) {
                 // Method proxying in rescu can enclose a real exception in this UTE, so we need to unwrap and re-throw it.
                 throw ute.getCause();
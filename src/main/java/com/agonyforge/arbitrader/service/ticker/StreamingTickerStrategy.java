@@ -1,9 +1,11 @@
 package com.agonyforge.arbitrader.service.ticker;
 
+import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.model.TickerEvent;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
 import com.agonyforge.arbitrader.service.ExchangeService;
 import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
 import info.bitrich.xchangestream.core.ProductSubscription;
 import info.bitrich.xchangestream.core.StreamingExchange;
@@ -15,28 +17,56 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
 
 /**
  * A TickerStrategy implementation for streaming exchanges.
+ *
+ * When orderBookMaxAge is configured, this also subscribes to the order books for the same currency pairs and keeps
+ * the latest one for each pair in the OrderBookCache.
+ *
+ * When tickerMaxSilence is configured, this keeps track of the last time each currency pair sent us anything. A pair
+ * that has been quiet for longer than that is marked stale in the TickerService, so its frozen price is left out of
+ * spread calculations, and just that pair's subscription is disposed and made again, at most once every
+ * tickerMaxSilence. The pair stops being stale as soon as it sends a new ticker.
  */
 public class StreamingTickerStrategy implements TickerStrategy {
     private static final Logger LOGGER = LoggerFactory.getLogger(StreamingTickerStrategy.class);
 
-    // we would use this list if we supported disconnecting from streams
-    @SuppressWarnings("MismatchedQueryAndUpdateOfCollection")
-    private final List<Disposable> subscriptions = new ArrayList<>();
-    private final Map<StreamingExchange, Map<CurrencyPair, Ticker>> tickers = new HashMap<>();
+    private final Map<StreamingExchange, Map<CurrencyPair, Disposable>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<StreamingExchange, List<Disposable>> orderBookSubscriptions = new ConcurrentHashMap<>();
+    private final Map<StreamingExchange, Map<CurrencyPair, Long>> lastUpdates = new ConcurrentHashMap<>();
+    private final Map<StreamingExchange, Map<CurrencyPair, Long>> lastResubscribes = new ConcurrentHashMap<>();
+    private final Map<StreamingExchange, Set<CurrencyPair>> stalePairs = new ConcurrentHashMap<>();
+    private final TradingConfiguration tradingConfiguration;
     private final ErrorCollectorService errorCollectorService;
     private final ExchangeService exchangeService;
     private final TickerEventPublisher tickerEventPublisher;
+    private final OrderBookCache orderBookCache;
+    private final LongSupplier clock;
 
-    public StreamingTickerStrategy(ErrorCollectorService errorCollectorService,
+    public StreamingTickerStrategy(TradingConfiguration tradingConfiguration,
+                                   ErrorCollectorService errorCollectorService,
                                    ExchangeService exchangeService,
-                                   TickerEventPublisher tickerEventPublisher) {
+                                   TickerEventPublisher tickerEventPublisher,
+                                   OrderBookCache orderBookCache) {
+        this(tradingConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, orderBookCache, System::currentTimeMillis);
+    }
+
+    StreamingTickerStrategy(TradingConfiguration tradingConfiguration,
+                            ErrorCollectorService errorCollectorService,
+                            ExchangeService exchangeService,
+                            TickerEventPublisher tickerEventPublisher,
+                            OrderBookCache orderBookCache,
+                            LongSupplier clock) {
+        this.tradingConfiguration = tradingConfiguration;
         this.errorCollectorService = errorCollectorService;
         this.exchangeService = exchangeService;
         this.tickerEventPublisher = tickerEventPublisher;
+        this.orderBookCache = orderBookCache;
+        this.clock = clock;
     }
 
     @Override
@@ -48,61 +78,207 @@ public class StreamingTickerStrategy implements TickerStrategy {
 
         StreamingExchange exchange = (StreamingExchange)stdExchange;
 
-        // TODO could the following "if" be the reason for the spurious reconnects?
-        if (!tickers.containsKey(exchange)) { // we're not receiving prices so we need to (re)connect
-            ProductSubscription.ProductSubscriptionBuilder builder = ProductSubscription.create();
-
-            currencyPairs.forEach(pair -> { builder.addTicker(exchangeService.convertExchangePair(exchange, pair)); });
-
-            // try to subscribe to the websocket
-            exchange.connect(builder.build()).blockingAwait();
-            subscriptions.clear(); // avoid endlessly filling this list up with dead subscriptions
-            subscriptions.addAll(subscribeAll(exchange, currencyPairs, tickerService));
+        // we used to reconnect whenever we hadn't received any prices yet, which reconnected quiet exchanges for no reason
+        // now we only reconnect when the websocket itself is down, and the watchdog looks after individual pairs
+        if (!subscriptions.containsKey(exchange) || !exchange.isAlive()) {
+            connect(exchange, currencyPairs, tickerService);
+        } else {
+            resubscribeSilentPairs(exchange, currencyPairs, tickerService);
         }
     }
 
-    // listen to websocket messages, populate the ticker map and publish ticker events
-    private List<Disposable> subscribeAll(StreamingExchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
+    // tickers arrive over the websocket, so polling only checks that we're still connected
+    @Override
+    public int getRequestCount(List<CurrencyPair> currencyPairs) {
+        return 0;
+    }
+
+    /**
+     * Find the currency pairs on an exchange that haven't sent us anything for a while.
+     *
+     * @param exchange The Exchange.
+     * @param currencyPairs The CurrencyPairs to check.
+     * @param silence How long a pair has to be quiet for, in milliseconds.
+     * @return The CurrencyPairs that have been quiet for longer than the silence, including any we have never heard from.
+     */
+    public List<CurrencyPair> getSilentPairs(Exchange exchange, List<CurrencyPair> currencyPairs, long silence) {
+        final Map<CurrencyPair, Long> exchangeUpdates = lastUpdates.getOrDefault(exchange, Collections.emptyMap());
+        final long now = clock.getAsLong();
+
         return currencyPairs
             .stream()
-            .map(pair -> {
-                final CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, pair);
-                final List<Object> tickerArguments = exchangeService.getExchangeMetadata(exchange).getTickerArguments();
+            .filter(pair -> {
+                final Long lastUpdate = exchangeUpdates.get(pair);
 
-                return exchange.getStreamingMarketDataService().getTicker(currencyPair, tickerArguments.toArray())
-                    .doOnNext(ticker -> log(exchange, ticker))
-                    .subscribe(
-                        ticker -> {
-                            tickers.computeIfAbsent(exchange, e -> new HashMap<>());
+                return lastUpdate == null || now - lastUpdate > silence;
+            })
+            .collect(Collectors.toList());
+    }
+
+    // (re)connect to the websocket and subscribe to everything from scratch
+    private void connect(StreamingExchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
+        ProductSubscription.ProductSubscriptionBuilder builder = ProductSubscription.create();
+
+        currencyPairs.forEach(pair -> { builder.addTicker(exchangeService.convertExchangePair(exchange, pair)); });
+
+        if (isStreamingOrderBooks()) {
+            currencyPairs.forEach(pair -> builder.addOrderbook(exchangeService.convertExchangePair(exchange, pair)));
+        }
+
+        // try to subscribe to the websocket
+        exchange.connect(builder.build()).blockingAwait();
+
+        // get rid of the old subscriptions before we make new ones
+        disposeAll(exchange);
+
+        final Map<CurrencyPair, Disposable> exchangeSubscriptions = new ConcurrentHashMap<>();
+        final Map<CurrencyPair, Long> exchangeUpdates = getPairTimes(lastUpdates, exchange);
+        final long now = clock.getAsLong();
+
+        // every pair gets a full maxSilence to send its first ticker
+        currencyPairs.forEach(pair -> {
+            exchangeUpdates.put(pair, now);
+            exchangeSubscriptions.put(pair, subscribe(exchange, pair, tickerService));
+        });
+
+        subscriptions.put(exchange, exchangeSubscriptions);
+        lastResubscribes.remove(exchange);
+
+        if (isStreamingOrderBooks()) {
+            orderBookSubscriptions.put(exchange, subscribeOrderBooks(exchange, currencyPairs));
+        }
+    }
+
+    // mark quiet pairs as stale and subscribe to them again, leaving the rest of the connection alone
+    private void resubscribeSilentPairs(StreamingExchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService) {
+        final Long maxSilence = tradingConfiguration.getTickerMaxSilence();
+
+        if (maxSilence == null) {
+            return;
+        }
+
+        final Map<CurrencyPair, Disposable> exchangeSubscriptions = subscriptions.get(exchange);
+        final Set<CurrencyPair> exchangeStalePairs = getStalePairs(exchange);
+        final Map<CurrencyPair, Long> exchangeResubscribes = getPairTimes(lastResubscribes, exchange);
+        final long now = clock.getAsLong();
+
+        getSilentPairs(exchange, currencyPairs, maxSilence).forEach(pair -> {
+            final Long lastResubscribe = exchangeResubscribes.get(pair);
+
+            // give the last new subscription a full maxSilence before we try again
+            if (lastResubscribe != null && now - lastResubscribe <= maxSilence) {
+                return;
+            }
 
-                            // don't waste time analyzing duplicate tickers
-                            Ticker oldTicker = tickers.get(exchange).get(pair);
+            if (exchangeStalePairs.add(pair)) {
+                tickerService.markStale(exchange, pair);
+            }
 
-                            if (oldTicker != null
-                                && oldTicker.getInstrument().equals(ticker.getInstrument())
-                                && oldTicker.getBid().equals(ticker.getBid())
-                                && oldTicker.getAsk().equals(ticker.getAsk())) {
-                                return;
-                            }
+            LOGGER.warn("No prices from {} for {} in over {} ms, resubscribing",
+                exchange.getExchangeSpecification().getExchangeName(),
+                pair,
+                maxSilence);
 
-                            // store the ticker in our cache
-                            tickers.get(exchange).put(pair, ticker);
+            final Disposable oldSubscription = exchangeSubscriptions.remove(pair);
 
-                            // store the ticker in the TickerService
-                            tickerService.putTicker(exchange, ticker);
+            if (oldSubscription != null) {
+                oldSubscription.dispose();
+            }
 
-                            // publish an event to notify that the tickers have updated
-                            tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange));
-                        },
+            exchangeResubscribes.put(pair, now);
+            exchangeSubscriptions.put(pair, subscribe(exchange, pair, tickerService));
+        });
+    }
+
+    private void disposeAll(StreamingExchange exchange) {
+        final Map<CurrencyPair, Disposable> exchangeSubscriptions = subscriptions.remove(exchange);
+        final List<Disposable> exchangeOrderBookSubscriptions = orderBookSubscriptions.remove(exchange);
+
+        if (exchangeSubscriptions != null) {
+            exchangeSubscriptions.values().forEach(Disposable::dispose);
+        }
+
+        if (exchangeOrderBookSubscriptions != null) {
+            exchangeOrderBookSubscriptions.forEach(Disposable::dispose);
+        }
+    }
+
+    // should we keep local copies of the order books?
+    private boolean isStreamingOrderBooks() {
+        return tradingConfiguration.getOrderBookMaxAge() != null;
+    }
+
+    // listen to order book updates and keep the latest book for each pair in the cache
+    private List<Disposable> subscribeOrderBooks(StreamingExchange exchange, List<CurrencyPair> currencyPairs) {
+        return currencyPairs
+            .stream()
+            .map(pair -> {
+                final CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, pair);
+
+                return exchange.getStreamingMarketDataService().getOrderBook(currencyPair)
+                    .subscribe(
+                        orderBook -> orderBookCache.put(exchange, currencyPair, orderBook),
                         throwable -> {
                             // collect errors quietly, but expose them in the debug log
                             errorCollectorService.collect(exchange, throwable);
                             LOGGER.debug("Unexpected checked exception: {}", throwable.getMessage(), throwable);
-                    });
+                        });
             })
             .collect(Collectors.toList());
     }
 
+    // listen to websocket messages for one pair, populate the ticker map and publish ticker events
+    private Disposable subscribe(StreamingExchange exchange, CurrencyPair pair, TickerService tickerService) {
+        final CurrencyPair currencyPair = exchangeService.convertExchangePair(exchange, pair);
+        final List<Object> tickerArguments = exchangeService.getExchangeMetadata(exchange).getTickerArguments();
+        final Map<CurrencyPair, Long> exchangeUpdates = getPairTimes(lastUpdates, exchange);
+        final Set<CurrencyPair> exchangeStalePairs = getStalePairs(exchange);
+
+        return exchange.getStreamingMarketDataService().getTicker(currencyPair, tickerArguments.toArray())
+            .doOnNext(ticker -> log(exchange, ticker))
+            .subscribe(
+                ticker -> {
+                    // even a duplicate ticker tells us the subscription is alive
+                    exchangeUpdates.put(pair, clock.getAsLong());
+
+                    exchangeStalePairs.remove(pair);
+
+                    // store the ticker in the TickerService, and don't waste time analyzing duplicate tickers
+                    if (!tickerService.putTicker(exchange, ticker)) {
+                        return;
+                    }
+
+                    // publish an event to notify that the tickers have updated
+                    tickerEventPublisher.publishTicker(new TickerEvent(ticker, exchange));
+                },
+                throwable -> {
+                    // collect errors quietly, but expose them in the debug log
+                    errorCollectorService.collect(exchange, throwable);
+                    LOGGER.debug("Unexpected checked exception: {}", throwable.getMessage(), throwable);
+            });
+    }
+
+    // computeIfAbsent() can lock even when the key is present, so try a plain get() first
+    private Map<CurrencyPair, Long> getPairTimes(Map<StreamingExchange, Map<CurrencyPair, Long>> times, StreamingExchange exchange) {
+        final Map<CurrencyPair, Long> exchangeTimes = times.get(exchange);
+
+        if (exchangeTimes != null) {
+            return exchangeTimes;
+        }
+
+        return times.computeIfAbsent(exchange, key -> new ConcurrentHashMap<>());
+    }
+
+    private Set<CurrencyPair> getStalePairs(StreamingExchange exchange) {
+        final Set<CurrencyPair> exchangeStalePairs = stalePairs.get(exchange);
+
+        if (exchangeStalePairs != null) {
+            return exchangeStalePairs;
+        }
+
+        return stalePairs.computeIfAbsent(exchange, key -> ConcurrentHashMap.newKeySet());
+    }
+
     // debug logging whenever we get a ticker event
     private void log(StreamingExchange exchange, Ticker ticker) {
         LOGGER.debug("Received ticker: {} {} {}/{}",
@@ -14,7 +14,8 @@ public interface TickerStrategy {
      * Get a set of Tickers from an Exchange. The TickerStrategy should call
      * putTicker() on the TickerService to ensure that the global ticker map
      * stays up to date. It should also publish a TickerEvent to notify listeners
-     * who may be interested in knowing that a new ticker is available.
+     * who may be interested in knowing that a new ticker is available, but only
+     * when putTicker() says the prices changed.
      *
      * // TODO this method has evolved to do too many things but I'll untangle it later
      *
@@ -22,4 +23,15 @@ public interface TickerStrategy {
      * @param currencyPairs The CurrencyPairs to get Tickers for.
      */
     void getTickers(Exchange exchange, List<CurrencyPair> currencyPairs, TickerService tickerService);
+
+    /**
+     * How many API requests one call to getTickers() makes, so that polling can stay within the exchange's
+     * rate limit.
+     *
+     * @param currencyPairs The CurrencyPairs that will be passed to getTickers().
+     * @return The number of requests.
+     */
+    default int getRequestCount(List<CurrencyPair> currencyPairs) {
+        return 1;
+    }
 }
@@ -1,9 +1,15 @@
 package com.agonyforge.arbitrader.service.ticker;
 
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
 import com.agonyforge.arbitrader.service.ExchangeService;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.OkHttpClient;
 import org.springframework.stereotype.Component;
 
 import javax.inject.Inject;
@@ -18,15 +24,33 @@ public class TickerStrategyProvider {
     private final ErrorCollectorService errorCollectorService;
     private final TickerEventPublisher tickerEventPublisher;
     private final NotificationConfiguration notificationConfiguration;
+    private final TradingConfiguration tradingConfiguration;
+    private final OrderBookCache orderBookCache;
+    private final ExchangeIoExecutor exchangeIoExecutor;
+    private final OkHttpClient marketDataHttpClient;
+    private final ObjectMapper objectMapper;
+    private final TickerLatencyMonitor tickerLatencyMonitor;
 
     @Inject
     public TickerStrategyProvider(ErrorCollectorService errorCollectorService,
                                   TickerEventPublisher tickerEventPublisher,
-                                  NotificationConfiguration notificationConfiguration) {
+                                  NotificationConfiguration notificationConfiguration,
+                                  TradingConfiguration tradingConfiguration,
+                                  OrderBookCache orderBookCache,
+                                  ExchangeIoExecutor exchangeIoExecutor,
+                                  OkHttpClient marketDataHttpClient,
+                                  ObjectMapper objectMapper,
+                                  TickerLatencyMonitor tickerLatencyMonitor) {
 
         this.errorCollectorService = errorCollectorService;
         this.tickerEventPublisher = tickerEventPublisher;
         this.notificationConfiguration = notificationConfiguration;
+        this.tradingConfiguration = tradingConfiguration;
+        this.orderBookCache = orderBookCache;
+        this.exchangeIoExecutor = exchangeIoExecutor;
+        this.marketDataHttpClient = marketDataHttpClient;
+        this.objectMapper = objectMapper;
+        this.tickerLatencyMonitor = tickerLatencyMonitor;
     }
 
     /**
@@ -36,7 +60,26 @@ public class TickerStrategyProvider {
      * @return A StreamingTickerStrategy.
      */
     public TickerStrategy getStreamingTickerStrategy(ExchangeService exchangeService) {
-        return new StreamingTickerStrategy(errorCollectorService, exchangeService, tickerEventPublisher);
+        return new StreamingTickerStrategy(tradingConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, orderBookCache);
+    }
+
+    /**
+     * Return a TickerStrategy for streaming exchanges that fills gaps in the stream over REST.
+     *
+     * @param exchangeService An instance of ExchangeService.
+     * @param restTickerStrategy The TickerStrategy to fill gaps with.
+     * @param gapFill How long a currency pair can go without a ticker before we fetch it over REST, in milliseconds.
+     * @return A HybridTickerStrategy.
+     */
+    public TickerStrategy getHybridTickerStrategy(ExchangeService exchangeService, TickerStrategy restTickerStrategy, long gapFill) {
+        final StreamingTickerStrategy streamingTickerStrategy = new StreamingTickerStrategy(
+            tradingConfiguration,
+            errorCollectorService,
+            exchangeService,
+            tickerEventPublisher,
+            orderBookCache);
+
+        return new HybridTickerStrategy(streamingTickerStrategy, restTickerStrategy, exchangeService, gapFill);
     }
 
     /**
@@ -46,7 +89,7 @@ public class TickerStrategyProvider {
      * @return A ParallelTickerStrategy.
      */
     public TickerStrategy getParallelTickerStrategy(ExchangeService exchangeService) {
-        return new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        return new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, exchangeIoExecutor);
     }
 
     /**
@@ -56,6 +99,25 @@ public class TickerStrategyProvider {
      * @return A SingleCallTickerStrategy.
      */
     public TickerStrategy getSingleCallTickerStrategy(ExchangeService exchangeService) {
-        return new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        return new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, exchangeIoExecutor);
+    }
+
+    /**
+     * Return a TickerStrategy that fetches tickers from the exchange's REST API over a shared HTTP client.
+     *
+     * @param exchangeService An instance of ExchangeService.
+     * @return An HttpTickerStrategy.
+     */
+    public TickerStrategy getHttpTickerStrategy(ExchangeService exchangeService) {
+        return new HttpTickerStrategy(
+            notificationConfiguration,
+            tradingConfiguration,
+            errorCollectorService,
+            exchangeService,
+            tickerEventPublisher,
+            exchangeIoExecutor,
+            marketDataHttpClient,
+            objectMapper,
+            tickerLatencyMonitor);
     }
 }
@@ -86,6 +86,49 @@ public class ConditionServiceTest extends BaseTestCase {
         FileUtils.deleteQuietly(forceOpen);
     }
 
+    @Test
+    public void testCheckForceOpenConditionAnyExchange() throws IOException {
+        File forceOpen = new File(FORCE_OPEN);
+
+        assertFalse(forceOpen.exists());
+        assertFalse(conditionService.isForceOpenCondition());
+
+        FileUtils.writeStringToFile(forceOpen,"BTC/USD CrazyCoinz/CoinBazaar", Charset.defaultCharset());
+
+        assertTrue(conditionService.isForceOpenCondition());
+
+        FileUtils.deleteQuietly(forceOpen);
+    }
+
+    // the screens only see the files as they were the last time we looked
+    @Test
+    public void testScreenedConditions() throws IOException {
+        File forceOpen = new File(FORCE_OPEN);
+        File forceClose = new File(FORCE_CLOSE);
+        CurrencyPair currencyPair = CurrencyPair.BTC_USD;
+
+        FileUtils.writeStringToFile(forceOpen,"BTC/USD CrazyCoinz/CoinBazaar", Charset.defaultCharset());
+        assertTrue(forceClose.createNewFile());
+
+        assertFalse(conditionService.isScreenedForceOpenCondition());
+        assertFalse(conditionService.isScreenedForceOpenCondition(currencyPair, "CrazyCoinz", "CoinBazaar"));
+        assertFalse(conditionService.isScreenedForceCloseCondition());
+
+        conditionService.refreshScreeningConditions();
+
+        assertTrue(conditionService.isScreenedForceOpenCondition());
+        assertTrue(conditionService.isScreenedForceOpenCondition(currencyPair, "CrazyCoinz", "CoinBazaar"));
+        assertFalse(conditionService.isScreenedForceOpenCondition(currencyPair, "CoinGuru", "CoinBazaar"));
+        assertTrue(conditionService.isScreenedForceCloseCondition());
+
+        FileUtils.deleteQuietly(forceOpen);
+        FileUtils.deleteQuietly(forceClose);
+        conditionService.refreshScreeningConditions();
+
+        assertFalse(conditionService.isScreenedForceOpenCondition());
+        assertFalse(conditionService.isScreenedForceCloseCondition());
+    }
+
     @Test
     public void testCheckForceOpenConditionWrongExchange() throws IOException {
         File forceOpen = new File(FORCE_OPEN);
@@ -0,0 +1,222 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
+import com.agonyforge.arbitrader.service.model.ExchangeFee;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class ExchangeFeeRefresherTest extends BaseTestCase {
+    private static final ExchangeFee OLD_FEE = new ExchangeFee(new BigDecimal("0.0020"), null);
+    private static final ExchangeFee NEW_FEE = new ExchangeFee(new BigDecimal("0.0010"), null);
+    private static final ExchangeFee DEFAULT_FEE = new ExchangeFee(new BigDecimal("0.0030"), null);
+
+    private final List<Runnable> tasks = new ArrayList<>();
+    private volatile boolean isDeferred = false;
+
+    private TradingConfiguration tradingConfiguration;
+    private ExchangeFeeCache feeCache;
+    private Exchange exchange;
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    private ExchangeFeeRefresher exchangeFeeRefresher;
+
+    @Before
+    public void setUp() throws IOException {
+        tradingConfiguration = new TradingConfiguration();
+        feeCache = new ExchangeFeeCache();
+        exchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD).build();
+
+        when(exchangeService.fetchExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean())).thenReturn(NEW_FEE);
+        when(exchangeService.getStaticExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean())).thenReturn(DEFAULT_FEE);
+
+        // calls we wait for (which are FutureTasks) run right away unless isDeferred, but background tasks wait in a
+        // list until the test runs them
+        exchangeFeeRefresher = new ExchangeFeeRefresher(
+            tradingConfiguration,
+            exchangeService,
+            feeCache,
+            new ExchangeIoExecutor(tradingConfiguration, exchangeName -> command -> {
+                if (command instanceof FutureTask && !isDeferred) {
+                    command.run();
+                } else {
+                    tasks.add(command);
+                }
+            }));
+    }
+
+    // the first time we ask for a fee we have to wait for it
+    @Test
+    public void testGetExchangeFeeNotCached() {
+        assertEquals(NEW_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertEquals(NEW_FEE, feeCache.getCachedFee(exchange, CurrencyPair.BTC_USD).get());
+        assertTrue(tasks.isEmpty());
+    }
+
+    // if the exchange doesn't answer in time we use the configured or default fee, and ask again next time
+    @Test
+    public void testGetExchangeFeeNotCachedTimeout() {
+        tradingConfiguration.getIoExecutor().setTimeout(50L);
+        isDeferred = true;
+
+        assertEquals(DEFAULT_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertTrue(feeCache.isExpired(exchange, CurrencyPair.BTC_USD, Long.MAX_VALUE));
+
+        tasks.clear();
+        isDeferred = false;
+
+        assertEquals(DEFAULT_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+
+        assertEquals(NEW_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testGetExchangeFeeNotCachedFails() {
+        when(exchangeService.fetchExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean()))
+            .thenThrow(new IllegalStateException("Boom!"));
+
+        assertEquals(DEFAULT_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertEquals(DEFAULT_FEE, feeCache.getCachedFee(exchange, CurrencyPair.BTC_USD).get());
+    }
+
+    // a fee that's already being fetched isn't fetched again, we wait for it instead
+    @Test(timeout = 5000L)
+    public void testGetExchangeFeeNotCachedSharesFetch() throws InterruptedException {
+        AtomicReference<ExchangeFee> waiterFee = new AtomicReference<>();
+
+        when(exchangeService.convertExchangePair(eq(exchange), any(CurrencyPair.class))).thenReturn(CurrencyPair.BTC_USD);
+
+        exchangeFeeRefresher.prewarm(Collections.singletonList(new TradeCombination(exchange, exchange, CurrencyPair.BTC_USD)));
+
+        Thread waiter = startWaiter(waiterFee);
+
+        tasks.get(0).run();
+        waiter.join();
+
+        assertEquals(NEW_FEE, waiterFee.get());
+        verify(exchangeService).fetchExchangeFee(exchange, CurrencyPair.BTC_USD, false);
+    }
+
+    // if the fetch we were waiting for fails, we use the configured or default fee
+    @Test(timeout = 5000L)
+    public void testGetExchangeFeeNotCachedSharedFetchFails() throws InterruptedException {
+        AtomicReference<ExchangeFee> waiterFee = new AtomicReference<>();
+
+        when(exchangeService.fetchExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean()))
+            .thenThrow(new IllegalStateException("Boom!"));
+
+        when(exchangeService.convertExchangePair(eq(exchange), any(CurrencyPair.class))).thenReturn(CurrencyPair.BTC_USD);
+
+        exchangeFeeRefresher.prewarm(Collections.singletonList(new TradeCombination(exchange, exchange, CurrencyPair.BTC_USD)));
+
+        Thread waiter = startWaiter(waiterFee);
+
+        tasks.get(0).run();
+        waiter.join();
+
+        assertEquals(DEFAULT_FEE, waiterFee.get());
+        verify(exchangeService).fetchExchangeFee(exchange, CurrencyPair.BTC_USD, false);
+    }
+
+    @Test
+    public void testGetExchangeFeeFresh() {
+        feeCache.setCachedFee(exchange, CurrencyPair.BTC_USD, OLD_FEE);
+
+        assertEquals(OLD_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertTrue(tasks.isEmpty());
+        verify(exchangeService, never()).fetchExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean());
+    }
+
+    // a stale fee is handed out right away and fetched again in the background, once
+    @Test
+    public void testGetExchangeFeeStale() {
+        tradingConfiguration.setFeeRefreshInterval(0L);
+        feeCache.setCachedFee(exchange, CurrencyPair.BTC_USD, OLD_FEE);
+
+        assertEquals(OLD_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertEquals(OLD_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        verify(exchangeService, never()).fetchExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean());
+        assertEquals(1, tasks.size());
+
+        tasks.get(0).run();
+
+        assertEquals(NEW_FEE, feeCache.getCachedFee(exchange, CurrencyPair.BTC_USD).get());
+        verify(exchangeService).fetchExchangeFee(exchange, CurrencyPair.BTC_USD, true);
+    }
+
+    @Test
+    public void testGetExchangeFeeRefreshFails() {
+        tradingConfiguration.setFeeRefreshInterval(0L);
+        feeCache.setCachedFee(exchange, CurrencyPair.BTC_USD, OLD_FEE);
+
+        when(exchangeService.fetchExchangeFee(any(Exchange.class), any(CurrencyPair.class), anyBoolean()))
+            .thenThrow(new IllegalStateException("Boom!"));
+
+        exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD);
+        tasks.get(0).run();
+
+        assertEquals(OLD_FEE, exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD));
+        assertEquals(2, tasks.size());
+    }
+
+    // fees are fetched for the pair both as we know it and as each exchange knows it
+    @Test
+    public void testPrewarm() throws IOException {
+        Exchange shortExchange = new ExchangeBuilder("Short", CurrencyPair.BTC_USD).build();
+        CurrencyPair usdtPair = new CurrencyPair(Currency.BTC, Currency.USDT);
+
+        when(exchangeService.convertExchangePair(eq(exchange), any(CurrencyPair.class))).thenReturn(usdtPair);
+        when(exchangeService.convertExchangePair(eq(shortExchange), any(CurrencyPair.class))).thenReturn(CurrencyPair.BTC_USD);
+
+        exchangeFeeRefresher.prewarm(Collections.singletonList(new TradeCombination(exchange, shortExchange, CurrencyPair.BTC_USD)));
+
+        assertEquals(3, tasks.size());
+
+        tasks.forEach(Runnable::run);
+
+        assertEquals(NEW_FEE, feeCache.getCachedFee(exchange, CurrencyPair.BTC_USD).get());
+        assertEquals(NEW_FEE, feeCache.getCachedFee(exchange, usdtPair).get());
+        assertEquals(NEW_FEE, feeCache.getCachedFee(shortExchange, CurrencyPair.BTC_USD).get());
+        verify(exchangeService).fetchExchangeFee(exchange, usdtPair, false);
+    }
+
+    // ask for the fee on another thread, and return once it's waiting for the fetch that's already running
+    private Thread startWaiter(AtomicReference<ExchangeFee> waiterFee) throws InterruptedException {
+        Thread waiter = new Thread(() -> waiterFee.set(exchangeFeeRefresher.getExchangeFee(exchange, CurrencyPair.BTC_USD)));
+
+        waiter.start();
+
+        while (waiter.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1L);
+        }
+
+        return waiter;
+    }
+}
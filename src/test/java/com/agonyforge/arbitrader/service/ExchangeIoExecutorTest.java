@@ -0,0 +1,136 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.exception.ExchangeTimeoutException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.IOException;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+public class ExchangeIoExecutorTest extends BaseTestCase {
+    private final CountDownLatch latch = new CountDownLatch(1);
+
+    private Exchange fastExchange;
+    private Exchange slowExchange;
+
+    private TradingConfiguration tradingConfiguration;
+    private ExchangeIoExecutor exchangeIoExecutor;
+
+    @Before
+    public void setUp() throws IOException {
+        fastExchange = new ExchangeBuilder("Fast", CurrencyPair.BTC_USD).build();
+        slowExchange = new ExchangeBuilder("Slow", CurrencyPair.BTC_USD).build();
+
+        tradingConfiguration = new TradingConfiguration();
+
+        tradingConfiguration.getIoExecutor().setThreadsPerExchange(1);
+        tradingConfiguration.getIoExecutor().setQueueSize(1);
+        tradingConfiguration.getIoExecutor().setTimeout(200L);
+
+        exchangeIoExecutor = new ExchangeIoExecutor(tradingConfiguration);
+    }
+
+    @After
+    public void tearDown() {
+        latch.countDown();
+        exchangeIoExecutor.shutdown();
+    }
+
+    @Test
+    public void testCall() throws IOException {
+        assertEquals("answer", exchangeIoExecutor.call(fastExchange, () -> "answer"));
+        assertEquals(1L, exchangeIoExecutor.getLatencies().get("Fast").getCount());
+    }
+
+    @Test
+    public void testSlowExchangeDoesNotBlockOthers() throws IOException {
+        exchangeIoExecutor.submit(slowExchange, this::waitForLatch);
+
+        assertEquals("answer", exchangeIoExecutor.call(fastExchange, () -> "answer"));
+    }
+
+    @Test
+    public void testTimeout() {
+        try {
+            exchangeIoExecutor.call(slowExchange, this::waitForLatch);
+            fail("Expected the call to time out");
+        } catch (ExchangeTimeoutException e) {
+            assertEquals(slowExchange, e.getExchange());
+            assertEquals(200L, e.getTimeout());
+        } catch (IOException e) {
+            fail("Expected an ExchangeTimeoutException but got " + e);
+        }
+
+        assertEquals(1L, exchangeIoExecutor.getTimeouts("Slow"));
+        assertEquals(0L, exchangeIoExecutor.getTimeouts("Fast"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testQueueFull() throws IOException {
+        exchangeIoExecutor.submit(slowExchange, this::waitForLatch); // running
+        exchangeIoExecutor.submit(slowExchange, this::waitForLatch); // queued
+
+        Future<String> rejected = exchangeIoExecutor.submit(slowExchange, () -> "answer");
+
+        assertTrue(rejected.isDone());
+
+        exchangeIoExecutor.get(slowExchange, rejected);
+    }
+
+    @Test
+    public void testVirtualThreads() throws IOException {
+        tradingConfiguration.getIoExecutor().setVirtualThreads(true);
+        exchangeIoExecutor.shutdown();
+        exchangeIoExecutor = new ExchangeIoExecutor(tradingConfiguration);
+
+        // falls back to the platform pool on older JVMs
+        assertEquals(VirtualThreads.isAvailable(), exchangeIoExecutor.isVirtualThreads());
+        assertEquals("answer", exchangeIoExecutor.call(fastExchange, () -> "answer"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testVirtualThreadsLimit() throws IOException {
+        assumeTrue(VirtualThreads.isAvailable());
+
+        tradingConfiguration.getIoExecutor().setVirtualThreads(true);
+        exchangeIoExecutor.shutdown();
+        exchangeIoExecutor = new ExchangeIoExecutor(tradingConfiguration);
+
+        // one thread plus a queue of one allows two calls at once
+        exchangeIoExecutor.submit(slowExchange, this::waitForLatch);
+        exchangeIoExecutor.submit(slowExchange, this::waitForLatch);
+
+        exchangeIoExecutor.call(slowExchange, () -> "answer");
+    }
+
+    @Test(expected = IOException.class)
+    public void testUnwrapsUndeclaredThrowable() throws IOException {
+        exchangeIoExecutor.call(fastExchange, () -> {
+            throw new UndeclaredThrowableException(new IOException("Boom!"));
+        });
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testRuntimeException() throws IOException {
+        exchangeIoExecutor.call(fastExchange, () -> {
+            throw new IllegalStateException("Boom!");
+        });
+    }
+
+    private String waitForLatch() throws InterruptedException {
+        latch.await();
+
+        return "slow";
+    }
+}
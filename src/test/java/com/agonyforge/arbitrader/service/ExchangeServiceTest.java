@@ -2,6 +2,8 @@ package com.agonyforge.arbitrader.service;
 
 import com.agonyforge.arbitrader.ExchangeBuilder;
 import com.agonyforge.arbitrader.config.ExchangeConfiguration;
+import com.agonyforge.arbitrader.config.RateLimitConfiguration;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
 import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
 import com.agonyforge.arbitrader.service.ticker.TickerStrategyProvider;
 import org.junit.Before;
@@ -16,6 +18,8 @@ import java.io.IOException;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class ExchangeServiceTest {
     private Exchange exchange;
@@ -76,4 +80,24 @@ public class ExchangeServiceTest {
         assertEquals(CurrencyPair.DOGE_BTC, converted);
         assertEquals(currencyPair, converted);
     }
+
+    @Test
+    public void testRateLimiterNotConfigured() {
+        assertNull(exchangeService.getRateLimiter(exchange));
+    }
+
+    @Test
+    public void testRateLimiter() {
+        RateLimitConfiguration rateLimit = new RateLimitConfiguration();
+
+        rateLimit.setRequestsPerSecond(5.0);
+        rateLimit.setBurst(2);
+        exchangeService.getExchangeMetadata(exchange).setRateLimit(rateLimit);
+
+        TokenBucket rateLimiter = exchangeService.getRateLimiter(exchange);
+
+        assertNotNull(rateLimiter);
+        assertEquals(2, rateLimiter.getCapacity());
+        assertSame(rateLimiter, exchangeService.getRateLimiter(exchange));
+    }
 }
@@ -0,0 +1,161 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class OpportunityRankerTest extends BaseTestCase {
+    private Exchange exchangeA;
+    private TradeCombination combinationAB;
+    private TradeCombination combinationAC;
+    private TradeCombination combinationBA;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private SpreadService spreadService;
+
+    @Mock
+    private TradingService tradingService;
+
+    private OpportunityRanker opportunityRanker;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        Exchange exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD).build();
+        Exchange exchangeC = new ExchangeBuilder("CoinFlip", CurrencyPair.BTC_USD).build();
+
+        combinationAB = new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD);
+        combinationAC = new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD);
+        combinationBA = new TradeCombination(exchangeB, exchangeA, CurrencyPair.BTC_USD);
+
+        when(tickerService.getExchangeTradeCombinations(exchangeA, CurrencyPair.BTC_USD))
+            .thenAnswer(invocation -> new ArrayList<>(Arrays.asList(combinationAB, combinationAC, combinationBA)));
+        when(tradingService.getEntrySpreadTarget(any(TradeCombination.class))).thenReturn(new BigDecimal("0.005"));
+
+        opportunityRanker = new OpportunityRanker(tickerService, spreadService, tradingService);
+    }
+
+    @Test
+    public void testRank() {
+        when(spreadService.estimateSpreadIn(combinationAB)).thenReturn(0.001);
+        when(spreadService.estimateSpreadIn(combinationAC)).thenReturn(0.004);
+        when(spreadService.estimateSpreadIn(combinationBA)).thenReturn(-0.002);
+
+        List<TradeCombination> result = opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        assertEquals(Arrays.asList(combinationAC, combinationAB, combinationBA), result);
+    }
+
+    @Test
+    public void testRankAfterPriceChange() {
+        when(spreadService.estimateSpreadIn(combinationAB)).thenReturn(0.001);
+        when(spreadService.estimateSpreadIn(combinationAC)).thenReturn(0.004);
+        when(spreadService.estimateSpreadIn(combinationBA)).thenReturn(-0.002);
+
+        opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        when(spreadService.estimateSpreadIn(combinationBA)).thenReturn(0.006);
+
+        List<TradeCombination> result = opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        assertEquals(Arrays.asList(combinationBA, combinationAC, combinationAB), result);
+    }
+
+    @Test
+    public void testRankMissingPrices() {
+        when(spreadService.estimateSpreadIn(combinationAB)).thenReturn(Double.NaN);
+        when(spreadService.estimateSpreadIn(combinationAC)).thenReturn(-0.01);
+        when(spreadService.estimateSpreadIn(combinationBA)).thenReturn(Double.NaN);
+
+        List<TradeCombination> result = opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        assertEquals(3, result.size());
+        assertEquals(combinationAC, result.get(0));
+    }
+
+    @Test
+    public void testRankBeforeInitialization() {
+        when(tickerService.getExchangeTradeCombinations(exchangeA, CurrencyPair.ETH_USD))
+            .thenReturn(new ArrayList<>())
+            .thenReturn(new ArrayList<>(Collections.singletonList(combinationAB)));
+
+        assertTrue(opportunityRanker.rank(exchangeA, CurrencyPair.ETH_USD).isEmpty());
+        assertEquals(Collections.singletonList(combinationAB), opportunityRanker.rank(exchangeA, CurrencyPair.ETH_USD));
+    }
+
+    @Test
+    public void testGetOpportunities() {
+        when(spreadService.estimateSpreadIn(combinationAB)).thenReturn(0.001);
+        when(spreadService.estimateSpreadIn(combinationAC)).thenReturn(0.007);
+        when(spreadService.estimateSpreadIn(combinationBA)).thenReturn(-0.002);
+
+        assertTrue(opportunityRanker.getOpportunities().isEmpty());
+
+        opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        List<OpportunityRanker.Opportunity> opportunities = opportunityRanker.getOpportunities();
+
+        assertEquals(3, opportunities.size());
+        assertEquals(combinationAC, opportunities.get(0).getTradeCombination());
+        assertEquals(0.002, opportunities.get(0).getScore(), 1e-12);
+        assertEquals(combinationBA, opportunities.get(2).getTradeCombination());
+        assertEquals(-0.007, opportunities.get(2).getScore(), 1e-12);
+    }
+
+    @Test
+    public void testRefreshTargets() {
+        when(spreadService.estimateSpreadIn(any(TradeCombination.class))).thenReturn(0.01);
+
+        opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        when(tradingService.getEntrySpreadTarget(any(TradeCombination.class))).thenReturn(new BigDecimal("0.008"));
+
+        opportunityRanker.refreshTargets();
+        opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        opportunityRanker.getOpportunities()
+            .forEach(opportunity -> assertEquals(0.002, opportunity.getScore(), 1e-12));
+    }
+
+    // looking up an entry target can take a while, so it mustn't happen while holding a lock on the rankings
+    @Test
+    public void testRankWhileLookingUpTarget() {
+        final AtomicBoolean reentered = new AtomicBoolean(false);
+        final List<List<TradeCombination>> nested = new ArrayList<>();
+
+        when(spreadService.estimateSpreadIn(any(TradeCombination.class))).thenReturn(0.01);
+        when(tradingService.getEntrySpreadTarget(any(TradeCombination.class))).thenAnswer(invocation -> {
+            if (reentered.compareAndSet(false, true)) {
+                nested.add(opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD));
+            }
+
+            return new BigDecimal("0.005");
+        });
+
+        List<TradeCombination> result = opportunityRanker.rank(exchangeA, CurrencyPair.BTC_USD);
+
+        assertEquals(3, result.size());
+        assertEquals(3, nested.get(0).size());
+        assertEquals(3, opportunityRanker.getOpportunities().size());
+    }
+}
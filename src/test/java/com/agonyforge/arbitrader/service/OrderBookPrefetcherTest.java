@@ -0,0 +1,238 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
+import com.agonyforge.arbitrader.service.model.DepthBook;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.meta.ExchangeMetaData;
+import org.knowm.xchange.dto.meta.RateLimit;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class OrderBookPrefetcherTest extends BaseTestCase {
+    private Exchange longExchange;
+    private Exchange shortExchange;
+    private TradeCombination tradeCombination;
+
+    private long now = 10000L;
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private TradingConfiguration tradingConfiguration;
+    private OrderBookCache streamedOrderBooks;
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    @Mock
+    private SpreadService spreadService;
+
+    private OrderBookPrefetcher orderBookPrefetcher;
+
+    @Before
+    public void setUp() throws IOException {
+        longExchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD)
+            .withOrderBook(100, 100)
+            .build();
+        shortExchange = new ExchangeBuilder("Short", CurrencyPair.BTC_USD)
+            .withOrderBook(100, 100)
+            .build();
+        tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+
+        tradingConfiguration = new TradingConfiguration();
+        tradingConfiguration.setPrefetchBand(new BigDecimal("0.001"));
+
+        streamedOrderBooks = new OrderBookCache(() -> now);
+
+        when(exchangeService.convertExchangePair(any(Exchange.class), any(CurrencyPair.class)))
+            .thenAnswer(invocation -> invocation.getArgument(1));
+
+        orderBookPrefetcher = new OrderBookPrefetcher(
+            tradingConfiguration,
+            exchangeService,
+            spreadService,
+            streamedOrderBooks,
+            new ExchangeIoExecutor(tradingConfiguration, exchangeName -> tasks::add),
+            () -> now);
+    }
+
+    @Test
+    public void testPrefetch() throws IOException {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.0045);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(2, tasks.size());
+        assertNull(orderBookPrefetcher.get(longExchange, CurrencyPair.BTC_USD, Order.OrderType.ASK));
+
+        runTasks();
+
+        DepthBook asks = orderBookPrefetcher.get(longExchange, CurrencyPair.BTC_USD, Order.OrderType.ASK);
+
+        assertNotNull(asks);
+        assertEquals(100, asks.size());
+        assertNotNull(orderBookPrefetcher.get(shortExchange, CurrencyPair.BTC_USD, Order.OrderType.BID));
+        verify(longExchange.getMarketDataService()).getOrderBook(CurrencyPair.BTC_USD);
+        verify(shortExchange.getMarketDataService()).getOrderBook(CurrencyPair.BTC_USD);
+    }
+
+    @Test
+    public void testOutsideBand() {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.0039);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertTrue(tasks.isEmpty());
+    }
+
+    // a rebate can bring the entry target below the configured one, and the band moves down with it
+    @Test
+    public void testBandFollowsEntryTarget() {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.0035);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertTrue(tasks.isEmpty());
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.004);
+
+        assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void testMissingPrices() {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(Double.NaN);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertTrue(tasks.isEmpty());
+    }
+
+    @Test
+    public void testDisabled() {
+        tradingConfiguration.setPrefetchBand(null);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertTrue(tasks.isEmpty());
+        assertNull(orderBookPrefetcher.get(longExchange, CurrencyPair.BTC_USD, Order.OrderType.ASK));
+        verify(spreadService, never()).estimateSpreadIn(any(TradeCombination.class));
+    }
+
+    @Test
+    public void testOneRequestInFlight() {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.006);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void testRefetchWhenHalfExpired() {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.006);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+        runTasks();
+
+        now += tradingConfiguration.getPrefetchMaxAge() / 2;
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertTrue(tasks.isEmpty());
+
+        now += 1;
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void testExpired() {
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.006);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+        runTasks();
+
+        now += tradingConfiguration.getPrefetchMaxAge() + 1;
+
+        assertNull(orderBookPrefetcher.get(longExchange, CurrencyPair.BTC_USD, Order.OrderType.ASK));
+    }
+
+    @Test
+    public void testRateLimit() {
+        when(longExchange.getExchangeMetaData()).thenReturn(new ExchangeMetaData(
+            null,
+            null,
+            new RateLimit[] { new RateLimit(1, 5, TimeUnit.SECONDS) },
+            null,
+            null));
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.006);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+        runTasks();
+
+        // the short exchange has no limits, but the long exchange has to wait 5 seconds between requests
+        now += tradingConfiguration.getPrefetchMaxAge();
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(1, tasks.size());
+
+        runTasks();
+        now += 3000L;
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(2, tasks.size());
+    }
+
+    @Test
+    public void testSkipStreamedOrderBooks() {
+        tradingConfiguration.setOrderBookMaxAge(2000L);
+        streamedOrderBooks.put(longExchange, CurrencyPair.BTC_USD, new OrderBook(new Date(), new ArrayList<>(), new ArrayList<>()));
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.006);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(1, tasks.size());
+    }
+
+    @Test
+    public void testFetchFailure() throws IOException {
+        when(longExchange.getMarketDataService().getOrderBook(CurrencyPair.BTC_USD)).thenThrow(new IOException("Boom!"));
+        when(spreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.006);
+
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+        runTasks();
+
+        assertNull(orderBookPrefetcher.get(longExchange, CurrencyPair.BTC_USD, Order.OrderType.ASK));
+
+        // the failed request isn't in flight any more, so we can try again
+        orderBookPrefetcher.prefetchIfNear(tradeCombination, 0.005);
+
+        assertEquals(1, tasks.size());
+    }
+
+    private void runTasks() {
+        List<Runnable> running = new ArrayList<>(tasks);
+
+        tasks.clear();
+        running.forEach(Runnable::run);
+    }
+}
@@ -0,0 +1,387 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.exception.OrderPlacementException;
+import com.agonyforge.arbitrader.service.model.OrderPairPrices;
+import io.reactivex.Completable;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.service.trade.TradeService;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class OrderRepricerTest extends BaseTestCase {
+    private static final String ORDER_ID = "orderId";
+    private static final String REPLACEMENT_ID = "replacementId";
+
+    private final TestScheduler scheduler = new TestScheduler();
+
+    private TradingConfiguration tradingConfiguration;
+    private Exchange exchange;
+    private TradeService tradeService;
+    private LimitOrder order;
+    private String replacedOrderId;
+    private BigDecimal replacedRemaining;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private OrderStatusTracker orderStatusTracker;
+
+    private OrderRepricer orderRepricer;
+
+    @Before
+    public void setUp() throws IOException {
+        tradingConfiguration = new TradingConfiguration();
+        exchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD).build();
+        tradeService = mock(TradeService.class);
+        order = new LimitOrder.Builder(Order.OrderType.BID, CurrencyPair.BTC_USD)
+            .limitPrice(new BigDecimal("100.00"))
+            .originalAmount(BigDecimal.ONE)
+            .build();
+
+        when(exchange.getTradeService()).thenReturn(tradeService);
+        when(tickerService.isInvalidTicker(any())).thenCallRealMethod();
+        when(orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID)).thenReturn(Completable.never());
+        when(orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, REPLACEMENT_ID)).thenReturn(Completable.complete());
+
+        orderRepricer = new OrderRepricer(
+            tradingConfiguration,
+            tickerService,
+            new ExchangeIoExecutor(tradingConfiguration, exchangeName -> Runnable::run),
+            orderStatusTracker,
+            scheduler,
+            () -> scheduler.now(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testDisabled() {
+        Completable closed = Completable.complete();
+
+        when(orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID)).thenReturn(closed);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        observer.assertComplete();
+        verifyNoInteractions(tradeService);
+    }
+
+    @Test
+    public void testClosedBeforeTimeout() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID))
+            .thenReturn(Completable.timer(500, TimeUnit.MILLISECONDS, scheduler));
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(500, TimeUnit.MILLISECONDS);
+        observer.assertComplete();
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+        verify(tradeService, never()).cancelOrder(anyString());
+    }
+
+    // only the part of the order that didn't fill is placed again
+    @Test
+    public void testRepriceTimeout() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.PARTIALLY_FILLED, "0.4")))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.CANCELED, "0.4")));
+        when(tradeService.cancelOrder(ORDER_ID)).thenReturn(true);
+        when(tradeService.placeLimitOrder(any(LimitOrder.class))).thenReturn(REPLACEMENT_ID);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(750, TimeUnit.MILLISECONDS);
+        verify(tradeService, never()).cancelOrder(anyString());
+
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+
+        ArgumentCaptor<LimitOrder> replacement = ArgumentCaptor.forClass(LimitOrder.class);
+
+        verify(tradeService).cancelOrder(ORDER_ID);
+        verify(tradeService).placeLimitOrder(replacement.capture());
+        assertEquals(Order.OrderType.BID, replacement.getValue().getType());
+        assertEquals(new BigDecimal("0.6"), replacement.getValue().getOriginalAmount());
+        assertEquals(new BigDecimal("101.00"), replacement.getValue().getLimitPrice());
+        assertEquals(REPLACEMENT_ID, replacedOrderId);
+        assertEquals(new BigDecimal("0.6"), replacedRemaining);
+        observer.assertComplete();
+    }
+
+    @Test
+    public void testRepriceThreshold() throws IOException {
+        tradingConfiguration.setRepriceThreshold(new BigDecimal("0.005"));
+
+        when(tickerService.getTicker(exchange, CurrencyPair.BTC_USD)).thenReturn(ticker("100.00", "100.50"));
+        when(tradeService.getOrder(ORDER_ID))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.CANCELED, "0")));
+        when(tradeService.cancelOrder(ORDER_ID)).thenReturn(true);
+        when(tradeService.placeLimitOrder(any(LimitOrder.class))).thenReturn(REPLACEMENT_ID);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+        verify(tradeService, never()).cancelOrder(anyString());
+
+        when(tickerService.getTicker(exchange, CurrencyPair.BTC_USD)).thenReturn(ticker("100.50", "100.60"));
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+
+        ArgumentCaptor<LimitOrder> replacement = ArgumentCaptor.forClass(LimitOrder.class);
+
+        verify(tradeService).placeLimitOrder(replacement.capture());
+        assertEquals(BigDecimal.ONE, replacement.getValue().getOriginalAmount());
+        observer.assertComplete();
+    }
+
+    @Test
+    public void testCancelFails() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID)).thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")));
+        when(tradeService.cancelOrder(ORDER_ID)).thenReturn(false);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        verify(tradeService).cancelOrder(ORDER_ID);
+        verify(tradeService, never()).placeLimitOrder(any(LimitOrder.class));
+        verify(orderStatusTracker, times(2)).awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID);
+        observer.assertNotComplete();
+    }
+
+    // we have to be able to tell how much filled before we cancel anything
+    @Test
+    public void testOrderLookupNotSupported() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID)).thenThrow(new UnsupportedOperationException());
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        verify(tradeService, never()).cancelOrder(anyString());
+        observer.assertNotComplete();
+    }
+
+    @Test
+    public void testFilledAmountUnknownAfterCancel() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")))
+            .thenThrow(new IOException("Boom!"));
+        when(tradeService.cancelOrder(ORDER_ID)).thenReturn(true);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        observer.assertError(e -> ORDER_ID.equals(((OrderPlacementException) e).getLongOrderId())
+            && ((OrderPlacementException) e).getShortOrderId() == null);
+        verify(tradeService, never()).placeLimitOrder(any(LimitOrder.class));
+    }
+
+    // once the order has been replaced, a failure names the replacement
+    @Test
+    public void testReplacementFailsAfterCancel() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, REPLACEMENT_ID)).thenReturn(Completable.never());
+        when(tradeService.getOrder(ORDER_ID))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.CANCELED, "0")));
+        when(tradeService.getOrder(REPLACEMENT_ID)).thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")));
+        when(tradeService.cancelOrder(anyString())).thenReturn(true);
+        when(tradeService.placeLimitOrder(any(LimitOrder.class)))
+            .thenReturn(REPLACEMENT_ID)
+            .thenThrow(new IOException("Boom!"));
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(2, TimeUnit.SECONDS);
+
+        verify(tradeService).cancelOrder(REPLACEMENT_ID);
+        observer.assertError(e -> REPLACEMENT_ID.equals(((OrderPlacementException) e).getLongOrderId()));
+    }
+
+    @Test
+    public void testFilledWhileCancelling() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.PARTIALLY_FILLED, "0.4")))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.CANCELED, "1")));
+        when(tradeService.cancelOrder(ORDER_ID)).thenReturn(true);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        observer.assertComplete();
+        verify(tradeService, never()).placeLimitOrder(any(LimitOrder.class));
+    }
+
+    @Test
+    public void testMaxReprices() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+        tradingConfiguration.setMaxReprices(1);
+
+        when(orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, REPLACEMENT_ID)).thenReturn(Completable.never());
+        when(tradeService.getOrder(anyString()))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.CANCELED, "0")));
+        when(tradeService.cancelOrder(anyString())).thenReturn(true);
+        when(tradeService.placeLimitOrder(any(LimitOrder.class))).thenReturn(REPLACEMENT_ID);
+
+        TestObserver<Void> observer = manage().test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        verify(tradeService).cancelOrder(ORDER_ID);
+        verify(tradeService, never()).cancelOrder(REPLACEMENT_ID);
+        verify(tradeService, times(1)).placeLimitOrder(any(LimitOrder.class));
+        observer.assertNotComplete();
+    }
+
+    // a replacement can't take the spread past its target, so if the book is already past it we leave the order be
+    @Test
+    public void testRepriceWouldMissSpreadTarget() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID)).thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")));
+
+        // the short leg sold at 101.00, so buying above 101.00 / 1.005 = 100.49 misses the entry target
+        TestObserver<Void> observer = manage(new BigDecimal("0.005"), "100.50").test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.HOURS);
+
+        verify(tradeService, times(1)).getOrder(ORDER_ID);
+        verify(tradeService, never()).cancelOrder(anyString());
+        verify(orderStatusTracker, times(2)).awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID);
+        observer.assertNotComplete();
+    }
+
+    // the book moved between checking it and cancelling, so the replacement only goes as far as the target allows
+    @Test
+    public void testRepriceCappedAtSpreadTarget() throws IOException {
+        tradingConfiguration.setRepriceTimeout(1000L);
+
+        when(tradeService.getOrder(ORDER_ID))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.NEW, "0")))
+            .thenReturn(Collections.singletonList(exchangeOrder(Order.OrderStatus.CANCELED, "0")));
+        when(tradeService.cancelOrder(ORDER_ID)).thenReturn(true);
+        when(tradeService.placeLimitOrder(any(LimitOrder.class))).thenReturn(REPLACEMENT_ID);
+
+        TestObserver<Void> observer = manage(new BigDecimal("0.005"), "100.40", "100.60").test();
+
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS);
+
+        ArgumentCaptor<LimitOrder> replacement = ArgumentCaptor.forClass(LimitOrder.class);
+
+        verify(tradeService).placeLimitOrder(replacement.capture());
+        assertEquals(new BigDecimal("100.49"), replacement.getValue().getLimitPrice());
+        observer.assertComplete();
+    }
+
+    private Completable manage() {
+        return manage(null, "101.00");
+    }
+
+    // manage the order as the long leg of a pair whose short leg sold at 101.00, with the book at each price in turn
+    private Completable manage(BigDecimal spreadTarget, String ... bookPrices) {
+        LimitOrder shortOrder = new LimitOrder.Builder(Order.OrderType.ASK, CurrencyPair.BTC_USD)
+            .limitPrice(new BigDecimal("101.00"))
+            .originalAmount(BigDecimal.ONE)
+            .build();
+        OrderPairPrices prices = new OrderPairPrices(order, shortOrder, spreadTarget);
+        Iterator<String> book = Arrays.asList(bookPrices).iterator();
+
+        return orderRepricer.manage(exchange, CurrencyPair.BTC_USD, order, ORDER_ID, new OrderRepricer.Leg() {
+            private BigDecimal price;
+
+            @Override
+            public boolean isLong() {
+                return true;
+            }
+
+            @Override
+            public BigDecimal getPrice(BigDecimal volume) {
+                if (book.hasNext()) {
+                    price = new BigDecimal(book.next());
+                }
+
+                return price;
+            }
+
+            @Override
+            public BigDecimal getWorstPrice() {
+                return prices.getWorstLongPrice();
+            }
+
+            @Override
+            public BigDecimal reprice(BigDecimal price) {
+                return prices.repriceLong(price);
+            }
+
+            @Override
+            public void replaced(String orderId, BigDecimal remaining) {
+                replacedOrderId = orderId;
+                replacedRemaining = remaining;
+            }
+        });
+    }
+
+    private Order exchangeOrder(Order.OrderStatus status, String cumulativeAmount) {
+        return new LimitOrder(
+            order.getType(),
+            order.getOriginalAmount(),
+            order.getInstrument(),
+            ORDER_ID,
+            null,
+            order.getLimitPrice(),
+            null,
+            new BigDecimal(cumulativeAmount),
+            null,
+            status);
+    }
+
+    private static Ticker ticker(String bid, String ask) {
+        return new Ticker.Builder()
+            .currencyPair(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .build();
+    }
+}
@@ -0,0 +1,237 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import info.bitrich.xchangestream.core.StreamingExchange;
+import info.bitrich.xchangestream.core.StreamingTradeService;
+import io.reactivex.observers.TestObserver;
+import io.reactivex.schedulers.TestScheduler;
+import io.reactivex.subjects.PublishSubject;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.dto.trade.OpenOrders;
+import org.knowm.xchange.exceptions.NotYetImplementedForExchangeException;
+import org.knowm.xchange.service.trade.TradeService;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class OrderStatusTrackerTest extends BaseTestCase {
+    private static final String ORDER_ID = "orderId";
+
+    private final TestScheduler scheduler = new TestScheduler();
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    @Mock
+    private StreamingExchange exchange;
+
+    @Mock
+    private TradeService tradeService;
+
+    @Mock
+    private StreamingTradeService streamingTradeService;
+
+    private ExchangeSpecification exchangeSpecification;
+
+    private PublishSubject<Order> orderChanges;
+
+    private OrderStatusTracker orderStatusTracker;
+
+    @Before
+    public void setUp() {
+        TradingConfiguration tradingConfiguration = new TradingConfiguration();
+
+        exchangeSpecification = new ExchangeSpecification(StreamingExchange.class);
+        exchangeSpecification.setExchangeName("StreamCoin");
+        orderChanges = PublishSubject.create();
+
+        when(exchange.getExchangeSpecification()).thenReturn(exchangeSpecification);
+        when(exchange.getTradeService()).thenReturn(tradeService);
+        when(exchange.getStreamingTradeService()).thenReturn(streamingTradeService);
+        when(streamingTradeService.getOrderChanges(any(CurrencyPair.class))).thenReturn(orderChanges);
+        when(streamingTradeService.getUserTrades(any(CurrencyPair.class)))
+            .thenThrow(new NotYetImplementedForExchangeException());
+
+        orderStatusTracker = new OrderStatusTracker(
+            tradingConfiguration,
+            exchangeService,
+            new ExchangeIoExecutor(tradingConfiguration, exchangeName -> Runnable::run),
+            scheduler);
+    }
+
+    @Test
+    public void testAwaitClosed() throws IOException {
+        when(tradeService.getOpenOrders()).thenReturn(openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.triggerActions();
+
+        observer.assertComplete();
+        verify(tradeService).getOpenOrders();
+    }
+
+    @Test
+    public void testAwaitClosedIgnoresOtherOrders() throws IOException {
+        when(tradeService.getOpenOrders()).thenReturn(openOrders("someoneElse"));
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.triggerActions();
+
+        observer.assertComplete();
+    }
+
+    @Test
+    public void testAwaitClosedNullOrderId() throws IOException {
+        when(tradeService.getOpenOrders()).thenReturn(openOrders("someoneElse"), openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, null).test();
+
+        scheduler.triggerActions();
+        observer.assertNotComplete();
+
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        observer.assertComplete();
+        verify(exchange, never()).getStreamingTradeService();
+    }
+
+    // poll quickly at first, then less and less often
+    @Test
+    public void testAwaitClosedBacksOff() throws IOException {
+        when(tradeService.getOpenOrders()).thenReturn(
+            openOrders(ORDER_ID),
+            openOrders(ORDER_ID),
+            openOrders(ORDER_ID),
+            openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.triggerActions();
+        verify(tradeService, times(1)).getOpenOrders();
+
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        verify(tradeService, times(2)).getOpenOrders();
+
+        scheduler.advanceTimeBy(499, TimeUnit.MILLISECONDS);
+        verify(tradeService, times(2)).getOpenOrders();
+
+        scheduler.advanceTimeBy(1, TimeUnit.MILLISECONDS);
+        verify(tradeService, times(3)).getOpenOrders();
+        observer.assertNotComplete();
+
+        scheduler.advanceTimeBy(1000, TimeUnit.MILLISECONDS);
+        verify(tradeService, times(4)).getOpenOrders();
+        observer.assertComplete();
+    }
+
+    @Test
+    public void testAwaitClosedBackOffLimit() throws IOException {
+        when(tradeService.getOpenOrders()).thenReturn(openOrders(ORDER_ID));
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        // 0, 250, 750, 1750, 3750, 7750, 15750, 25750, 35750
+        scheduler.advanceTimeBy(35750, TimeUnit.MILLISECONDS);
+
+        verify(tradeService, times(9)).getOpenOrders();
+        observer.assertNotComplete();
+        observer.dispose();
+    }
+
+    @Test
+    public void testAwaitClosedRetriesErrors() throws IOException {
+        when(tradeService.getOpenOrders())
+            .thenThrow(new IOException("Boom!"))
+            .thenReturn(openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.triggerActions();
+        observer.assertNotComplete();
+        observer.assertNoErrors();
+
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        observer.assertComplete();
+    }
+
+    @Test
+    public void testAwaitClosedRateLimited() throws IOException {
+        TokenBucket rateLimiter = mock(TokenBucket.class);
+
+        when(exchangeService.getRateLimiter(exchange)).thenReturn(rateLimiter);
+        when(rateLimiter.tryAcquire(1)).thenReturn(false, true);
+        when(tradeService.getOpenOrders()).thenReturn(openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.triggerActions();
+        observer.assertNotComplete();
+        verify(tradeService, never()).getOpenOrders();
+
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        observer.assertComplete();
+    }
+
+    // an update on the order stream checks the order right away instead of waiting for the next poll
+    @Test
+    public void testAwaitClosedStreamingUpdate() throws IOException {
+        when(tradeService.getOpenOrders()).thenReturn(openOrders(ORDER_ID), openOrders(ORDER_ID), openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(exchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.advanceTimeBy(250, TimeUnit.MILLISECONDS);
+        verify(tradeService, times(2)).getOpenOrders();
+
+        orderChanges.onNext(limitOrder("someoneElse"));
+        scheduler.triggerActions();
+        verify(tradeService, times(2)).getOpenOrders();
+
+        orderChanges.onNext(limitOrder(ORDER_ID));
+        scheduler.triggerActions();
+        verify(tradeService, times(3)).getOpenOrders();
+        observer.assertComplete();
+        assertFalse(orderChanges.hasObservers());
+    }
+
+    @Test
+    public void testAwaitClosedNonStreamingExchange() throws IOException {
+        Exchange restExchange = mock(Exchange.class);
+
+        when(restExchange.getExchangeSpecification()).thenReturn(exchangeSpecification);
+        when(restExchange.getTradeService()).thenReturn(tradeService);
+        when(tradeService.getOpenOrders()).thenReturn(openOrders());
+
+        TestObserver<Void> observer = orderStatusTracker.awaitClosed(restExchange, CurrencyPair.BTC_USD, ORDER_ID).test();
+
+        scheduler.triggerActions();
+
+        observer.assertComplete();
+    }
+
+    private static OpenOrders openOrders(String ... orderIds) {
+        return new OpenOrders(Arrays.stream(orderIds)
+            .map(OrderStatusTrackerTest::limitOrder)
+            .collect(Collectors.toList()));
+    }
+
+    private static LimitOrder limitOrder(String orderId) {
+        return new LimitOrder(Order.OrderType.BID, BigDecimal.ONE, CurrencyPair.BTC_USD, orderId, null, new BigDecimal("100.00"));
+    }
+}
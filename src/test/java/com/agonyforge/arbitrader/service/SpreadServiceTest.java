@@ -3,12 +3,15 @@ package com.agonyforge.arbitrader.service;
 import com.agonyforge.arbitrader.ExchangeBuilder;
 import com.agonyforge.arbitrader.BaseTestCase;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.TickerCache;
 import com.agonyforge.arbitrader.service.model.ExchangeFee;
 import com.agonyforge.arbitrader.service.model.Spread;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
 import org.mockito.Mock;
 
 import java.io.IOException;
@@ -16,6 +19,8 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
 
 public class SpreadServiceTest extends BaseTestCase {
     private Exchange longExchange;
@@ -239,4 +244,63 @@ public class SpreadServiceTest extends BaseTestCase {
         assertEquals(new BigDecimal("-0.006587871534012").setScale(8, RoundingMode.HALF_EVEN), exitSpreadTarget.setScale(8, RoundingMode.HALF_EVEN));
 
     }
+
+    @Test
+    public void testEstimateSpreadIn() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+
+        when(tickerService.getTickerSnapshot(longExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("99.00", "100.00"));
+        when(tickerService.getTickerSnapshot(shortExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("101.00", "102.00"));
+
+        assertEquals(0.01, spreadService.estimateSpreadIn(tradeCombination), 1e-12);
+    }
+
+    @Test
+    public void testEstimateSpreadOut() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+
+        when(tickerService.getTickerSnapshot(longExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("100.00", "101.00"));
+        when(tickerService.getTickerSnapshot(shortExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("99.00", "99.00"));
+
+        assertEquals(-0.01, spreadService.estimateSpreadOut(tradeCombination), 1e-12);
+    }
+
+    @Test
+    public void testEstimateSpreadMatchesComputeSpread() {
+        BigDecimal longPrice = new BigDecimal("9876.54");
+        BigDecimal shortPrice = new BigDecimal("9912.34");
+
+        assertEquals(
+            spreadService.computeSpread(longPrice, shortPrice).doubleValue(),
+            SpreadService.estimateSpread(longPrice.doubleValue(), shortPrice.doubleValue()),
+            1e-6);
+    }
+
+    @Test
+    public void testEstimateSpreadMissingTicker() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+
+        when(tickerService.getTickerSnapshot(longExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("99.00", "100.00"));
+
+        assertTrue(Double.isNaN(spreadService.estimateSpreadIn(tradeCombination)));
+        assertTrue(Double.isNaN(spreadService.estimateSpreadOut(tradeCombination)));
+    }
+
+    @Test
+    public void testEstimateSpreadZeroPrice() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD);
+
+        when(tickerService.getTickerSnapshot(longExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("0.00", "0.00"));
+        when(tickerService.getTickerSnapshot(shortExchange, CurrencyPair.BTC_USD)).thenReturn(buildSnapshot("101.00", "102.00"));
+
+        assertTrue(Double.isNaN(spreadService.estimateSpreadIn(tradeCombination)));
+    }
+
+    private static TickerCache.Snapshot buildSnapshot(String bid, String ask) {
+        return new TickerCache.Snapshot(new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .build());
+    }
 }
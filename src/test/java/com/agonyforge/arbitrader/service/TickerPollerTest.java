@@ -0,0 +1,91 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class TickerPollerTest extends BaseTestCase {
+    private final List<CurrencyPair> currencyPairs = Collections.singletonList(CurrencyPair.BTC_USD);
+    private final CountDownLatch slowExchangeLatch = new CountDownLatch(1);
+
+    private Exchange fastExchange;
+    private Exchange slowExchange;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    private TickerPoller tickerPoller;
+
+    @Before
+    public void setUp() throws IOException {
+        fastExchange = new ExchangeBuilder("Fast", CurrencyPair.BTC_USD).build();
+        slowExchange = new ExchangeBuilder("Slow", CurrencyPair.BTC_USD).build();
+
+        Map<Exchange, List<CurrencyPair>> activePairs = new HashMap<>();
+
+        activePairs.put(fastExchange, currencyPairs);
+        activePairs.put(slowExchange, currencyPairs);
+
+        when(tickerService.getActiveCurrencyPairs()).thenReturn(activePairs);
+        when(tickerService.getRequestCount(any(Exchange.class), anyList())).thenReturn(1);
+
+        // the slow exchange never answers until the test is over
+        doAnswer(invocation -> {
+            slowExchangeLatch.await();
+            return null;
+        }).when(tickerService).refreshTickers(eq(slowExchange), anyList());
+
+        tickerPoller = new TickerPoller(tickerService, exchangeService, 0L, 20L);
+    }
+
+    @After
+    public void tearDown() {
+        slowExchangeLatch.countDown();
+        tickerPoller.stop();
+    }
+
+    @Test
+    public void testSlowExchangeDoesNotDelayOthers() {
+        tickerPoller.start();
+
+        verify(tickerService, timeout(2000).atLeast(5)).refreshTickers(eq(fastExchange), eq(currencyPairs));
+        verify(tickerService, times(1)).refreshTickers(eq(slowExchange), eq(currencyPairs));
+    }
+
+    @Test
+    public void testRateLimited() {
+        when(exchangeService.getRateLimiter(fastExchange)).thenReturn(new TokenBucket(1000.0, 10));
+
+        tickerPoller.start();
+
+        // much faster than the default 20 ms interval
+        verify(tickerService, timeout(1000).atLeast(50)).refreshTickers(eq(fastExchange), eq(currencyPairs));
+    }
+
+    @Test
+    public void testStartTwice() {
+        tickerPoller.start();
+        tickerPoller.start();
+
+        verify(tickerService, times(1)).getActiveCurrencyPairs();
+    }
+}
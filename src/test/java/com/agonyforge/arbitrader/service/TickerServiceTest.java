@@ -2,9 +2,11 @@ package com.agonyforge.arbitrader.service;
 
 import com.agonyforge.arbitrader.ExchangeBuilder;
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.SpreadEvaluation;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
 import com.agonyforge.arbitrader.service.model.TickerEvent;
 import com.agonyforge.arbitrader.service.model.TradeCombination;
 import com.agonyforge.arbitrader.service.ticker.ParallelTickerStrategy;
@@ -27,6 +29,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -59,12 +62,13 @@ public class TickerServiceTest {
         tickerService = new TickerService(
             tradingConfiguration,
             exchangeService,
-            errorCollectorService);
+            errorCollectorService,
+            new TickerLatencyMonitor());
 
         errorCollectorService = new ErrorCollectorService();
 
-        singleCallTickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
-        parallelTickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        singleCallTickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new ExchangeIoExecutor(new TradingConfiguration()));
+        parallelTickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new ExchangeIoExecutor(new TradingConfiguration()));
 
 
     }
@@ -91,6 +95,39 @@ public class TickerServiceTest {
         assertTrue(tickerService.tradeCombinations.contains(new TradeCombination(exchangeB, exchangeA, CURRENCY_PAIR)));
     }
 
+    @Test
+    public void testGetActiveCurrencyPairs() throws IOException {
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR).build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR).build();
+        Exchange exchangeC = new ExchangeBuilder("ExchangeC", CURRENCY_PAIR).build();
+
+        tickerService.tradeCombinations.add(new TradeCombination(exchangeA, exchangeB, CURRENCY_PAIR));
+        tickerService.tradeCombinations.add(new TradeCombination(exchangeB, exchangeA, CURRENCY_PAIR));
+        tickerService.tradeCombinations.add(new TradeCombination(exchangeA, exchangeC, CurrencyPair.ETH_USD));
+
+        Map<Exchange, List<CurrencyPair>> activePairs = tickerService.getActiveCurrencyPairs();
+
+        assertEquals(3, activePairs.size());
+        assertEquals(2, activePairs.get(exchangeA).size());
+        assertTrue(activePairs.get(exchangeA).containsAll(Arrays.asList(CURRENCY_PAIR, CurrencyPair.ETH_USD)));
+        assertEquals(Collections.singletonList(CURRENCY_PAIR), activePairs.get(exchangeB));
+        assertEquals(Collections.singletonList(CurrencyPair.ETH_USD), activePairs.get(exchangeC));
+    }
+
+    @Test
+    public void testGetRequestCount() throws IOException {
+        Exchange singleCallExchange = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickerStrategy(singleCallTickerStrategy)
+            .build();
+        Exchange parallelExchange = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickerStrategy(parallelTickerStrategy)
+            .build();
+        List<CurrencyPair> pairs = Arrays.asList(CURRENCY_PAIR, CurrencyPair.ETH_USD);
+
+        assertEquals(1, tickerService.getRequestCount(singleCallExchange, pairs));
+        assertEquals(2, tickerService.getRequestCount(parallelExchange, pairs));
+    }
+
     @Test
     public void testRefreshTickers() throws IOException {
         Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
@@ -111,12 +148,12 @@ public class TickerServiceTest {
         tickerService.refreshTickers();
 
         assertEquals(3, tickerService.allTickers.size());
-        assertNotNull(tickerService.tickerKey(exchangeA, CURRENCY_PAIR));
-        assertNotNull(tickerService.tickerKey(exchangeB, CURRENCY_PAIR));
+        assertNotNull(tickerService.getTicker(exchangeA, CURRENCY_PAIR));
+        assertNotNull(tickerService.getTicker(exchangeB, CURRENCY_PAIR));
 
         // TODO we get this last one due to inaccurate mocking within getTickers()
         // in a real situation we'd only get the first two
-        assertNotNull(tickerService.tickerKey(exchangeB, CurrencyPair.ETH_USD));
+        assertNotNull(tickerService.getTicker(exchangeB, CurrencyPair.ETH_USD));
     }
 
     @Test
@@ -127,7 +164,7 @@ public class TickerServiceTest {
             .currencyPair(CURRENCY_PAIR)
             .build();
 
-        tickerService.allTickers.put(tickerService.tickerKey(exchange, CURRENCY_PAIR), ticker);
+        tickerService.allTickers.put(exchange, CURRENCY_PAIR, ticker);
 
         Ticker result = tickerService.getTicker(exchange, CURRENCY_PAIR);
 
@@ -207,6 +244,181 @@ public class TickerServiceTest {
         assertTrue(result.contains(combination));
     }
 
+    @Test
+    public void testGetTradeCombinationsForExchangeAndPair() throws IOException {
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Arrays.asList(CURRENCY_PAIR, CurrencyPair.ETH_USD))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Arrays.asList(CURRENCY_PAIR, CurrencyPair.ETH_USD))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeC = new ExchangeBuilder("ExchangeC", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(false)
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB, exchangeC));
+
+        List<TradeCombination> result = tickerService.getExchangeTradeCombinations(exchangeC, CURRENCY_PAIR);
+
+        assertEquals(2, result.size());
+        assertTrue(result.contains(new TradeCombination(exchangeC, exchangeA, CURRENCY_PAIR)));
+        assertTrue(result.contains(new TradeCombination(exchangeC, exchangeB, CURRENCY_PAIR)));
+
+        result = tickerService.getExchangeTradeCombinations(exchangeA, CurrencyPair.ETH_USD);
+
+        assertEquals(2, result.size());
+        assertTrue(result.contains(new TradeCombination(exchangeA, exchangeB, CurrencyPair.ETH_USD)));
+        assertTrue(result.contains(new TradeCombination(exchangeB, exchangeA, CurrencyPair.ETH_USD)));
+
+        assertTrue(tickerService.getExchangeTradeCombinations(exchangeC, CurrencyPair.ETH_USD).isEmpty());
+    }
+
+    @Test
+    public void testGetTradeCombinationsForExchangeAndPairRotates() throws IOException {
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB));
+
+        List<TradeCombination> first = tickerService.getExchangeTradeCombinations(exchangeA, CURRENCY_PAIR);
+        List<TradeCombination> second = tickerService.getExchangeTradeCombinations(exchangeA, CURRENCY_PAIR);
+
+        assertEquals(2, first.size());
+        assertEquals(first.get(0), second.get(1));
+        assertEquals(first.get(1), second.get(0));
+    }
+
+    @Test
+    public void testGetTradeCombinationsForExchangeAndHomeCurrencyPair() throws IOException {
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withHomeCurrency(Currency.USDT)
+            .withMarginSupported(false)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB));
+
+        List<TradeCombination> result = tickerService.getExchangeTradeCombinations(exchangeA, CurrencyPair.BTC_USDT);
+
+        assertEquals(1, result.size());
+        assertTrue(result.contains(new TradeCombination(exchangeA, exchangeB, CURRENCY_PAIR)));
+        assertTrue(tickerService.getExchangeTradeCombinations(exchangeB, CurrencyPair.BTC_USDT).isEmpty());
+    }
+
+    @Test
+    public void testGetBestTradeCombination() throws IOException {
+        TradingConfiguration tradingConfiguration = new TradingConfiguration();
+        tradingConfiguration.setSpreadEvaluation(SpreadEvaluation.BEST_VENUE);
+        tickerService = new TickerService(tradingConfiguration, exchangeService, errorCollectorService, new TickerLatencyMonitor());
+
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeC = new ExchangeBuilder("ExchangeC", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(false)
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB, exchangeC));
+
+        assertNull(tickerService.getBestTradeCombination(exchangeA, CURRENCY_PAIR));
+
+        tickerService.putTicker(exchangeA, buildTicker("99.00", "100.00"));
+        tickerService.putTicker(exchangeB, buildTicker("102.00", "103.00"));
+        tickerService.putTicker(exchangeC, buildTicker("101.00", "101.50"));
+
+        assertEquals(new TradeCombination(exchangeA, exchangeB, CURRENCY_PAIR), tickerService.getBestTradeCombination(exchangeA, CURRENCY_PAIR));
+
+        // C has the best ask now, but it can't go short so B still has the best bid
+        tickerService.putTicker(exchangeC, buildTicker("104.00", "98.00"));
+
+        assertEquals(new TradeCombination(exchangeC, exchangeB, CURRENCY_PAIR), tickerService.getBestTradeCombination(exchangeC, CURRENCY_PAIR));
+        assertNull(tickerService.getBestTradeCombination(exchangeA, CurrencyPair.ETH_USD));
+    }
+
+    @Test
+    public void testMarkStale() throws IOException {
+        TradingConfiguration tradingConfiguration = new TradingConfiguration();
+        tradingConfiguration.setSpreadEvaluation(SpreadEvaluation.BEST_VENUE);
+        tickerService = new TickerService(tradingConfiguration, exchangeService, errorCollectorService, new TickerLatencyMonitor());
+
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB));
+        tickerService.putTicker(exchangeA, buildTicker("99.00", "100.00"));
+        tickerService.putTicker(exchangeB, buildTicker("102.00", "103.00"));
+
+        assertNotNull(tickerService.getBestTradeCombination(exchangeA, CURRENCY_PAIR));
+
+        tickerService.markStale(exchangeB, CURRENCY_PAIR);
+
+        assertNull(tickerService.getTicker(exchangeB, CURRENCY_PAIR));
+        assertNull(tickerService.getBestTradeCombination(exchangeA, CURRENCY_PAIR));
+
+        // fresh prices make it usable again
+        tickerService.putTicker(exchangeB, buildTicker("102.50", "103.50"));
+
+        assertNotNull(tickerService.getTicker(exchangeB, CURRENCY_PAIR));
+        assertEquals(new TradeCombination(exchangeA, exchangeB, CURRENCY_PAIR), tickerService.getBestTradeCombination(exchangeA, CURRENCY_PAIR));
+    }
+
+    @Test
+    public void testGetBestTradeCombinationNotEnabled() throws IOException {
+        Exchange exchangeA = new ExchangeBuilder("ExchangeA", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+        Exchange exchangeB = new ExchangeBuilder("ExchangeB", CURRENCY_PAIR)
+            .withTickers(true, Collections.singletonList(CURRENCY_PAIR))
+            .withExchangeMetaData()
+            .withMarginSupported(true)
+            .build();
+
+        tickerService.initializeTickers(Arrays.asList(exchangeA, exchangeB));
+        tickerService.putTicker(exchangeA, buildTicker("99.00", "100.00"));
+        tickerService.putTicker(exchangeB, buildTicker("102.00", "103.00"));
+
+        assertNull(tickerService.getBestTradeCombination(exchangeA, CURRENCY_PAIR));
+    }
+
     @Test
     public void testFetchTickers() throws IOException {
         Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
@@ -284,15 +496,28 @@ public class TickerServiceTest {
             .timestamp(new Date(1609634008L))
             .build();
 
-        tickerService.allTickers.put(
-            tickerService.tickerKey(exchange, CurrencyPair.BTC_USD),
-            oldTicker);
+        tickerService.allTickers.put(exchange, CurrencyPair.BTC_USD, oldTicker);
 
         tickerService.putTicker(exchange, newTicker);
 
         assertEquals(newTicker, tickerService.getTicker(exchange, CurrencyPair.BTC_USD));
     }
 
+    @Test
+    public void testPutTickerSuppressesUnchanged() throws IOException {
+        Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
+            .withTickerStrategy(singleCallTickerStrategy)
+            .withHomeCurrency(Currency.USD)
+            .build();
+
+        assertTrue(tickerService.putTicker(exchange, buildTicker("120.00", "123.00")));
+        assertFalse(tickerService.putTicker(exchange, buildTicker("120.00", "123.00")));
+        assertTrue(tickerService.putTicker(exchange, buildTicker("120.50", "123.00")));
+
+        assertEquals(2, tickerService.getChangedTickers());
+        assertEquals(1, tickerService.getSuppressedTickers());
+    }
+
     @Test
     public void testPutTickerOlderTicker() throws IOException {
         Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
@@ -312,9 +537,7 @@ public class TickerServiceTest {
             .timestamp(new Date(1609633979L))
             .build();
 
-        tickerService.allTickers.put(
-            tickerService.tickerKey(exchange, CurrencyPair.BTC_USD),
-            oldTicker);
+        tickerService.allTickers.put(exchange, CurrencyPair.BTC_USD, oldTicker);
 
         tickerService.putTicker(exchange, newTicker);
 
@@ -357,9 +580,7 @@ public class TickerServiceTest {
             .timestamp(new Date(1609633979L))
             .build();
 
-        tickerService.allTickers.put(
-            tickerService.tickerKey(exchange, CurrencyPair.BTC_USD),
-            oldTicker);
+        tickerService.allTickers.put(exchange, CurrencyPair.BTC_USD, oldTicker);
 
         tickerService.putTicker(exchange, newTicker);
 
@@ -384,9 +605,7 @@ public class TickerServiceTest {
             .instrument(CurrencyPair.BTC_USD)
             .build();
 
-        tickerService.allTickers.put(
-            tickerService.tickerKey(exchange, CurrencyPair.BTC_USD),
-            oldTicker);
+        tickerService.allTickers.put(exchange, CurrencyPair.BTC_USD, oldTicker);
 
         tickerService.putTicker(exchange, newTicker);
 
@@ -411,12 +630,18 @@ public class TickerServiceTest {
             .instrument(CurrencyPair.BTC_USD)
             .build();
 
-        tickerService.allTickers.put(
-            tickerService.tickerKey(exchange, CurrencyPair.BTC_USD),
-            oldTicker);
+        tickerService.allTickers.put(exchange, CurrencyPair.BTC_USD, oldTicker);
 
         tickerService.putTicker(exchange, newTicker);
 
         assertEquals(newTicker, tickerService.getTicker(exchange, CurrencyPair.BTC_USD));
     }
+
+    private Ticker buildTicker(String bid, String ask) {
+        return new Ticker.Builder()
+            .instrument(CURRENCY_PAIR)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .build();
+    }
 }
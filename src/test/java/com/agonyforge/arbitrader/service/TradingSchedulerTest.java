@@ -0,0 +1,106 @@
+package com.agonyforge.arbitrader.service;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.JsonConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.event.TickerEventBus;
+import com.agonyforge.arbitrader.service.event.TickerEventListener;
+import com.agonyforge.arbitrader.service.event.TickerMailbox;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.agonyforge.arbitrader.service.model.ActivePosition;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TradingSchedulerTest extends BaseTestCase {
+    private final ObjectMapper objectMapper = new JsonConfiguration().objectMapper();
+
+    private File stateFile;
+    private TradingScheduler tradingScheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        stateFile = File.createTempFile("arbitrader-state", ".json");
+
+        tradingScheduler = new TradingScheduler(
+            objectMapper,
+            new TradingConfiguration(),
+            mock(ConditionService.class),
+            mock(ExchangeService.class),
+            mock(TradingService.class),
+            mock(ErrorCollectorService.class),
+            mock(SpreadService.class),
+            mock(TickerService.class),
+            mock(TickerPoller.class),
+            mock(OpportunityRanker.class),
+            mock(TickerMailbox.class),
+            mock(TickerEventBus.class),
+            mock(TickerEventListener.class),
+            mock(ExchangeIoExecutor.class),
+            mock(TickerLatencyMonitor.class),
+            mock(ExchangeFeeRefresher.class));
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(stateFile);
+    }
+
+    @Test
+    public void testReadActivePositions() throws IOException {
+        ActivePosition first = buildActivePosition("Long", "Short");
+        ActivePosition second = buildActivePosition("Short", "Long");
+
+        FileUtils.write(stateFile, objectMapper.writeValueAsString(Arrays.asList(first, second)), StandardCharsets.UTF_8);
+
+        List<ActivePosition> activePositions = tradingScheduler.readActivePositions(stateFile);
+
+        assertEquals(Arrays.asList(first, second), activePositions);
+    }
+
+    // state files from before there could be more than one position
+    @Test
+    public void testReadSingleActivePosition() throws IOException {
+        ActivePosition activePosition = buildActivePosition("Long", "Short");
+
+        FileUtils.write(stateFile, objectMapper.writeValueAsString(activePosition), StandardCharsets.UTF_8);
+
+        List<ActivePosition> activePositions = tradingScheduler.readActivePositions(stateFile);
+
+        assertEquals(1, activePositions.size());
+        assertEquals(activePosition, activePositions.get(0));
+    }
+
+    @Test
+    public void testReadNullActivePosition() throws IOException {
+        FileUtils.write(stateFile, "null", StandardCharsets.UTF_8);
+
+        assertTrue(tradingScheduler.readActivePositions(stateFile).isEmpty());
+    }
+
+    private ActivePosition buildActivePosition(String longExchangeName, String shortExchangeName) throws IOException {
+        ActivePosition activePosition = new ActivePosition();
+
+        activePosition.setCurrencyPair(CurrencyPair.BTC_USD);
+        activePosition.setExitTarget(new BigDecimal("-0.002"));
+        activePosition.getLongTrade().setExchange(new ExchangeBuilder(longExchangeName, CurrencyPair.BTC_USD).build());
+        activePosition.getShortTrade().setExchange(new ExchangeBuilder(shortExchangeName, CurrencyPair.BTC_USD).build());
+
+        return activePosition;
+    }
+}
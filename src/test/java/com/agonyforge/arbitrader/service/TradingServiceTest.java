@@ -5,10 +5,22 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.agonyforge.arbitrader.BaseTestCase;
 import com.agonyforge.arbitrader.config.JsonConfiguration;
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.FeeComputation;
+import com.agonyforge.arbitrader.config.SpreadEvaluation;
 import com.agonyforge.arbitrader.exception.OrderNotFoundException;
+import com.agonyforge.arbitrader.exception.OrderPlacementException;
 import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.agonyforge.arbitrader.service.model.ActivePosition;
 import com.agonyforge.arbitrader.service.model.ArbitrageLog;
+import com.agonyforge.arbitrader.service.model.DepthBook;
+import com.agonyforge.arbitrader.service.model.ExchangeFee;
+import com.agonyforge.arbitrader.service.model.InstrumentParameters;
+import com.agonyforge.arbitrader.service.model.Spread;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
 import com.agonyforge.arbitrader.service.telegram.TelegramClient;
+import io.reactivex.subjects.CompletableSubject;
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
 import org.junit.Test;
@@ -16,6 +28,11 @@ import org.knowm.xchange.Exchange;
 import org.knowm.xchange.currency.Currency;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.knowm.xchange.dto.trade.LimitOrder;
+import org.knowm.xchange.exceptions.ExchangeException;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.springframework.mail.javamail.JavaMailSender;
 
@@ -25,12 +42,18 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.nio.charset.StandardCharsets;
 import java.time.OffsetDateTime;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import static com.agonyforge.arbitrader.DecimalConstants.BTC_SCALE;
 import static com.agonyforge.arbitrader.DecimalConstants.USD_SCALE;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.*;
 
 public class TradingServiceTest extends BaseTestCase {
@@ -42,12 +65,24 @@ public class TradingServiceTest extends BaseTestCase {
 
     private TradingConfiguration tradingConfiguration;
 
+    private OrderBookCache orderBookCache;
+
+    private OrderBookPrefetcher orderBookPrefetcher;
+
+    private ExchangeIoExecutor exchangeIoExecutor;
+
     @Mock
     private ExchangeService exchangeService;
 
     @Mock
     private SpreadService spreadService;
 
+    @Mock
+    private OrderRepricer orderRepricer;
+
+    @Mock
+    private ExchangeFeeRefresher exchangeFeeRefresher;
+
     private TradingService tradingService;
 
     @Before
@@ -64,10 +99,17 @@ public class TradingServiceTest extends BaseTestCase {
         TickerService tickerService = new TickerService(
             new TradingConfiguration(),
             exchangeService,
-            errorCollectorService);
+            errorCollectorService,
+            new TickerLatencyMonitor());
         spreadService = new SpreadService(tradingConfiguration, tickerService);
         NotificationServiceImpl notificationService = new NotificationServiceImpl(javaMailSenderMock, notificationConfiguration, telegramClient);
         tradingConfiguration = new TradingConfiguration();
+        orderBookCache = new OrderBookCache();
+        exchangeIoExecutor = new ExchangeIoExecutor(tradingConfiguration, exchangeName -> Runnable::run);
+        orderBookPrefetcher = new OrderBookPrefetcher(tradingConfiguration, exchangeService, spreadService, orderBookCache, exchangeIoExecutor);
+
+        when(exchangeFeeRefresher.getExchangeFee(any(Exchange.class), any(CurrencyPair.class)))
+            .thenReturn(new ExchangeFee(BigDecimal.ZERO, BigDecimal.ZERO));
 
         longExchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD)
                 .withExchangeMetaData()
@@ -88,7 +130,12 @@ public class TradingServiceTest extends BaseTestCase {
             conditionService,
             exchangeService,
             spreadService,
-            notificationService));
+            notificationService,
+            orderBookCache,
+            orderBookPrefetcher,
+            exchangeIoExecutor,
+            orderRepricer,
+            exchangeFeeRefresher));
     }
 
     @Test
@@ -245,6 +292,74 @@ public class TradingServiceTest extends BaseTestCase {
         assertEquals(new BigDecimal("100.098").setScale(ExchangeBuilder.EXCHANGE_METADATA_PRICE_SCALE, RoundingMode.HALF_EVEN), limitPrice);
     }
 
+    // use the streamed order book instead of asking the exchange
+    @Test
+    public void testLimitPriceStreamingOrderBook() throws IOException {
+        when(exchangeService.convertExchangePair(any(Exchange.class), any(CurrencyPair.class)))
+            .thenReturn(currencyPair);
+
+        tradingConfiguration.setOrderBookMaxAge(60000L);
+        orderBookCache.put(longExchange, currencyPair, new OrderBook(
+            null,
+            ExchangeBuilder.generateOrders(currencyPair, Order.OrderType.ASK)
+                .stream()
+                .map(order -> new LimitOrder(Order.OrderType.ASK, order.getOriginalAmount(), currencyPair, null, null, order.getLimitPrice().add(BigDecimal.TEN)))
+                .collect(Collectors.toList()),
+            ExchangeBuilder.generateOrders(currencyPair, Order.OrderType.BID)));
+
+        BigDecimal allowedVolume = new BigDecimal("1.00");
+        BigDecimal limitPrice = tradingService.getLimitPrice(longExchange, currencyPair, allowedVolume, Order.OrderType.ASK);
+
+        assertEquals(new BigDecimal("110.000").setScale(ExchangeBuilder.EXCHANGE_METADATA_PRICE_SCALE, RoundingMode.HALF_EVEN), limitPrice);
+        verify(longExchange.getMarketDataService(), never()).getOrderBook(any(CurrencyPair.class));
+    }
+
+    // fall back to asking the exchange when we don't have a streamed order book
+    @Test
+    public void testLimitPriceStreamingOrderBookMissing() throws IOException {
+        when(exchangeService.convertExchangePair(any(Exchange.class), any(CurrencyPair.class)))
+            .thenReturn(currencyPair);
+
+        tradingConfiguration.setOrderBookMaxAge(60000L);
+
+        BigDecimal allowedVolume = new BigDecimal("1.00");
+        BigDecimal limitPrice = tradingService.getLimitPrice(longExchange, currencyPair, allowedVolume, Order.OrderType.ASK);
+
+        assertEquals(new BigDecimal("100.000").setScale(ExchangeBuilder.EXCHANGE_METADATA_PRICE_SCALE, RoundingMode.HALF_EVEN), limitPrice);
+        verify(longExchange.getMarketDataService()).getOrderBook(currencyPair);
+    }
+
+    // use an order book that was prefetched when the spread got close to the entry target
+    @Test
+    public void testLimitPricePrefetchedOrderBook() throws IOException {
+        when(exchangeService.convertExchangePair(any(Exchange.class), any(CurrencyPair.class)))
+            .thenReturn(currencyPair);
+
+        OrderBookPrefetcher prefetcher = mock(OrderBookPrefetcher.class);
+        when(prefetcher.get(longExchange, currencyPair, Order.OrderType.ASK)).thenReturn(DepthBook.of(
+            Order.OrderType.ASK,
+            Collections.singletonList(new LimitOrder(Order.OrderType.ASK, BigDecimal.TEN, currencyPair, null, null, new BigDecimal("105.000")))));
+
+        tradingService = new TradingService(
+            new JsonConfiguration().objectMapper(),
+            tradingConfiguration,
+            new ConditionService(),
+            exchangeService,
+            spreadService,
+            mock(NotificationService.class),
+            orderBookCache,
+            prefetcher,
+            exchangeIoExecutor,
+            orderRepricer,
+            exchangeFeeRefresher);
+
+        BigDecimal allowedVolume = new BigDecimal("1.00");
+        BigDecimal limitPrice = tradingService.getLimitPrice(longExchange, currencyPair, allowedVolume, Order.OrderType.ASK);
+
+        assertEquals(new BigDecimal("105.000").setScale(ExchangeBuilder.EXCHANGE_METADATA_PRICE_SCALE, RoundingMode.HALF_EVEN), limitPrice);
+        verify(longExchange.getMarketDataService(), never()).getOrderBook(any(CurrencyPair.class));
+    }
+
     // the exchange doesn't have enough volume to fill my gigantic order
     @Test(expected = RuntimeException.class)
     public void testLimitPriceLongInsufficientLiquidity() {
@@ -379,4 +494,535 @@ public class TradingServiceTest extends BaseTestCase {
 
         FileUtils.deleteQuietly(file);
     }
+
+    @Test
+    public void testIsNearTargetDisabled() {
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, currencyPair);
+
+        assertTrue(tradingService.isNearTarget(tradeCombination));
+    }
+
+    @Test
+    public void testIsNearTargetEntry() {
+        SpreadService screeningSpreadService = mock(SpreadService.class);
+        TradingService screeningTradingService = buildScreeningTradingService(screeningSpreadService);
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, currencyPair);
+
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        tradingConfiguration.setSpreadScreeningMargin(new BigDecimal("0.001"));
+
+        when(screeningSpreadService.getEntrySpreadTarget(any(TradingConfiguration.class), any(ExchangeFee.class), any(ExchangeFee.class)))
+            .thenReturn(new BigDecimal("0.005"));
+
+        when(screeningSpreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.0045);
+        assertTrue(screeningTradingService.isNearTarget(tradeCombination));
+
+        when(screeningSpreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.003);
+        assertFalse(screeningTradingService.isNearTarget(tradeCombination));
+
+        when(screeningSpreadService.estimateSpreadIn(tradeCombination)).thenReturn(Double.NaN);
+        assertFalse(screeningTradingService.isNearTarget(tradeCombination));
+    }
+
+    // maker rebates can make the real entry target lower than the configured one, and the screen has to allow for it
+    @Test
+    public void testIsNearTargetEntryRebate() {
+        SpreadService screeningSpreadService = mock(SpreadService.class);
+        TradingService screeningTradingService = buildScreeningTradingService(screeningSpreadService);
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, currencyPair);
+
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        tradingConfiguration.setSpreadScreeningMargin(new BigDecimal("0.001"));
+
+        when(screeningSpreadService.getEntrySpreadTarget(any(TradingConfiguration.class), any(ExchangeFee.class), any(ExchangeFee.class)))
+            .thenReturn(new BigDecimal("0.004"));
+        when(screeningSpreadService.estimateSpreadIn(tradeCombination)).thenReturn(0.0035);
+
+        assertTrue(screeningTradingService.isNearTarget(tradeCombination));
+        assertEquals(0.004, screeningTradingService.getCachedEntrySpreadTarget(tradeCombination), 0.0);
+
+        // the target is only computed once until it's refreshed
+        when(screeningSpreadService.getEntrySpreadTarget(any(TradingConfiguration.class), any(ExchangeFee.class), any(ExchangeFee.class)))
+            .thenReturn(new BigDecimal("0.005"));
+
+        assertTrue(screeningTradingService.isNearTarget(tradeCombination));
+
+        screeningTradingService.refreshEntrySpreadTargets();
+
+        assertFalse(screeningTradingService.isNearTarget(tradeCombination));
+    }
+
+    @Test
+    public void testIsNearTargetExit() {
+        SpreadService screeningSpreadService = mock(SpreadService.class);
+        TradingService screeningTradingService = buildScreeningTradingService(screeningSpreadService);
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortExchange, currencyPair);
+
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        tradingConfiguration.setSpreadScreeningMargin(new BigDecimal("0.001"));
+        screeningTradingService.setActivePositions(Collections.singletonList(buildActivePosition(new BigDecimal("-0.002"))));
+
+        when(screeningSpreadService.estimateSpreadOut(tradeCombination)).thenReturn(-0.0015);
+        assertTrue(screeningTradingService.isNearTarget(tradeCombination));
+
+        when(screeningSpreadService.estimateSpreadOut(tradeCombination)).thenReturn(0.002);
+        assertFalse(screeningTradingService.isNearTarget(tradeCombination));
+    }
+
+    @Test
+    public void testIsNearTargetOtherCombination() {
+        SpreadService screeningSpreadService = mock(SpreadService.class);
+        TradingService screeningTradingService = buildScreeningTradingService(screeningSpreadService);
+        TradeCombination reversed = new TradeCombination(shortExchange, longExchange, currencyPair);
+
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        tradingConfiguration.setSpreadScreeningMargin(new BigDecimal("0.001"));
+        screeningTradingService.setActivePositions(Collections.singletonList(buildActivePosition(new BigDecimal("-0.002"))));
+
+        when(screeningSpreadService.estimateSpreadIn(reversed)).thenReturn(0.01);
+        when(screeningSpreadService.estimateSpreadOut(reversed)).thenReturn(-0.01);
+
+        assertFalse(screeningTradingService.isNearTarget(reversed));
+    }
+
+    @Test
+    public void testGetEntrySpreadTarget() {
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+
+        BigDecimal entrySpreadTarget = tradingService.getEntrySpreadTarget(new TradeCombination(longExchange, shortExchange, currencyPair));
+
+        assertEquals(0, new BigDecimal("0.005").compareTo(entrySpreadTarget));
+    }
+
+    @Test
+    public void testIsBestVenueEvaluation() {
+        assertFalse(tradingService.isBestVenueEvaluation());
+
+        tradingConfiguration.setSpreadEvaluation(SpreadEvaluation.BEST_VENUE);
+
+        assertTrue(tradingService.isBestVenueEvaluation());
+
+        // once we're in a trade, the combination we're in is the one that matters
+        tradingService.setActivePositions(Collections.singletonList(buildActivePosition(new BigDecimal("-0.002"))));
+
+        assertFalse(tradingService.isBestVenueEvaluation());
+    }
+
+    @Test
+    public void testTradeScreensEntry() {
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        doNothing().when(tradingService).commitTrade(any(Spread.class), anyLong());
+
+        tradingService.trade(buildSpread(new BigDecimal("0.003"), BigDecimal.ZERO));
+
+        verify(tradingService, never()).commitTrade(any(Spread.class), anyLong());
+        assertEquals(1, tradingService.getScreenedTrades());
+
+        Spread spread = buildSpread(new BigDecimal("0.006"), BigDecimal.ZERO);
+
+        tradingService.trade(spread);
+
+        verify(tradingService).commitTrade(eq(spread), anyLong());
+        assertEquals(1, tradingService.getScreenedTrades());
+    }
+
+    @Test
+    public void testTradeScreensExit() {
+        tradingService.setActivePositions(Collections.singletonList(buildActivePosition(new BigDecimal("-0.002"))));
+        doNothing().when(tradingService).commitTrade(any(Spread.class), anyLong());
+
+        tradingService.trade(buildSpread(new BigDecimal("0.01"), new BigDecimal("0.001")));
+
+        verify(tradingService, never()).commitTrade(any(Spread.class), anyLong());
+
+        Spread spread = buildSpread(BigDecimal.ZERO, new BigDecimal("-0.003"));
+
+        tradingService.trade(spread);
+
+        verify(tradingService).commitTrade(eq(spread), anyLong());
+    }
+
+    @Test
+    public void testTradeScreensOtherCombination() {
+        tradingService.setActivePositions(Collections.singletonList(buildActivePosition(new BigDecimal("-0.002"))));
+        doNothing().when(tradingService).commitTrade(any(Spread.class), anyLong());
+
+        // trade() only cares about the combination we're in
+        tradingService.trade(new Spread(currencyPair, shortExchange, longExchange, null, null, new BigDecimal("0.01"), new BigDecimal("-0.01")));
+
+        verify(tradingService, never()).commitTrade(any(Spread.class), anyLong());
+        assertEquals(1, tradingService.getScreenedTrades());
+    }
+
+    @Test
+    public void testTradeOtherCombinationWithRoomForAnother() {
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        tradingConfiguration.setMaxPositions(2);
+        tradingService.setActivePositions(Collections.singletonList(buildActivePosition(new BigDecimal("-0.002"))));
+        doNothing().when(tradingService).commitTrade(any(Spread.class), anyLong());
+
+        Spread spread = new Spread(currencyPair, shortExchange, longExchange, null, null, new BigDecimal("0.01"), new BigDecimal("-0.01"));
+
+        tradingService.trade(spread);
+
+        verify(tradingService).commitTrade(eq(spread), anyLong());
+    }
+
+    @Test
+    public void testActivePositionsByCombination() {
+        ActivePosition position = buildActivePosition(new BigDecimal("-0.002"));
+        ActivePosition reversedPosition = new ActivePosition();
+
+        reversedPosition.setCurrencyPair(currencyPair);
+        reversedPosition.setExitTarget(new BigDecimal("-0.001"));
+        reversedPosition.getLongTrade().setExchange(shortExchange);
+        reversedPosition.getShortTrade().setExchange(longExchange);
+
+        tradingConfiguration.setMaxPositions(3);
+        tradingService.setActivePositions(Arrays.asList(position, reversedPosition));
+
+        assertEquals(position, tradingService.getActivePosition(new TradeCombination(longExchange, shortExchange, currencyPair)));
+        assertEquals(reversedPosition, tradingService.getActivePosition(new TradeCombination(shortExchange, longExchange, currencyPair)));
+        assertNull(tradingService.getActivePosition(new TradeCombination(longExchange, shortExchange, CurrencyPair.ETH_USD)));
+        assertEquals(2, tradingService.getActivePositions().size());
+        assertTrue(tradingService.isLookingForEntry());
+
+        tradingConfiguration.setMaxPositions(2);
+
+        assertFalse(tradingService.isLookingForEntry());
+    }
+
+    @Test
+    public void testGetPositionExposure() {
+        tradingConfiguration.setFixedExposure(new BigDecimal("100.00"));
+
+        assertEquals(new BigDecimal("100.00"), tradingService.getPositionExposure(longExchange, shortExchange));
+
+        tradingConfiguration.setPositionExposure(new BigDecimal("25"));
+
+        assertEquals(new BigDecimal("25.00"), tradingService.getPositionExposure(longExchange, shortExchange));
+
+        tradingConfiguration.setPositionExposure(new BigDecimal("250"));
+
+        assertEquals(new BigDecimal("100.00"), tradingService.getPositionExposure(longExchange, shortExchange));
+    }
+
+    // without positionExposure each position gets an equal share of the balance
+    @Test
+    public void testGetPositionExposureSharesBalance() throws IOException {
+        when(exchangeService.getExchangeHomeCurrency(any(Exchange.class))).thenReturn(Currency.USD);
+        when(exchangeService.getExchangeCurrencyScale(any(Exchange.class), any(Currency.class))).thenReturn(2);
+        when(exchangeService.getAccountBalance(any(Exchange.class), any(Currency.class), anyInt())).thenReturn(new BigDecimal("100.00"));
+
+        assertEquals(new BigDecimal("90.00"), tradingService.getPositionExposure(longExchange, shortExchange));
+
+        tradingConfiguration.setMaxPositions(3);
+
+        assertEquals(new BigDecimal("30.00"), tradingService.getPositionExposure(longExchange, shortExchange));
+
+        tradingConfiguration.setPositionExposure(new BigDecimal("50"));
+
+        assertEquals(new BigDecimal("50.00"), tradingService.getPositionExposure(longExchange, shortExchange));
+    }
+
+    @Test
+    public void testTradeScreensExpiredPosition() {
+        ActivePosition activePosition = buildActivePosition(new BigDecimal("-0.002"));
+
+        activePosition.setEntryTime(OffsetDateTime.now().minusHours(2));
+        tradingConfiguration.setTradeTimeout(1L);
+        tradingService.setActivePositions(Collections.singletonList(activePosition));
+        doNothing().when(tradingService).commitTrade(any(Spread.class), anyLong());
+
+        Spread spread = buildSpread(BigDecimal.ZERO, new BigDecimal("0.001"));
+
+        tradingService.trade(spread);
+
+        verify(tradingService).commitTrade(eq(spread), anyLong());
+    }
+
+    @Test
+    public void testCommitTradeWithoutCandidate() {
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+
+        // the commit phase checks again, so a spread that no longer qualifies doesn't trade
+        tradingService.commitTrade(buildSpread(new BigDecimal("0.003"), BigDecimal.ZERO), System.nanoTime());
+
+        assertEquals(1, tradingService.getCommittedTrades());
+        assertEquals(1, tradingService.getCommitWaits().getCount());
+        assertTrue(tradingService.getActivePositions().isEmpty());
+    }
+
+    // only the position whose legs are open waits for them, the other combinations keep trading
+    @Test
+    public void testTradeBlockedWhileLegsOpen() throws IOException {
+        CompletableSubject longLeg = CompletableSubject.create();
+        CompletableSubject shortLeg = CompletableSubject.create();
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+
+        tradingConfiguration.setMaxPositions(2);
+        enterPosition(shortTradeExchange, longLeg, shortLeg);
+
+        assertEquals(1, tradingService.getActivePositions().size());
+
+        doNothing().when(tradingService).commitTrade(any(Spread.class), anyLong());
+
+        Spread other = new Spread(currencyPair, shortTradeExchange, longExchange, null, null, new BigDecimal("0.01"), new BigDecimal("-0.01"));
+        Spread exit = new Spread(currencyPair, longExchange, shortTradeExchange, null, null, new BigDecimal("-0.01"), new BigDecimal("-0.01"));
+
+        tradingService.trade(other);
+
+        verify(tradingService).commitTrade(eq(other), anyLong());
+
+        tradingService.trade(exit);
+        longLeg.onComplete();
+        tradingService.trade(exit);
+
+        verify(tradingService, never()).commitTrade(eq(exit), anyLong());
+
+        try {
+            shortLeg.onComplete();
+            tradingService.trade(exit);
+
+            verify(tradingService).commitTrade(eq(exit), anyLong());
+        } finally {
+            FileUtils.deleteQuietly(new File(".arbitrader/arbitrader-state.json"));
+        }
+    }
+
+    // a position can't be exited while the orders that enter it are still open
+    @Test
+    public void testExitHeldWhileLegsOpen() throws IOException {
+        CompletableSubject longLeg = CompletableSubject.create();
+        CompletableSubject shortLeg = CompletableSubject.create();
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+        TradeCombination tradeCombination = new TradeCombination(longExchange, shortTradeExchange, currencyPair);
+
+        enterPosition(shortTradeExchange, longLeg, shortLeg);
+
+        tradingConfiguration.setSpreadScreeningMargin(new BigDecimal("0.001"));
+        tradingConfiguration.setTradeTimeout(0L);
+
+        try {
+            assertFalse(tradingService.isNearTarget(tradeCombination));
+
+            longLeg.onComplete();
+            assertFalse(tradingService.isNearTarget(tradeCombination));
+
+            shortLeg.onComplete();
+            assertTrue(tradingService.isNearTarget(tradeCombination));
+        } finally {
+            FileUtils.deleteQuietly(new File(".arbitrader/arbitrader-state.json"));
+        }
+    }
+
+    // the position follows a repriced entry order, along with the volume the orders before it filled
+    @Test
+    public void testRepricedEntryLeg() throws IOException {
+        CompletableSubject longLeg = CompletableSubject.create();
+        CompletableSubject shortLeg = CompletableSubject.create();
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+        ArgumentCaptor<OrderRepricer.Leg> repricedLeg = ArgumentCaptor.forClass(OrderRepricer.Leg.class);
+
+        enterPosition(shortTradeExchange, longLeg, shortLeg);
+
+        verify(orderRepricer).manage(eq(longExchange), any(CurrencyPair.class), any(LimitOrder.class), eq("longOrder"), repricedLeg.capture());
+
+        ActivePosition.Trade longTrade = tradingService.getActivePositions().get(0).getLongTrade();
+        BigDecimal volume = longTrade.getVolume();
+
+        repricedLeg.getValue().replaced("longReplacement", volume.subtract(new BigDecimal("0.1")));
+
+        assertEquals("longReplacement", longTrade.getOrderId());
+        assertEquals(0, new BigDecimal("0.1").compareTo(longTrade.getReplacedVolume()));
+        assertEquals(volume, longTrade.getVolume());
+        assertEquals("shortOrder", tradingService.getActivePositions().get(0).getShortTrade().getOrderId());
+    }
+
+    @Test
+    public void testPlaceOrderPair() throws IOException {
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+
+        when(longExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("longOrder");
+        when(shortTradeExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("shortOrder");
+
+        TradingService.OrderLeg longLeg = new TradingService.OrderLeg(longExchange, buildLimitOrder(Order.OrderType.BID));
+        TradingService.OrderLeg shortLeg = new TradingService.OrderLeg(shortTradeExchange, buildLimitOrder(Order.OrderType.ASK));
+
+        tradingService.placeOrderPair(longLeg, shortLeg, System.currentTimeMillis());
+
+        assertEquals("longOrder", longLeg.getOrderId());
+        assertEquals("shortOrder", shortLeg.getOrderId());
+    }
+
+    // the long order has to be cancelled when the short order fails, so we aren't left holding half a trade
+    @Test
+    public void testPlaceOrderPairCancelsOtherLeg() throws IOException {
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+
+        when(longExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("longOrder");
+        when(longExchange.getTradeService().cancelOrder("longOrder")).thenReturn(true);
+        when(shortTradeExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenThrow(new ExchangeException("Insufficient margin"));
+
+        try {
+            tradingService.placeOrderPair(
+                new TradingService.OrderLeg(longExchange, buildLimitOrder(Order.OrderType.BID)),
+                new TradingService.OrderLeg(shortTradeExchange, buildLimitOrder(Order.OrderType.ASK)),
+                System.currentTimeMillis());
+            fail("Expected an OrderPlacementException");
+        } catch (OrderPlacementException e) {
+            assertTrue(e.isResolved());
+            assertEquals("longOrder", e.getLongOrderId());
+            assertNull(e.getShortOrderId());
+        }
+
+        verify(longExchange.getTradeService()).cancelOrder("longOrder");
+    }
+
+    @Test
+    public void testPlaceOrderPairCancelFails() throws IOException {
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+
+        when(longExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenThrow(new ExchangeException("Rate limited"));
+        when(shortTradeExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("shortOrder");
+        when(shortTradeExchange.getTradeService().cancelOrder("shortOrder")).thenReturn(false);
+
+        try {
+            tradingService.placeOrderPair(
+                new TradingService.OrderLeg(longExchange, buildLimitOrder(Order.OrderType.BID)),
+                new TradingService.OrderLeg(shortTradeExchange, buildLimitOrder(Order.OrderType.ASK)),
+                System.currentTimeMillis());
+            fail("Expected an OrderPlacementException");
+        } catch (OrderPlacementException e) {
+            assertFalse(e.isResolved());
+            assertEquals("shortOrder", e.getShortOrderId());
+        }
+    }
+
+    @Test
+    public void testPlaceOrderPairBothFail() throws IOException {
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+
+        when(longExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenThrow(new ExchangeException("Down for maintenance"));
+        when(shortTradeExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenThrow(new IOException("Connection reset"));
+
+        try {
+            tradingService.placeOrderPair(
+                new TradingService.OrderLeg(longExchange, buildLimitOrder(Order.OrderType.BID)),
+                new TradingService.OrderLeg(shortTradeExchange, buildLimitOrder(Order.OrderType.ASK)),
+                System.currentTimeMillis());
+            fail("Expected an OrderPlacementException");
+        } catch (OrderPlacementException e) {
+            assertTrue(e.isResolved());
+            assertEquals("Unable to place long order on Long: Down for maintenance", e.getMessage());
+        }
+
+        verify(longExchange.getTradeService(), never()).cancelOrder(anyString());
+        verify(shortTradeExchange.getTradeService(), never()).cancelOrder(anyString());
+    }
+
+    // we can't know whether a leg that timed out was placed, so it can't be resolved
+    @Test
+    public void testPlaceOrderPairTimeout() throws IOException {
+        Exchange shortTradeExchange = buildTradeExchange("Short");
+
+        tradingConfiguration.getIoExecutor().setTimeout(50L);
+
+        when(longExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("longOrder");
+        when(shortTradeExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenAnswer(invocation -> {
+            Thread.sleep(5000L);
+            return "shortOrder";
+        });
+
+        try {
+            tradingService.placeOrderPair(
+                new TradingService.OrderLeg(longExchange, buildLimitOrder(Order.OrderType.BID)),
+                new TradingService.OrderLeg(shortTradeExchange, buildLimitOrder(Order.OrderType.ASK)),
+                System.currentTimeMillis());
+            fail("Expected an OrderPlacementException");
+        } catch (OrderPlacementException e) {
+            assertFalse(e.isResolved());
+            assertEquals("longOrder", e.getLongOrderId());
+        }
+
+        verify(longExchange.getTradeService(), never()).cancelOrder(anyString());
+    }
+
+    // enter a position on longExchange and shortTradeExchange, whose legs stay open until the subjects complete
+    private void enterPosition(Exchange shortTradeExchange, CompletableSubject longLeg, CompletableSubject shortLeg) throws IOException {
+        InstrumentParameters parameters = new InstrumentParameters(currencyPair, FeeComputation.SERVER, BTC_SCALE, USD_SCALE, null, new BigDecimal("0.001"));
+        Ticker longTicker = new Ticker.Builder().currencyPair(currencyPair).bid(new BigDecimal("99.00")).ask(new BigDecimal("100.00")).build();
+        Ticker shortTicker = new Ticker.Builder().currencyPair(currencyPair).bid(new BigDecimal("101.00")).ask(new BigDecimal("102.00")).build();
+
+        tradingConfiguration.setEntrySpreadTarget(new BigDecimal("0.005"));
+        tradingConfiguration.setFixedExposure(new BigDecimal("50.00"));
+        tradingConfiguration.setOrderBookMaxAge(60000L);
+
+        orderBookCache.put(longExchange, currencyPair, new OrderBook(null,
+            Collections.singletonList(new LimitOrder(Order.OrderType.ASK, BigDecimal.TEN, currencyPair, null, null, new BigDecimal("100.00"))),
+            Collections.emptyList()));
+        orderBookCache.put(shortTradeExchange, currencyPair, new OrderBook(null,
+            Collections.emptyList(),
+            Collections.singletonList(new LimitOrder(Order.OrderType.BID, BigDecimal.TEN, currencyPair, null, null, new BigDecimal("101.00")))));
+
+        when(exchangeService.getExchangeHomeCurrency(any(Exchange.class))).thenReturn(Currency.USD);
+        when(exchangeService.getExchangeCurrencyScale(any(Exchange.class), any(Currency.class))).thenReturn(USD_SCALE);
+        when(exchangeService.getAccountBalance(any(Exchange.class), any(Currency.class), anyInt())).thenReturn(new BigDecimal("100.00"));
+        when(longExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("longOrder");
+        when(shortTradeExchange.getTradeService().placeLimitOrder(any(LimitOrder.class))).thenReturn("shortOrder");
+        when(orderRepricer.manage(eq(longExchange), any(CurrencyPair.class), any(LimitOrder.class), anyString(), any())).thenReturn(longLeg);
+        when(orderRepricer.manage(eq(shortTradeExchange), any(CurrencyPair.class), any(LimitOrder.class), anyString(), any())).thenReturn(shortLeg);
+
+        try {
+            tradingService.commitTrade(
+                new Spread(currencyPair, longExchange, shortTradeExchange, longTicker, shortTicker, new BigDecimal("0.01"), new BigDecimal("0.01"), parameters, parameters),
+                System.nanoTime());
+        } finally {
+            FileUtils.deleteQuietly(new File(".arbitrader/arbitrader-state.json"));
+        }
+    }
+
+    private Exchange buildTradeExchange(String name) throws IOException {
+        return new ExchangeBuilder(name, CurrencyPair.BTC_USD)
+            .withExchangeMetaData()
+            .withTradeService()
+            .build();
+    }
+
+    private LimitOrder buildLimitOrder(Order.OrderType orderType) {
+        return new LimitOrder.Builder(orderType, currencyPair)
+            .limitPrice(new BigDecimal("100.000"))
+            .originalAmount(BigDecimal.ONE)
+            .build();
+    }
+
+    private Spread buildSpread(BigDecimal in, BigDecimal out) {
+        return new Spread(currencyPair, longExchange, shortExchange, null, null, in, out);
+    }
+
+    private TradingService buildScreeningTradingService(SpreadService screeningSpreadService) {
+        return new TradingService(
+            new JsonConfiguration().objectMapper(),
+            tradingConfiguration,
+            new ConditionService(),
+            exchangeService,
+            screeningSpreadService,
+            mock(NotificationService.class),
+            orderBookCache,
+            orderBookPrefetcher,
+            exchangeIoExecutor,
+            orderRepricer,
+            exchangeFeeRefresher);
+    }
+
+    private ActivePosition buildActivePosition(BigDecimal exitTarget) {
+        ActivePosition activePosition = new ActivePosition();
+
+        activePosition.setCurrencyPair(currencyPair);
+        activePosition.setExitTarget(exitTarget);
+        activePosition.getLongTrade().setExchange(longExchange);
+        activePosition.getShortTrade().setExchange(shortExchange);
+
+        return activePosition;
+    }
 }
@@ -0,0 +1,42 @@
+package com.agonyforge.arbitrader.service;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+public class VirtualThreadsTest {
+    @Test
+    public void testAvailableOnJava21() {
+        String version = System.getProperty("java.specification.version");
+        int major = Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+
+        assertEquals(major >= 21, VirtualThreads.isAvailable());
+    }
+
+    @Test
+    public void testNewThreadPerTaskExecutor() throws Exception {
+        assumeTrue(VirtualThreads.isAvailable());
+
+        ExecutorService executor = VirtualThreads.newThreadPerTaskExecutor("test-");
+
+        try {
+            Future<String> name = executor.submit(() -> Thread.currentThread().getName());
+
+            assertEquals("test-0", name.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnavailable() {
+        assumeFalse(VirtualThreads.isAvailable());
+
+        VirtualThreads.newThreadPerTaskExecutor("test-");
+    }
+}
@@ -0,0 +1,259 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.model.TradeCombination;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BestVenueBookTest extends BaseTestCase {
+    private Exchange exchangeA;
+    private Exchange exchangeB;
+    private Exchange exchangeC;
+
+    private BestVenueBook book;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD).build();
+        exchangeC = new ExchangeBuilder("CoinFlip", CurrencyPair.BTC_USD).build();
+
+        book = new BestVenueBook();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertNull(book.getBest());
+    }
+
+    @Test
+    public void testNoPrices() {
+        book.add(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD));
+
+        assertNull(book.getBest());
+
+        book.update(exchangeA, 99.0, 100.0);
+
+        assertNull(book.getBest());
+    }
+
+    @Test
+    public void testBest() {
+        addAllCombinations();
+
+        book.update(exchangeA, 99.0, 100.0);
+        book.update(exchangeB, 102.0, 103.0);
+        book.update(exchangeC, 100.0, 101.0);
+
+        assertEquals(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD), book.getBest());
+
+        book.update(exchangeC, 104.0, 105.0);
+
+        assertEquals(new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD), book.getBest());
+
+        book.update(exchangeB, 95.0, 97.0);
+
+        assertEquals(new TradeCombination(exchangeB, exchangeC, CurrencyPair.BTC_USD), book.getBest());
+    }
+
+    @Test
+    public void testMissingPrice() {
+        addAllCombinations();
+
+        book.update(exchangeA, 99.0, 100.0);
+        book.update(exchangeB, 102.0, 103.0);
+        book.update(exchangeC, 100.0, 101.0);
+
+        book.update(exchangeA, Double.NaN, Double.NaN);
+
+        assertEquals(new TradeCombination(exchangeC, exchangeB, CurrencyPair.BTC_USD), book.getBest());
+    }
+
+    @Test
+    public void testBestIsSameExchange() {
+        addAllCombinations();
+
+        // A has both the lowest ask and the highest bid, but can't trade against itself
+        book.update(exchangeA, 110.0, 90.0);
+        book.update(exchangeB, 102.0, 103.0);
+        book.update(exchangeC, 100.0, 101.0);
+
+        assertEquals(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD), book.getBest());
+
+        // C asks a lot less than A bids, so buying on C and selling on A beats anything else
+        book.update(exchangeC, 100.0, 91.0);
+
+        assertEquals(new TradeCombination(exchangeC, exchangeA, CurrencyPair.BTC_USD), book.getBest());
+        assertEquals(0, book.getFallbackScans());
+    }
+
+    // the runner up can't trade with the leader, so we have to look at everything
+    @Test
+    public void testBestIsSameExchangeRunnerUpNotAllowed() {
+        book.add(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeB, exchangeA, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeB, exchangeC, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeC, exchangeA, CurrencyPair.BTC_USD));
+
+        // A leads both sides and C has the next best bid, but there's no A/C combination
+        book.update(exchangeA, 110.0, 90.0);
+        book.update(exchangeB, 102.0, 103.0);
+        book.update(exchangeC, 105.0, 101.0);
+
+        assertEquals(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD), book.getBest());
+        assertEquals(1, book.getFallbackScans());
+    }
+
+    @Test
+    public void testBestIsNotAllowed() {
+        // there's no A/B combination, like when it's in the trade blacklist
+        book.add(new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeC, exchangeB, CurrencyPair.BTC_USD));
+
+        book.update(exchangeA, 99.0, 100.0);
+        book.update(exchangeB, 102.0, 103.0);
+        book.update(exchangeC, 101.5, 101.0);
+
+        assertEquals(new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD), book.getBest());
+    }
+
+    @Test
+    public void testUnknownExchange() {
+        book.add(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD));
+
+        book.update(exchangeC, 99.0, 100.0);
+
+        assertNull(book.getBest());
+    }
+
+    @Test
+    public void testDuplicateCombination() {
+        book.add(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD));
+
+        book.update(exchangeA, 99.0, 100.0);
+        book.update(exchangeB, 102.0, 103.0);
+
+        assertEquals(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD), book.getBest());
+    }
+
+    @Test
+    public void testMatchesExhaustiveSearch() {
+        Exchange[] exchanges = new Exchange[] { exchangeA, exchangeB, exchangeC };
+        double[] bids = new double[exchanges.length];
+        double[] asks = new double[exchanges.length];
+        Random random = new Random(42);
+
+        addAllCombinations();
+
+        for (int i = 0; i < 1000; i++) {
+            int index = random.nextInt(exchanges.length);
+
+            bids[index] = 90.0 + random.nextInt(20);
+            asks[index] = bids[index] + random.nextInt(3);
+            book.update(exchanges[index], bids[index], asks[index]);
+
+            double bestSpread = Double.NEGATIVE_INFINITY;
+
+            for (int l = 0; l < exchanges.length; l++) {
+                for (int s = 0; s < exchanges.length; s++) {
+                    if (l != s && asks[l] > 0 && bids[s] > 0) {
+                        bestSpread = Math.max(bestSpread, (bids[s] - asks[l]) / asks[l]);
+                    }
+                }
+            }
+
+            TradeCombination best = book.getBest();
+
+            if (bestSpread == Double.NEGATIVE_INFINITY) {
+                assertNull(best);
+                continue;
+            }
+
+            int l = indexOf(exchanges, best.getLongExchange());
+            int s = indexOf(exchanges, best.getShortExchange());
+
+            assertEquals(bestSpread, (bids[s] - asks[l]) / asks[l], 1e-12);
+        }
+    }
+
+    // with more exchanges the runners up can be on either side of the heaps, and we should never need to scan
+    @Test
+    public void testMatchesExhaustiveSearchManyExchanges() throws IOException {
+        Exchange[] exchanges = new Exchange[6];
+        double[] bids = new double[exchanges.length];
+        double[] asks = new double[exchanges.length];
+        Random random = new Random(7);
+
+        for (int i = 0; i < exchanges.length; i++) {
+            exchanges[i] = new ExchangeBuilder("Coin" + i, CurrencyPair.BTC_USD).build();
+        }
+
+        for (Exchange longExchange : exchanges) {
+            for (Exchange shortExchange : exchanges) {
+                if (longExchange != shortExchange) {
+                    book.add(new TradeCombination(longExchange, shortExchange, CurrencyPair.BTC_USD));
+                }
+            }
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            int index = random.nextInt(exchanges.length);
+
+            bids[index] = 90.0 + random.nextInt(20);
+            asks[index] = bids[index] - 5 + random.nextInt(10);
+            book.update(exchanges[index], bids[index], asks[index]);
+
+            double bestSpread = Double.NEGATIVE_INFINITY;
+
+            for (int l = 0; l < exchanges.length; l++) {
+                for (int s = 0; s < exchanges.length; s++) {
+                    if (l != s && asks[l] > 0 && bids[s] > 0) {
+                        bestSpread = Math.max(bestSpread, (bids[s] - asks[l]) / asks[l]);
+                    }
+                }
+            }
+
+            TradeCombination best = book.getBest();
+
+            if (bestSpread == Double.NEGATIVE_INFINITY) {
+                assertNull(best);
+                continue;
+            }
+
+            int l = indexOf(exchanges, best.getLongExchange());
+            int s = indexOf(exchanges, best.getShortExchange());
+
+            assertEquals(bestSpread, (bids[s] - asks[l]) / asks[l], 1e-12);
+        }
+
+        assertEquals(0, book.getFallbackScans());
+    }
+
+    private void addAllCombinations() {
+        book.add(new TradeCombination(exchangeA, exchangeB, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeA, exchangeC, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeB, exchangeA, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeB, exchangeC, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeC, exchangeA, CurrencyPair.BTC_USD));
+        book.add(new TradeCombination(exchangeC, exchangeB, CurrencyPair.BTC_USD));
+    }
+
+    private static int indexOf(Exchange[] exchanges, Exchange exchange) {
+        for (int i = 0; i < exchanges.length; i++) {
+            if (exchanges[i] == exchange) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
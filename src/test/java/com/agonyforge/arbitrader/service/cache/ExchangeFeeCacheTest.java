@@ -14,6 +14,7 @@ import java.util.Optional;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -27,6 +28,7 @@ public class ExchangeFeeCacheTest extends BaseTestCase {
 
     private CurrencyPair currencyPair;
     private ExchangeFeeCache exchangeFeeCache;
+    private long now = 0L;
 
     @Before
     public void setUp() {
@@ -35,7 +37,7 @@ public class ExchangeFeeCacheTest extends BaseTestCase {
 
         currencyPair = new CurrencyPair("COIN", "USD");
 
-        exchangeFeeCache = new ExchangeFeeCache();
+        exchangeFeeCache = new ExchangeFeeCache(() -> now);
     }
 
     @Test
@@ -67,4 +69,89 @@ public class ExchangeFeeCacheTest extends BaseTestCase {
 
         assertEquals(Optional.empty(), exchangeFeeCache.getCachedFee(altExchange, currencyPair));
     }
+
+    @Test
+    public void testIsExpired() {
+        assertTrue(exchangeFeeCache.isExpired(exchange, currencyPair, 1000L));
+
+        exchangeFeeCache.setCachedFee(exchange, currencyPair, new ExchangeFee(new BigDecimal("0.0025"), null));
+        now = 999L;
+
+        assertFalse(exchangeFeeCache.isExpired(exchange, currencyPair, 1000L));
+
+        now = 1000L;
+
+        assertTrue(exchangeFeeCache.isExpired(exchange, currencyPair, 1000L));
+
+        // an expired fee is still handed out until it's replaced
+        assertEquals(new BigDecimal("0.0025"), exchangeFeeCache.getCachedFee(exchange, currencyPair).get().getTradeFee());
+
+        exchangeFeeCache.setCachedFee(exchange, currencyPair, new ExchangeFee(new BigDecimal("0.0020"), null));
+
+        assertFalse(exchangeFeeCache.isExpired(exchange, currencyPair, 1000L));
+    }
+
+    @Test
+    public void testStartRefresh() {
+        assertTrue(exchangeFeeCache.startRefresh(exchange, currencyPair));
+        assertFalse(exchangeFeeCache.startRefresh(exchange, currencyPair));
+        assertTrue(exchangeFeeCache.startRefresh(exchange, CurrencyPair.BTC_USD));
+
+        exchangeFeeCache.finishRefresh(exchange, currencyPair);
+
+        assertTrue(exchangeFeeCache.startRefresh(exchange, currencyPair));
+    }
+
+    @Test(timeout = 5000L)
+    public void testAwaitRefresh() throws InterruptedException {
+        // nobody is fetching it, so there's nothing to wait for
+        exchangeFeeCache.awaitRefresh(exchange, currencyPair, 60000L);
+
+        assertTrue(exchangeFeeCache.startRefresh(exchange, currencyPair));
+
+        Thread waiter = new Thread(() -> exchangeFeeCache.awaitRefresh(exchange, currencyPair, 60000L));
+
+        waiter.start();
+        waiter.join(100L);
+        assertTrue(waiter.isAlive());
+
+        exchangeFeeCache.finishRefresh(exchange, currencyPair);
+        waiter.join();
+
+        // and it doesn't wait forever for a fetch that never finishes
+        assertTrue(exchangeFeeCache.startRefresh(exchange, currencyPair));
+        exchangeFeeCache.awaitRefresh(exchange, currencyPair, 10L);
+    }
+
+    @Test
+    public void testFindCachedFee() {
+        assertNull(exchangeFeeCache.findCachedFee(exchange, currencyPair));
+        assertTrue(exchangeFeeCache.isExpired(null, 1000L));
+
+        exchangeFeeCache.setCachedFee(exchange, currencyPair, new ExchangeFee(new BigDecimal("0.0025"), null));
+
+        ExchangeFeeCache.CachedFee cachedFee = exchangeFeeCache.findCachedFee(exchange, currencyPair);
+
+        assertEquals(new BigDecimal("0.0025"), cachedFee.getFee().getTradeFee());
+        assertFalse(exchangeFeeCache.isExpired(cachedFee, 1000L));
+
+        now = 1000L;
+
+        assertTrue(exchangeFeeCache.isExpired(cachedFee, 1000L));
+    }
+
+    // a fallback fee is expired right away, and doesn't replace a real one
+    @Test
+    public void testSetFallbackFee() {
+        exchangeFeeCache.setFallbackFee(exchange, currencyPair, new ExchangeFee(new BigDecimal("0.0030"), null));
+
+        assertEquals(new BigDecimal("0.0030"), exchangeFeeCache.getCachedFee(exchange, currencyPair).get().getTradeFee());
+        assertTrue(exchangeFeeCache.isExpired(exchange, currencyPair, 1000L));
+
+        exchangeFeeCache.setCachedFee(exchange, currencyPair, new ExchangeFee(new BigDecimal("0.0025"), null));
+        exchangeFeeCache.setFallbackFee(exchange, currencyPair, new ExchangeFee(new BigDecimal("0.0030"), null));
+
+        assertEquals(new BigDecimal("0.0025"), exchangeFeeCache.getCachedFee(exchange, currencyPair).get().getTradeFee());
+        assertFalse(exchangeFeeCache.isExpired(exchange, currencyPair, 1000L));
+    }
 }
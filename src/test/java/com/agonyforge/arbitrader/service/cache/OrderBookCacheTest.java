@@ -0,0 +1,95 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.model.DepthBook;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.marketdata.OrderBook;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class OrderBookCacheTest extends BaseTestCase {
+    private Exchange exchangeA;
+    private Exchange exchangeB;
+
+    private long now = 1000L;
+    private OrderBookCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD).build();
+
+        cache = new OrderBookCache(() -> now);
+    }
+
+    @Test
+    public void testGetEmpty() {
+        assertNull(cache.get(exchangeA, CurrencyPair.BTC_USD, Order.OrderType.ASK, 1000L));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        cache.put(exchangeA, CurrencyPair.BTC_USD, buildOrderBook());
+
+        DepthBook asks = cache.get(exchangeA, CurrencyPair.BTC_USD, Order.OrderType.ASK, 1000L);
+        DepthBook bids = cache.get(exchangeA, CurrencyPair.BTC_USD, Order.OrderType.BID, 1000L);
+
+        assertNotNull(asks);
+        assertEquals(2, asks.size());
+        assertEquals(100.10, asks.getPriceForVolume(BigDecimal.ZERO), 0.0);
+        assertNotNull(bids);
+        assertEquals(1, bids.size());
+        assertEquals(99.90, bids.getPriceForVolume(BigDecimal.ZERO), 0.0);
+
+        assertNull(cache.get(exchangeB, CurrencyPair.BTC_USD, Order.OrderType.ASK, 1000L));
+        assertNull(cache.get(exchangeA, CurrencyPair.ETH_USD, Order.OrderType.ASK, 1000L));
+    }
+
+    @Test
+    public void testStale() {
+        cache.put(exchangeA, CurrencyPair.BTC_USD, buildOrderBook());
+
+        now += 1000L;
+
+        assertNotNull(cache.get(exchangeA, CurrencyPair.BTC_USD, Order.OrderType.ASK, 1000L));
+
+        now += 1L;
+
+        assertNull(cache.get(exchangeA, CurrencyPair.BTC_USD, Order.OrderType.ASK, 1000L));
+    }
+
+    @Test
+    public void testStoresCopy() {
+        OrderBook orderBook = buildOrderBook();
+
+        cache.put(exchangeA, CurrencyPair.BTC_USD, orderBook);
+
+        // the streaming library keeps updating its own book after handing it to us
+        orderBook.getAsks().clear();
+
+        assertEquals(2, cache.get(exchangeA, CurrencyPair.BTC_USD, Order.OrderType.ASK, 1000L).size());
+    }
+
+    private static OrderBook buildOrderBook() {
+        List<LimitOrder> asks = new ArrayList<>();
+        List<LimitOrder> bids = new ArrayList<>();
+
+        asks.add(new LimitOrder(Order.OrderType.ASK, BigDecimal.ONE, CurrencyPair.BTC_USD, null, null, new BigDecimal("100.10")));
+        asks.add(new LimitOrder(Order.OrderType.ASK, BigDecimal.ONE, CurrencyPair.BTC_USD, null, null, new BigDecimal("100.20")));
+        bids.add(new LimitOrder(Order.OrderType.BID, BigDecimal.ONE, CurrencyPair.BTC_USD, null, null, new BigDecimal("99.90")));
+
+        return new OrderBook(new Date(), asks, bids);
+    }
+}
@@ -0,0 +1,193 @@
+package com.agonyforge.arbitrader.service.cache;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TickerCacheTest extends BaseTestCase {
+    private Exchange exchangeA;
+    private Exchange exchangeB;
+
+    private TickerCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD).build();
+
+        cache = new TickerCache();
+    }
+
+    @Test
+    public void testGetEmpty() {
+        assertNull(cache.get(exchangeA, CurrencyPair.BTC_USD));
+        assertFalse(cache.isAllocated(exchangeA, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testPutAndGet() {
+        Ticker tickerA = buildTicker("100.00", "101.00", 1000L);
+        Ticker tickerB = buildTicker("200.00", "201.00", 1000L);
+
+        assertTrue(cache.put(exchangeA, CurrencyPair.BTC_USD, tickerA));
+        assertTrue(cache.put(exchangeB, CurrencyPair.BTC_USD, tickerB));
+
+        assertEquals(tickerA, cache.get(exchangeA, CurrencyPair.BTC_USD));
+        assertEquals(tickerB, cache.get(exchangeB, CurrencyPair.BTC_USD));
+        assertNull(cache.get(exchangeA, CurrencyPair.ETH_USD));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testAllocateWithAlias() {
+        Ticker ticker = buildTicker("100.00", "101.00", 1000L);
+
+        cache.allocate(exchangeA, CurrencyPair.BTC_USDT, CurrencyPair.BTC_USD);
+
+        assertTrue(cache.isAllocated(exchangeA, CurrencyPair.BTC_USDT));
+        assertTrue(cache.isAllocated(exchangeA, CurrencyPair.BTC_USD));
+        assertFalse(cache.isAllocated(exchangeB, CurrencyPair.BTC_USD));
+
+        cache.put(exchangeA, CurrencyPair.BTC_USDT, ticker);
+
+        assertEquals(ticker, cache.get(exchangeA, CurrencyPair.BTC_USD));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testPutOlderTicker() {
+        Ticker newTicker = buildTicker("100.00", "101.00", 2000L);
+        Ticker oldTicker = buildTicker("99.00", "100.00", 1000L);
+
+        assertTrue(cache.put(exchangeA, CurrencyPair.BTC_USD, newTicker));
+        assertFalse(cache.put(exchangeA, CurrencyPair.BTC_USD, oldTicker));
+
+        assertEquals(newTicker, cache.get(exchangeA, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testConcurrentPutsKeepNewestTicker() throws InterruptedException {
+        final int threads = 4;
+        final int tickersPerThread = 1000;
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        cache.allocate(exchangeA, CurrencyPair.BTC_USD);
+
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+
+            executor.submit(() -> {
+                start.await();
+
+                for (int i = 0; i < tickersPerThread; i++) {
+                    long time = (long) i * threads + offset;
+
+                    cache.put(exchangeA, CurrencyPair.BTC_USD, buildTicker("100.00", "101.00", time));
+                }
+
+                return null;
+            });
+        }
+
+        start.countDown();
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(threads * tickersPerThread - 1, cache.get(exchangeA, CurrencyPair.BTC_USD).getTimestamp().getTime());
+    }
+
+    @Test
+    public void testMarkStale() {
+        Ticker ticker = buildTicker("100.00", "101.00", 1000L);
+
+        assertFalse(cache.markStale(exchangeA, CurrencyPair.BTC_USD));
+
+        cache.put(exchangeA, CurrencyPair.BTC_USD, ticker);
+
+        assertTrue(cache.markStale(exchangeA, CurrencyPair.BTC_USD));
+        assertTrue(cache.isStale(exchangeA, CurrencyPair.BTC_USD));
+        assertNull(cache.get(exchangeA, CurrencyPair.BTC_USD));
+        assertNull(cache.getSnapshot(exchangeA, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testPutClearsStale() {
+        Ticker oldTicker = buildTicker("100.00", "101.00", 1000L);
+        Ticker newTicker = buildTicker("100.00", "101.00", 2000L);
+
+        cache.put(exchangeA, CurrencyPair.BTC_USD, oldTicker);
+        cache.markStale(exchangeA, CurrencyPair.BTC_USD);
+
+        // an older ticker isn't stored, so it doesn't make the slot fresh again
+        assertFalse(cache.put(exchangeA, CurrencyPair.BTC_USD, oldTicker));
+        assertTrue(cache.isStale(exchangeA, CurrencyPair.BTC_USD));
+
+        assertTrue(cache.put(exchangeA, CurrencyPair.BTC_USD, newTicker));
+        assertFalse(cache.isStale(exchangeA, CurrencyPair.BTC_USD));
+        assertEquals(newTicker, cache.get(exchangeA, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testStore() {
+        assertEquals(TickerCache.StoreResult.CHANGED, cache.store(exchangeA, CurrencyPair.BTC_USD, buildTicker("100.00", "101.00", 1000L)));
+        assertEquals(TickerCache.StoreResult.UNCHANGED, cache.store(exchangeA, CurrencyPair.BTC_USD, buildTicker("100.0", "101.000", 2000L)));
+        assertEquals(TickerCache.StoreResult.REJECTED, cache.store(exchangeA, CurrencyPair.BTC_USD, buildTicker("99.00", "100.00", 1500L)));
+        assertEquals(TickerCache.StoreResult.CHANGED, cache.store(exchangeA, CurrencyPair.BTC_USD, buildTicker("100.00", "101.50", 3000L)));
+
+        // unchanged prices are still stored so we know they're fresh
+        assertEquals(3000L, cache.get(exchangeA, CurrencyPair.BTC_USD).getTimestamp().getTime());
+    }
+
+    @Test
+    public void testStoreStale() {
+        cache.store(exchangeA, CurrencyPair.BTC_USD, buildTicker("100.00", "101.00", 1000L));
+        cache.markStale(exchangeA, CurrencyPair.BTC_USD);
+
+        // the same prices are news when the old ones were stale
+        assertEquals(TickerCache.StoreResult.CHANGED, cache.store(exchangeA, CurrencyPair.BTC_USD, buildTicker("100.00", "101.00", 2000L)));
+    }
+
+    // a slot looked up ahead of time is the same one that get() finds by exchange and currency pair
+    @Test
+    public void testStoreInSlot() {
+        cache.allocate(exchangeA, CurrencyPair.BTC_USDT, CurrencyPair.BTC_USD);
+
+        TickerCache.Slot slot = cache.getSlot(exchangeA, CurrencyPair.BTC_USD);
+        Ticker ticker = buildTicker("100.00", "101.00", 1000L);
+
+        assertSame(slot, cache.getSlot(exchangeA, CurrencyPair.BTC_USDT));
+        assertNull(cache.getSlot(exchangeB, CurrencyPair.BTC_USD));
+        assertEquals(TickerCache.StoreResult.CHANGED, cache.store(slot, ticker));
+        assertEquals(TickerCache.StoreResult.REJECTED, cache.store(slot, buildTicker("99.00", "100.00", 500L)));
+        assertEquals(ticker, cache.get(exchangeA, CurrencyPair.BTC_USDT));
+        assertEquals(ticker, cache.getSnapshot(slot).getTicker());
+
+        cache.markStale(exchangeA, CurrencyPair.BTC_USD);
+
+        assertNull(cache.getSnapshot(slot));
+    }
+
+    private static Ticker buildTicker(String bid, String ask, long timestamp) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .timestamp(new Date(timestamp))
+            .build();
+    }
+}
@@ -0,0 +1,125 @@
+package com.agonyforge.arbitrader.service.event;
+
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TickerEventBusTest {
+    private Exchange exchangeA;
+    private Exchange exchangeB;
+
+    private TickerEventBus tickerEventBus;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD).build();
+
+        tickerEventBus = new TickerEventBus();
+    }
+
+    @After
+    public void tearDown() {
+        tickerEventBus.shutdown();
+    }
+
+    @Test
+    public void testPublishInOrder() throws InterruptedException {
+        final int count = 100;
+        final List<TickerEvent> received = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(count);
+
+        tickerEventBus.subscribe(event -> {
+            received.add(event);
+            latch.countDown();
+        });
+
+        for (int i = 0; i < count; i++) {
+            tickerEventBus.publish(buildEvent(exchangeA, i));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(count, received.size());
+        assertEquals(count, tickerEventBus.getPublished());
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(new BigDecimal(i), received.get(i).getTicker().getBid());
+        }
+    }
+
+    @Test
+    public void testSeparateFeeds() throws InterruptedException {
+        final List<String> threads = new CopyOnWriteArrayList<>();
+        final CountDownLatch latch = new CountDownLatch(2);
+
+        tickerEventBus.subscribe(event -> {
+            threads.add(Thread.currentThread().getName());
+            latch.countDown();
+        });
+
+        tickerEventBus.publish(buildEvent(exchangeA, 1));
+        tickerEventBus.publish(buildEvent(exchangeB, 1));
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(threads.contains("ticker-bus-CoinDynasty"));
+        assertTrue(threads.contains("ticker-bus-CoinSnake"));
+    }
+
+    @Test
+    public void testDropWhenFull() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        tickerEventBus.subscribe(event -> {
+            blocked.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        // the consumer takes the first event and blocks, leaving the whole ring to fill up
+        TickerEvent first = buildEvent(exchangeA, 0);
+
+        tickerEventBus.publish(first);
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        for (int i = 0; i < TickerEventBus.RING_CAPACITY + 10; i++) {
+            tickerEventBus.publish(buildEvent(exchangeA, i));
+        }
+
+        release.countDown();
+
+        assertEquals(10, tickerEventBus.getDropped());
+        assertEquals(TickerEventBus.RING_CAPACITY + 1, tickerEventBus.getPublished());
+        assertSame(exchangeA, first.getExchange());
+    }
+
+    private static TickerEvent buildEvent(Exchange exchange, int price) {
+        Ticker ticker = new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(price))
+            .ask(new BigDecimal(price))
+            .build();
+
+        return new TickerEvent(ticker, exchange);
+    }
+}
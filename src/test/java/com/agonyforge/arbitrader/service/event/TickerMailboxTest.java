@@ -0,0 +1,131 @@
+package com.agonyforge.arbitrader.service.event;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class TickerMailboxTest extends BaseTestCase {
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final List<TickerEvent> received = new ArrayList<>();
+
+    private Exchange exchangeA;
+    private Exchange exchangeB;
+
+    private TickerMailbox tickerMailbox;
+
+    @Before
+    public void setUp() throws IOException {
+        exchangeA = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        exchangeB = new ExchangeBuilder("CoinSnake", CurrencyPair.BTC_USD).build();
+
+        tickerMailbox = new TickerMailbox(tasks::add);
+        tickerMailbox.subscribe(received::add);
+    }
+
+    @Test
+    public void testOfferDelivers() {
+        TickerEvent event = buildEvent(exchangeA, CurrencyPair.BTC_USD, "100.00");
+
+        tickerMailbox.offer(event);
+
+        assertEquals(1, tasks.size());
+
+        runTasks();
+
+        assertEquals(1, received.size());
+        assertSame(event, received.get(0));
+        assertEquals(1, tickerMailbox.getReceived());
+        assertEquals(0, tickerMailbox.getConflated());
+        assertEquals(1, tickerMailbox.getDelivered());
+    }
+
+    @Test
+    public void testOfferConflatesSameKey() {
+        TickerEvent first = buildEvent(exchangeA, CurrencyPair.BTC_USD, "100.00");
+        TickerEvent second = buildEvent(exchangeA, CurrencyPair.BTC_USD, "101.00");
+        TickerEvent third = buildEvent(exchangeA, CurrencyPair.BTC_USD, "102.00");
+
+        tickerMailbox.offer(first);
+        tickerMailbox.offer(second);
+        tickerMailbox.offer(third);
+
+        assertEquals(1, tasks.size());
+
+        runTasks();
+
+        assertEquals(1, received.size());
+        assertSame(third, received.get(0));
+        assertEquals(3, tickerMailbox.getReceived());
+        assertEquals(2, tickerMailbox.getConflated());
+        assertEquals(1, tickerMailbox.getDelivered());
+    }
+
+    @Test
+    public void testOfferKeepsDifferentKeys() {
+        tickerMailbox.offer(buildEvent(exchangeA, CurrencyPair.BTC_USD, "100.00"));
+        tickerMailbox.offer(buildEvent(exchangeB, CurrencyPair.BTC_USD, "100.00"));
+        tickerMailbox.offer(buildEvent(exchangeA, CurrencyPair.ETH_USD, "100.00"));
+
+        assertEquals(3, tasks.size());
+
+        runTasks();
+
+        assertEquals(3, received.size());
+        assertEquals(0, tickerMailbox.getConflated());
+    }
+
+    @Test
+    public void testOfferAfterDrain() {
+        tickerMailbox.offer(buildEvent(exchangeA, CurrencyPair.BTC_USD, "100.00"));
+        runTasks();
+
+        tickerMailbox.offer(buildEvent(exchangeA, CurrencyPair.BTC_USD, "101.00"));
+        runTasks();
+
+        assertEquals(2, received.size());
+        assertEquals(0, tickerMailbox.getConflated());
+        assertEquals(2, tickerMailbox.getDelivered());
+    }
+
+    @Test
+    public void testSubscriberException() {
+        tickerMailbox.subscribe(event -> {
+            throw new IllegalStateException("Boom!");
+        });
+
+        tickerMailbox.offer(buildEvent(exchangeA, CurrencyPair.BTC_USD, "100.00"));
+        runTasks();
+
+        assertEquals(1, received.size());
+    }
+
+    private void runTasks() {
+        List<Runnable> pending = new ArrayList<>(tasks);
+
+        tasks.clear();
+        pending.forEach(Runnable::run);
+    }
+
+    private static TickerEvent buildEvent(Exchange exchange, CurrencyPair currencyPair, String price) {
+        Ticker ticker = new Ticker.Builder()
+            .instrument(currencyPair)
+            .bid(new BigDecimal(price))
+            .ask(new BigDecimal(price))
+            .build();
+
+        return new TickerEvent(ticker, exchange);
+    }
+}
@@ -0,0 +1,86 @@
+package com.agonyforge.arbitrader.service.event;
+
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class TickerRingBufferTest {
+    private Exchange exchange;
+    private TickerRingBuffer ring;
+
+    @Before
+    public void setUp() throws IOException {
+        exchange = new ExchangeBuilder("CoinDynasty", CurrencyPair.BTC_USD).build();
+        ring = new TickerRingBuffer(4);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testCapacityNotPowerOfTwo() {
+        new TickerRingBuffer(6);
+    }
+
+    @Test
+    public void testEmpty() {
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        assertEquals(4, ring.capacity());
+    }
+
+    @Test
+    public void testOfferAndPollInOrder() {
+        TickerEvent first = buildEvent("100.00");
+        TickerEvent second = buildEvent("101.00");
+
+        assertTrue(ring.offer(first));
+        assertTrue(ring.offer(second));
+        assertFalse(ring.isEmpty());
+
+        assertSame(first, ring.poll());
+        assertSame(second, ring.poll());
+        assertNull(ring.poll());
+    }
+
+    @Test
+    public void testFull() {
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ring.offer(buildEvent("100.00")));
+        }
+
+        assertFalse(ring.offer(buildEvent("101.00")));
+
+        ring.poll();
+
+        assertTrue(ring.offer(buildEvent("102.00")));
+    }
+
+    @Test
+    public void testWrapAround() {
+        for (int i = 0; i < 10; i++) {
+            TickerEvent event = buildEvent("100.0" + i);
+
+            assertTrue(ring.offer(event));
+            assertSame(event, ring.poll());
+        }
+
+        assertTrue(ring.isEmpty());
+    }
+
+    private TickerEvent buildEvent(String price) {
+        Ticker ticker = new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal(price))
+            .ask(new BigDecimal(price))
+            .build();
+
+        return new TickerEvent(ticker, exchange);
+    }
+}
@@ -0,0 +1,71 @@
+package com.agonyforge.arbitrader.service.metrics;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    private LatencyHistogram histogram;
+
+    @Before
+    public void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMax());
+        assertEquals(0L, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000L, histogram.getCount());
+        assertEquals(1000000L, histogram.getMax());
+
+        long p50 = histogram.getPercentile(50);
+        long p99 = histogram.getPercentile(99);
+
+        // buckets are accurate to within 25%
+        assertTrue("p50 was " + p50, p50 >= 500000L && p50 <= 625000L);
+        assertTrue("p99 was " + p99, p99 >= 990000L && p99 <= 1000000L);
+        assertEquals(1000000L, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void testNegativeValue() {
+        histogram.record(-5L);
+
+        assertEquals(1L, histogram.getCount());
+        assertEquals(0L, histogram.getPercentile(50));
+    }
+
+    @Test
+    public void testReset() {
+        histogram.record(12345L);
+        histogram.reset();
+
+        assertEquals(0L, histogram.getCount());
+        assertEquals(0L, histogram.getMax());
+    }
+
+    @Test
+    public void testBucketBounds() {
+        for (long value : new long[] {0L, 1L, 3L, 4L, 7L, 8L, 1000L, 123456789L, Long.MAX_VALUE}) {
+            int bucket = LatencyHistogram.bucketFor(value);
+
+            assertTrue(value + " above bucket " + bucket, value <= LatencyHistogram.upperBound(bucket));
+
+            if (bucket > 0) {
+                assertTrue(value + " below bucket " + bucket, value > LatencyHistogram.upperBound(bucket - 1));
+            }
+        }
+    }
+}
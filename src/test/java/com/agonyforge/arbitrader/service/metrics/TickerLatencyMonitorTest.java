@@ -0,0 +1,133 @@
+package com.agonyforge.arbitrader.service.metrics;
+
+import com.agonyforge.arbitrader.BaseTestCase;
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TickerLatencyMonitorTest extends BaseTestCase {
+    private Exchange exchange;
+    private TickerLatencyMonitor monitor;
+
+    @Before
+    public void setUp() throws IOException {
+        exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD).build();
+        monitor = new TickerLatencyMonitor();
+    }
+
+    @Test
+    public void testNoOffset() {
+        assertEquals(0L, monitor.getOffset(exchange));
+    }
+
+    @Test
+    public void testOffsetFromDateHeader() {
+        // the server said 10:00:05 (truncated) while we were waiting between 10:00:00.000 and 10:00:00.200
+        monitor.recordDateHeader(exchange, new Date(5000L), 0L, 200L);
+
+        assertEquals(5000L + TickerLatencyMonitor.DATE_HEADER_CORRECTION - 100L, monitor.getOffset(exchange));
+    }
+
+    @Test
+    public void testOffsetSmoothing() {
+        monitor.recordDateHeader(exchange, new Date(0L), 0L, 0L);
+        monitor.recordDateHeader(exchange, new Date(1000L), 0L, 0L);
+
+        // the second sample only moves the estimate part of the way
+        assertEquals(500L + Math.round(1000L * TickerLatencyMonitor.SMOOTHING), monitor.getOffset(exchange));
+    }
+
+    @Test
+    public void testOffsetFromFutureTimestamp() {
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(3000L), 1000L);
+
+        assertEquals(2000L, monitor.getOffset(exchange));
+
+        // a timestamp in the past doesn't tell us anything about the clock
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(0L), 1000L);
+
+        assertEquals(2000L, monitor.getOffset(exchange));
+    }
+
+    // a timestamp that was too far in the future is forgotten after a couple of windows
+    @Test
+    public void testFutureTimestampExpires() {
+        final long window = TickerLatencyMonitor.LOWER_BOUND_WINDOW;
+
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(100000L), 1000L);
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(window + 1500L), window + 1000L);
+
+        assertEquals(99000L, monitor.getOffset(exchange));
+
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(2 * window + 1100L), 2 * window + 1000L);
+
+        assertEquals(500L, monitor.getOffset(exchange));
+
+        // and after a long quiet spell there's nothing left to remember
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(10 * window), 10 * window);
+
+        assertEquals(0L, monitor.getOffset(exchange));
+    }
+
+    @Test
+    public void testDateHeaderBeatsTimestamps() {
+        monitor.recordDateHeader(exchange, new Date(0L), 0L, 0L);
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(3000L), 1000L);
+
+        assertEquals(TickerLatencyMonitor.DATE_HEADER_CORRECTION, monitor.getOffset(exchange));
+    }
+
+    @Test
+    public void testTickerAge() {
+        monitor.recordDateHeader(exchange, new Date(10000L - TickerLatencyMonitor.DATE_HEADER_CORRECTION), 0L, 0L);
+
+        // stamped 10 seconds ahead by the exchange's clock, and received 250 ms later
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(20000L), 10250L);
+
+        LatencyHistogram histogram = monitor.getLatencies().get("CrazyCoinz BTC/USD");
+
+        assertEquals(1L, histogram.getCount());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(250L), histogram.getMax());
+    }
+
+    @Test
+    public void testNoTimestamp() {
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, new Ticker.Builder().instrument(CurrencyPair.BTC_USD).build(), 1000L);
+
+        assertTrue(monitor.getLatencies().isEmpty());
+    }
+
+    @Test
+    public void testReport() {
+        monitor.recordTicker(exchange, CurrencyPair.BTC_USD, buildTicker(1000L), 1100L);
+        monitor.recordTicker(exchange, CurrencyPair.ETH_USD, buildTicker(1000L), 1300L);
+
+        List<String> report = monitor.report();
+
+        assertEquals(2, report.size());
+        assertTrue(report.get(0).startsWith("Ticker age for CrazyCoinz "));
+
+        // each report starts a new window
+        assertTrue(monitor.report().isEmpty());
+    }
+
+    private static Ticker buildTicker(long timestamp) {
+        return new Ticker.Builder()
+            .instrument(CurrencyPair.BTC_USD)
+            .bid(new BigDecimal("100.00"))
+            .ask(new BigDecimal("101.00"))
+            .timestamp(new Date(timestamp))
+            .build();
+    }
+}
@@ -0,0 +1,252 @@
+package com.agonyforge.arbitrader.service.model;
+
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DepthBookTest {
+    @Test
+    public void testEmpty() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Collections.emptyList());
+
+        assertEquals(0, book.size());
+        assertEquals(0L, book.getTotalVolume());
+        assertTrue(Double.isNaN(book.getPriceForVolume(BigDecimal.ONE)));
+        assertTrue(Double.isNaN(book.getVwapForVolume(BigDecimal.ONE)));
+    }
+
+    @Test
+    public void testPriceForVolumeAsks() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "100.0", "1.0"),
+            order(Order.OrderType.ASK, "100.5", "2.0"),
+            order(Order.OrderType.ASK, "101.0", "3.0")));
+
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("0.5")), 0.0);
+        assertEquals(100.5, book.getPriceForVolume(new BigDecimal("1.0")), 0.0); // needs more than is at the level
+        assertEquals(100.5, book.getPriceForVolume(new BigDecimal("2.5")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("5.99999999")), 0.0);
+        assertTrue(Double.isNaN(book.getPriceForVolume(new BigDecimal("6.0"))));
+    }
+
+    @Test
+    public void testPriceForVolumeBids() {
+        DepthBook book = DepthBook.of(Order.OrderType.BID, Arrays.asList(
+            order(Order.OrderType.BID, "99.0", "1.0"),
+            order(Order.OrderType.BID, "98.5", "2.0")));
+
+        assertEquals(99.0, book.getPriceForVolume(new BigDecimal("0.5")), 0.0);
+        assertEquals(98.5, book.getPriceForVolume(new BigDecimal("1.5")), 0.0);
+    }
+
+    // the price for an order comes straight from the order book, not from a double
+    @Test
+    public void testLimitPriceForVolume() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "0.123456789012345678", "1.0"),
+            order(Order.OrderType.ASK, "9007199254740993.1", "2.0")));
+
+        assertEquals(new BigDecimal("0.123456789012345678"), book.getLimitPriceForVolume(new BigDecimal("0.5")));
+        assertEquals(new BigDecimal("9007199254740993.1"), book.getLimitPriceForVolume(new BigDecimal("1.0")));
+        assertNull(book.getLimitPriceForVolume(new BigDecimal("3.0")));
+
+        book.update(new BigDecimal("0.100000000000000001"), units("0.5"));
+
+        assertEquals(new BigDecimal("0.100000000000000001"), book.getLimitPriceForVolume(new BigDecimal("0.1")));
+        assertEquals(new BigDecimal("0.123456789012345678"), book.getLimitPriceForVolume(new BigDecimal("0.5")));
+
+        book.update(new BigDecimal("0.100000000000000001"), 0L);
+
+        assertEquals(new BigDecimal("0.123456789012345678"), book.getLimitPriceForVolume(new BigDecimal("0.1")));
+    }
+
+    @Test
+    public void testVwapForVolume() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "100.0", "1.0"),
+            order(Order.OrderType.ASK, "102.0", "1.0"),
+            order(Order.OrderType.ASK, "104.0", "2.0")));
+
+        assertEquals(100.0, book.getVwapForVolume(BigDecimal.ZERO), 0.0);
+        assertEquals(100.0, book.getVwapForVolume(new BigDecimal("0.5")), 1e-9);
+        assertEquals(100.0, book.getVwapForVolume(new BigDecimal("1.0")), 1e-9);
+        assertEquals(101.0, book.getVwapForVolume(new BigDecimal("2.0")), 1e-9);
+        assertEquals(102.5, book.getVwapForVolume(new BigDecimal("4.0")), 1e-9);
+        assertTrue(Double.isNaN(book.getVwapForVolume(new BigDecimal("4.00000001"))));
+    }
+
+    @Test
+    public void testCombinesLevelsAndSorts() {
+        DepthBook book = DepthBook.of(Order.OrderType.BID, Arrays.asList(
+            order(Order.OrderType.BID, "98.0", "1.0"),
+            order(Order.OrderType.BID, "99.0", "1.0"),
+            order(Order.OrderType.BID, "99.0", "0.5"),
+            order(Order.OrderType.BID, "97.0", "0.00000000001")));
+
+        assertEquals(3, book.size());
+        assertEquals(DepthBook.toVolumeUnits(new BigDecimal("2.5"), RoundingMode.DOWN), book.getTotalVolume());
+        assertEquals(99.0, book.getPriceForVolume(new BigDecimal("1.4")), 0.0);
+        assertEquals(98.0, book.getPriceForVolume(new BigDecimal("1.5")), 0.0);
+        assertEquals(97.0, book.getPriceForVolume(new BigDecimal("2.5")), 0.0); // the dust still counts
+    }
+
+    // volumes past 8 decimal places are added up exactly rather than being cut off
+    @Test
+    public void testMoreThanEightDecimals() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "100.0", "0.000000015"),
+            order(Order.OrderType.ASK, "101.0", "0.000000015")));
+
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("0.00000001")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("0.000000015")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("0.00000002")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(2L), 0.0);
+        assertEquals(new BigDecimal("101.0"), book.getLimitPriceForVolume(new BigDecimal("0.00000002")));
+        assertNull(book.getLimitPriceForVolume(new BigDecimal("0.00000003")));
+        assertEquals(100.5, book.getVwapForVolume(new BigDecimal("0.00000003")), 1e-9);
+    }
+
+    // the volume we want is rounded down, because the running totals are whole units
+    @Test
+    public void testWantedVolumeMoreThanEightDecimals() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "100.0", "0.12345679"),
+            order(Order.OrderType.ASK, "101.0", "1.0")));
+
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("0.123456789")), 0.0);
+        assertEquals(new BigDecimal("100.0"), book.getLimitPriceForVolume(new BigDecimal("0.123456789")));
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("0.12345679")), 0.0);
+    }
+
+    // a level with more volume than fits in a long as units
+    @Test
+    public void testHugeLevel() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "100.0", "100000000000"),
+            order(Order.OrderType.ASK, "101.0", "1.0")));
+
+        assertEquals(Long.MAX_VALUE, book.getTotalVolume());
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("99999999999")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("100000000000")), 0.0);
+        assertEquals(100.0, book.getPriceForVolume(Long.MAX_VALUE), 0.0);
+        assertEquals(new BigDecimal("101.0"), book.getLimitPriceForVolume(new BigDecimal("100000000000.5")));
+        assertNull(book.getLimitPriceForVolume(new BigDecimal("100000000001")));
+        assertEquals(100.0, book.getVwapForVolume(new BigDecimal("100000000000")), 1e-9);
+        assertEquals(
+            (100000000000.0 * 100.0 + 101.0) / 100000000001.0,
+            book.getVwapForVolume(new BigDecimal("100000000001")),
+            1e-9);
+    }
+
+    // levels that fit in a long but add up to more than one
+    @Test
+    public void testHugeTotal() {
+        DepthBook book = DepthBook.of(Order.OrderType.BID, Arrays.asList(
+            order(Order.OrderType.BID, "102.0", "50000000000"),
+            order(Order.OrderType.BID, "101.0", "50000000000"),
+            order(Order.OrderType.BID, "100.0", "50000000000")));
+
+        assertEquals(Long.MAX_VALUE, book.getTotalVolume());
+        assertEquals(102.0, book.getPriceForVolume(units("49999999999")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(units("50000000000")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(Long.MAX_VALUE), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("99999999999")), 0.0);
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("100000000000")), 0.0);
+        assertTrue(Double.isNaN(book.getPriceForVolume(new BigDecimal("150000000000"))));
+        assertEquals(new BigDecimal("100.0"), book.getLimitPriceForVolume(new BigDecimal("149999999999")));
+        assertEquals(101.625, book.getVwapForVolume(units("80000000000")), 1e-9);
+        assertEquals(101.0, book.getVwapForVolume(new BigDecimal("150000000000")), 1e-9);
+
+        // take enough away that it fits again
+        book.update(101.0, units("1.0"));
+        book.update(100.0, 0L);
+
+        assertEquals(units("50000000001"), book.getTotalVolume());
+        assertEquals(101.0, book.getPriceForVolume(units("50000000000")), 0.0);
+        assertTrue(Double.isNaN(book.getPriceForVolume(units("50000000001"))));
+    }
+
+    @Test
+    public void testUpdate() {
+        DepthBook book = DepthBook.of(Order.OrderType.ASK, Arrays.asList(
+            order(Order.OrderType.ASK, "100.0", "1.0"),
+            order(Order.OrderType.ASK, "101.0", "1.0")));
+
+        // new best level
+        book.update(99.5, units("0.5"));
+        assertEquals(3, book.size());
+        assertEquals(99.5, book.getPriceForVolume(new BigDecimal("0.1")), 0.0);
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("0.5")), 0.0);
+
+        // change an existing level
+        book.update(100.0, units("3.0"));
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("3.0")), 0.0);
+
+        // remove a level
+        book.update(99.5, 0L);
+        assertEquals(2, book.size());
+        assertEquals(100.0, book.getPriceForVolume(new BigDecimal("0.1")), 0.0);
+        assertEquals(101.0, book.getPriceForVolume(new BigDecimal("3.0")), 0.0);
+
+        // removing a level that isn't there does nothing
+        book.update(50.0, 0L);
+        assertEquals(2, book.size());
+        assertEquals(units("4.0"), book.getTotalVolume());
+    }
+
+    @Test
+    public void testMatchesOrderWalk() {
+        Random random = new Random(42);
+        DepthBook book = new DepthBook(Order.OrderType.BID);
+        List<double[]> levels = new ArrayList<>();
+
+        for (int i = 0; i < 2000; i++) {
+            double price = 90.0 + random.nextInt(200) / 10.0;
+            long volume = random.nextInt(4) == 0 ? 0L : 1 + random.nextInt(1000000000);
+
+            book.update(price, volume);
+            levels.removeIf(level -> level[0] == price);
+
+            if (volume > 0) {
+                levels.add(new double[] { price, volume });
+            }
+
+            levels.sort((a, b) -> Double.compare(b[0], a[0]));
+
+            long wanted = random.nextInt(2000000000);
+            long total = 0;
+            double expected = Double.NaN;
+
+            for (double[] level : levels) {
+                total += (long) level[1];
+
+                if (total > wanted) {
+                    expected = level[0];
+                    break;
+                }
+            }
+
+            assertEquals(levels.size(), book.size());
+            assertEquals(expected, book.getPriceForVolume(wanted), 0.0);
+        }
+    }
+
+    private static long units(String volume) {
+        return DepthBook.toVolumeUnits(new BigDecimal(volume), RoundingMode.DOWN);
+    }
+
+    private static LimitOrder order(Order.OrderType type, String price, String amount) {
+        return new LimitOrder(type, new BigDecimal(amount), CurrencyPair.BTC_USD, null, null, new BigDecimal(price));
+    }
+}
@@ -0,0 +1,61 @@
+package com.agonyforge.arbitrader.service.model;
+
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.FeeComputation;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.Currency;
+import org.knowm.xchange.currency.CurrencyPair;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+import static com.agonyforge.arbitrader.DecimalConstants.BTC_SCALE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class InstrumentParametersTest {
+    @Test
+    public void testOf() throws IOException {
+        Exchange exchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD)
+            .withExchangeMetaData()
+            .build();
+
+        InstrumentParameters parameters = InstrumentParameters.of(exchange, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD, FeeComputation.CLIENT);
+
+        assertEquals(CurrencyPair.BTC_USD, parameters.getCurrencyPair());
+        assertEquals(FeeComputation.CLIENT, parameters.getFeeComputation());
+        assertEquals(ExchangeBuilder.EXCHANGE_METADATA_VOLUME_SCALE, parameters.getVolumeScale());
+        assertEquals(ExchangeBuilder.EXCHANGE_METADATA_PRICE_SCALE, parameters.getPriceScale());
+        assertNull(parameters.getAmountStepSize());
+        assertEquals(new BigDecimal("0.0010"), parameters.getMinimumAmount());
+    }
+
+    // the exchange trades in a different home currency that it has no metadata for
+    @Test
+    public void testOfConvertedPair() throws IOException {
+        Exchange exchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD)
+            .withExchangeMetaData()
+            .build();
+        CurrencyPair exchangeCurrencyPair = new CurrencyPair(Currency.BTC, Currency.USDT);
+
+        InstrumentParameters parameters = InstrumentParameters.of(exchange, CurrencyPair.BTC_USD, exchangeCurrencyPair, FeeComputation.SERVER);
+
+        assertEquals(exchangeCurrencyPair, parameters.getCurrencyPair());
+        assertEquals(BTC_SCALE, parameters.getVolumeScale());
+        assertEquals(BTC_SCALE, parameters.getPriceScale());
+        assertEquals(InstrumentParameters.DEFAULT_MINIMUM_AMOUNT, parameters.getMinimumAmount());
+    }
+
+    @Test
+    public void testOfNoMetaData() throws IOException {
+        Exchange exchange = new ExchangeBuilder("Long", CurrencyPair.BTC_USD).build();
+
+        InstrumentParameters parameters = InstrumentParameters.of(exchange, CurrencyPair.BTC_USD, CurrencyPair.BTC_USD, FeeComputation.SERVER);
+
+        assertEquals(BTC_SCALE, parameters.getVolumeScale());
+        assertEquals(BTC_SCALE, parameters.getPriceScale());
+        assertNull(parameters.getAmountStepSize());
+        assertEquals(InstrumentParameters.DEFAULT_MINIMUM_AMOUNT, parameters.getMinimumAmount());
+    }
+}
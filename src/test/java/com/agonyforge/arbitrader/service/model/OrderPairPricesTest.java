@@ -0,0 +1,66 @@
+package com.agonyforge.arbitrader.service.model;
+
+import org.junit.Test;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.Order;
+import org.knowm.xchange.dto.trade.LimitOrder;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.*;
+
+public class OrderPairPricesTest {
+    @Test
+    public void testNoSpreadTarget() {
+        OrderPairPrices prices = new OrderPairPrices(order(Order.OrderType.BID, "100.00"), order(Order.OrderType.ASK, "101.00"), null);
+
+        assertNull(prices.getWorstLongPrice());
+        assertNull(prices.getWorstShortPrice());
+        assertEquals(new BigDecimal("150.00"), prices.repriceLong(new BigDecimal("150.00")));
+    }
+
+    // an entry has to keep the spread at or above the entry target
+    @Test
+    public void testEntry() {
+        OrderPairPrices prices = new OrderPairPrices(order(Order.OrderType.BID, "100.00"), order(Order.OrderType.ASK, "101.00"), new BigDecimal("0.005"));
+
+        assertEquals(new BigDecimal("100.49"), prices.getWorstLongPrice()); // 100.497..., rounded down for a buy
+        assertEquals(new BigDecimal("100.50"), prices.getWorstShortPrice());
+        assertEquals(new BigDecimal("100.20"), prices.repriceLong(new BigDecimal("100.20")));
+
+        // the short leg is now held to the long leg's new price
+        assertEquals(new BigDecimal("100.71"), prices.getWorstShortPrice()); // 100.701, rounded up for a sell
+        assertEquals(new BigDecimal("100.71"), prices.repriceShort(new BigDecimal("100.60")));
+        assertEquals(new BigDecimal("100.20"), prices.getWorstLongPrice());
+    }
+
+    // an exit has to keep the spread at or below the exit target
+    @Test
+    public void testExit() {
+        OrderPairPrices prices = new OrderPairPrices(order(Order.OrderType.ASK, "101.00"), order(Order.OrderType.BID, "100.50"), new BigDecimal("-0.002"));
+
+        assertEquals(new BigDecimal("100.71"), prices.getWorstLongPrice()); // 100.701..., rounded up for a sell
+        assertEquals(new BigDecimal("100.79"), prices.getWorstShortPrice()); // 100.798, rounded down for a buy
+        assertEquals(new BigDecimal("100.71"), prices.repriceLong(new BigDecimal("100.00")));
+
+        // 100.71 * 0.998 = 100.508...
+        assertEquals(new BigDecimal("100.50"), prices.repriceShort(new BigDecimal("100.60")));
+        assertEquals(new BigDecimal("100.40"), prices.repriceShort(new BigDecimal("100.40")));
+    }
+
+    @Test
+    public void testIsPast() {
+        assertTrue(OrderPairPrices.isPast(Order.OrderType.BID, new BigDecimal("101"), new BigDecimal("100")));
+        assertFalse(OrderPairPrices.isPast(Order.OrderType.BID, new BigDecimal("100"), new BigDecimal("100")));
+        assertTrue(OrderPairPrices.isPast(Order.OrderType.ASK, new BigDecimal("99"), new BigDecimal("100")));
+        assertFalse(OrderPairPrices.isPast(Order.OrderType.ASK, new BigDecimal("101"), new BigDecimal("100")));
+        assertFalse(OrderPairPrices.isPast(Order.OrderType.ASK, new BigDecimal("1"), null));
+    }
+
+    private static LimitOrder order(Order.OrderType type, String price) {
+        return new LimitOrder.Builder(type, CurrencyPair.BTC_USD)
+            .limitPrice(new BigDecimal(price))
+            .originalAmount(BigDecimal.ONE)
+            .build();
+    }
+}
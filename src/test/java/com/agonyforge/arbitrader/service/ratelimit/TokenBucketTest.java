@@ -0,0 +1,87 @@
+package com.agonyforge.arbitrader.service.ratelimit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class TokenBucketTest {
+    private long now = 0L;
+    private TokenBucket bucket;
+
+    @Before
+    public void setUp() {
+        bucket = new TokenBucket(2.0, 3, () -> now);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new TokenBucket(0.0, 1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new TokenBucket(1.0, 0);
+    }
+
+    @Test
+    public void testBurst() {
+        assertTrue(bucket.tryAcquire(1));
+        assertTrue(bucket.tryAcquire(2));
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testRefill() {
+        assertTrue(bucket.tryAcquire(3));
+
+        now += TimeUnit.MILLISECONDS.toNanos(499);
+        assertFalse(bucket.tryAcquire(1));
+
+        now += TimeUnit.MILLISECONDS.toNanos(1);
+        assertTrue(bucket.tryAcquire(1));
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testRefillStopsAtCapacity() {
+        now += TimeUnit.SECONDS.toNanos(60);
+
+        assertTrue(bucket.tryAcquire(3));
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testAcquireAvailable() throws InterruptedException {
+        bucket.acquire(3);
+
+        assertFalse(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testAcquireMoreThanCapacity() throws InterruptedException {
+        // a full bucket lets it through, but we owe the difference
+        bucket.acquire(5);
+
+        now += TimeUnit.SECONDS.toNanos(1);
+        assertFalse(bucket.tryAcquire(1));
+
+        now += TimeUnit.MILLISECONDS.toNanos(500);
+        assertTrue(bucket.tryAcquire(1));
+    }
+
+    @Test
+    public void testAcquireWaits() throws InterruptedException {
+        TokenBucket fast = new TokenBucket(100.0, 1);
+
+        fast.acquire(1);
+
+        long start = System.nanoTime();
+
+        fast.acquire(1);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(5));
+    }
+}
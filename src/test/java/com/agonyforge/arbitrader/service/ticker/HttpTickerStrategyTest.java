@@ -0,0 +1,216 @@
+package com.agonyforge.arbitrader.service.ticker;
+
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.HttpTickerConfiguration;
+import com.agonyforge.arbitrader.config.JsonConfiguration;
+import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
+import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
+import com.agonyforge.arbitrader.service.ExchangeService;
+import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
+import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
+import com.agonyforge.arbitrader.service.metrics.TickerLatencyMonitor;
+import com.agonyforge.arbitrader.service.model.TickerEvent;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.knowm.xchange.dto.marketdata.Ticker;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class HttpTickerStrategyTest {
+    private final List<CurrencyPair> currencyPairs = Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD);
+    private final Map<String, Response.Builder> responses = new HashMap<>();
+
+    private Exchange exchange;
+    private ErrorCollectorService errorCollectorService;
+    private ExchangeIoExecutor exchangeIoExecutor;
+    private TickerLatencyMonitor tickerLatencyMonitor;
+    private HttpTickerStrategy tickerStrategy;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private TickerStrategyProvider tickerStrategyProvider;
+
+    @Mock
+    private TickerEventPublisher tickerEventPublisher;
+
+    @Before
+    public void setUp() throws IOException {
+        MockitoAnnotations.initMocks(this);
+
+        TradingConfiguration tradingConfiguration = new TradingConfiguration();
+        ExchangeService exchangeService = new ExchangeService(new ExchangeFeeCache(), tickerStrategyProvider);
+        HttpTickerConfiguration httpTicker = new HttpTickerConfiguration();
+
+        httpTicker.setUrl("https://api.crazycoinz.com/ticker/{base}{counter}");
+        httpTicker.setLowercase(true);
+        httpTicker.setBid("/data/bid");
+        httpTicker.setAsk("/data/ask");
+
+        exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD).build();
+        exchangeService.getExchangeMetadata(exchange).setHttpTicker(httpTicker);
+
+        // answer requests from the canned responses instead of the network
+        OkHttpClient httpClient = new OkHttpClient.Builder()
+            .addInterceptor(chain -> {
+                Response.Builder response = responses.get(chain.request().url().toString());
+
+                if (response == null) {
+                    throw new IOException("Connection refused");
+                }
+
+                return response.request(chain.request()).build();
+            })
+            .build();
+
+        errorCollectorService = new ErrorCollectorService();
+        exchangeIoExecutor = new ExchangeIoExecutor(tradingConfiguration);
+        tickerLatencyMonitor = new TickerLatencyMonitor();
+        tickerStrategy = new HttpTickerStrategy(
+            new NotificationConfiguration(),
+            tradingConfiguration,
+            errorCollectorService,
+            exchangeService,
+            tickerEventPublisher,
+            exchangeIoExecutor,
+            httpClient,
+            new JsonConfiguration().objectMapper(),
+            tickerLatencyMonitor);
+    }
+
+    @Test
+    public void testGetTickers() {
+        respond("https://api.crazycoinz.com/ticker/btcusd", 200, "{\"data\":{\"bid\":\"100.10\",\"ask\":\"100.20\"}}");
+        respond("https://api.crazycoinz.com/ticker/ethusd", 200, "{\"data\":{\"bid\":10.5,\"ask\":10.6}}");
+
+        when(tickerService.putTicker(eq(exchange), any(Ticker.class))).thenReturn(true);
+
+        tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        assertTrue(errorCollectorService.isEmpty());
+
+        ArgumentCaptor<Ticker> captor = ArgumentCaptor.forClass(Ticker.class);
+
+        verify(tickerService, times(2)).putTicker(eq(exchange), captor.capture());
+        verify(tickerEventPublisher, times(2)).publishTicker(any(TickerEvent.class));
+
+        Ticker btc = captor.getAllValues().stream()
+            .filter(ticker -> CurrencyPair.BTC_USD.equals(ticker.getInstrument()))
+            .findFirst()
+            .orElseThrow(AssertionError::new);
+
+        assertEquals(new BigDecimal("100.10"), btc.getBid());
+        assertEquals(new BigDecimal("100.20"), btc.getAsk());
+        assertEquals(2L, exchangeIoExecutor.getLatencies().get("CrazyCoinz").getCount());
+    }
+
+    @Test
+    public void testConnectionFailure() {
+        respond("https://api.crazycoinz.com/ticker/btcusd", 200, "{\"data\":{\"bid\":\"100.10\",\"ask\":\"100.20\"}}");
+
+        tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        assertFalse(errorCollectorService.isEmpty());
+        verify(tickerService, times(1)).putTicker(eq(exchange), any(Ticker.class));
+    }
+
+    @Test
+    public void testHttpError() {
+        respond("https://api.crazycoinz.com/ticker/btcusd", 429, "{\"message\":\"slow down\"}");
+        respond("https://api.crazycoinz.com/ticker/ethusd", 500, "");
+
+        tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        assertFalse(errorCollectorService.isEmpty());
+        verify(tickerService, never()).putTicker(eq(exchange), any(Ticker.class));
+        verify(tickerEventPublisher, never()).publishTicker(any(TickerEvent.class));
+    }
+
+    @Test
+    public void testMissingPrice() {
+        respond("https://api.crazycoinz.com/ticker/btcusd", 200, "{\"data\":{\"bid\":\"100.10\"}}");
+        respond("https://api.crazycoinz.com/ticker/ethusd", 200, "not json");
+
+        tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        assertFalse(errorCollectorService.isEmpty());
+        verify(tickerService, never()).putTicker(eq(exchange), any(Ticker.class));
+    }
+
+    @Test
+    public void testClockOffsetFromDateHeader() {
+        final long now = System.currentTimeMillis();
+
+        // the exchange's clock is a minute ahead of ours
+        respond("https://api.crazycoinz.com/ticker/btcusd", 200, "{\"data\":{\"bid\":\"100.10\",\"ask\":\"100.20\"}}");
+        responses.get("https://api.crazycoinz.com/ticker/btcusd")
+            .header("Date", formatHttpDate(new Date(now + 60000L)))
+            .sentRequestAtMillis(now)
+            .receivedResponseAtMillis(now);
+
+        tickerStrategy.getTickers(exchange, Collections.singletonList(CurrencyPair.BTC_USD), tickerService);
+
+        final long offset = tickerLatencyMonitor.getOffset(exchange);
+
+        assertTrue("Offset was " + offset, offset > 59000L && offset < 61500L);
+    }
+
+    @Test
+    public void testBuildUrl() {
+        HttpTickerConfiguration configuration = new HttpTickerConfiguration();
+
+        configuration.setUrl("https://api.example.com/products/{base}-{counter}/ticker");
+
+        assertEquals("https://api.example.com/products/BTC-USD/ticker", HttpTickerStrategy.buildUrl(configuration, CurrencyPair.BTC_USD));
+    }
+
+    @Test
+    public void testRequestCount() {
+        assertEquals(2, tickerStrategy.getRequestCount(currencyPairs));
+    }
+
+    private static String formatHttpDate(Date date) {
+        final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        return format.format(date);
+    }
+
+    private void respond(String url, int code, String body) {
+        responses.put(url, new Response.Builder()
+            .protocol(Protocol.HTTP_1_1)
+            .code(code)
+            .message("Status " + code)
+            .body(ResponseBody.create(body, MediaType.get("application/json"))));
+    }
+}
@@ -0,0 +1,149 @@
+package com.agonyforge.arbitrader.service.ticker;
+
+import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.service.ExchangeService;
+import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.ratelimit.TokenBucket;
+import info.bitrich.xchangestream.core.StreamingExchange;
+import org.junit.Before;
+import org.junit.Test;
+import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
+import org.knowm.xchange.currency.CurrencyPair;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+public class HybridTickerStrategyTest {
+    private static final long GAP_FILL = 2000L;
+
+    private final List<CurrencyPair> currencyPairs = Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD);
+
+    @Mock
+    private StreamingTickerStrategy streamingTickerStrategy;
+
+    @Mock
+    private TickerStrategy restTickerStrategy;
+
+    @Mock
+    private TickerService tickerService;
+
+    @Mock
+    private ExchangeService exchangeService;
+
+    @Mock
+    private TokenBucket rateLimiter;
+
+    @Mock
+    private StreamingExchange streamingExchange;
+
+    private HybridTickerStrategy hybridTickerStrategy;
+
+    @Before
+    public void setUp() {
+        MockitoAnnotations.initMocks(this);
+
+        ExchangeSpecification exchangeSpecification = new ExchangeSpecification(StreamingExchange.class);
+
+        exchangeSpecification.setExchangeName("StreamCoin");
+
+        when(streamingExchange.getExchangeSpecification()).thenReturn(exchangeSpecification);
+        when(streamingExchange.isAlive()).thenReturn(true);
+        when(restTickerStrategy.toString()).thenReturn("Single Call");
+
+        hybridTickerStrategy = new HybridTickerStrategy(streamingTickerStrategy, restTickerStrategy, exchangeService, GAP_FILL);
+    }
+
+    @Test
+    public void testNoGaps() {
+        when(streamingTickerStrategy.getSilentPairs(streamingExchange, currencyPairs, GAP_FILL)).thenReturn(Collections.emptyList());
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(streamingTickerStrategy).getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(restTickerStrategy, never()).getTickers(any(), anyList(), any());
+    }
+
+    @Test
+    public void testFillGaps() {
+        when(streamingTickerStrategy.getSilentPairs(streamingExchange, currencyPairs, GAP_FILL))
+            .thenReturn(Collections.singletonList(CurrencyPair.ETH_USD));
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(streamingTickerStrategy).getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(restTickerStrategy).getTickers(streamingExchange, Collections.singletonList(CurrencyPair.ETH_USD), tickerService);
+    }
+
+    @Test
+    public void testFillEverythingWhileDisconnected() {
+        when(streamingExchange.isAlive()).thenReturn(false);
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(restTickerStrategy).getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(streamingTickerStrategy).getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(streamingTickerStrategy, never()).getSilentPairs(any(), anyList(), anyLong());
+    }
+
+    // a single call fetches every pair, so it takes one token or waits for the next poll
+    @Test
+    public void testRateLimitedSingleCall() {
+        when(streamingExchange.isAlive()).thenReturn(false);
+        when(exchangeService.getRateLimiter(streamingExchange)).thenReturn(rateLimiter);
+        when(restTickerStrategy.getRequestCount(currencyPairs)).thenReturn(1);
+        when(rateLimiter.tryAcquire(1)).thenReturn(true, false);
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(restTickerStrategy, times(1)).getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(streamingTickerStrategy, times(2)).getTickers(streamingExchange, currencyPairs, tickerService);
+    }
+
+    // one call per pair takes one token each, and the pairs that didn't get one go first next time
+    @Test
+    public void testRateLimitedPerPair() {
+        when(streamingTickerStrategy.getSilentPairs(streamingExchange, currencyPairs, GAP_FILL)).thenReturn(currencyPairs);
+        when(exchangeService.getRateLimiter(streamingExchange)).thenReturn(rateLimiter);
+        when(restTickerStrategy.getRequestCount(currencyPairs)).thenReturn(2);
+        when(rateLimiter.tryAcquire(1)).thenReturn(true, false, false, true, false);
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(restTickerStrategy).getTickers(streamingExchange, Collections.singletonList(CurrencyPair.BTC_USD), tickerService);
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(restTickerStrategy, times(1)).getTickers(eq(streamingExchange), anyList(), eq(tickerService));
+
+        hybridTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+        verify(restTickerStrategy).getTickers(streamingExchange, Collections.singletonList(CurrencyPair.ETH_USD), tickerService);
+    }
+
+    @Test
+    public void testNonStreamingExchange() throws Exception {
+        Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD).build();
+
+        hybridTickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        verify(restTickerStrategy).getTickers(exchange, currencyPairs, tickerService);
+        verify(streamingTickerStrategy, never()).getTickers(any(), anyList(), any());
+    }
+
+    @Test
+    public void testRequestCount() {
+        assertEquals(0, hybridTickerStrategy.getRequestCount(currencyPairs));
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("Hybrid (Streaming + Single Call)", hybridTickerStrategy.toString());
+    }
+}
@@ -2,7 +2,9 @@ package com.agonyforge.arbitrader.service.ticker;
 
 import com.agonyforge.arbitrader.ExchangeBuilder;
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
 import com.agonyforge.arbitrader.service.cache.ExchangeFeeCache;
 import com.agonyforge.arbitrader.service.ExchangeService;
 import com.agonyforge.arbitrader.service.TickerService;
@@ -27,6 +29,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class ParallelTickerStrategyTest {
     private List<CurrencyPair> currencyPairs = Collections.singletonList(CurrencyPair.BTC_USD);
@@ -52,7 +55,7 @@ public class ParallelTickerStrategyTest {
 
         errorCollectorService = new ErrorCollectorService();
 
-        tickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        tickerStrategy = new ParallelTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new ExchangeIoExecutor(new TradingConfiguration()));
     }
 
     @Test
@@ -64,6 +67,8 @@ public class ParallelTickerStrategyTest {
                 Collections.singletonList(CurrencyPair.BTC_USD))
             .build();
 
+        when(tickerService.putTicker(eq(exchange), any(Ticker.class))).thenReturn(true);
+
         tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
 
         assertTrue(errorCollectorService.isEmpty());
@@ -72,6 +77,23 @@ public class ParallelTickerStrategyTest {
         verify(tickerEventPublisher).publishTicker(any(TickerEvent.class));
     }
 
+    @Test
+    public void testGetTickersUnchanged() throws IOException {
+        Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
+            .withTickerStrategy(tickerStrategy)
+            .withTickers(
+                true,
+                Collections.singletonList(CurrencyPair.BTC_USD))
+            .build();
+
+        when(tickerService.putTicker(eq(exchange), any(Ticker.class))).thenReturn(false);
+
+        tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        verify(tickerService).putTicker(eq(exchange), any(Ticker.class));
+        verify(tickerEventPublisher, never()).publishTicker(any(TickerEvent.class));
+    }
+
     @Test
     public void testGetTickersExchangeException() throws IOException {
         Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
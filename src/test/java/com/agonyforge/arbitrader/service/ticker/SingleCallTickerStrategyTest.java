@@ -2,7 +2,9 @@ package com.agonyforge.arbitrader.service.ticker;
 
 import com.agonyforge.arbitrader.ExchangeBuilder;
 import com.agonyforge.arbitrader.config.NotificationConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
+import com.agonyforge.arbitrader.service.ExchangeIoExecutor;
 import com.agonyforge.arbitrader.service.ExchangeService;
 import com.agonyforge.arbitrader.service.TickerService;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
@@ -26,6 +28,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 public class SingleCallTickerStrategyTest {
     private List<CurrencyPair> currencyPairs = Collections.singletonList(CurrencyPair.BTC_USD);
@@ -50,7 +53,7 @@ public class SingleCallTickerStrategyTest {
 
         errorCollectorService = new ErrorCollectorService();
 
-        tickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher);
+        tickerStrategy = new SingleCallTickerStrategy(notificationConfiguration, errorCollectorService, exchangeService, tickerEventPublisher, new ExchangeIoExecutor(new TradingConfiguration()));
     }
 
     @Test
@@ -62,6 +65,8 @@ public class SingleCallTickerStrategyTest {
                 Collections.singletonList(CurrencyPair.BTC_USD))
             .build();
 
+        when(tickerService.putTicker(eq(exchange), any(Ticker.class))).thenReturn(true);
+
         tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
 
         assertTrue(errorCollectorService.isEmpty());
@@ -70,6 +75,23 @@ public class SingleCallTickerStrategyTest {
         verify(tickerEventPublisher).publishTicker(any(TickerEvent.class));
     }
 
+    @Test
+    public void testGetTickersUnchanged() throws IOException {
+        Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
+            .withTickerStrategy(tickerStrategy)
+            .withTickers(
+                true,
+                Collections.singletonList(CurrencyPair.BTC_USD))
+            .build();
+
+        when(tickerService.putTicker(eq(exchange), any(Ticker.class))).thenReturn(false);
+
+        tickerStrategy.getTickers(exchange, currencyPairs, tickerService);
+
+        verify(tickerService).putTicker(eq(exchange), any(Ticker.class));
+        verify(tickerEventPublisher, never()).publishTicker(any(TickerEvent.class));
+    }
+
     @Test
     public void testGetTickersExchangeException() throws IOException {
         Exchange exchange = new ExchangeBuilder("CrazyCoinz", CurrencyPair.BTC_USD)
@@ -1,28 +1,51 @@
 package com.agonyforge.arbitrader.service.ticker;
 
 import com.agonyforge.arbitrader.ExchangeBuilder;
+import com.agonyforge.arbitrader.config.ExchangeConfiguration;
+import com.agonyforge.arbitrader.config.TradingConfiguration;
 import com.agonyforge.arbitrader.service.ErrorCollectorService;
 import com.agonyforge.arbitrader.service.ExchangeService;
 import com.agonyforge.arbitrader.service.TickerService;
+import com.agonyforge.arbitrader.service.cache.OrderBookCache;
 import com.agonyforge.arbitrader.service.event.TickerEventPublisher;
 import com.agonyforge.arbitrader.service.model.TickerEvent;
+import info.bitrich.xchangestream.core.ProductSubscription;
+import info.bitrich.xchangestream.core.StreamingExchange;
+import info.bitrich.xchangestream.core.StreamingMarketDataService;
+import io.reactivex.Completable;
+import io.reactivex.Observable;
+import io.reactivex.subjects.PublishSubject;
 import org.junit.Before;
 import org.junit.Test;
 import org.knowm.xchange.Exchange;
+import org.knowm.xchange.ExchangeSpecification;
 import org.knowm.xchange.currency.CurrencyPair;
 import org.knowm.xchange.dto.marketdata.Ticker;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
-import static org.mockito.Mockito.never;
-import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.*;
 
 public class StreamingTickerStrategyTest {
+    private static final long MAX_SILENCE = 1000L;
+
+    private final List<CurrencyPair> currencyPairs = Arrays.asList(CurrencyPair.BTC_USD, CurrencyPair.ETH_USD);
+    private final PublishSubject<Ticker> btcTickers = PublishSubject.create();
+    private final PublishSubject<Ticker> ethTickers = PublishSubject.create();
+    private final AtomicInteger btcSubscribers = new AtomicInteger();
+    private final AtomicInteger ethSubscribers = new AtomicInteger();
+
+    private long now = 0L;
+
     @Mock
     private ErrorCollectorService errorCollectorService;
 
@@ -35,13 +58,43 @@ public class StreamingTickerStrategyTest {
     @Mock
     private TickerEventPublisher tickerEventPublisher;
 
+    @Mock
+    private StreamingExchange streamingExchange;
+
+    @Mock
+    private StreamingMarketDataService streamingMarketDataService;
+
     private StreamingTickerStrategy streamingTickerStrategy;
 
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
-        streamingTickerStrategy = new StreamingTickerStrategy(errorCollectorService, exchangeService, tickerEventPublisher);
+        TradingConfiguration tradingConfiguration = new TradingConfiguration();
+
+        tradingConfiguration.setTickerMaxSilence(MAX_SILENCE);
+
+        ExchangeSpecification exchangeSpecification = new ExchangeSpecification(StreamingExchange.class);
+
+        exchangeSpecification.setExchangeName("StreamCoin");
+
+        when(streamingExchange.getExchangeSpecification()).thenReturn(exchangeSpecification);
+        when(streamingExchange.connect(any(ProductSubscription.class))).thenReturn(Completable.complete());
+        when(streamingExchange.isAlive()).thenReturn(true);
+        when(streamingExchange.getStreamingMarketDataService()).thenReturn(streamingMarketDataService);
+        when(streamingMarketDataService.getTicker(eq(CurrencyPair.BTC_USD), any())).thenReturn(counted(btcTickers, btcSubscribers));
+        when(streamingMarketDataService.getTicker(eq(CurrencyPair.ETH_USD), any())).thenReturn(counted(ethTickers, ethSubscribers));
+        when(exchangeService.convertExchangePair(eq(streamingExchange), any(CurrencyPair.class)))
+            .thenAnswer(invocation -> invocation.getArgument(1));
+        when(exchangeService.getExchangeMetadata(streamingExchange)).thenReturn(new ExchangeConfiguration());
+
+        streamingTickerStrategy = new StreamingTickerStrategy(
+            tradingConfiguration,
+            errorCollectorService,
+            exchangeService,
+            tickerEventPublisher,
+            new OrderBookCache(),
+            () -> now);
     }
 
     @Test
@@ -56,4 +109,117 @@ public class StreamingTickerStrategyTest {
         verify(tickerService, never()).putTicker(eq(nonStreamingExchange), any(Ticker.class));
         verify(tickerEventPublisher, never()).publishTicker(any(TickerEvent.class));
     }
+
+    @Test
+    public void testConnectOnce() {
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        // no prices have arrived yet, but that's no reason to reconnect
+        verify(streamingExchange, times(1)).connect(any(ProductSubscription.class));
+        verify(tickerService, never()).markStale(any(), any());
+    }
+
+    @Test
+    public void testReconnectWhenNotAlive() {
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        when(streamingExchange.isAlive()).thenReturn(false);
+
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(streamingExchange, times(2)).connect(any(ProductSubscription.class));
+
+        // the old subscriptions were disposed, so each pair only has the new one
+        assertEquals(1, btcSubscribers.get());
+        assertEquals(1, ethSubscribers.get());
+    }
+
+    @Test
+    public void testPutTickers() {
+        when(tickerService.putTicker(eq(streamingExchange), any(Ticker.class))).thenReturn(true, false);
+
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        btcTickers.onNext(buildTicker(CurrencyPair.BTC_USD, "100.00", "101.00"));
+        btcTickers.onNext(buildTicker(CurrencyPair.BTC_USD, "100.00", "101.00"));
+
+        // the duplicate is stored, but no event is published for it
+        verify(tickerService, times(2)).putTicker(eq(streamingExchange), any(Ticker.class));
+        verify(tickerEventPublisher, times(1)).publishTicker(any(TickerEvent.class));
+    }
+
+    @Test
+    public void testResubscribeSilentPair() {
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        btcTickers.onNext(buildTicker(CurrencyPair.BTC_USD, "100.00", "101.00"));
+        ethTickers.onNext(buildTicker(CurrencyPair.ETH_USD, "10.00", "10.10"));
+
+        now += MAX_SILENCE / 2;
+
+        // BTC is still talking but ETH has gone quiet
+        btcTickers.onNext(buildTicker(CurrencyPair.BTC_USD, "100.50", "101.50"));
+
+        now += MAX_SILENCE / 2 + 1;
+
+        assertEquals(Collections.singletonList(CurrencyPair.ETH_USD),
+            streamingTickerStrategy.getSilentPairs(streamingExchange, currencyPairs, MAX_SILENCE));
+
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(streamingExchange, times(1)).connect(any(ProductSubscription.class));
+        verify(tickerService).markStale(streamingExchange, CurrencyPair.ETH_USD);
+        verify(tickerService, never()).markStale(streamingExchange, CurrencyPair.BTC_USD);
+        verify(streamingMarketDataService, times(1)).getTicker(eq(CurrencyPair.BTC_USD), any());
+        verify(streamingMarketDataService, times(2)).getTicker(eq(CurrencyPair.ETH_USD), any());
+        assertEquals(1, ethSubscribers.get());
+
+        // the new subscription gets a chance to work before we try again
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(streamingMarketDataService, times(2)).getTicker(eq(CurrencyPair.ETH_USD), any());
+
+        now += MAX_SILENCE + 1;
+
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(streamingMarketDataService, times(3)).getTicker(eq(CurrencyPair.ETH_USD), any());
+        verify(tickerService, times(1)).markStale(streamingExchange, CurrencyPair.ETH_USD);
+    }
+
+    @Test
+    public void testNoWatchdog() {
+        streamingTickerStrategy = new StreamingTickerStrategy(
+            new TradingConfiguration(),
+            errorCollectorService,
+            exchangeService,
+            tickerEventPublisher,
+            new OrderBookCache(),
+            () -> now);
+
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        now += MAX_SILENCE * 10;
+
+        streamingTickerStrategy.getTickers(streamingExchange, currencyPairs, tickerService);
+
+        verify(tickerService, never()).markStale(any(), any());
+        verify(streamingMarketDataService, times(1)).getTicker(eq(CurrencyPair.ETH_USD), any());
+    }
+
+    // keep count of the live subscriptions to a feed
+    private static Observable<Ticker> counted(PublishSubject<Ticker> subject, AtomicInteger subscribers) {
+        return subject
+            .doOnSubscribe(disposable -> subscribers.incrementAndGet())
+            .doOnDispose(subscribers::decrementAndGet);
+    }
+
+    private static Ticker buildTicker(CurrencyPair currencyPair, String bid, String ask) {
+        return new Ticker.Builder()
+            .instrument(currencyPair)
+            .bid(new BigDecimal(bid))
+            .ask(new BigDecimal(ask))
+            .build();
+    }
 }